@@ -0,0 +1,100 @@
+package tools.bink.nfc;
+
+import java.io.IOException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The HCE command path: what {@code NfcHostCardEmulatorService.processCommandApdu}
+ * does for each APDU, without the Binder call. Each benchmark replays one reader
+ * conversation, so ns/op is per conversation.
+ */
+@State(Scope.Thread)
+public class ApduBenchmark {
+
+    // Turnstile polling loop: SELECT our AID, READ twice, then an unsupported GET DATA
+    private static final byte[][] TURNSTILE = {
+        HexCodec.decode("00A4040007F001020304050600"),
+        HexCodec.decode("00D0010000"),
+        HexCodec.decode("00D0010000"),
+        HexCodec.decode("00CA9F7F00"),
+    };
+
+    // A stock reader reading the NDEF file of a Type 4 tag
+    private static final byte[][] TYPE4_NDEF_READ = {
+        HexCodec.decode("00A4040007D276000085010100"),
+        HexCodec.decode("00A4000C02E103"),
+        HexCodec.decode("00B000000F"),
+        HexCodec.decode("00A4000C02E104"),
+        HexCodec.decode("00B0000002"),
+        HexCodec.decode("00B00002FF"),
+    };
+
+    private static final byte[][] ULTRALIGHT_READ = {
+        HexCodec.decode("3000"),
+        HexCodec.decode("6004"),
+        HexCodec.decode("6008"),
+        HexCodec.decode("600C"),
+    };
+
+    private CardEmulator turnstile;
+    private CardEmulator ndef;
+    private CardEmulator ultralight;
+    private ApduCodec reader;
+    private byte[] aid;
+
+    @Setup
+    public void setUp() {
+        turnstile = new CardEmulator();
+        turnstile.setProfile(EmulationProfile.forMessage("turnstile-pass-0001"));
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            text.append("check-in ").append(i).append(';');
+        }
+        ndef = new CardEmulator();
+        ndef.setProfile(EmulationProfile.forNdef(text.toString()));
+
+        StringBuilder memory = new StringBuilder();
+        for (int i = 0; i < 64; i++) {
+            memory.append(String.format("%02X", i));
+        }
+        ultralight = new CardEmulator();
+        ultralight.setProfile(EmulationProfile.forMifareUltralight(memory.toString(), null));
+
+        // Reader side of the same card: APDU encoding and response collection
+        reader = new ApduCodec(turnstile::process, false, 261);
+        aid = HexCodec.decode("F0010203040506");
+    }
+
+    @Benchmark
+    public void turnstilePoll(Blackhole blackhole) {
+        replay(turnstile, TURNSTILE, blackhole);
+    }
+
+    @Benchmark
+    public void type4NdefRead(Blackhole blackhole) {
+        replay(ndef, TYPE4_NDEF_READ, blackhole);
+    }
+
+    @Benchmark
+    public void ultralightPages(Blackhole blackhole) {
+        replay(ultralight, ULTRALIGHT_READ, blackhole);
+    }
+
+    @Benchmark
+    public int readerSelectAndRead() throws IOException {
+        int status = reader.transmit(0x00, 0xA4, 0x04, 0x00, aid, ApduCodec.NO_LE);
+        status += reader.transmit(0x00, 0xD0, 0x01, 0x00, null, ApduCodec.NO_LE);
+        return status + reader.getResponseLength();
+    }
+
+    private static void replay(CardEmulator emulator, byte[][] sequence, Blackhole blackhole) {
+        for (byte[] apdu : sequence) {
+            blackhole.consume(emulator.process(apdu));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package tools.bink.nfc;
+
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Hex and base64 encoding of raw tag bytes. 7 bytes is a UID, 16 an Ultralight
+ * READ, 888 an NTAG216 dump and 4096 a MIFARE Classic 4K dump.
+ */
+@State(Scope.Thread)
+public class HexBenchmark {
+
+    @Param({"7", "16", "888", "4096"})
+    public int size;
+
+    private byte[] data;
+    private String hex;
+    private byte[] decoded;
+    private char[] chars;
+
+    @Setup
+    public void setUp() {
+        data = new byte[size];
+        new Random(42).nextBytes(data);
+        hex = HexCodec.encode(data);
+        decoded = new byte[size];
+        chars = new char[size * 2];
+    }
+
+    @Benchmark
+    public String encode() {
+        return HexCodec.encode(data);
+    }
+
+    @Benchmark
+    public String encodeUpper() {
+        return HexCodec.encodeUpper(data);
+    }
+
+    @Benchmark
+    public int encodeIntoBuffer() {
+        return HexCodec.encode(data, 0, size, chars, 0, false);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return HexCodec.decode(hex);
+    }
+
+    @Benchmark
+    public int decodeIntoBuffer() {
+        return HexCodec.decode(hex, decoded, 0);
+    }
+
+    @Benchmark
+    public boolean isValid() {
+        return HexCodec.isValid(hex);
+    }
+
+    @Benchmark
+    public String base64() {
+        return Base64Codec.encode(data);
+    }
+}
@@ -0,0 +1,61 @@
+package tools.bink.nfc;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Building the JSON results the plugin sends over the bridge, and serializing
+ * them as the bridge does. Uses the org.json artifact in place of Android's
+ * copy of the same API.
+ */
+@State(Scope.Thread)
+public class JsonResultBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int records;
+
+    private byte[] message;
+
+    @Setup
+    public void setUp() {
+        NdefMessageBuilder builder = new NdefMessageBuilder();
+        for (int i = 0; i < records; i++) {
+            switch (i % 3) {
+                case 0:
+                    builder.addText("check-in " + i, "en");
+                    break;
+                case 1:
+                    builder.addUri("https://example.com/p/" + i);
+                    break;
+                default:
+                    builder.addMime("application/octet-stream", new byte[64]).withId(new byte[] {(byte) i});
+                    break;
+            }
+        }
+        message = builder.build();
+    }
+
+    @Benchmark
+    public Object readRecords() throws JSONException {
+        return NdefJson.readRecords(new NdefParser(message), false);
+    }
+
+    @Benchmark
+    public Object readRecordsBase64() throws JSONException {
+        return NdefJson.readRecords(new NdefParser(message), true);
+    }
+
+    @Benchmark
+    public Object ultralightMessage() throws JSONException {
+        return NdefJson.message(new NdefParser(message), false);
+    }
+
+    @Benchmark
+    public String readRecordsSerialized() throws JSONException {
+        return NdefJson.readRecords(new NdefParser(message), false).toString();
+    }
+}
@@ -0,0 +1,84 @@
+package tools.bink.nfc;
+
+import java.util.Arrays;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * NDEF message building and parsing. {@code textLength} covers a short pass
+ * id, a text that needs a long record, and a payload near the Type 4 limit.
+ */
+@State(Scope.Thread)
+public class NdefBenchmark {
+
+    @Param({"32", "1024", "16384"})
+    public int textLength;
+
+    private String text;
+    private byte[] textMessage;
+    private byte[] posterMessage;
+    private byte[] out;
+
+    @Setup
+    public void setUp() {
+        char[] chars = new char[textLength];
+        Arrays.fill(chars, 'n');
+        text = new String(chars);
+        textMessage = new NdefMessageBuilder().addText(text, "en").build();
+        out = new byte[textMessage.length];
+
+        byte[] poster = new NdefMessageBuilder()
+            .addUri("https://www.example.com/pass/42")
+            .addText("Gate 4", "en")
+            .build();
+        posterMessage = new NdefMessageBuilder()
+            .addRecord(NdefMessageBuilder.TNF_WELL_KNOWN, NdefParser.RTD_SMART_POSTER, null, poster)
+            .addMime("application/octet-stream", new byte[textLength])
+            .addApplicationRecord("com.example.app")
+            .build();
+    }
+
+    @Benchmark
+    public byte[] buildTextRecord() {
+        return new NdefMessageBuilder().addText(text, "en").build();
+    }
+
+    @Benchmark
+    public int buildTextRecordIntoBuffer() {
+        return new NdefMessageBuilder().addText(text, "en").write(out, 0);
+    }
+
+    @Benchmark
+    public String parseTextRecord() {
+        NdefParser parser = new NdefParser(textMessage);
+        return parser.next() ? parser.text() : null;
+    }
+
+    /** Walks every record header, skipping the MIME payload without decoding it. */
+    @Benchmark
+    public int skipRecords() {
+        NdefParser parser = new NdefParser(posterMessage);
+        int records = 0;
+        while (parser.next()) {
+            records++;
+        }
+        return records;
+    }
+
+    @Benchmark
+    public void parseSmartPoster(Blackhole blackhole) {
+        NdefParser parser = new NdefParser(posterMessage);
+        while (parser.next()) {
+            if (parser.isSmartPoster()) {
+                NdefParser nested = parser.nested();
+                while (nested.next()) {
+                    blackhole.consume(nested.isUri() ? nested.uri() : nested.text());
+                }
+            }
+        }
+    }
+}
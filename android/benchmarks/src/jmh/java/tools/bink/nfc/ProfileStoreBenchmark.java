@@ -0,0 +1,54 @@
+package tools.bink.nfc;
+
+import java.io.File;
+import java.io.IOException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * What a reader waits for when Android binds the HCE service in a fresh
+ * process: loading the saved emulation and answering the first SELECT.
+ * Half the {@code applications} are file system cards, so the load copies
+ * their contents too.
+ */
+@State(Scope.Thread)
+public class ProfileStoreBenchmark {
+
+    @Param({"1", "32"})
+    public int applications;
+
+    private File file;
+    private byte[] select;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = File.createTempFile("profiles", ".bin");
+        AidRouter.Builder<EmulationProfile> builder = new AidRouter.Builder<>();
+        for (int i = 0; i < applications; i++) {
+            String aid = String.format("F0B0%012X", i);
+            builder.add(aid, i % 2 == 0
+                ? EmulationProfile.forIsoDep(aid, "application " + i)
+                : EmulationProfile.forFiles(aid, new Iso7816Card(Iso7816Card.defaultFiles("application " + i))));
+        }
+        new ProfileStore(file).save(EmulationProfile.forNdef("default"), builder.build());
+        select = HexCodec.decode(String.format("00A4040008F0B0%012X00", applications - 1));
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public byte[] coldLoadAndFirstSelect() throws IOException {
+        ProfileStore.Snapshot snapshot = new ProfileStore(file).load();
+        CardEmulator emulator = new CardEmulator();
+        emulator.setProfile(snapshot.profile);
+        emulator.setApplications(snapshot.applications);
+        return emulator.process(select);
+    }
+}
@@ -0,0 +1,56 @@
+package tools.bink.nfc;
+
+import java.io.IOException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A whole tap against the unit tests' {@link SimulatedTag}s, with no RF
+ * latency: what the read engines cost on top of the radio. ns/op is per tap.
+ */
+@State(Scope.Thread)
+public class TagTransportBenchmark {
+
+    private static final byte[] NTAG213_VERSION = {0x00, 0x04, 0x04, 0x02, 0x01, 0x00, 0x0F, 0x03};
+    private static final byte[] AID = HexCodec.decode("F00102030405");
+
+    private SimulatedTag.Type2 type2;
+    private SimulatedTag.Type4 type4;
+
+    @Setup
+    public void setUp() {
+        byte[] message = new NdefMessageBuilder().addUri("https://example.com/p/42").build();
+        type2 = SimulatedTag.type2(UltralightReader.NTAG213, NTAG213_VERSION).withNdef(message);
+        type4 = SimulatedTag.type4(EmulationProfile.forIsoDep("F00102030405", "pass-0042"));
+    }
+
+    // Connect, identify, dump and parse, as readTag does for an Ultralight without Ndef
+    @Benchmark
+    public void type2Read(Blackhole blackhole) throws IOException {
+        type2.connect();
+        try {
+            UltralightReader reader = new UltralightReader(type2, type2.getMaxTransceiveLength());
+            NdefParser parser = NdefParser.forType2Memory(reader.read(reader.identify()));
+            while (parser.next()) {
+                blackhole.consume(parser.uri());
+            }
+        } finally {
+            type2.close();
+        }
+    }
+
+    @Benchmark
+    public String isoDepSelectAndRead() throws IOException {
+        type4.connect();
+        try {
+            IsoDepExchange exchange = new IsoDepExchange(type4);
+            exchange.select(AID);
+            return exchange.read();
+        } finally {
+            type4.close();
+        }
+    }
+}
@@ -1,8 +1,6 @@
 package com.myapp.plugins.nfc;
 
-import android.app.Activity;
 import android.content.Intent;
-import android.app.PendingIntent;
 import android.content.IntentFilter;
 import android.nfc.NfcAdapter;
 import android.nfc.NdefMessage;
@@ -13,6 +11,9 @@ import android.nfc.tech.Ndef;
 import android.os.Build;
 import android.os.Parcelable;
 import androidx.annotation.RequiresApi;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
@@ -21,42 +22,42 @@ import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 import com.getcapacitor.annotation.Permission;
 
+import tools.bink.nfc.NfcCore;
+import tools.bink.nfc.TagEventFilter;
+
+// A facade over the shared NfcCore, which owns the adapter, so this plugin and Nfc can be registered together
 @CapacitorPlugin(name = "NFC", permissions = {
     @Permission(strings = { "android.permission.NFC" }, alias = "nfc")
 })
-public class NFCPlugin extends Plugin implements NfcAdapter.ReaderCallback, NfcAdapter.CreateNdefMessageCallback, NfcAdapter.OnNdefPushCompleteCallback {
+public class NFCPlugin extends Plugin implements NfcCore.TagListener, NfcAdapter.CreateNdefMessageCallback, NfcAdapter.OnNdefPushCompleteCallback {
+    private static final int READER_FLAGS =
+        NfcAdapter.FLAG_READER_NFC_A |
+        NfcAdapter.FLAG_READER_NFC_B |
+        NfcAdapter.FLAG_READER_NFC_F |
+        NfcAdapter.FLAG_READER_NFC_V |
+        NfcAdapter.FLAG_READER_NFC_BARCODE;
+    private NfcCore core;
     private NfcAdapter nfcAdapter;
+    private ExecutorService tagIo;
     private static final String EVENT_TAG_SCANNED = "nfcTagScanned";
     private String pendingMessage;
     private PluginCall pendingShareCall;
-    private boolean isReaderModeEnabled = false;
 
     @Override
     public void load() {
-        Activity activity = getActivity();
-        nfcAdapter = NfcAdapter.getDefaultAdapter(activity);
+        core = NfcCore.get(getContext());
+        nfcAdapter = core.getAdapter();
+        tagIo = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "nfc-legacy-tag-io");
+            thread.setDaemon(true);
+            return thread;
+        });
         enableReaderMode();
     }
 
     private void enableReaderMode() {
-        if (nfcAdapter != null && !isReaderModeEnabled) {
-            Activity activity = getActivity();
-            nfcAdapter.enableReaderMode(activity, this,
-                NfcAdapter.FLAG_READER_NFC_A |
-                NfcAdapter.FLAG_READER_NFC_B |
-                NfcAdapter.FLAG_READER_NFC_F |
-                NfcAdapter.FLAG_READER_NFC_V |
-                NfcAdapter.FLAG_READER_NFC_BARCODE,
-                null);
-            isReaderModeEnabled = true;
-        }
-    }
-
-    private void disableReaderMode() {
-        if (nfcAdapter != null && isReaderModeEnabled) {
-            Activity activity = getActivity();
-            nfcAdapter.disableReaderMode(activity);
-            isReaderModeEnabled = false;
+        if (nfcAdapter != null) {
+            core.startReaderMode(this, getActivity(), READER_FLAGS, 0, this);
         }
     }
 
@@ -91,23 +92,42 @@ public class NFCPlugin extends Plugin implements NfcAdapter.ReaderCallback, NfcA
         call.resolve();
     }
 
+    // Rediscoveries of a tag held on the reader are not read again. Runs on the binder
+    // thread shared with the Nfc plugin, so the read is handed to this plugin's I/O thread
     @Override
-    public void onTagDiscovered(Tag tag) {
+    public void onTag(Tag tag, int transition) {
+        if (transition == TagEventFilter.SUPPRESSED) {
+            return;
+        }
         Ndef ndef = Ndef.get(tag);
         if (ndef != null) {
             try {
+                tagIo.execute(() -> readTag(tag, ndef));
+            } catch (RejectedExecutionException e) {
+                // Destroyed
+            }
+        }
+    }
+
+    private void readTag(Tag tag, Ndef ndef) {
+        try {
+            // Shared with the Nfc plugin, so a tap both plugins want is read once
+            NdefMessage ndefMessage = core.readNdefMessage(tag, () -> {
                 ndef.connect();
-                NdefMessage ndefMessage = ndef.getNdefMessage();
-                if (ndefMessage != null && ndefMessage.getRecords().length > 0) {
-                    String message = new String(ndefMessage.getRecords()[0].getPayload());
-                    onNfcTagScanned(message);
+                try {
+                    return ndef.getNdefMessage();
+                } finally {
+                    ndef.close();
                 }
-                ndef.close();
-            } catch (Exception e) {
-                JSObject ret = new JSObject();
-                ret.put("error", e.getMessage());
-                notifyListeners("nfcError", ret);
+            });
+            String message = NfcCore.firstRecordText(ndefMessage);
+            if (message != null) {
+                onNfcTagScanned(message);
             }
+        } catch (Exception e) {
+            JSObject ret = new JSObject();
+            ret.put("error", e.getMessage());
+            notifyListeners("nfcError", ret);
         }
     }
 
@@ -137,28 +157,10 @@ public class NFCPlugin extends Plugin implements NfcAdapter.ReaderCallback, NfcA
         
         getActivity().runOnUiThread(() -> {
             try {
-                // Temporarily disable reader mode while sharing
-                disableReaderMode();
-                
-                Activity activity = getActivity();
-                NdefRecord record = NdefRecord.createTextRecord(null, message);
-                final NdefMessage ndefMessage = new NdefMessage(new NdefRecord[]{record});
-                
-                // Setup foreground dispatch for sharing
-                Intent intent = new Intent(activity, activity.getClass());
-                intent.addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
-                
-                int flags = PendingIntent.FLAG_UPDATE_CURRENT;
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-                    flags |= PendingIntent.FLAG_MUTABLE;
-                }
-                
-                PendingIntent pendingIntent = PendingIntent.getActivity(activity, 0, intent, flags);
-                IntentFilter[] filters = new IntentFilter[] { 
-                    new IntentFilter(NfcAdapter.ACTION_NDEF_DISCOVERED) 
-                };
-                
-                nfcAdapter.enableForegroundDispatch(activity, pendingIntent, filters, null);
+                // Trade this plugin's reader mode for foreground dispatch while sharing;
+                // the core keeps reader mode on if the Nfc plugin still holds it
+                core.startForegroundDispatch(this, getActivity(), this,
+                    new IntentFilter(NfcAdapter.ACTION_NDEF_DISCOVERED));
                 
                 JSObject ret = new JSObject();
                 ret.put("shared", true);
@@ -176,8 +178,6 @@ public class NFCPlugin extends Plugin implements NfcAdapter.ReaderCallback, NfcA
         if (nfcAdapter != null) {
             getActivity().runOnUiThread(() -> {
                 try {
-                    Activity activity = getActivity();
-                    nfcAdapter.disableForegroundDispatch(activity);
                     pendingMessage = null;
                     pendingShareCall = null;
                     enableReaderMode(); // Re-enable reader mode after sharing
@@ -197,14 +197,24 @@ public class NFCPlugin extends Plugin implements NfcAdapter.ReaderCallback, NfcA
         notifyListeners(EVENT_TAG_SCANNED, ret, true);
     }
 
+    @Override
+    protected void handleOnResume() {
+        super.handleOnResume();
+        core.onResume(getActivity());
+    }
+
+    @Override
+    protected void handleOnPause() {
+        super.handleOnPause();
+        core.onPause();
+    }
+
     @Override
     public void handleOnDestroy() {
-        if (nfcAdapter != null) {
-            Activity activity = getActivity();
-            if (activity != null) {
-                nfcAdapter.disableReaderMode(activity);
-                isReaderModeEnabled = false;
-            }
+        core.stop(this);
+        core.onDestroy(getActivity());
+        if (tagIo != null) {
+            tagIo.shutdownNow();
         }
     }
 
@@ -216,9 +226,8 @@ public class NFCPlugin extends Plugin implements NfcAdapter.ReaderCallback, NfcA
         if (NfcAdapter.ACTION_NDEF_DISCOVERED.equals(intent.getAction())) {
             Parcelable[] rawMsgs = intent.getParcelableArrayExtra(NfcAdapter.EXTRA_NDEF_MESSAGES);
             if (rawMsgs != null && rawMsgs.length > 0) {
-                NdefMessage msg = (NdefMessage) rawMsgs[0];
-                if (msg.getRecords().length > 0) {
-                    String message = new String(msg.getRecords()[0].getPayload());
+                String message = NfcCore.firstRecordText((NdefMessage) rawMsgs[0]);
+                if (message != null) {
                     onNfcTagScanned(message);
                 }
             }
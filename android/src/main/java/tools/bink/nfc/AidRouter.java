@@ -0,0 +1,193 @@
+package tools.bink.nfc;
+
+import java.util.Arrays;
+
+/**
+ * Immutable table from application identifiers to the applications behind them.
+ *
+ * AIDs are hashed straight from the SELECT payload into an open-addressing
+ * table, so a lookup reads the APDU in place, never allocates and costs the
+ * same however many applications are registered. Prefix AIDs (Android's
+ * {@code A000000003*} form) live in the same table under their prefix: a
+ * SELECT that matches no AID exactly is looked up once per distinct prefix
+ * length, longest first, and there are at most 16 of those.
+ *
+ * @param <T> application type
+ */
+final class AidRouter<T> {
+
+    static final int MIN_AID_LENGTH = 5;
+    static final int MAX_AID_LENGTH = 16;
+
+    private static final AidRouter<?> EMPTY = new Builder<Object>().build();
+
+    private final byte[][] keys;
+    private final boolean[] prefixes;
+    private final int[] slots;
+    private final int mask;
+    private final int[] prefixLengths;
+    private final Object[] values;
+    private final String[] aids;
+
+    private AidRouter(Builder<T> builder) {
+        int count = builder.count;
+        int capacity = Integer.highestOneBit(Math.max(4, count * 2) - 1) << 1;
+        this.keys = new byte[capacity][];
+        this.prefixes = new boolean[capacity];
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+        this.values = Arrays.copyOf(builder.values, count);
+        this.aids = new String[count];
+
+        boolean[] prefixLength = new boolean[MAX_AID_LENGTH + 1];
+        for (int i = 0; i < count; i++) {
+            byte[] key = builder.keys[i];
+            boolean prefix = builder.prefixes[i];
+            int slot = hash(key, 0, key.length, prefix) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            prefixes[slot] = prefix;
+            slots[slot] = i;
+            aids[i] = HexCodec.encodeUpper(key) + (prefix ? "*" : "");
+            if (prefix) {
+                prefixLength[key.length] = true;
+            }
+        }
+
+        int distinct = 0;
+        for (boolean used : prefixLength) {
+            if (used) {
+                distinct++;
+            }
+        }
+        this.prefixLengths = new int[distinct];
+        for (int length = MAX_AID_LENGTH, i = 0; length > 0; length--) {
+            if (prefixLength[length]) {
+                prefixLengths[i++] = length;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> AidRouter<T> empty() {
+        return (AidRouter<T>) EMPTY;
+    }
+
+    /**
+     * Index of the application for the AID at {@code offset}, or -1. An exact
+     * AID wins over a prefix, and a longer prefix over a shorter one.
+     */
+    int find(byte[] data, int offset, int length) {
+        int index = probe(data, offset, length, false);
+        for (int i = 0; index < 0 && i < prefixLengths.length; i++) {
+            if (prefixLengths[i] <= length) {
+                index = probe(data, offset, prefixLengths[i], true);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Index of the application a SELECT by name (00 A4 04 xx) is for, or -1
+     * when the APDU is not one or its AID is not registered.
+     */
+    int findSelected(byte[] apdu) {
+        if (!isSelectByName(apdu)) {
+            return -1;
+        }
+        return find(apdu, 5, apdu[4] & 0xFF);
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(int index) {
+        return (T) values[index];
+    }
+
+    int size() {
+        return values.length;
+    }
+
+    /** The AID of application {@code index} in Android's form: upper-case hex, prefixes ending in '*'. */
+    String getAid(int index) {
+        return aids[index];
+    }
+
+    static boolean isSelectByName(byte[] apdu) {
+        return apdu != null && apdu.length >= 5 && apdu[0] == 0x00 && apdu[1] == (byte) 0xA4 && apdu[2] == 0x04
+            && apdu.length >= 5 + (apdu[4] & 0xFF);
+    }
+
+    private int probe(byte[] data, int offset, int length, boolean prefix) {
+        int slot = hash(data, offset, length, prefix) & mask;
+        byte[] key;
+        while ((key = keys[slot]) != null) {
+            if (prefixes[slot] == prefix && matches(key, data, offset, length)) {
+                return slots[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static boolean matches(byte[] key, byte[] data, int offset, int length) {
+        if (key.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key[i] != data[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] data, int offset, int length, boolean prefix) {
+        int hash = prefix ? 0x01000193 : 0x811C9DC5;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ (data[offset + i] & 0xFF)) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    static final class Builder<T> {
+        private byte[][] keys = new byte[4][];
+        private boolean[] prefixes = new boolean[4];
+        private Object[] values = new Object[4];
+        private int count;
+
+        /**
+         * Routes {@code aid} to {@code value}. The AID is 5 to 16 bytes of hex;
+         * a trailing '*' makes it a prefix.
+         *
+         * @throws IllegalArgumentException when the AID is malformed or already routed
+         */
+        Builder<T> add(String aid, T value) {
+            boolean prefix = aid.endsWith("*");
+            byte[] key = HexCodec.decode(prefix ? aid.substring(0, aid.length() - 1) : aid);
+            if (key == null || key.length < MIN_AID_LENGTH || key.length > MAX_AID_LENGTH) {
+                throw new IllegalArgumentException("Invalid AID: " + aid);
+            }
+            for (int i = 0; i < count; i++) {
+                if (prefixes[i] == prefix && Arrays.equals(keys[i], key)) {
+                    throw new IllegalArgumentException("Duplicate AID: " + aid);
+                }
+            }
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+                prefixes = Arrays.copyOf(prefixes, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+            keys[count] = key;
+            prefixes[count] = prefix;
+            values[count] = value;
+            count++;
+            return this;
+        }
+
+        AidRouter<T> build() {
+            return new AidRouter<>(this);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package tools.bink.nfc;
+
+import android.nfc.TagLostException;
+import android.nfc.tech.IsoDep;
+import android.nfc.tech.MifareClassic;
+import android.nfc.tech.MifareUltralight;
+import android.nfc.tech.NfcA;
+import android.nfc.tech.TagTechnology;
+
+import java.io.IOException;
+
+/**
+ * {@link TagTransport} over the {@code android.nfc.tech} classes.
+ *
+ * The tech classes share connect and close through {@link TagTechnology} but
+ * not transceive or the timeout, so each one gets a small subclass. Connects
+ * and transceives are timed into {@link TagMetrics}, which also counts lost
+ * tags and commands that failed after running into the timeout. Each
+ * transport is one conversation for {@link ApduTrace} sampling; MIFARE
+ * Classic authentication and block reads are not traced, as Android does not
+ * expose their frames.
+ */
+abstract class AndroidTagTransport implements TagTransport {
+
+    private final TagTechnology technology;
+    final TagMetrics metrics;
+    private final ApduTrace trace;
+    private final boolean traced;
+
+    private AndroidTagTransport(TagTechnology technology, TagMetrics metrics, ApduTrace trace) {
+        this.technology = technology;
+        this.metrics = metrics;
+        this.trace = trace;
+        this.traced = trace.sample();
+    }
+
+    static TagTransport isoDep(IsoDep isoDep, TagMetrics metrics, ApduTrace trace) {
+        return new AndroidTagTransport(isoDep, metrics, trace) {
+            @Override
+            byte[] exchange(byte[] command) throws IOException {
+                return isoDep.transceive(command);
+            }
+
+            @Override
+            public void setTimeout(int timeoutMillis) {
+                isoDep.setTimeout(timeoutMillis);
+            }
+
+            @Override
+            public int getTimeout() {
+                return isoDep.getTimeout();
+            }
+
+            @Override
+            public int getMaxTransceiveLength() {
+                return isoDep.getMaxTransceiveLength();
+            }
+
+            @Override
+            public boolean isExtendedLengthApduSupported() {
+                return isoDep.isExtendedLengthApduSupported();
+            }
+        };
+    }
+
+    static TagTransport nfcA(NfcA nfcA, TagMetrics metrics, ApduTrace trace) {
+        return new AndroidTagTransport(nfcA, metrics, trace) {
+            @Override
+            byte[] exchange(byte[] command) throws IOException {
+                return nfcA.transceive(command);
+            }
+
+            @Override
+            public void setTimeout(int timeoutMillis) {
+                nfcA.setTimeout(timeoutMillis);
+            }
+
+            @Override
+            public int getTimeout() {
+                return nfcA.getTimeout();
+            }
+
+            @Override
+            public int getMaxTransceiveLength() {
+                return nfcA.getMaxTransceiveLength();
+            }
+        };
+    }
+
+    static TagTransport ultralight(MifareUltralight ultralight, TagMetrics metrics, ApduTrace trace) {
+        return new AndroidTagTransport(ultralight, metrics, trace) {
+            @Override
+            byte[] exchange(byte[] command) throws IOException {
+                return ultralight.transceive(command);
+            }
+
+            @Override
+            public void setTimeout(int timeoutMillis) {
+                ultralight.setTimeout(timeoutMillis);
+            }
+
+            @Override
+            public int getTimeout() {
+                return ultralight.getTimeout();
+            }
+
+            @Override
+            public int getMaxTransceiveLength() {
+                return ultralight.getMaxTransceiveLength();
+            }
+        };
+    }
+
+    static TagTransport.Classic classic(MifareClassic mifare, TagMetrics metrics, ApduTrace trace) {
+        return new ClassicTransport(mifare, metrics, trace);
+    }
+
+    /** Connects any tech, timed and counted like a transport connect. */
+    static void connect(TagTechnology technology, TagMetrics metrics) throws IOException {
+        long start = System.nanoTime();
+        try {
+            technology.connect();
+        } catch (TagLostException e) {
+            metrics.countTagLost();
+            throw e;
+        } finally {
+            metrics.record(TagMetrics.CONNECT, start);
+        }
+    }
+
+    abstract byte[] exchange(byte[] command) throws IOException;
+
+    @Override
+    public void connect() throws IOException {
+        connect(technology, metrics);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return technology.isConnected();
+    }
+
+    @Override
+    public final byte[] transceive(byte[] command) throws IOException {
+        if (traced) {
+            trace.record(ApduTrace.READER_COMMAND, command, 0, command.length);
+        }
+        long start = System.nanoTime();
+        try {
+            byte[] response = exchange(command);
+            if (traced) {
+                trace.record(ApduTrace.READER_RESPONSE, response, 0, response.length);
+            }
+            return response;
+        } catch (IOException e) {
+            countFailure(e, start);
+            throw e;
+        } finally {
+            metrics.record(TagMetrics.TRANSCEIVE, start);
+        }
+    }
+
+    @Override
+    public boolean isExtendedLengthApduSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        technology.close();
+    }
+
+    // Android reports a timeout as a plain IOException, so tell it apart by the time taken
+    void countFailure(IOException e, long startNanos) {
+        if (e instanceof TagLostException) {
+            metrics.countTagLost();
+        } else if (System.nanoTime() - startNanos >= getTimeout() * 1_000_000L) {
+            metrics.countTimeout();
+        }
+    }
+
+    private static final class ClassicTransport extends AndroidTagTransport implements TagTransport.Classic {
+        private final MifareClassic mifare;
+
+        ClassicTransport(MifareClassic mifare, TagMetrics metrics, ApduTrace trace) {
+            super(mifare, metrics, trace);
+            this.mifare = mifare;
+        }
+
+        @Override
+        byte[] exchange(byte[] command) throws IOException {
+            return mifare.transceive(command);
+        }
+
+        @Override
+        public void setTimeout(int timeoutMillis) {
+            mifare.setTimeout(timeoutMillis);
+        }
+
+        @Override
+        public int getTimeout() {
+            return mifare.getTimeout();
+        }
+
+        @Override
+        public int getMaxTransceiveLength() {
+            return mifare.getMaxTransceiveLength();
+        }
+
+        @Override
+        public int getSize() {
+            return mifare.getSize();
+        }
+
+        @Override
+        public int getBlockCount() {
+            return mifare.getBlockCount();
+        }
+
+        @Override
+        public int getSectorCount() {
+            return mifare.getSectorCount();
+        }
+
+        @Override
+        public int getBlockCountInSector(int sector) {
+            return mifare.getBlockCountInSector(sector);
+        }
+
+        @Override
+        public int sectorToBlock(int sector) {
+            return mifare.sectorToBlock(sector);
+        }
+
+        @Override
+        public boolean authenticate(int sector, byte[] key, boolean keyB) throws IOException {
+            long start = System.nanoTime();
+            try {
+                boolean authenticated = keyB
+                    ? mifare.authenticateSectorWithKeyB(sector, key)
+                    : mifare.authenticateSectorWithKeyA(sector, key);
+                if (!authenticated) {
+                    metrics.countAuthFailure();
+                }
+                return authenticated;
+            } catch (IOException e) {
+                countFailure(e, start);
+                throw e;
+            } finally {
+                metrics.record(TagMetrics.TRANSCEIVE, start);
+            }
+        }
+
+        @Override
+        public byte[] readBlock(int block) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return mifare.readBlock(block);
+            } catch (IOException e) {
+                countFailure(e, start);
+                throw e;
+            } finally {
+                metrics.record(TagMetrics.TRANSCEIVE, start);
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package tools.bink.nfc;
+
+import java.io.IOException;
+
+/**
+ * Reader-side ISO 7816-4 APDU codec.
+ *
+ * Picks short or extended length encoding from what the tag and controller
+ * support, splits data that does not fit one command into a command chain
+ * (CLA bit 0x10), and drains 61xx responses with GET RESPONSE. Response data is
+ * collected into one buffer that is reused across commands, so a session moving
+ * multi-KB blobs does not allocate per frame.
+ */
+final class ApduCodec {
+
+    interface Transceiver {
+        byte[] transceive(byte[] command) throws IOException;
+    }
+
+    /** Pass as {@code le} when no response data is expected (no Le field). */
+    static final int NO_LE = -1;
+    static final int SW_OK = 0x9000;
+
+    static final int SHORT_MAX_DATA = 255;
+    static final int SHORT_MAX_LE = 256;
+    static final int EXTENDED_MAX_DATA = 65535;
+    static final int EXTENDED_MAX_LE = 65536;
+
+    private static final int CLA_CHAINING = 0x10;
+    private static final int INS_GET_RESPONSE = 0xC0;
+    private static final int DEFAULT_MAX_TRANSCEIVE_LENGTH = 261;
+    // Upper bound on GET RESPONSE rounds so a misbehaving card cannot loop us forever
+    private static final int MAX_RESPONSE_ROUNDS = 1024;
+
+    private final Transceiver transceiver;
+    private final boolean extendedLengthSupported;
+    private final int maxTransceiveLength;
+
+    private byte[] responseBuffer = new byte[256];
+    private int responseLength;
+
+    ApduCodec(Transceiver transceiver, boolean extendedLengthSupported, int maxTransceiveLength) {
+        this.transceiver = transceiver;
+        this.extendedLengthSupported = extendedLengthSupported;
+        this.maxTransceiveLength = maxTransceiveLength > 0 ? maxTransceiveLength : DEFAULT_MAX_TRANSCEIVE_LENGTH;
+    }
+
+    /**
+     * Sends one logical command and returns its final status word. Response data
+     * (without the status word) is available from {@link #getResponseBuffer()} until
+     * the next call.
+     *
+     * @param data command data, or null for none
+     * @param le expected response length (1..65536), or {@link #NO_LE}
+     */
+    int transmit(int cla, int ins, int p1, int p2, byte[] data, int le) throws IOException {
+        responseLength = 0;
+        int dataLength = data != null ? data.length : 0;
+
+        boolean extended = extendedLengthSupported
+            && (dataLength > SHORT_MAX_DATA || le > SHORT_MAX_LE)
+            && encodedLength(dataLength, le, true) <= maxTransceiveLength;
+        boolean fitsShort = dataLength <= SHORT_MAX_DATA
+            && encodedLength(dataLength, Math.min(le, SHORT_MAX_LE), false) <= maxTransceiveLength;
+        if (extended || fitsShort) {
+            return send(cla, ins, p1, p2, data, 0, dataLength, le, extended);
+        }
+
+        // Command chaining: every block but the last carries CLA bit 0x10 and must answer 9000
+        int chunkSize = Math.min(SHORT_MAX_DATA, maxTransceiveLength - 6);
+        if (chunkSize <= 0) {
+            throw new IOException("Max transceive length " + maxTransceiveLength + " is too small for chaining");
+        }
+        int offset = 0;
+        while (dataLength - offset > chunkSize) {
+            byte[] response = transceiver.transceive(
+                encode(cla | CLA_CHAINING, ins, p1, p2, data, offset, chunkSize, NO_LE, false));
+            int status = statusWord(response);
+            if (status != SW_OK) {
+                return status;
+            }
+            offset += chunkSize;
+        }
+        return send(cla, ins, p1, p2, data, offset, dataLength - offset, le, false);
+    }
+
+    byte[] getResponseBuffer() {
+        return responseBuffer;
+    }
+
+    int getResponseLength() {
+        return responseLength;
+    }
+
+    /** Copies the collected response data out of the shared buffer. */
+    byte[] getResponseData() {
+        byte[] data = new byte[responseLength];
+        System.arraycopy(responseBuffer, 0, data, 0, responseLength);
+        return data;
+    }
+
+    private int send(int cla, int ins, int p1, int p2, byte[] data, int offset, int length, int le,
+                     boolean extended) throws IOException {
+        int requestLe = extended ? le : Math.min(le, SHORT_MAX_LE);
+        byte[] response = transceiver.transceive(encode(cla, ins, p1, p2, data, offset, length, requestLe, extended));
+        int status = statusWord(response);
+
+        if ((status >> 8) == 0x6C) {
+            // Wrong Le: the card tells us the exact length, repeat the command once with it, in the same form
+            int exactLe = (status & 0xFF) == 0 ? SHORT_MAX_LE : status & 0xFF;
+            response = transceiver.transceive(encode(cla, ins, p1, p2, data, offset, length, exactLe, extended));
+            status = statusWord(response);
+        }
+        append(response);
+
+        for (int round = 0; (status >> 8) == 0x61; round++) {
+            if (round == MAX_RESPONSE_ROUNDS) {
+                throw new IOException("Too many GET RESPONSE rounds");
+            }
+            int available = (status & 0xFF) == 0 ? SHORT_MAX_LE : status & 0xFF;
+            response = transceiver.transceive(encode(0x00, INS_GET_RESPONSE, 0x00, 0x00, null, 0, 0, available, false));
+            status = statusWord(response);
+            append(response);
+        }
+        return status;
+    }
+
+    private void append(byte[] response) {
+        int length = response.length - 2;
+        if (length <= 0) {
+            return;
+        }
+        if (responseLength + length > responseBuffer.length) {
+            byte[] grown = new byte[Math.max(responseBuffer.length * 2, responseLength + length)];
+            System.arraycopy(responseBuffer, 0, grown, 0, responseLength);
+            responseBuffer = grown;
+        }
+        System.arraycopy(response, 0, responseBuffer, responseLength, length);
+        responseLength += length;
+    }
+
+    static int statusWord(byte[] response) throws IOException {
+        if (response == null || response.length < 2) {
+            throw new IOException("Response APDU is missing its status word");
+        }
+        return ((response[response.length - 2] & 0xFF) << 8) | (response[response.length - 1] & 0xFF);
+    }
+
+    static int encodedLength(int dataLength, int le, boolean extended) {
+        int length = 4;
+        if (dataLength > 0) {
+            length += (extended ? 3 : 1) + dataLength;
+        }
+        if (le != NO_LE) {
+            length += extended ? (dataLength > 0 ? 2 : 3) : 1;
+        }
+        return length;
+    }
+
+    /** Encodes a command APDU in short or extended form (ISO 7816-4 cases 1 to 4). */
+    static byte[] encode(int cla, int ins, int p1, int p2, byte[] data, int offset, int length, int le,
+                         boolean extended) {
+        if (length > (extended ? EXTENDED_MAX_DATA : SHORT_MAX_DATA)) {
+            throw new IllegalArgumentException("Command data too long: " + length);
+        }
+        if (le != NO_LE && (le < 1 || le > (extended ? EXTENDED_MAX_LE : SHORT_MAX_LE))) {
+            throw new IllegalArgumentException("Invalid Le: " + le);
+        }
+        byte[] command = new byte[encodedLength(length, le, extended)];
+        command[0] = (byte) cla;
+        command[1] = (byte) ins;
+        command[2] = (byte) p1;
+        command[3] = (byte) p2;
+        int position = 4;
+        if (length > 0) {
+            if (extended) {
+                command[position++] = 0x00;
+                command[position++] = (byte) (length >> 8);
+            }
+            command[position++] = (byte) length;
+            System.arraycopy(data, offset, command, position, length);
+            position += length;
+        }
+        if (le != NO_LE) {
+            if (extended) {
+                if (length == 0) {
+                    command[position++] = 0x00;
+                }
+                command[position++] = (byte) (le >> 8);
+            }
+            // 256 (short) and 65536 (extended) encode as all zero bytes
+            command[position] = (byte) le;
+        }
+        return command;
+    }
+}
@@ -0,0 +1,114 @@
+package tools.bink.nfc;
+
+/**
+ * Byte-level command router for emulated cards.
+ *
+ * Commands are matched on their CLA/INS/P1/P2 header, packed big-endian into
+ * an int, against a small table of (pattern, mask) entries. Matching reads the
+ * APDU in place and never allocates, so handlers that return prebuilt response
+ * buffers keep the whole HCE path garbage free. Tables are immutable; per-reader
+ * state travels in the {@link CardSession} passed to each handler.
+ */
+final class ApduDispatcher {
+
+    interface Handler {
+        /**
+         * Returns the response APDU. Returned arrays may be shared and must not
+         * be modified by the caller.
+         */
+        byte[] handle(byte[] apdu, CardSession session);
+    }
+
+    static final int MATCH_CLA = 0xFF000000;
+    static final int MATCH_CLA_INS = 0xFFFF0000;
+    static final int MATCH_CLA_INS_P1 = 0xFFFFFF00;
+    static final int MATCH_HEADER = 0xFFFFFFFF;
+
+    private final int[] patterns;
+    private final int[] masks;
+    private final int[] minLengths;
+    private final Handler[] handlers;
+    private final byte[] unknownResponse;
+
+    private ApduDispatcher(Builder builder, byte[] unknownResponse) {
+        int count = builder.count;
+        this.patterns = copy(builder.patterns, count);
+        this.masks = copy(builder.masks, count);
+        this.minLengths = copy(builder.minLengths, count);
+        this.handlers = new Handler[count];
+        System.arraycopy(builder.handlers, 0, handlers, 0, count);
+        this.unknownResponse = unknownResponse;
+    }
+
+    byte[] dispatch(byte[] apdu, CardSession session) {
+        if (apdu == null || apdu.length == 0) {
+            return unknownResponse;
+        }
+        int header = header(apdu);
+        for (int i = 0; i < handlers.length; i++) {
+            if ((header & masks[i]) == patterns[i] && apdu.length >= minLengths[i]) {
+                return handlers[i].handle(apdu, session);
+            }
+        }
+        return unknownResponse;
+    }
+
+    /** Packs up to the first four bytes of an APDU into an int, zero padded. */
+    static int header(byte[] apdu) {
+        int header = 0;
+        for (int i = 0; i < 4; i++) {
+            header = (header << 8) | (i < apdu.length ? apdu[i] & 0xFF : 0);
+        }
+        return header;
+    }
+
+    static int header(int cla, int ins, int p1, int p2) {
+        return ((cla & 0xFF) << 24) | ((ins & 0xFF) << 16) | ((p1 & 0xFF) << 8) | (p2 & 0xFF);
+    }
+
+    private static int[] copy(int[] source, int count) {
+        int[] result = new int[count];
+        System.arraycopy(source, 0, result, 0, count);
+        return result;
+    }
+
+    static final class Builder {
+        private int[] patterns = new int[4];
+        private int[] masks = new int[4];
+        private int[] minLengths = new int[4];
+        private Handler[] handlers = new Handler[4];
+        private int count;
+
+        /**
+         * Adds an entry. Entries are tried in insertion order, so more specific
+         * patterns should be registered first.
+         */
+        Builder on(int pattern, int mask, int minLength, Handler handler) {
+            if (count == handlers.length) {
+                int capacity = count * 2;
+                patterns = grow(patterns, capacity);
+                masks = grow(masks, capacity);
+                minLengths = grow(minLengths, capacity);
+                Handler[] grownHandlers = new Handler[capacity];
+                System.arraycopy(handlers, 0, grownHandlers, 0, count);
+                handlers = grownHandlers;
+            }
+            patterns[count] = pattern & mask;
+            masks[count] = mask;
+            minLengths[count] = minLength;
+            handlers[count] = handler;
+            count++;
+            return this;
+        }
+
+        ApduDispatcher build(byte[] unknownResponse) {
+            return new ApduDispatcher(this, unknownResponse);
+        }
+
+        private static int[] grow(int[] source, int capacity) {
+            int[] result = new int[capacity];
+            System.arraycopy(source, 0, result, 0, source.length);
+            return result;
+        }
+    }
+}
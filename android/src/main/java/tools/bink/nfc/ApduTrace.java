@@ -0,0 +1,115 @@
+package tools.bink.nfc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Binary ring buffer of APDU traffic, formatted only when someone asks for it.
+ *
+ * Each entry keeps a {@link System#nanoTime()} timestamp, a direction, the
+ * full length and the first {@code maxBytes} bytes, all in arrays allocated up
+ * front; once the ring is full the oldest entries are overwritten. Tracing is
+ * sampled per conversation (one tag connection or one HCE session) so that a
+ * traced conversation is complete: {@link #sample()} is called when one
+ * starts, and only sampled conversations {@link #record}. With sampling off,
+ * {@link #sample()} is a single volatile read.
+ */
+final class ApduTrace {
+
+    static final int DEFAULT_CAPACITY = 256;
+    static final int DEFAULT_MAX_BYTES = 64;
+    static final int MAX_BUFFER_BYTES = 4 << 20;
+
+    static final int READER_COMMAND = 0;
+    static final int READER_RESPONSE = 1;
+    static final int HCE_COMMAND = 2;
+    static final int HCE_RESPONSE = 3;
+
+    /** Receives entries from {@link #dump}, oldest first. */
+    interface Visitor {
+        void entry(long timeNanos, int direction, int length, byte[] buffer, int offset, int captured);
+    }
+
+    private final AtomicLong conversations = new AtomicLong();
+    private volatile int sampleEvery;
+
+    private int capacity;
+    private int maxBytes;
+    private long[] times;
+    private byte[] directions;
+    private int[] lengths;
+    private byte[] data;
+    private long recorded;
+
+    ApduTrace(int capacity, int maxBytes) {
+        configure(0, capacity, maxBytes);
+    }
+
+    /**
+     * Traces one in every {@code sampleEvery} conversations, none when 0. A new
+     * ring size or entry size drops what was recorded.
+     */
+    synchronized void configure(int sampleEvery, int capacity, int maxBytes) {
+        if (sampleEvery < 0 || capacity < 1 || maxBytes < 0 || (long) capacity * maxBytes > MAX_BUFFER_BYTES) {
+            throw new IllegalArgumentException("Invalid trace configuration");
+        }
+        if (capacity != this.capacity || maxBytes != this.maxBytes) {
+            this.capacity = capacity;
+            this.maxBytes = maxBytes;
+            times = new long[capacity];
+            directions = new byte[capacity];
+            lengths = new int[capacity];
+            data = new byte[capacity * maxBytes];
+            recorded = 0;
+        }
+        this.sampleEvery = sampleEvery;
+    }
+
+    /** Whether the conversation starting now is traced. */
+    boolean sample() {
+        int every = sampleEvery;
+        return every > 0 && conversations.getAndIncrement() % every == 0;
+    }
+
+    synchronized void record(int direction, byte[] apdu, int offset, int length) {
+        int slot = (int) (recorded++ % capacity);
+        times[slot] = System.nanoTime();
+        directions[slot] = (byte) direction;
+        lengths[slot] = length;
+        System.arraycopy(apdu, offset, data, slot * maxBytes, Math.min(length, maxBytes));
+    }
+
+    /** Hands every entry still in the ring to {@code visitor} and returns how many there were. */
+    synchronized int dump(Visitor visitor) {
+        int size = size();
+        for (long i = recorded - size; i < recorded; i++) {
+            int slot = (int) (i % capacity);
+            visitor.entry(times[slot], directions[slot], lengths[slot], data, slot * maxBytes, Math.min(lengths[slot], maxBytes));
+        }
+        return size;
+    }
+
+    synchronized void clear() {
+        recorded = 0;
+    }
+
+    synchronized int size() {
+        return (int) Math.min(recorded, capacity);
+    }
+
+    /** Entries overwritten since the last clear. */
+    synchronized long getOverwritten() {
+        return recorded - size();
+    }
+
+    int getSampleEvery() {
+        return sampleEvery;
+    }
+
+    synchronized int getCapacity() {
+        return capacity;
+    }
+
+    synchronized int getMaxBytes() {
+        return maxBytes;
+    }
+}
@@ -0,0 +1,110 @@
+package tools.bink.nfc;
+
+import java.util.Arrays;
+
+/**
+ * Table-driven standard Base64 (RFC 4648, padded, no line breaks).
+ *
+ * Binary payloads cross the WebView bridge as JSON strings. Base64 makes them a
+ * third larger rather than twice as large as hex. Encoding is a table lookup per
+ * sextet straight into a char array, with nothing allocated per byte.
+ * java.util.Base64 would do the same job but needs API 26, and minSdk is 22.
+ */
+final class Base64Codec {
+
+    private static final char[] ALPHABET =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final byte[] SEXTETS = new byte[128];
+
+    static {
+        Arrays.fill(SEXTETS, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            SEXTETS[ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private Base64Codec() {
+    }
+
+    static int encodedLength(int length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    static String encode(byte[] data) {
+        if (data == null) {
+            return "";
+        }
+        return encode(data, 0, data.length);
+    }
+
+    static String encode(byte[] data, int offset, int length) {
+        char[] out = new char[encodedLength(length)];
+        encode(data, offset, length, out, 0);
+        return new String(out);
+    }
+
+    /**
+     * Encodes into a caller-supplied buffer, which must have room for
+     * {@link #encodedLength(int)} chars. Returns the number of chars written.
+     */
+    static int encode(byte[] data, int offset, int length, char[] out, int outOffset) {
+        int in = offset;
+        int end = offset + length;
+        int position = outOffset;
+        while (end - in >= 3) {
+            int bits = (data[in] & 0xFF) << 16 | (data[in + 1] & 0xFF) << 8 | (data[in + 2] & 0xFF);
+            out[position++] = ALPHABET[bits >>> 18];
+            out[position++] = ALPHABET[(bits >>> 12) & 0x3F];
+            out[position++] = ALPHABET[(bits >>> 6) & 0x3F];
+            out[position++] = ALPHABET[bits & 0x3F];
+            in += 3;
+        }
+        int remaining = end - in;
+        if (remaining > 0) {
+            int bits = (data[in] & 0xFF) << 16 | (remaining == 2 ? (data[in + 1] & 0xFF) << 8 : 0);
+            out[position++] = ALPHABET[bits >>> 18];
+            out[position++] = ALPHABET[(bits >>> 12) & 0x3F];
+            out[position++] = remaining == 2 ? ALPHABET[(bits >>> 6) & 0x3F] : '=';
+            out[position++] = '=';
+        }
+        return position - outOffset;
+    }
+
+    /**
+     * Decodes padded Base64, or returns null if the input is not valid Base64.
+     * Like {@link HexCodec#decode(CharSequence)}, bad input from JS is reported
+     * by return value.
+     */
+    static byte[] decode(CharSequence base64) {
+        if (base64 == null || (base64.length() & 3) != 0) {
+            return null;
+        }
+        int length = base64.length();
+        int padding = length > 0 && base64.charAt(length - 1) == '=' ? (base64.charAt(length - 2) == '=' ? 2 : 1) : 0;
+        byte[] out = new byte[length / 4 * 3 - padding];
+        int position = 0;
+        for (int i = 0; i < length; i += 4) {
+            int a = sextet(base64.charAt(i));
+            int b = sextet(base64.charAt(i + 1));
+            boolean last = i + 4 == length;
+            int c = last && padding == 2 ? 0 : sextet(base64.charAt(i + 2));
+            int d = last && padding > 0 ? 0 : sextet(base64.charAt(i + 3));
+            if ((a | b | c | d) < 0) {
+                return null;
+            }
+            int bits = a << 18 | b << 12 | c << 6 | d;
+            out[position++] = (byte) (bits >>> 16);
+            if (position < out.length) {
+                out[position++] = (byte) (bits >>> 8);
+            }
+            if (position < out.length) {
+                out[position++] = (byte) bits;
+            }
+        }
+        return out;
+    }
+
+    private static int sextet(char c) {
+        return c < 128 ? SEXTETS[c] : -1;
+    }
+}
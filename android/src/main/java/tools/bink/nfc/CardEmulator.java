@@ -0,0 +1,82 @@
+package tools.bink.nfc;
+
+/**
+ * Command processing behind {@link NfcHostCardEmulatorService}.
+ *
+ * The active {@link EmulationProfile} is published through a single volatile
+ * reference. Answering an APDU is one reference read and a header match
+ * against the profile's prebuilt responses. Reader session state (selected
+ * application and file) lives in a {@link CardSession} that is reset when the
+ * reader goes away or the profile changes underneath it.
+ *
+ * Further applications can be published as an {@link AidRouter}. A SELECT by
+ * name for one of their AIDs makes that application current, and it answers
+ * every command until another application is selected; a SELECT that is not
+ * routed, or no SELECT at all, leaves the profile answering as before. Each
+ * routed application keeps its own session for the whole reader session.
+ */
+final class CardEmulator {
+    private volatile EmulationProfile profile = EmulationProfile.EMPTY;
+    private volatile AidRouter<EmulationProfile> applications = AidRouter.empty();
+
+    // Confined to the APDU delivery thread
+    private final CardSession session = new CardSession();
+    private EmulationProfile sessionProfile;
+    private AidRouter<EmulationProfile> sessionApplications;
+    private CardSession[] applicationSessions = new CardSession[0];
+    private int selected = -1;
+
+    byte[] process(byte[] commandApdu) {
+        EmulationProfile current = profile;
+        if (current != sessionProfile) {
+            session.reset();
+            sessionProfile = current;
+        }
+        AidRouter<EmulationProfile> routes = applications;
+        if (routes != sessionApplications) {
+            startApplications(routes);
+        }
+
+        if (routes.size() > 0 && AidRouter.isSelectByName(commandApdu)) {
+            selected = routes.findSelected(commandApdu);
+        }
+        if (selected >= 0) {
+            return routes.get(selected).process(commandApdu, applicationSessions[selected]);
+        }
+        return current.process(commandApdu, session);
+    }
+
+    void onDeactivated() {
+        session.reset();
+        for (CardSession applicationSession : applicationSessions) {
+            applicationSession.reset();
+        }
+        selected = -1;
+    }
+
+    void setProfile(EmulationProfile profile) {
+        this.profile = profile != null ? profile : EmulationProfile.EMPTY;
+    }
+
+    EmulationProfile getProfile() {
+        return profile;
+    }
+
+    /** Atomically replaces the routed applications; takes effect from the next APDU. */
+    void setApplications(AidRouter<EmulationProfile> applications) {
+        this.applications = applications != null ? applications : AidRouter.empty();
+    }
+
+    AidRouter<EmulationProfile> getApplications() {
+        return applications;
+    }
+
+    private void startApplications(AidRouter<EmulationProfile> routes) {
+        applicationSessions = new CardSession[routes.size()];
+        for (int i = 0; i < applicationSessions.length; i++) {
+            applicationSessions[i] = new CardSession();
+        }
+        sessionApplications = routes;
+        selected = -1;
+    }
+}
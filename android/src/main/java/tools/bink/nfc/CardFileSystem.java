@@ -0,0 +1,318 @@
+package tools.bink.nfc;
+
+import java.util.Arrays;
+
+/**
+ * ISO 7816-4 file tree of an emulated card, held in a few flat arrays.
+ *
+ * Files are numbered in the order they were added, the master file (3F00)
+ * being file 0. Each elementary file owns a fixed region of one shared
+ * {@code storage} array sized when the tree is built, so reads, updates and
+ * appends copy bytes in place and never move other files. Record files keep
+ * the start of each record in an offset index, which makes READ RECORD n a
+ * single lookup. File identifiers and short file identifiers are resolved
+ * through an open-addressing table keyed by (parent DF, id).
+ *
+ * The structure is fixed once built; only file contents change, and every
+ * change marks the file system modified so that {@link ProfileStore} knows
+ * when to save it. Not thread-safe: {@link Iso7816Card} serializes access.
+ */
+final class CardFileSystem {
+
+    static final int MF = 0;
+    static final int MF_ID = 0x3F00;
+    static final int NONE = -1;
+
+    static final int TYPE_DF = 0;
+    static final int TYPE_BINARY = 1;
+    static final int TYPE_RECORDS = 2;
+
+    /** The most storage a file system may reserve: contents plus the record offset index. */
+    static final int MAX_STORAGE_BYTES = 1 << 20;
+
+    private static final int SFI_KEY = 0x10000;
+
+    private final int[] fileIds;
+    private final int[] parents;
+    private final int[] types;
+    private final int[] offsets;
+    private final int[] capacities;
+    private final int[] sizes;
+    private final int[] recordBases;
+    private final int[] maxRecords;
+    private final int[] sfis;
+    private final int[] recordCounts;
+    private final int[] recordOffsets;
+    private final byte[] storage;
+
+    private final int[] keys;
+    private final int[] entries;
+    private final int mask;
+    private boolean modified;
+
+    private CardFileSystem(Builder builder) {
+        int count = builder.count;
+        fileIds = Arrays.copyOf(builder.fileIds, count);
+        parents = Arrays.copyOf(builder.parents, count);
+        types = Arrays.copyOf(builder.types, count);
+        capacities = Arrays.copyOf(builder.capacities, count);
+        maxRecords = Arrays.copyOf(builder.maxRecords, count);
+        sfis = Arrays.copyOf(builder.sfis, count);
+        offsets = new int[count];
+        sizes = new int[count];
+        recordBases = new int[count];
+        recordCounts = new int[count];
+
+        int storageLength = 0;
+        int recordIndexLength = 0;
+        for (int file = 0; file < count; file++) {
+            offsets[file] = storageLength;
+            storageLength += capacities[file];
+            recordBases[file] = recordIndexLength;
+            recordIndexLength += types[file] == TYPE_RECORDS ? maxRecords[file] + 1 : 0;
+        }
+        storage = new byte[storageLength];
+        recordOffsets = new int[recordIndexLength];
+
+        int capacity = Integer.highestOneBit(Math.max(4, count * 4) - 1) << 1;
+        keys = new int[capacity];
+        entries = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, -1);
+        for (int file = 1; file < count; file++) {
+            put(key(parents[file], fileIds[file]), file);
+            if (sfis[file] != 0) {
+                put(key(parents[file], SFI_KEY | sfis[file]), file);
+            }
+        }
+    }
+
+    /** The child of {@code df} with file identifier {@code fileId}, or {@link #NONE}. */
+    int child(int df, int fileId) {
+        return get(key(df, fileId));
+    }
+
+    /** The elementary file of {@code df} with short file identifier {@code sfi}, or {@link #NONE}. */
+    int shortFile(int df, int sfi) {
+        return get(key(df, SFI_KEY | sfi));
+    }
+
+    int getCount() {
+        return fileIds.length;
+    }
+
+    int getFileId(int file) {
+        return fileIds[file];
+    }
+
+    /** The DF holding {@code file}; the master file is its own parent. */
+    int getParent(int file) {
+        return parents[file];
+    }
+
+    int getType(int file) {
+        return types[file];
+    }
+
+    int getSize(int file) {
+        return sizes[file];
+    }
+
+    int getCapacity(int file) {
+        return capacities[file];
+    }
+
+    /** Short file identifier of an EF, or 0 when it has none. */
+    int getShortFileId(int file) {
+        return sfis[file];
+    }
+
+    /** How many records a record file has room for; 0 for other files. */
+    int getMaxRecords(int file) {
+        return maxRecords[file];
+    }
+
+    /** Copies up to {@code length} bytes from {@code offset} of a binary file and returns how many. */
+    int read(int file, int offset, byte[] out, int outOffset, int length) {
+        int count = Math.max(0, Math.min(length, sizes[file] - offset));
+        System.arraycopy(storage, offsets[file] + offset, out, outOffset, count);
+        return count;
+    }
+
+    /**
+     * Writes into a binary file, growing it when the write ends past its
+     * current size. Returns false, changing nothing, when it would not fit.
+     */
+    boolean write(int file, int offset, byte[] data, int dataOffset, int length) {
+        if (offset < 0 || offset + length > capacities[file]) {
+            return false;
+        }
+        System.arraycopy(data, dataOffset, storage, offsets[file] + offset, length);
+        sizes[file] = Math.max(sizes[file], offset + length);
+        modified = true;
+        return true;
+    }
+
+    /** Cuts a binary file to {@code size} bytes; returns false when that is beyond its capacity. */
+    boolean truncate(int file, int size) {
+        if (size < 0 || size > capacities[file]) {
+            return false;
+        }
+        sizes[file] = size;
+        modified = true;
+        return true;
+    }
+
+    int getRecordCount(int file) {
+        return recordCounts[file];
+    }
+
+    /** Length of record {@code record} (1-based), or -1 when there is no such record. */
+    int getRecordLength(int file, int record) {
+        if (record < 1 || record > recordCounts[file]) {
+            return -1;
+        }
+        int base = recordBases[file] + record - 1;
+        return recordOffsets[base + 1] - recordOffsets[base];
+    }
+
+    /** Copies record {@code record} (1-based) to {@code out}; check {@link #getRecordLength} first. */
+    void readRecord(int file, int record, byte[] out, int outOffset) {
+        int base = recordBases[file] + record - 1;
+        int start = recordOffsets[base];
+        System.arraycopy(storage, offsets[file] + start, out, outOffset, recordOffsets[base + 1] - start);
+    }
+
+    /** Adds a record after the last one; returns false when the file is out of records or space. */
+    boolean appendRecord(int file, byte[] data, int dataOffset, int length) {
+        int count = recordCounts[file];
+        int base = recordBases[file];
+        int end = recordOffsets[base + count];
+        if (count == maxRecords[file] || end + length > capacities[file]) {
+            return false;
+        }
+        System.arraycopy(data, dataOffset, storage, offsets[file] + end, length);
+        recordOffsets[base + count + 1] = end + length;
+        recordCounts[file] = count + 1;
+        sizes[file] = end + length;
+        modified = true;
+        return true;
+    }
+
+    /** Empties an elementary file. */
+    void clear(int file) {
+        sizes[file] = 0;
+        recordCounts[file] = 0;
+        modified = true;
+    }
+
+    /** Whether any file changed since the last call. */
+    boolean takeModified() {
+        boolean changed = modified;
+        modified = false;
+        return changed;
+    }
+
+    private static int key(int df, int id) {
+        return (df << 17) | id;
+    }
+
+    private void put(int key, int file) {
+        int slot = mix(key) & mask;
+        while (keys[slot] != -1) {
+            if (keys[slot] == key) {
+                throw new IllegalArgumentException("Duplicate file identifier: " + String.format("%04X", key & 0xFFFF));
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        entries[slot] = file;
+    }
+
+    private int get(int key) {
+        int slot = mix(key) & mask;
+        int candidate;
+        while ((candidate = keys[slot]) != -1) {
+            if (candidate == key) {
+                return entries[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NONE;
+    }
+
+    private static int mix(int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    static final class Builder {
+        private int[] fileIds = new int[8];
+        private int[] parents = new int[8];
+        private int[] types = new int[8];
+        private int[] capacities = new int[8];
+        private int[] maxRecords = new int[8];
+        private int[] sfis = new int[8];
+        private int count;
+
+        Builder() {
+            add(MF_ID, MF, TYPE_DF, 0, 0, 0);
+        }
+
+        /** Adds a DF under {@code parent} and returns its file number. */
+        int addDirectory(int parent, int fileId) {
+            return add(fileId, parent, TYPE_DF, 0, 0, 0);
+        }
+
+        /**
+         * Adds a transparent EF of up to {@code capacity} bytes and returns its
+         * file number. {@code sfi} is 1 to 30, or 0 for none.
+         */
+        int addBinary(int parent, int fileId, int sfi, int capacity) {
+            return add(fileId, parent, TYPE_BINARY, sfi, capacity, 0);
+        }
+
+        /** Adds a linear record EF holding up to {@code records} records in {@code capacity} bytes. */
+        int addRecords(int parent, int fileId, int sfi, int records, int capacity) {
+            if (records < 1) {
+                throw new IllegalArgumentException("A record file needs room for at least one record");
+            }
+            return add(fileId, parent, TYPE_RECORDS, sfi, capacity, records);
+        }
+
+        CardFileSystem build() {
+            return new CardFileSystem(this);
+        }
+
+        private int add(int fileId, int parent, int type, int sfi, int capacity, int records) {
+            if (fileId < 0 || fileId > 0xFFFF || (count > 0 && (fileId == MF_ID || fileId == 0x3FFF || fileId == 0xFFFF))) {
+                throw new IllegalArgumentException("Invalid file identifier: " + String.format("%04X", fileId));
+            }
+            if (parent < 0 || parent >= Math.max(1, count) || types[parent] != TYPE_DF) {
+                throw new IllegalArgumentException("Parent is not a DF: " + parent);
+            }
+            if (sfi < 0 || sfi > 30 || (sfi != 0 && type == TYPE_DF)) {
+                throw new IllegalArgumentException("Invalid short file identifier: " + sfi);
+            }
+            if (capacity < 0) {
+                throw new IllegalArgumentException("Invalid file capacity: " + capacity);
+            }
+            if (count == fileIds.length) {
+                int grown = count * 2;
+                fileIds = Arrays.copyOf(fileIds, grown);
+                parents = Arrays.copyOf(parents, grown);
+                types = Arrays.copyOf(types, grown);
+                capacities = Arrays.copyOf(capacities, grown);
+                maxRecords = Arrays.copyOf(maxRecords, grown);
+                sfis = Arrays.copyOf(sfis, grown);
+            }
+            fileIds[count] = fileId;
+            parents[count] = parent;
+            types[count] = type;
+            capacities[count] = capacity;
+            maxRecords[count] = records;
+            sfis[count] = sfi;
+            return count++;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package tools.bink.nfc;
+
+/**
+ * Mutable state of one reader session against the emulated card.
+ *
+ * Only touched from the thread that delivers APDUs to the HCE service, so no
+ * synchronization is needed. The state is reset when the reader deselects us
+ * or a new {@link EmulationProfile} is published.
+ */
+final class CardSession {
+    static final int APPLICATION_NONE = 0;
+    static final int APPLICATION_LEGACY = 1;
+    static final int APPLICATION_NDEF = 2;
+    static final int APPLICATION_FILES = 3;
+
+    static final int FILE_NONE = -1;
+
+    int application = APPLICATION_NONE;
+    // A file ID for the NDEF application, a CardFileSystem file number for APPLICATION_FILES
+    int selectedFile = FILE_NONE;
+    // Current DF of APPLICATION_FILES
+    int directory = FILE_NONE;
+    // Bytes received so far of a chained command
+    int chainLength;
+
+    void reset() {
+        application = APPLICATION_NONE;
+        selectedFile = FILE_NONE;
+        directory = FILE_NONE;
+        chainLength = 0;
+    }
+}
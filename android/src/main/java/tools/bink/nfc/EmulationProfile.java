@@ -0,0 +1,254 @@
+package tools.bink.nfc;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Immutable snapshot of what the HCE service should emulate.
+ *
+ * A profile is built once when emulation is configured from JS. Every
+ * response is encoded up front and the profile owns the dispatcher that serves
+ * them, so publishing a new profile through a single volatile reference swaps
+ * mode and data together and a binder thread can never observe a mix of the
+ * old and new card. The one exception is {@link #MODE_FILES}, whose file
+ * contents are the card's state and change under {@link Iso7816Card}'s lock.
+ */
+final class EmulationProfile {
+    static final String MODE_NDEF = "NDEF";
+    static final String MODE_ISO_DEP = "ISO_DEP";
+    static final String MODE_MIFARE_CLASSIC = "MIFARE_CLASSIC";
+    static final String MODE_MIFARE_ULTRALIGHT = "MIFARE_ULTRALIGHT";
+    static final String MODE_FILES = "FILES";
+
+    static final String DEFAULT_AID = "F0010203040506";
+
+    static final byte[] SELECT_OK = {(byte)0x90, (byte)0x00};
+    static final byte[] UNKNOWN_CMD = {(byte)0x6F, (byte)0x00};
+
+    private static final int SELECT_AID_HEADER = ApduDispatcher.header(0x00, 0xA4, 0x04, 0x00);
+    private static final int SELECT_FILE_HEADER = ApduDispatcher.header(0x00, 0xA4, 0x00, 0x00);
+    private static final int READ_BINARY_HEADER = ApduDispatcher.header(0x00, 0xB0, 0x00, 0x00);
+    private static final int READ_HEADER = ApduDispatcher.header(0x00, 0xD0, 0x00, 0x00);
+    private static final int MIFARE_READ_HEADER = ApduDispatcher.header(0x30, 0x00, 0x00, 0x00);
+    private static final int ULTRALIGHT_READ_HEADER = ApduDispatcher.header(0x60, 0x00, 0x00, 0x00);
+    private static final int PAGE_SIZE = 4;
+    private static final int PAGES_PER_READ = 4;
+
+    static final EmulationProfile EMPTY = forMessage("");
+
+    private final String mode;
+    private final String cardId;
+    private final String data;
+    private final String aid;
+    private final String ndefMessage;
+    private final byte[] aidBytes;
+    private final Type4Tag type4Tag;
+    private final byte[] readResponse;
+    private final byte[] cardIdResponse;
+    private final byte[] anticollisionResponse;
+    private final byte[][] pageResponses;
+    private final Iso7816Card card;
+    private final ApduDispatcher dispatcher;
+
+    private EmulationProfile(String mode, String cardId, String cardData, String aid, String ndefMessage) {
+        this(mode, cardId, cardData, aid, ndefMessage, null);
+    }
+
+    private EmulationProfile(String mode, String cardId, String cardData, String aid, String ndefMessage, Iso7816Card card) {
+        String data = cardData != null ? cardData : "";
+        this.mode = mode;
+        this.card = card;
+        this.cardId = cardId;
+        this.data = data;
+        this.aid = aid;
+        this.ndefMessage = ndefMessage;
+        this.aidBytes = hexStringToByteArray(aid);
+        this.type4Tag = MODE_NDEF.equals(mode) ? new Type4Tag(encodeTextMessage(data)) : null;
+
+        byte[] dataBytes = data.getBytes(StandardCharsets.UTF_8);
+        byte[] response = new byte[dataBytes.length + 2];
+        System.arraycopy(dataBytes, 0, response, 0, dataBytes.length);
+        response[dataBytes.length] = (byte)0x90;
+        response[dataBytes.length + 1] = (byte)0x00;
+        this.readResponse = response;
+
+        this.cardIdResponse = cardId != null ? hexStringToByteArray(cardId) : null;
+        this.anticollisionResponse = hexStringToByteArray("0400" + (cardId != null ? cardId : ""));
+        this.pageResponses = MODE_MIFARE_ULTRALIGHT.equals(mode)
+            ? buildPageResponses(hexStringToByteArray(data), ndefMessage)
+            : new byte[0][];
+        this.dispatcher = buildDispatcher(mode);
+    }
+
+    /** Plain message sharing, served through the NDEF command set. */
+    static EmulationProfile forMessage(String message) {
+        return new EmulationProfile(MODE_NDEF, null, message, DEFAULT_AID, null);
+    }
+
+    static EmulationProfile forNdef(String data) {
+        return forNdef(DEFAULT_AID, data);
+    }
+
+    /** NDEF emulation that also answers a SELECT of {@code aid} with the legacy READ. */
+    static EmulationProfile forNdef(String aid, String data) {
+        return new EmulationProfile(MODE_NDEF, null, data, aid, null);
+    }
+
+    static EmulationProfile forIsoDep(String aid, String data) {
+        return new EmulationProfile(MODE_ISO_DEP, null, data, aid != null ? aid : DEFAULT_AID, null);
+    }
+
+    static EmulationProfile forMifareClassic(String id, String data) {
+        return new EmulationProfile(MODE_MIFARE_CLASSIC, id, data, DEFAULT_AID, null);
+    }
+
+    static EmulationProfile forMifareUltralight(String data, String ndefMessage) {
+        String message = ndefMessage != null && !ndefMessage.isEmpty() ? ndefMessage : null;
+        return new EmulationProfile(MODE_MIFARE_ULTRALIGHT, null, data, DEFAULT_AID, message);
+    }
+
+    /**
+     * An ISO 7816-4 card with a file system. Unlike every other profile, its
+     * file contents change as readers update them.
+     */
+    static EmulationProfile forFiles(String aid, Iso7816Card card) {
+        return new EmulationProfile(MODE_FILES, null, "", aid, null, card);
+    }
+
+    /**
+     * Rebuilds a profile from the values another profile reports through its
+     * getters, as {@link ProfileStore} saved them.
+     */
+    static EmulationProfile restore(String mode, String cardId, String data, String aid, String ndefMessage, Iso7816Card card) {
+        switch (mode) {
+            case MODE_NDEF:
+            case MODE_ISO_DEP:
+            case MODE_MIFARE_CLASSIC:
+            case MODE_MIFARE_ULTRALIGHT:
+                return new EmulationProfile(mode, cardId, data, aid, ndefMessage);
+            case MODE_FILES:
+                return new EmulationProfile(mode, null, "", aid, null, card);
+            default:
+                throw new IllegalArgumentException("Unknown emulation mode: " + mode);
+        }
+    }
+
+    byte[] process(byte[] commandApdu, CardSession session) {
+        return dispatcher.dispatch(commandApdu, session);
+    }
+
+    String getMode() {
+        return mode;
+    }
+
+    String getAid() {
+        return aid;
+    }
+
+    /** The MIFARE Classic card ID, or null. */
+    String getCardId() {
+        return cardId;
+    }
+
+    String getData() {
+        return data;
+    }
+
+    String getNdefMessage() {
+        return ndefMessage;
+    }
+
+    /** The card behind a {@link #MODE_FILES} profile, otherwise null. */
+    Iso7816Card getCard() {
+        return card;
+    }
+
+    private ApduDispatcher buildDispatcher(String mode) {
+        ApduDispatcher.Builder builder = new ApduDispatcher.Builder();
+        switch (mode) {
+            case MODE_NDEF:
+                builder.on(SELECT_AID_HEADER, ApduDispatcher.MATCH_CLA_INS_P1, 5, this::selectApplication)
+                    .on(SELECT_FILE_HEADER, ApduDispatcher.MATCH_CLA_INS_P1, 5, type4Tag::selectFile)
+                    .on(READ_BINARY_HEADER, ApduDispatcher.MATCH_CLA_INS, 4, type4Tag::readBinary)
+                    .on(READ_HEADER, ApduDispatcher.MATCH_CLA_INS, 2, (apdu, session) -> readResponse);
+                break;
+            case MODE_ISO_DEP:
+                builder.on(SELECT_AID_HEADER, ApduDispatcher.MATCH_HEADER, 4, (apdu, session) -> SELECT_OK)
+                    .on(READ_HEADER, ApduDispatcher.MATCH_CLA_INS, 2, (apdu, session) -> readResponse);
+                break;
+            case MODE_MIFARE_CLASSIC:
+                if (cardIdResponse != null) {
+                    builder.on(MIFARE_READ_HEADER, ApduDispatcher.MATCH_CLA, 1, (apdu, session) -> cardIdResponse);
+                }
+                break;
+            case MODE_FILES:
+                builder.on(0, 0, 1, card::process);
+                break;
+            case MODE_MIFARE_ULTRALIGHT:
+                builder.on(MIFARE_READ_HEADER, ApduDispatcher.MATCH_CLA, 1, (apdu, session) -> anticollisionResponse)
+                    .on(ULTRALIGHT_READ_HEADER, ApduDispatcher.MATCH_CLA, 2, this::readUltralightPages);
+                break;
+            default:
+                break;
+        }
+        return builder.build(UNKNOWN_CMD);
+    }
+
+    /**
+     * SELECT by name in NDEF mode. Stock readers select the NDEF Tag Application;
+     * our own reader path selects the profile AID and uses the legacy READ.
+     */
+    private byte[] selectApplication(byte[] commandApdu, CardSession session) {
+        session.selectedFile = CardSession.FILE_NONE;
+        if (Type4Tag.isNdefApplicationSelect(commandApdu)) {
+            session.application = CardSession.APPLICATION_NDEF;
+            return SELECT_OK;
+        }
+        if (Type4Tag.matchesAid(commandApdu, aidBytes)) {
+            session.application = CardSession.APPLICATION_LEGACY;
+            return SELECT_OK;
+        }
+        session.application = CardSession.APPLICATION_NONE;
+        return Type4Tag.SW_FILE_NOT_FOUND;
+    }
+
+    private byte[] readUltralightPages(byte[] commandApdu, CardSession session) {
+        int page = commandApdu[1] & 0xFF;
+        return page < pageResponses.length ? pageResponses[page] : UNKNOWN_CMD;
+    }
+
+    private static byte[][] buildPageResponses(byte[] memory, String ndefMessage) {
+        int pageCount = (memory.length + PAGE_SIZE - 1) / PAGE_SIZE;
+        if (ndefMessage != null) {
+            pageCount = Math.max(pageCount, 5);
+        }
+        byte[][] pages = new byte[pageCount][];
+        for (int page = 0; page < pageCount; page++) {
+            // A read returns four consecutive pages, zero padded past the end of memory
+            byte[] response = new byte[PAGE_SIZE * PAGES_PER_READ];
+            int offset = page * PAGE_SIZE;
+            System.arraycopy(memory, Math.min(offset, memory.length), response, 0,
+                Math.max(0, Math.min(response.length, memory.length - offset)));
+            pages[page] = response;
+        }
+        if (ndefMessage != null) {
+            byte[] ndefData = ndefMessage.getBytes(StandardCharsets.UTF_8);
+            byte[] response = new byte[PAGE_SIZE * PAGES_PER_READ];
+            System.arraycopy(ndefData, 0, response, 0, Math.min(response.length, ndefData.length));
+            pages[4] = response;
+        }
+        return pages;
+    }
+
+    /** Serializes a single well-known Text record ("en") as a complete NDEF message. */
+    private static byte[] encodeTextMessage(String text) {
+        return new NdefMessageBuilder().addText(text, "en").build();
+    }
+
+    private static byte[] hexStringToByteArray(String s) {
+        byte[] data = HexCodec.decode(s);
+        if (data == null) {
+            throw new IllegalArgumentException("Invalid hex string (" + s.length() + " chars)");
+        }
+        return data;
+    }
+}
@@ -0,0 +1,192 @@
+package tools.bink.nfc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Coalesces plugin events into one delivery per frame window.
+ *
+ * The first event posted to an empty queue schedules a flush one window
+ * later, and everything posted until then is handed to the sink as one
+ * batch, so a tap that produces a status, a detection and a read result
+ * crosses the bridge once. Events nobody listens to are dropped when posted,
+ * before anything is serialized. Event types registered as latest-only
+ * (status updates) take the place of a queued event of the same type,
+ * moving to the back of the queue. The queue is bounded: when JS falls
+ * behind and it is full, the oldest event is dropped and counted, and the
+ * count travels with the next batch.
+ *
+ * @param <T> event payload type
+ */
+final class EventDispatcher<T> {
+
+    static final int DEFAULT_WINDOW_MILLIS = 16;
+    static final int DEFAULT_CAPACITY = 256;
+
+    interface Listeners {
+        boolean has(String name);
+    }
+
+    interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    interface Sink<T> {
+        /** Called on the scheduler's thread; {@code dropped} counts events lost since the last batch. */
+        void deliver(List<TagIoExecutor.TagEvent<T>> batch, int dropped);
+    }
+
+    private final Listeners listeners;
+    private final Scheduler scheduler;
+    private final Sink<T> sink;
+    private final Set<String> latestOnly;
+    private final Runnable flush = this::flush;
+
+    // Guarded by this
+    private List<TagIoExecutor.TagEvent<T>> queue = new ArrayList<>();
+    private int windowMillis;
+    private int capacity;
+    private boolean scheduled;
+    private int droppedSinceFlush;
+    private long posted;
+    private long unsubscribed;
+    private long merged;
+    private long dropped;
+    private long delivered;
+    private long batches;
+
+    EventDispatcher(Listeners listeners, Scheduler scheduler, Sink<T> sink, String... latestOnly) {
+        this.listeners = listeners;
+        this.scheduler = scheduler;
+        this.sink = sink;
+        this.latestOnly = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(latestOnly)));
+        this.windowMillis = DEFAULT_WINDOW_MILLIS;
+        this.capacity = DEFAULT_CAPACITY;
+    }
+
+    /** Delivers events at most every {@code windowMillis} (0 for as soon as possible), keeping up to {@code capacity}. */
+    synchronized void configure(int windowMillis, int capacity) {
+        if (windowMillis < 0 || capacity < 1) {
+            throw new IllegalArgumentException("Invalid event options");
+        }
+        this.windowMillis = windowMillis;
+        this.capacity = capacity;
+        while (queue.size() > capacity) {
+            dropOldest();
+        }
+    }
+
+    /** Whether an event of this type would be delivered; lets callers skip building it. */
+    boolean wants(String name) {
+        return listeners.has(name);
+    }
+
+    /** Queues an event for the next batch. Safe to call from any thread. */
+    void post(String name, T data) {
+        if (!listeners.has(name)) {
+            synchronized (this) {
+                unsubscribed++;
+            }
+            return;
+        }
+        boolean schedule;
+        int delay;
+        synchronized (this) {
+            posted++;
+            TagIoExecutor.TagEvent<T> event = new TagIoExecutor.TagEvent<>(name, data);
+            if (latestOnly.contains(name) && removeLast(name)) {
+                merged++;
+            } else if (queue.size() == capacity) {
+                dropOldest();
+            }
+            queue.add(event);
+            schedule = !scheduled;
+            scheduled = true;
+            delay = windowMillis;
+        }
+        if (schedule) {
+            scheduler.schedule(flush, delay);
+        }
+    }
+
+    /** Delivers whatever is queued now. */
+    void flush() {
+        List<TagIoExecutor.TagEvent<T>> batch;
+        int lost;
+        synchronized (this) {
+            scheduled = false;
+            if (queue.isEmpty()) {
+                return;
+            }
+            batch = queue;
+            lost = droppedSinceFlush;
+            queue = new ArrayList<>(Math.min(capacity, batch.size() * 2));
+            droppedSinceFlush = 0;
+            delivered += batch.size();
+            batches++;
+        }
+        sink.deliver(batch, lost);
+    }
+
+    synchronized int getWindowMillis() {
+        return windowMillis;
+    }
+
+    synchronized int getCapacity() {
+        return capacity;
+    }
+
+    synchronized int queued() {
+        return queue.size();
+    }
+
+    /** Events accepted for delivery; excludes those nobody listened to. */
+    synchronized long getPosted() {
+        return posted;
+    }
+
+    /** Events skipped because nobody listened to their type. */
+    synchronized long getUnsubscribed() {
+        return unsubscribed;
+    }
+
+    /** Latest-only events that replaced a queued one. */
+    synchronized long getMerged() {
+        return merged;
+    }
+
+    /** Events dropped from a full queue. */
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    synchronized long getDelivered() {
+        return delivered;
+    }
+
+    synchronized long getBatches() {
+        return batches;
+    }
+
+    // Guarded by this
+    private boolean removeLast(String name) {
+        for (int i = queue.size() - 1; i >= 0; i--) {
+            if (queue.get(i).name.equals(name)) {
+                queue.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Guarded by this
+    private void dropOldest() {
+        queue.remove(0);
+        droppedSinceFlush++;
+        dropped++;
+    }
+}
@@ -0,0 +1,108 @@
+package tools.bink.nfc;
+
+import java.util.Arrays;
+
+/**
+ * Lookup-table hex encoding shared by the plugin and the HCE service.
+ *
+ * Encoding writes two table chars per byte into a caller-supplied or exactly
+ * sized char array; decoding maps each char through a 128-entry table. Invalid
+ * input is reported by return value rather than an exception, so validation is
+ * cheap on paths that see untrusted strings.
+ */
+final class HexCodec {
+
+    private static final char[] LOWER = "0123456789abcdef".toCharArray();
+    private static final char[] UPPER = "0123456789ABCDEF".toCharArray();
+    private static final byte[] DIGITS = new byte[128];
+
+    static {
+        Arrays.fill(DIGITS, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            DIGITS['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            DIGITS['a' + i] = (byte) (10 + i);
+            DIGITS['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private HexCodec() {
+    }
+
+    /** Lowercase hex; null and empty arrays give "". */
+    static String encode(byte[] data) {
+        return data == null ? "" : encode(data, 0, data.length, false);
+    }
+
+    /** Uppercase hex, as APDUs and AIDs are usually written; null gives "". */
+    static String encodeUpper(byte[] data) {
+        return data == null ? "" : encode(data, 0, data.length, true);
+    }
+
+    static String encode(byte[] data, int offset, int length, boolean upperCase) {
+        char[] out = new char[length * 2];
+        encode(data, offset, length, out, 0, upperCase);
+        return new String(out);
+    }
+
+    /** Writes {@code length * 2} chars into {@code out} and returns that count. */
+    static int encode(byte[] data, int offset, int length, char[] out, int outOffset, boolean upperCase) {
+        char[] alphabet = upperCase ? UPPER : LOWER;
+        int position = outOffset;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int b = data[i] & 0xFF;
+            out[position++] = alphabet[b >>> 4];
+            out[position++] = alphabet[b & 0x0F];
+        }
+        return position - outOffset;
+    }
+
+    /** True for an even-length string of hex digits in either case. */
+    static boolean isValid(CharSequence hex) {
+        if (hex == null || (hex.length() & 1) != 0) {
+            return false;
+        }
+        for (int i = 0; i < hex.length(); i++) {
+            if (digit(hex.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes into {@code out} and returns the number of bytes written, or -1
+     * if the input is odd-length or contains a non-hex char. On -1 the
+     * contents of {@code out} are unspecified.
+     */
+    static int decode(CharSequence hex, byte[] out, int outOffset) {
+        int length = hex.length();
+        if ((length & 1) != 0) {
+            return -1;
+        }
+        int position = outOffset;
+        for (int i = 0; i < length; i += 2) {
+            int high = digit(hex.charAt(i));
+            int low = digit(hex.charAt(i + 1));
+            if ((high | low) < 0) {
+                return -1;
+            }
+            out[position++] = (byte) (high << 4 | low);
+        }
+        return position - outOffset;
+    }
+
+    /** Decodes a hex string, or returns null if it is not valid hex. */
+    static byte[] decode(CharSequence hex) {
+        if (hex == null) {
+            return null;
+        }
+        byte[] out = new byte[hex.length() / 2];
+        return decode(hex, out, 0) < 0 ? null : out;
+    }
+
+    private static int digit(char c) {
+        return c < 128 ? DIGITS[c] : -1;
+    }
+}
@@ -0,0 +1,329 @@
+package tools.bink.nfc;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ISO 7816-4 command set over a {@link CardFileSystem}, for card emulation.
+ *
+ * Supports SELECT by name, file identifier or path step (P1 00 to 03), READ
+ * and UPDATE BINARY, READ RECORD and APPEND RECORD, with files addressed
+ * either as the current EF or by short file identifier. The plugin's
+ * proprietary D0 commands read (P1=01) and replace (P1=00) the data file
+ * {@link #DATA_FILE_ID}; a replacement may arrive as a command chain, which is
+ * how {@link IsoDepExchange#write} sends data that does not fit one APDU.
+ *
+ * Every command resolves its file with one table lookup or none and copies
+ * only the bytes it moves, so the cost of an APDU does not depend on how many
+ * files there are or how large they are. File contents outlive reader
+ * sessions; the current DF and EF live in the {@link CardSession}.
+ */
+final class Iso7816Card {
+
+    static final int DATA_FILE_ID = 0x0101;
+    static final int RECORD_FILE_ID = 0x0102;
+    static final int DEFAULT_CAPACITY = 8192;
+    static final int DEFAULT_MAX_RECORDS = 64;
+
+    static final byte[] SW_OK = {(byte)0x90, (byte)0x00};
+    static final byte[] SW_WRONG_LENGTH = {(byte)0x67, (byte)0x00};
+    static final byte[] SW_INCOMPATIBLE_FILE = {(byte)0x69, (byte)0x81};
+    static final byte[] SW_NO_CURRENT_EF = {(byte)0x69, (byte)0x86};
+    static final byte[] SW_FILE_NOT_FOUND = {(byte)0x6A, (byte)0x82};
+    static final byte[] SW_RECORD_NOT_FOUND = {(byte)0x6A, (byte)0x83};
+    static final byte[] SW_NOT_ENOUGH_MEMORY = {(byte)0x6A, (byte)0x84};
+    static final byte[] SW_WRONG_P1P2 = {(byte)0x6A, (byte)0x86};
+    static final byte[] SW_WRONG_OFFSET = {(byte)0x6B, (byte)0x00};
+
+    private static final int CLA_CHAINING = 0x10;
+
+    // Negative results of the file lookups, mapped back to status words by status()
+    private static final int NO_CURRENT_EF = -1;
+    private static final int NOT_FOUND = -2;
+    private static final int INCOMPATIBLE = -3;
+
+    private final CardFileSystem files;
+    private final int dataFile;
+    private final ApduDispatcher dispatcher;
+
+    Iso7816Card(CardFileSystem files) {
+        this.files = files;
+        this.dataFile = files.child(CardFileSystem.MF, DATA_FILE_ID);
+        this.dispatcher = new ApduDispatcher.Builder()
+            .on(ApduDispatcher.header(0x00, 0xA4, 0x04, 0x00), ApduDispatcher.MATCH_CLA_INS_P1, 4, this::selectApplication)
+            .on(ApduDispatcher.header(0x00, 0xA4, 0x00, 0x00), ApduDispatcher.MATCH_CLA_INS, 4, this::selectFile)
+            .on(ApduDispatcher.header(0x00, 0xB0, 0x00, 0x00), ApduDispatcher.MATCH_CLA_INS, 4, this::readBinary)
+            .on(ApduDispatcher.header(0x00, 0xD6, 0x00, 0x00), ApduDispatcher.MATCH_CLA_INS, 4, this::updateBinary)
+            .on(ApduDispatcher.header(0x00, 0xB2, 0x00, 0x00), ApduDispatcher.MATCH_CLA_INS, 4, this::readRecord)
+            .on(ApduDispatcher.header(0x00, 0xE2, 0x00, 0x00), ApduDispatcher.MATCH_CLA_INS, 4, this::appendRecord)
+            .on(ApduDispatcher.header(0x00, 0xD0, 0x00, 0x00), ApduDispatcher.MATCH_CLA_INS, 3, this::dataCommand)
+            .on(ApduDispatcher.header(CLA_CHAINING, 0xD0, 0x00, 0x00), ApduDispatcher.MATCH_CLA_INS_P1, 5, this::dataCommand)
+            .build(EmulationProfile.UNKNOWN_CMD);
+    }
+
+    /**
+     * The layout used when an application does not describe its files: a
+     * binary data file (0101, SFI 1) holding {@code data} as UTF-8 and an empty
+     * record file (0102, SFI 2), each of {@link #DEFAULT_CAPACITY} bytes.
+     */
+    static CardFileSystem defaultFiles(String data) {
+        CardFileSystem.Builder builder = new CardFileSystem.Builder();
+        int dataFile = builder.addBinary(CardFileSystem.MF, DATA_FILE_ID, 1, DEFAULT_CAPACITY);
+        builder.addRecords(CardFileSystem.MF, RECORD_FILE_ID, 2, DEFAULT_MAX_RECORDS, DEFAULT_CAPACITY);
+        CardFileSystem files = builder.build();
+        byte[] bytes = (data != null ? data : "").getBytes(StandardCharsets.UTF_8);
+        if (!files.write(dataFile, 0, bytes, 0, bytes.length)) {
+            throw new IllegalArgumentException("Data does not fit the " + DEFAULT_CAPACITY + " byte data file");
+        }
+        return files;
+    }
+
+    byte[] process(byte[] apdu, CardSession session) {
+        synchronized (files) {
+            if (session.application != CardSession.APPLICATION_FILES) {
+                session.reset();
+                session.application = CardSession.APPLICATION_FILES;
+                session.directory = CardFileSystem.MF;
+            }
+            return dispatcher.dispatch(apdu, session);
+        }
+    }
+
+    /** The file tree; hold its monitor while touching it, as APDUs may be arriving. */
+    CardFileSystem getFiles() {
+        return files;
+    }
+
+    private byte[] selectApplication(byte[] apdu, CardSession session) {
+        session.directory = CardFileSystem.MF;
+        session.selectedFile = CardFileSystem.NONE;
+        session.chainLength = 0;
+        return SW_OK;
+    }
+
+    /** SELECT by file identifier (P1 00), child DF (01), EF (02) or parent DF (03). */
+    private byte[] selectFile(byte[] apdu, CardSession session) {
+        int p1 = apdu[2] & 0xFF;
+        int dataOffset = dataOffset(apdu);
+        int length = dataLength(apdu);
+        if (length > 0 && dataOffset + length > apdu.length) {
+            return SW_WRONG_LENGTH;
+        }
+        int directory = session.directory;
+        int file;
+        if (p1 == 0x03) {
+            file = files.getParent(directory);
+        } else if (p1 > 0x02) {
+            return SW_WRONG_P1P2;
+        } else if (length == 0 && p1 == 0x00) {
+            file = CardFileSystem.MF;
+        } else if (length != 2) {
+            return SW_WRONG_LENGTH;
+        } else {
+            int fileId = ((apdu[dataOffset] & 0xFF) << 8) | (apdu[dataOffset + 1] & 0xFF);
+            file = files.child(directory, fileId);
+            if (p1 == 0x00 && file == CardFileSystem.NONE) {
+                // The MF, the current DF itself, or a file next to the current DF
+                if (fileId == CardFileSystem.MF_ID) {
+                    file = CardFileSystem.MF;
+                } else if (fileId == files.getFileId(directory)) {
+                    file = directory;
+                } else {
+                    file = files.child(files.getParent(directory), fileId);
+                }
+            }
+            boolean directoryFile = file != CardFileSystem.NONE && files.getType(file) == CardFileSystem.TYPE_DF;
+            if ((p1 == 0x01 && !directoryFile) || (p1 == 0x02 && directoryFile)) {
+                file = CardFileSystem.NONE;
+            }
+        }
+        if (file == CardFileSystem.NONE) {
+            return SW_FILE_NOT_FOUND;
+        }
+        if (files.getType(file) == CardFileSystem.TYPE_DF) {
+            session.directory = file;
+            session.selectedFile = CardFileSystem.NONE;
+        } else {
+            session.directory = files.getParent(file);
+            session.selectedFile = file;
+        }
+        return SW_OK;
+    }
+
+    /** READ BINARY of the current EF, or of an EF by SFI when P1 bit 8 is set. */
+    private byte[] readBinary(byte[] apdu, CardSession session) {
+        int file = binaryFile(apdu, session);
+        if (file < 0) {
+            return status(file);
+        }
+        int offset = binaryOffset(apdu);
+        if (offset > files.getSize(file)) {
+            return SW_WRONG_OFFSET;
+        }
+        int count = Math.min(Type4Tag.expectedLength(apdu), files.getSize(file) - offset);
+        byte[] response = new byte[count + 2];
+        files.read(file, offset, response, 0, count);
+        response[count] = (byte)0x90;
+        response[count + 1] = (byte)0x00;
+        return response;
+    }
+
+    /** UPDATE BINARY; a write past the end grows the file up to its capacity. */
+    private byte[] updateBinary(byte[] apdu, CardSession session) {
+        int file = binaryFile(apdu, session);
+        if (file < 0) {
+            return status(file);
+        }
+        int dataOffset = dataOffset(apdu);
+        int length = dataLength(apdu);
+        if (length == 0 || dataOffset + length > apdu.length) {
+            return SW_WRONG_LENGTH;
+        }
+        int offset = binaryOffset(apdu);
+        if (offset > files.getSize(file)) {
+            return SW_WRONG_OFFSET;
+        }
+        return files.write(file, offset, apdu, dataOffset, length) ? SW_OK : SW_NOT_ENOUGH_MEMORY;
+    }
+
+    /** READ RECORD P1 of the current EF or the EF with SFI P2 bits 8-4; only P2 mode 100 (record number). */
+    private byte[] readRecord(byte[] apdu, CardSession session) {
+        int record = apdu[2] & 0xFF;
+        int p2 = apdu[3] & 0xFF;
+        if (record == 0 || (p2 & 0x07) != 0x04) {
+            return SW_WRONG_P1P2;
+        }
+        int file = recordFile(p2 >>> 3, session);
+        if (file < 0) {
+            return status(file);
+        }
+        int length = files.getRecordLength(file, record);
+        if (length < 0) {
+            return SW_RECORD_NOT_FOUND;
+        }
+        byte[] response = new byte[length + 2];
+        files.readRecord(file, record, response, 0);
+        response[length] = (byte)0x90;
+        response[length + 1] = (byte)0x00;
+        return response;
+    }
+
+    private byte[] appendRecord(byte[] apdu, CardSession session) {
+        int p2 = apdu[3] & 0xFF;
+        if (apdu[2] != 0 || (p2 & 0x07) != 0) {
+            return SW_WRONG_P1P2;
+        }
+        int file = recordFile(p2 >>> 3, session);
+        if (file < 0) {
+            return status(file);
+        }
+        int dataOffset = dataOffset(apdu);
+        int length = dataLength(apdu);
+        if (length == 0 || dataOffset + length > apdu.length) {
+            return SW_WRONG_LENGTH;
+        }
+        return files.appendRecord(file, apdu, dataOffset, length) ? SW_OK : SW_NOT_ENOUGH_MEMORY;
+    }
+
+    /** D0 P1=00 replaces the data file, chained or not; D0 P1=01 returns all of it. */
+    private byte[] dataCommand(byte[] apdu, CardSession session) {
+        if (dataFile == CardFileSystem.NONE) {
+            return SW_FILE_NOT_FOUND;
+        }
+        int p1 = apdu[2] & 0xFF;
+        if (p1 == 0x01) {
+            int size = files.getSize(dataFile);
+            byte[] response = new byte[size + 2];
+            files.read(dataFile, 0, response, 0, size);
+            response[size] = (byte)0x90;
+            response[size + 1] = (byte)0x00;
+            return response;
+        }
+        if (p1 != 0x00) {
+            return SW_WRONG_P1P2;
+        }
+        int dataOffset = dataOffset(apdu);
+        int length = dataLength(apdu);
+        if (dataOffset + length > apdu.length) {
+            session.chainLength = 0;
+            return SW_WRONG_LENGTH;
+        }
+        int offset = session.chainLength;
+        if (!files.write(dataFile, offset, apdu, dataOffset, length)) {
+            session.chainLength = 0;
+            return SW_NOT_ENOUGH_MEMORY;
+        }
+        if ((apdu[0] & CLA_CHAINING) != 0) {
+            session.chainLength = offset + length;
+        } else {
+            files.truncate(dataFile, offset + length);
+            session.chainLength = 0;
+        }
+        return SW_OK;
+    }
+
+    private int binaryFile(byte[] apdu, CardSession session) {
+        int file;
+        if ((apdu[2] & 0x80) != 0) {
+            file = files.shortFile(session.directory, apdu[2] & 0x1F);
+            if (file == CardFileSystem.NONE) {
+                return NOT_FOUND;
+            }
+            session.selectedFile = file;
+        } else {
+            file = session.selectedFile;
+            if (file == CardFileSystem.NONE) {
+                return NO_CURRENT_EF;
+            }
+        }
+        return files.getType(file) == CardFileSystem.TYPE_BINARY ? file : INCOMPATIBLE;
+    }
+
+    private int recordFile(int sfi, CardSession session) {
+        int file;
+        if (sfi != 0) {
+            file = files.shortFile(session.directory, sfi);
+            if (file == CardFileSystem.NONE) {
+                return NOT_FOUND;
+            }
+            session.selectedFile = file;
+        } else {
+            file = session.selectedFile;
+            if (file == CardFileSystem.NONE) {
+                return NO_CURRENT_EF;
+            }
+        }
+        return files.getType(file) == CardFileSystem.TYPE_RECORDS ? file : INCOMPATIBLE;
+    }
+
+    private static byte[] status(int lookup) {
+        switch (lookup) {
+            case NOT_FOUND:
+                return SW_FILE_NOT_FOUND;
+            case INCOMPATIBLE:
+                return SW_INCOMPATIBLE_FILE;
+            default:
+                return SW_NO_CURRENT_EF;
+        }
+    }
+
+    /** Offset from P1-P2: 15 bits, or just P2 when P1 carries an SFI. */
+    private static int binaryOffset(byte[] apdu) {
+        return (apdu[2] & 0x80) != 0 ? apdu[3] & 0xFF : ((apdu[2] & 0x7F) << 8) | (apdu[3] & 0xFF);
+    }
+
+    /** Start of the command data field: after a short Lc, or after an extended 00 xx xx Lc. */
+    static int dataOffset(byte[] apdu) {
+        return apdu.length > 7 && apdu[4] == 0 ? 7 : 5;
+    }
+
+    /** Lc, short or extended; 0 for a command without data. */
+    static int dataLength(byte[] apdu) {
+        if (apdu.length <= 5) {
+            return 0;
+        }
+        if (apdu.length > 7 && apdu[4] == 0) {
+            return ((apdu[5] & 0xFF) << 8) | (apdu[6] & 0xFF);
+        }
+        return apdu[4] & 0xFF;
+    }
+}
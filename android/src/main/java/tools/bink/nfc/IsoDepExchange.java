@@ -0,0 +1,48 @@
+package tools.bink.nfc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The plugin's ISO-DEP commands, independent of Android.
+ *
+ * An exchange selects the application by AID and then uses the proprietary D0
+ * command set: P1=00 stores the command data, P1=01 reads the stored data back.
+ * {@link #readRecord()} sends READ RECORD 1 of SFI 1, which some payment
+ * cards answer with their card data.
+ */
+final class IsoDepExchange {
+
+    private final ApduCodec codec;
+
+    IsoDepExchange(TagTransport transport) {
+        this.codec = new ApduCodec(transport, transport.isExtendedLengthApduSupported(), transport.getMaxTransceiveLength());
+    }
+
+    void select(byte[] aid) throws IOException {
+        int status = codec.transmit(0x00, 0xA4, 0x04, 0x00, aid, ApduCodec.NO_LE);
+        if (status != ApduCodec.SW_OK) {
+            throw new IOException("Failed to select application with AID: " + HexCodec.encodeUpper(aid));
+        }
+    }
+
+    /** Stores {@code data} in the selected application, chained or extended when it does not fit one short APDU. */
+    void write(byte[] data) throws IOException {
+        int status = codec.transmit(0x00, 0xD0, 0x00, 0x00, data, ApduCodec.NO_LE);
+        if (status != ApduCodec.SW_OK) {
+            throw new IOException("Write command failed. Status: " + Integer.toHexString(status));
+        }
+    }
+
+    /** The data the selected application holds, decoded as UTF-8. */
+    String read() throws IOException {
+        codec.transmit(0x00, 0xD0, 0x01, 0x00, null, ApduCodec.NO_LE);
+        return new String(codec.getResponseBuffer(), 0, codec.getResponseLength(), StandardCharsets.UTF_8);
+    }
+
+    /** Response data of READ RECORD 1 of SFI 1, or null when the card sent none. */
+    byte[] readRecord() throws IOException {
+        codec.transmit(0x00, 0xB2, 0x01, 0x0C, null, ApduCodec.SHORT_MAX_LE);
+        return codec.getResponseLength() > 0 ? codec.getResponseData() : null;
+    }
+}
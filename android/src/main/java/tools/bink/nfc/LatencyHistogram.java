@@ -0,0 +1,110 @@
+package tools.bink.nfc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, lock-free latency histogram in microseconds.
+ *
+ * Buckets are log-linear like HdrHistogram's: values below 16 get a bucket
+ * each, and every power of two above that is split into 16 sub-buckets, so a
+ * bucket is at most 1/16 of its value wide. 544 counters cover values up to
+ * 2^37 us, about 38 hours. {@link #record} is a handful of atomic increments
+ * and never allocates or blocks; percentiles are read while recording goes on
+ * and may miss values recorded meanwhile.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAGNITUDES = 34;
+    static final int BUCKET_COUNT = MAGNITUDES * SUB_BUCKETS;
+    static final long MAX_VALUE = bucketUpperBound(BUCKET_COUNT - 1);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void recordNanos(long nanos) {
+        record(nanos / 1_000L);
+    }
+
+    /** Records one value in microseconds; negative values count as 0, huge ones as {@link #MAX_VALUE}. */
+    void record(long micros) {
+        long value = Math.min(Math.max(0, micros), MAX_VALUE);
+        counts.incrementAndGet(bucketIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    double getMean() {
+        long n = count.get();
+        return n > 0 ? (double) sum.get() / n : 0;
+    }
+
+    /**
+     * The value at {@code percentile} (0 to 100): the upper bound of the bucket
+     * holding it, capped at the largest value recorded. 0 when empty.
+     */
+    long getValueAtPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /** Clears the histogram; values recorded during the reset may be partly kept. */
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (value >>> (magnitude - 1)) & (SUB_BUCKETS - 1);
+        return magnitude * SUB_BUCKETS + subBucket;
+    }
+
+    /** Largest value that falls in bucket {@code index}. */
+    static long bucketUpperBound(int index) {
+        int magnitude = index / SUB_BUCKETS;
+        long subBucket = index % SUB_BUCKETS;
+        if (magnitude == 0) {
+            return subBucket;
+        }
+        long lower = (SUB_BUCKETS + subBucket) << (magnitude - 1);
+        return lower + (1L << (magnitude - 1)) - 1;
+    }
+}
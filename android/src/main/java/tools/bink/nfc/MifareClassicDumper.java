@@ -0,0 +1,217 @@
+package tools.bink.nfc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads every sector of a MIFARE Classic card with a key dictionary.
+ *
+ * The key that opened each sector is remembered per UID, so a card seen before
+ * is read with one authentication per sector. For a new card the key that
+ * opened the previous sector is tried first, since most cards reuse one key
+ * across sectors. Blocks land in a single packed buffer (16 bytes per block, in
+ * block order) next to a bitmap with one bit per sector that was read in full.
+ */
+final class MifareClassicDumper {
+
+    /** The subset of {@code android.nfc.tech.MifareClassic} the dumper needs. */
+    interface Card {
+        int getSectorCount();
+
+        int getBlockCountInSector(int sector);
+
+        int sectorToBlock(int sector);
+
+        boolean authenticate(int sector, byte[] key, boolean keyB) throws IOException;
+
+        byte[] readBlock(int block) throws IOException;
+    }
+
+    static final int BLOCK_SIZE = 16;
+    static final int DEFAULT_CACHE_SIZE = 64;
+
+    static final byte[] KEY_DEFAULT = {
+        (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF
+    };
+    static final byte[] KEY_MIFARE_APPLICATION_DIRECTORY = {
+        (byte)0xA0, (byte)0xA1, (byte)0xA2, (byte)0xA3, (byte)0xA4, (byte)0xA5
+    };
+    static final byte[] KEY_NFC_FORUM = {
+        (byte)0xD3, (byte)0xF7, (byte)0xD3, (byte)0xF7, (byte)0xD3, (byte)0xF7
+    };
+
+    static final class Dump {
+        /** All blocks in block order; blocks of unread sectors are zero. */
+        final byte[] data;
+        /** Bit {@code s % 8} of byte {@code s / 8} is set when sector s was read. */
+        final byte[] sectorStatus;
+        final int sectorCount;
+        final int sectorsRead;
+        final int authentications;
+
+        Dump(byte[] data, byte[] sectorStatus, int sectorCount, int sectorsRead, int authentications) {
+            this.data = data;
+            this.sectorStatus = sectorStatus;
+            this.sectorCount = sectorCount;
+            this.sectorsRead = sectorsRead;
+            this.authentications = authentications;
+        }
+
+        boolean isSectorRead(int sector) {
+            return (sectorStatus[sector >> 3] & (1 << (sector & 7))) != 0;
+        }
+    }
+
+    private static final class SectorKey {
+        final byte[] key;
+        final boolean keyB;
+
+        SectorKey(byte[] key, boolean keyB) {
+            this.key = key;
+            this.keyB = keyB;
+        }
+    }
+
+    private final Map<String, SectorKey[]> keyCache;
+    private volatile List<byte[]> dictionary;
+
+    MifareClassicDumper(int cacheSize) {
+        int maxEntries = Math.max(1, cacheSize);
+        this.keyCache = new LinkedHashMap<String, SectorKey[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SectorKey[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        setUserKeys(null);
+    }
+
+    /** Replaces the user keys; they are tried after the three well-known keys. */
+    void setUserKeys(List<byte[]> userKeys) {
+        List<byte[]> keys = new ArrayList<>();
+        keys.add(KEY_DEFAULT);
+        keys.add(KEY_MIFARE_APPLICATION_DIRECTORY);
+        keys.add(KEY_NFC_FORUM);
+        if (userKeys != null) {
+            for (byte[] key : userKeys) {
+                if (key == null || key.length != 6) {
+                    throw new IllegalArgumentException("MIFARE Classic keys must be 6 bytes");
+                }
+                if (!containsKey(keys, key)) {
+                    keys.add(key.clone());
+                }
+            }
+        }
+        dictionary = keys;
+    }
+
+    void clearKeyCache() {
+        synchronized (keyCache) {
+            keyCache.clear();
+        }
+    }
+
+    Dump dump(byte[] uid, Card card) throws IOException {
+        int sectorCount = card.getSectorCount();
+        String cacheKey = uidKey(uid);
+        SectorKey[] cached;
+        synchronized (keyCache) {
+            cached = keyCache.get(cacheKey);
+        }
+        if (cached == null || cached.length != sectorCount) {
+            cached = new SectorKey[sectorCount];
+        }
+
+        int lastSector = sectorCount - 1;
+        byte[] data = new byte[(card.sectorToBlock(lastSector) + card.getBlockCountInSector(lastSector)) * BLOCK_SIZE];
+        byte[] sectorStatus = new byte[(sectorCount + 7) / 8];
+        SectorKey[] found = new SectorKey[sectorCount];
+        List<byte[]> keys = dictionary;
+        int[] authentications = new int[1];
+        int sectorsRead = 0;
+        SectorKey previous = null;
+
+        for (int sector = 0; sector < sectorCount; sector++) {
+            SectorKey key = authenticate(card, sector, keys, cached[sector], previous, authentications);
+            if (key == null) {
+                continue;
+            }
+            found[sector] = key;
+            previous = key;
+
+            if (readSector(card, sector, data)) {
+                sectorStatus[sector >> 3] |= (byte) (1 << (sector & 7));
+                sectorsRead++;
+            }
+        }
+
+        synchronized (keyCache) {
+            keyCache.put(cacheKey, found);
+        }
+        return new Dump(data, sectorStatus, sectorCount, sectorsRead, authentications[0]);
+    }
+
+    private static SectorKey authenticate(Card card, int sector, List<byte[]> keys, SectorKey cached,
+                                          SectorKey previous, int[] attempts) throws IOException {
+        if (cached != null && tryKey(card, sector, cached, attempts)) {
+            return cached;
+        }
+        if (previous != null && previous != cached && tryKey(card, sector, previous, attempts)) {
+            return previous;
+        }
+        for (int pass = 0; pass < 2; pass++) {
+            boolean keyB = pass == 1;
+            for (byte[] key : keys) {
+                SectorKey candidate = new SectorKey(key, keyB);
+                if (isSame(candidate, cached) || isSame(candidate, previous)) {
+                    continue;
+                }
+                if (tryKey(card, sector, candidate, attempts)) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean tryKey(Card card, int sector, SectorKey key, int[] attempts) throws IOException {
+        attempts[0]++;
+        return card.authenticate(sector, key.key, key.keyB);
+    }
+
+    private static boolean readSector(Card card, int sector, byte[] data) {
+        int firstBlock = card.sectorToBlock(sector);
+        int blockCount = card.getBlockCountInSector(sector);
+        try {
+            for (int i = 0; i < blockCount; i++) {
+                byte[] block = card.readBlock(firstBlock + i);
+                System.arraycopy(block, 0, data, (firstBlock + i) * BLOCK_SIZE, Math.min(block.length, BLOCK_SIZE));
+            }
+            return true;
+        } catch (IOException e) {
+            // Access bits may forbid reading some blocks with this key; keep what was read
+            return false;
+        }
+    }
+
+    private static boolean isSame(SectorKey a, SectorKey b) {
+        return a != null && b != null && a.keyB == b.keyB && Arrays.equals(a.key, b.key);
+    }
+
+    private static boolean containsKey(List<byte[]> keys, byte[] key) {
+        for (byte[] existing : keys) {
+            if (Arrays.equals(existing, key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String uidKey(byte[] uid) {
+        return uid != null ? Arrays.toString(uid) : "";
+    }
+}
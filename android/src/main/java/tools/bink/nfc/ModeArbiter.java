@@ -0,0 +1,184 @@
+package tools.bink.nfc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides what the NFC controller does when several owners ask for reader
+ * mode or foreground dispatch at the same time.
+ *
+ * Reader mode wins while anyone holds it, with the technology flags of every
+ * reader request combined and the shortest presence check delay asked for;
+ * foreground dispatch, with every owner's intent filters, applies only when
+ * no one does. Each change is compared with what the controller is already
+ * doing, and the controller is only called when the result differs, so an
+ * owner joining or leaving a mode that stays on costs nothing. Nothing is
+ * applied until {@link #resume()}, and {@link #pause()} turns everything off
+ * until the next resume.
+ *
+ * @param <F> intent filter type
+ */
+final class ModeArbiter<F> {
+
+    static final int OFF = 0;
+    static final int READER = 1;
+    static final int DISPATCH = 2;
+
+    interface Controller<F> {
+        void enableReader(int flags, int presenceCheckDelay);
+
+        void disableReader();
+
+        void enableDispatch(List<F> filters);
+
+        void disableDispatch();
+    }
+
+    private static final class Request<F> {
+        final int mode;
+        final int flags;
+        final int presenceCheckDelay;
+        final List<F> filters;
+
+        Request(int mode, int flags, int presenceCheckDelay, List<F> filters) {
+            this.mode = mode;
+            this.flags = flags;
+            this.presenceCheckDelay = presenceCheckDelay;
+            this.filters = filters;
+        }
+    }
+
+    private final Controller<F> controller;
+
+    // Guarded by this; in request order
+    private final Map<Object, Request<F>> requests = new LinkedHashMap<>();
+    private boolean paused = true;
+    private int mode = OFF;
+    private int flags;
+    private int presenceCheckDelay;
+    private List<F> filters = Collections.emptyList();
+    private long switches;
+
+    ModeArbiter(Controller<F> controller) {
+        this.controller = controller;
+    }
+
+    /** Asks for reader mode on behalf of {@code owner}, replacing whatever it asked for before. */
+    synchronized void requestReader(Object owner, int flags, int presenceCheckDelay) {
+        requests.put(owner, new Request<>(READER, flags, Math.max(0, presenceCheckDelay), null));
+        apply();
+    }
+
+    /** Asks for foreground dispatch on behalf of {@code owner}, replacing whatever it asked for before. */
+    synchronized void requestDispatch(Object owner, List<F> filters) {
+        requests.put(owner, new Request<>(DISPATCH, 0, 0, new ArrayList<>(filters)));
+        apply();
+    }
+
+    /** Drops the owner's request. Returns false when it held none. */
+    synchronized boolean release(Object owner) {
+        if (requests.remove(owner) == null) {
+            return false;
+        }
+        apply();
+        return true;
+    }
+
+    synchronized boolean holds(Object owner) {
+        return requests.containsKey(owner);
+    }
+
+    synchronized void pause() {
+        paused = true;
+        apply();
+    }
+
+    synchronized void resume() {
+        paused = false;
+        apply();
+    }
+
+    /** The mode the controller is in: {@link #OFF}, {@link #READER} or {@link #DISPATCH}. */
+    synchronized int getMode() {
+        return mode;
+    }
+
+    synchronized int getFlags() {
+        return flags;
+    }
+
+    synchronized int getPresenceCheckDelay() {
+        return presenceCheckDelay;
+    }
+
+    synchronized int getOwners() {
+        return requests.size();
+    }
+
+    /** Calls made to the controller. */
+    synchronized long getSwitches() {
+        return switches;
+    }
+
+    // Guarded by this
+    private void apply() {
+        int nextMode = OFF;
+        int nextFlags = 0;
+        int nextDelay = 0;
+        List<F> nextFilters = new ArrayList<>();
+        if (!paused) {
+            for (Request<F> request : requests.values()) {
+                if (request.mode == READER) {
+                    nextMode = READER;
+                    nextFlags |= request.flags;
+                    if (request.presenceCheckDelay > 0 && (nextDelay == 0 || request.presenceCheckDelay < nextDelay)) {
+                        nextDelay = request.presenceCheckDelay;
+                    }
+                } else {
+                    nextFilters.addAll(request.filters);
+                }
+            }
+            if (nextMode == OFF && !requests.isEmpty()) {
+                nextMode = DISPATCH;
+            }
+        }
+        if (nextMode != READER) {
+            nextFlags = 0;
+            nextDelay = 0;
+        }
+        if (nextMode != DISPATCH) {
+            nextFilters.clear();
+        }
+        if (nextMode == mode && nextFlags == flags && nextDelay == presenceCheckDelay && nextFilters.equals(filters)) {
+            return;
+        }
+
+        // Reader mode can be reconfigured in place; anything else goes through off
+        if (mode != nextMode && mode != OFF) {
+            switches++;
+            if (mode == READER) {
+                controller.disableReader();
+            } else {
+                controller.disableDispatch();
+            }
+            mode = OFF;
+            flags = 0;
+            presenceCheckDelay = 0;
+            filters = Collections.emptyList();
+        }
+        if (nextMode == READER) {
+            switches++;
+            controller.enableReader(nextFlags, nextDelay);
+        } else if (nextMode == DISPATCH) {
+            switches++;
+            controller.enableDispatch(Collections.unmodifiableList(nextFilters));
+        }
+        mode = nextMode;
+        flags = nextFlags;
+        presenceCheckDelay = nextDelay;
+        filters = nextFilters;
+    }
+}
@@ -0,0 +1,80 @@
+package tools.bink.nfc;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Builds the JSON the plugin reports for NDEF records.
+ *
+ * Only plain {@code org.json} is used, so the result building compiles and can
+ * be measured off-device; the plugin puts the arrays into its JSObjects. Every
+ * record is converted in one pass over an {@link NdefParser}, and only the
+ * fields that go into the result are decoded.
+ */
+final class NdefJson {
+
+    private NdefJson() {
+    }
+
+    /**
+     * Records as reads report them: type, payload and identifier, with binary
+     * payloads as UTF-8 unless {@code base64} is set.
+     */
+    static JSONArray readRecords(NdefParser parser, boolean base64) throws JSONException {
+        return records(parser, false, base64);
+    }
+
+    /**
+     * Records as the Ultralight {@code ndefMessage} reports them: the TNF is
+     * added, empty fields are left out and binary payloads are hex or base64
+     * like other raw bytes.
+     */
+    static JSONObject message(NdefParser parser, boolean base64) throws JSONException {
+        JSONObject message = new JSONObject();
+        message.put("records", records(parser, true, base64));
+        return message;
+    }
+
+    private static JSONArray records(NdefParser parser, boolean withTnf, boolean base64) throws JSONException {
+        JSONArray records = new JSONArray();
+        byte[] buffer = parser.buffer();
+        while (parser.next()) {
+            JSONObject record = new JSONObject();
+            if (withTnf) {
+                record.put("tnf", parser.tnf());
+            }
+            record.put("type", parser.type());
+
+            int payloadLength = parser.payloadLength();
+            if (payloadLength > 0) {
+                String payload;
+                if (parser.isText()) {
+                    payload = parser.text();
+                } else if (withTnf || base64) {
+                    payload = binary(buffer, parser.payloadOffset(), payloadLength, base64);
+                } else {
+                    payload = parser.payloadText();
+                }
+                record.put("payload", payload);
+            } else if (!withTnf) {
+                record.put("payload", "");
+            }
+
+            int idLength = parser.idLength();
+            if (idLength > 0) {
+                record.put(withTnf ? "id" : "identifier", binary(buffer, parser.idOffset(), idLength, base64));
+            } else if (!withTnf) {
+                record.put("identifier", "");
+            }
+            records.put(record);
+        }
+        return records;
+    }
+
+    private static String binary(byte[] bytes, int offset, int length, boolean base64) {
+        return base64
+            ? Base64Codec.encode(bytes, offset, length)
+            : HexCodec.encode(bytes, offset, length, false);
+    }
+}
@@ -0,0 +1,247 @@
+package tools.bink.nfc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Builds the wire form of an NDEF message from any mix of records.
+ *
+ * Each record is kept as a small payload prefix (text status byte and
+ * language, URI identifier code) plus the caller's payload array, so large
+ * payloads are not concatenated before serialization. {@link #size()} gives
+ * the exact encoded length and {@link #build()} writes every record straight
+ * into one array of that length. Records whose payload fits in 255 bytes use
+ * the short-record header; longer ones get the 4-byte payload length.
+ */
+final class NdefMessageBuilder {
+
+    static final int TNF_EMPTY = 0x00;
+    static final int TNF_WELL_KNOWN = 0x01;
+    static final int TNF_MIME_MEDIA = 0x02;
+    static final int TNF_ABSOLUTE_URI = 0x03;
+    static final int TNF_EXTERNAL_TYPE = 0x04;
+    static final int TNF_UNKNOWN = 0x05;
+
+    static final byte[] RTD_TEXT = {'T'};
+    static final byte[] RTD_URI = {'U'};
+
+    private static final int FLAG_MB = 0x80;
+    private static final int FLAG_ME = 0x40;
+    private static final int FLAG_SR = 0x10;
+    private static final int FLAG_IL = 0x08;
+    private static final int SHORT_RECORD_MAX = 0xFF;
+    private static final byte[] EMPTY = new byte[0];
+
+    // URI identifier codes from the NFC Forum URI RTD, indexed by code
+    static final String[] URI_PREFIXES = {
+        "", "http://www.", "https://www.", "http://", "https://", "tel:", "mailto:",
+        "ftp://anonymous:anonymous@", "ftp://ftp.", "ftps://", "sftp://", "smb://", "nfs://",
+        "ftp://", "dav://", "news:", "telnet://", "imap:", "rtsp://", "urn:", "pop:", "sip:",
+        "sips:", "tftp:", "btspp://", "btl2cap://", "btgoep://", "tcpobex://", "irdaobex://",
+        "file://", "urn:epc:id:", "urn:epc:tag:", "urn:epc:pat:", "urn:epc:raw:", "urn:epc:",
+        "urn:nfc:",
+    };
+
+    private static final class Record {
+        final int tnf;
+        final byte[] type;
+        final byte[] id;
+        final byte[] prefix;
+        final byte[] payload;
+
+        Record(int tnf, byte[] type, byte[] id, byte[] prefix, byte[] payload) {
+            this.tnf = tnf;
+            this.type = type;
+            this.id = id;
+            this.prefix = prefix;
+            this.payload = payload;
+        }
+
+        int payloadLength() {
+            return prefix.length + payload.length;
+        }
+
+        int encodedLength() {
+            int payloadLength = payloadLength();
+            return 2 + (payloadLength <= SHORT_RECORD_MAX ? 1 : 4) + (id.length > 0 ? 1 : 0)
+                + type.length + id.length + payloadLength;
+        }
+    }
+
+    private final List<Record> records = new ArrayList<>();
+
+    /** Well-known Text record, UTF-8 encoded. */
+    NdefMessageBuilder addText(String text, String languageCode) {
+        byte[] language = (languageCode != null ? languageCode : "en").getBytes(StandardCharsets.US_ASCII);
+        if (language.length > 0x3F) {
+            throw new IllegalArgumentException("Language code is too long: " + languageCode);
+        }
+        byte[] prefix = new byte[1 + language.length];
+        prefix[0] = (byte) language.length;
+        System.arraycopy(language, 0, prefix, 1, language.length);
+        return add(new Record(TNF_WELL_KNOWN, RTD_TEXT, EMPTY, prefix, utf8(text)));
+    }
+
+    /** Well-known URI record, with the longest matching prefix abbreviated. */
+    NdefMessageBuilder addUri(String uri) {
+        if (uri == null || uri.isEmpty()) {
+            throw new IllegalArgumentException("URI cannot be empty");
+        }
+        int code = 0;
+        for (int i = 1; i < URI_PREFIXES.length; i++) {
+            if (uri.startsWith(URI_PREFIXES[i]) && URI_PREFIXES[i].length() > URI_PREFIXES[code].length()) {
+                code = i;
+            }
+        }
+        byte[] rest = utf8(uri.substring(URI_PREFIXES[code].length()));
+        return add(new Record(TNF_WELL_KNOWN, RTD_URI, EMPTY, new byte[] {(byte) code}, rest));
+    }
+
+    NdefMessageBuilder addMime(String mimeType, byte[] payload) {
+        if (mimeType == null || mimeType.isEmpty()) {
+            throw new IllegalArgumentException("MIME type cannot be empty");
+        }
+        byte[] type = mimeType.trim().toLowerCase(Locale.ROOT).getBytes(StandardCharsets.US_ASCII);
+        return add(new Record(TNF_MIME_MEDIA, type, EMPTY, EMPTY, orEmpty(payload)));
+    }
+
+    /** NFC Forum external type {@code domain:type}; the name is case-insensitive and stored lowercase. */
+    NdefMessageBuilder addExternal(String domain, String type, byte[] payload) {
+        if (domain == null || domain.isEmpty() || type == null || type.isEmpty()) {
+            throw new IllegalArgumentException("External type needs a domain and a type");
+        }
+        byte[] name = utf8((domain.trim() + ":" + type.trim()).toLowerCase(Locale.ROOT));
+        return add(new Record(TNF_EXTERNAL_TYPE, name, EMPTY, EMPTY, orEmpty(payload)));
+    }
+
+    /** Android Application Record: opens (or offers to install) the package on Android readers. */
+    NdefMessageBuilder addApplicationRecord(String packageName) {
+        if (packageName == null || packageName.isEmpty()) {
+            throw new IllegalArgumentException("Package name cannot be empty");
+        }
+        return addExternal("android.com", "pkg", utf8(packageName));
+    }
+
+    /** Any record, checked against the TNF rules of the NDEF specification. */
+    NdefMessageBuilder addRecord(int tnf, byte[] type, byte[] id, byte[] payload) {
+        type = orEmpty(type);
+        id = orEmpty(id);
+        payload = orEmpty(payload);
+        if (tnf < TNF_EMPTY || tnf > TNF_UNKNOWN) {
+            throw new IllegalArgumentException("Unsupported TNF: " + tnf);
+        }
+        if (tnf == TNF_EMPTY && (type.length | id.length | payload.length) != 0) {
+            throw new IllegalArgumentException("An empty record cannot have a type, id or payload");
+        }
+        if (tnf == TNF_UNKNOWN && type.length != 0) {
+            throw new IllegalArgumentException("A record of unknown type cannot have a type");
+        }
+        if (tnf != TNF_EMPTY && tnf != TNF_UNKNOWN && type.length == 0) {
+            throw new IllegalArgumentException("TNF " + tnf + " needs a type");
+        }
+        return add(new Record(tnf, type, id, EMPTY, payload));
+    }
+
+    /** Sets the id of the record added last. */
+    NdefMessageBuilder withId(byte[] id) {
+        if (records.isEmpty()) {
+            throw new IllegalStateException("No record to set the id on");
+        }
+        Record last = records.remove(records.size() - 1);
+        if (last.tnf == TNF_EMPTY && id != null && id.length > 0) {
+            throw new IllegalArgumentException("An empty record cannot have an id");
+        }
+        return add(new Record(last.tnf, last.type, orEmpty(id), last.prefix, last.payload));
+    }
+
+    int recordCount() {
+        return records.size();
+    }
+
+    /** Exact length of the encoded message in bytes. */
+    int size() {
+        int size = 0;
+        for (Record record : records) {
+            size += record.encodedLength();
+        }
+        return size;
+    }
+
+    byte[] build() {
+        byte[] out = new byte[size()];
+        write(out, 0);
+        return out;
+    }
+
+    /** Encodes the message into {@code out}, which needs {@link #size()} bytes from {@code offset}. Returns the bytes written. */
+    int write(byte[] out, int offset) {
+        if (records.isEmpty()) {
+            throw new IllegalStateException("An NDEF message needs at least one record");
+        }
+        int position = offset;
+        int last = records.size() - 1;
+        for (int i = 0; i <= last; i++) {
+            Record record = records.get(i);
+            int payloadLength = record.payloadLength();
+            boolean shortRecord = payloadLength <= SHORT_RECORD_MAX;
+            int header = record.tnf;
+            if (i == 0) {
+                header |= FLAG_MB;
+            }
+            if (i == last) {
+                header |= FLAG_ME;
+            }
+            if (shortRecord) {
+                header |= FLAG_SR;
+            }
+            if (record.id.length > 0) {
+                header |= FLAG_IL;
+            }
+
+            out[position++] = (byte) header;
+            out[position++] = (byte) record.type.length;
+            if (shortRecord) {
+                out[position++] = (byte) payloadLength;
+            } else {
+                out[position++] = (byte) (payloadLength >>> 24);
+                out[position++] = (byte) (payloadLength >>> 16);
+                out[position++] = (byte) (payloadLength >>> 8);
+                out[position++] = (byte) payloadLength;
+            }
+            if (record.id.length > 0) {
+                out[position++] = (byte) record.id.length;
+            }
+            position = copy(record.type, out, position);
+            position = copy(record.id, out, position);
+            position = copy(record.prefix, out, position);
+            position = copy(record.payload, out, position);
+        }
+        return position - offset;
+    }
+
+    private NdefMessageBuilder add(Record record) {
+        if (record.type.length > 0xFF) {
+            throw new IllegalArgumentException("Record type is longer than 255 bytes");
+        }
+        if (record.id.length > 0xFF) {
+            throw new IllegalArgumentException("Record id is longer than 255 bytes");
+        }
+        records.add(record);
+        return this;
+    }
+
+    private static int copy(byte[] source, byte[] out, int position) {
+        System.arraycopy(source, 0, out, position, source.length);
+        return position + source.length;
+    }
+
+    private static byte[] utf8(String text) {
+        return text != null ? text.getBytes(StandardCharsets.UTF_8) : EMPTY;
+    }
+
+    private static byte[] orEmpty(byte[] bytes) {
+        return bytes != null ? bytes : EMPTY;
+    }
+}
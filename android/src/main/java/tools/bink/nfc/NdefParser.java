@@ -0,0 +1,271 @@
+package tools.bink.nfc;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streaming reader over the wire form of an NDEF message.
+ *
+ * The parser is a cursor: {@link #next()} decodes one record header and leaves
+ * the type, id and payload as offsets into the caller's buffer. Nothing is
+ * copied or decoded until a field is asked for, so skipping a large MIME
+ * payload costs a header read, and a Smart Poster's inner message is read
+ * through {@link #nested()} over the same buffer. The buffer is borrowed, not
+ * copied; it must not change while the parser is in use.
+ *
+ * Malformed input throws {@link IllegalArgumentException} from {@link #next()}.
+ * Chunked records are rejected, since Android never writes them.
+ */
+final class NdefParser {
+
+    static final byte[] RTD_SMART_POSTER = {'S', 'p'};
+
+    private static final int FLAG_MB = 0x80;
+    private static final int FLAG_ME = 0x40;
+    private static final int FLAG_CF = 0x20;
+    private static final int FLAG_SR = 0x10;
+    private static final int FLAG_IL = 0x08;
+    private static final int TNF_MASK = 0x07;
+
+    // Type 2 Tag TLVs, read from the first data page
+    private static final int TYPE2_DATA_OFFSET = 16;
+    private static final int TLV_NULL = 0x00;
+    private static final int TLV_NDEF = 0x03;
+    private static final int TLV_TERMINATOR = 0xFE;
+
+    private final byte[] buffer;
+    private final int start;
+    private final int end;
+
+    private int position;
+    private int index = -1;
+    private boolean ended;
+
+    private int tnf;
+    private int typeOffset;
+    private int typeLength;
+    private int idOffset;
+    private int idLength;
+    private int payloadOffset;
+    private int payloadLength;
+
+    NdefParser(byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+
+    NdefParser(byte[] buffer, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > buffer.length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", buffer " + buffer.length);
+        }
+        this.buffer = buffer;
+        this.start = offset;
+        this.end = offset + length;
+        this.position = offset;
+    }
+
+    /**
+     * A parser over the NDEF TLV in a Type 2 Tag memory dump that starts at
+     * page 0, or null when the tag holds no NDEF message.
+     */
+    static NdefParser forType2Memory(byte[] memory) {
+        int position = TYPE2_DATA_OFFSET;
+        while (position < memory.length) {
+            int tag = memory[position++] & 0xFF;
+            if (tag == TLV_TERMINATOR) {
+                return null;
+            }
+            if (tag == TLV_NULL) {
+                continue;
+            }
+            if (position >= memory.length) {
+                return null;
+            }
+            int length = memory[position++] & 0xFF;
+            if (length == 0xFF) {
+                if (position + 2 > memory.length) {
+                    return null;
+                }
+                length = ((memory[position] & 0xFF) << 8) | (memory[position + 1] & 0xFF);
+                position += 2;
+            }
+            if (tag == TLV_NDEF) {
+                if (length == 0 || position + length > memory.length) {
+                    return null;
+                }
+                return new NdefParser(memory, position, length);
+            }
+            // Lock and memory control TLVs, or proprietary ones
+            position += length;
+        }
+        return null;
+    }
+
+    /** Moves to the next record; returns false after the last one. */
+    boolean next() {
+        if (ended || position >= end) {
+            ended = true;
+            return false;
+        }
+        int header = buffer[position] & 0xFF;
+        if (index < 0 && (header & FLAG_MB) == 0) {
+            throw malformed("first record has no message-begin flag");
+        }
+        if ((header & FLAG_CF) != 0) {
+            throw malformed("chunked records are not supported");
+        }
+        int cursor = position + 1;
+        boolean shortRecord = (header & FLAG_SR) != 0;
+        boolean hasId = (header & FLAG_IL) != 0;
+        require(cursor, 1 + (shortRecord ? 1 : 4) + (hasId ? 1 : 0));
+
+        int type = buffer[cursor++] & 0xFF;
+        long payload;
+        if (shortRecord) {
+            payload = buffer[cursor++] & 0xFF;
+        } else {
+            payload = ((long) (buffer[cursor] & 0xFF) << 24) | ((buffer[cursor + 1] & 0xFF) << 16)
+                | ((buffer[cursor + 2] & 0xFF) << 8) | (buffer[cursor + 3] & 0xFF);
+            cursor += 4;
+        }
+        int id = hasId ? buffer[cursor++] & 0xFF : 0;
+        if (cursor + type + id + payload > end) {
+            throw malformed("record " + (index + 1) + " runs past the end of the message");
+        }
+
+        tnf = header & TNF_MASK;
+        typeOffset = cursor;
+        typeLength = type;
+        idOffset = typeOffset + type;
+        idLength = id;
+        payloadOffset = idOffset + id;
+        payloadLength = (int) payload;
+        position = payloadOffset + payloadLength;
+        index++;
+        ended = (header & FLAG_ME) != 0;
+        return true;
+    }
+
+    /** Starts over from the first record. */
+    void reset() {
+        position = start;
+        index = -1;
+        ended = false;
+    }
+
+    /** Zero-based index of the current record. */
+    int index() {
+        return index;
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    int tnf() {
+        return tnf;
+    }
+
+    int typeOffset() {
+        return typeOffset;
+    }
+
+    int typeLength() {
+        return typeLength;
+    }
+
+    int idOffset() {
+        return idOffset;
+    }
+
+    int idLength() {
+        return idLength;
+    }
+
+    int payloadOffset() {
+        return payloadOffset;
+    }
+
+    int payloadLength() {
+        return payloadLength;
+    }
+
+    boolean typeEquals(int tnf, byte[] type) {
+        if (this.tnf != tnf || typeLength != type.length) {
+            return false;
+        }
+        for (int i = 0; i < typeLength; i++) {
+            if (buffer[typeOffset + i] != type[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isText() {
+        return typeEquals(NdefMessageBuilder.TNF_WELL_KNOWN, NdefMessageBuilder.RTD_TEXT);
+    }
+
+    boolean isUri() {
+        return typeEquals(NdefMessageBuilder.TNF_WELL_KNOWN, NdefMessageBuilder.RTD_URI);
+    }
+
+    boolean isSmartPoster() {
+        return typeEquals(NdefMessageBuilder.TNF_WELL_KNOWN, RTD_SMART_POSTER);
+    }
+
+    String type() {
+        return new String(buffer, typeOffset, typeLength, StandardCharsets.UTF_8);
+    }
+
+    /** The payload decoded as UTF-8. */
+    String payloadText() {
+        return new String(buffer, payloadOffset, payloadLength, StandardCharsets.UTF_8);
+    }
+
+    /** Body of a Text record, in UTF-8 or UTF-16 as its status byte says. */
+    String text() {
+        if (payloadLength == 0) {
+            return "";
+        }
+        int status = buffer[payloadOffset] & 0xFF;
+        int skip = 1 + (status & 0x3F);
+        if (skip >= payloadLength) {
+            return "";
+        }
+        return new String(buffer, payloadOffset + skip, payloadLength - skip,
+            (status & 0x80) != 0 ? StandardCharsets.UTF_16 : StandardCharsets.UTF_8);
+    }
+
+    /** Language code of a Text record. */
+    String textLanguage() {
+        if (payloadLength == 0) {
+            return "";
+        }
+        int length = Math.min(buffer[payloadOffset] & 0x3F, payloadLength - 1);
+        return new String(buffer, payloadOffset + 1, length, StandardCharsets.US_ASCII);
+    }
+
+    /** Full URI of a URI record, with its identifier code expanded. */
+    String uri() {
+        if (payloadLength == 0) {
+            return "";
+        }
+        int code = buffer[payloadOffset] & 0xFF;
+        String rest = new String(buffer, payloadOffset + 1, payloadLength - 1, StandardCharsets.UTF_8);
+        return code < NdefMessageBuilder.URI_PREFIXES.length ? NdefMessageBuilder.URI_PREFIXES[code] + rest : rest;
+    }
+
+    /** A parser over the message carried in this record's payload, such as a Smart Poster's. */
+    NdefParser nested() {
+        return new NdefParser(buffer, payloadOffset, payloadLength);
+    }
+
+    private void require(int offset, int count) {
+        if (offset + count > end) {
+            throw malformed("record " + (index + 1) + " has a truncated header");
+        }
+    }
+
+    private IllegalArgumentException malformed(String reason) {
+        return new IllegalArgumentException("Malformed NDEF message: " + reason);
+    }
+}
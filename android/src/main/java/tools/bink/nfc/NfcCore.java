@@ -0,0 +1,292 @@
+package tools.bink.nfc;
+
+import android.app.Activity;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.nfc.NdefMessage;
+import android.nfc.NfcAdapter;
+import android.nfc.Tag;
+import android.os.Build;
+import android.os.Bundle;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The one owner of the NFC controller for every plugin in the app.
+ *
+ * Plugins ask the core for reader mode or foreground dispatch instead of
+ * driving {@link NfcAdapter} themselves, and {@link ModeArbiter} merges what
+ * they ask for, so one plugin starting or stopping a mode no longer switches
+ * off another's. Reader mode has a single callback: each tag goes through one
+ * shared {@link TagEventFilter} and is handed to every listener once, whether
+ * its owner asked for reader mode or for foreground dispatch (which reader
+ * mode suppresses). Repeats the filter suppresses are handed over too, so a
+ * listener can still serve a pending operation with a tag held in the field,
+ * as it would from a dispatched intent. An NDEF message read through {@link #readNdefMessage} is
+ * read from the tag once per discovery, however many listeners ask for it.
+ */
+public final class NfcCore {
+
+    public interface TagListener {
+        /**
+         * Called on the NFC binder thread for each tag discovered; {@code transition}
+         * is {@link TagEventFilter#ARRIVED}, {@link TagEventFilter#CHANGED}, or
+         * {@link TagEventFilter#SUPPRESSED} for a repeat of a tag still in the field.
+         */
+        void onTag(Tag tag, int transition);
+    }
+
+    public interface NdefReader {
+        NdefMessage read() throws Exception;
+    }
+
+    private static NfcCore instance;
+
+    private final NfcAdapter adapter;
+    private final TagEventFilter tagEventFilter =
+        new TagEventFilter(TagEventFilter.DEFAULT_WINDOW_MILLIS, TagEventFilter.DEFAULT_CAPACITY);
+    private final ModeArbiter<IntentFilter> arbiter = new ModeArbiter<>(new AdapterController());
+    private final NfcAdapter.ReaderCallback readerCallback = this::onTagDiscovered;
+
+    // Guarded by this
+    private final Map<Object, TagListener> listeners = new LinkedHashMap<>();
+    private Activity activity;
+    private PendingIntent pendingIntent;
+
+    // Distinct listeners, read by the binder thread without locking
+    private volatile TagListener[] fanOut = new TagListener[0];
+
+    private final Object reads = new Object();
+    // Guarded by reads
+    private NdefRead lastRead;
+
+    private NfcCore(NfcAdapter adapter) {
+        this.adapter = adapter;
+    }
+
+    public static synchronized NfcCore get(Context context) {
+        if (instance == null) {
+            instance = new NfcCore(NfcAdapter.getDefaultAdapter(context.getApplicationContext()));
+        }
+        return instance;
+    }
+
+    /** The device's adapter, or null when it has no NFC. */
+    public NfcAdapter getAdapter() {
+        return adapter;
+    }
+
+    public TagEventFilter getTagEventFilter() {
+        return tagEventFilter;
+    }
+
+    /** Asks for reader mode for {@code owner}, replacing its previous request. */
+    public synchronized void startReaderMode(Object owner, Activity activity, int flags, int presenceCheckDelay,
+                                             TagListener listener) {
+        attach(activity);
+        setListener(owner, listener);
+        arbiter.requestReader(owner, flags, presenceCheckDelay);
+    }
+
+    /**
+     * Asks for foreground dispatch for {@code owner}, replacing its previous
+     * request. While another owner holds reader mode, tags reach the listener
+     * from the reader callback instead of as intents.
+     */
+    public synchronized void startForegroundDispatch(Object owner, Activity activity, TagListener listener,
+                                                     IntentFilter... filters) {
+        attach(activity);
+        setListener(owner, listener);
+        arbiter.requestDispatch(owner, Arrays.asList(filters));
+    }
+
+    /** Drops the owner's request. Returns false when it held none. */
+    public synchronized boolean stop(Object owner) {
+        setListener(owner, null);
+        return arbiter.release(owner);
+    }
+
+    public synchronized boolean holds(Object owner) {
+        return arbiter.holds(owner);
+    }
+
+    /** Call from every plugin's handleOnResume; only the first call after a pause reaches the adapter. */
+    public synchronized void onResume(Activity activity) {
+        attach(activity);
+        arbiter.resume();
+    }
+
+    /** Call from every plugin's handleOnPause. */
+    public synchronized void onPause() {
+        arbiter.pause();
+    }
+
+    /** Call from every plugin's handleOnDestroy, after stopping its own requests. */
+    public synchronized void onDestroy(Activity activity) {
+        if (activity == this.activity) {
+            arbiter.pause();
+            this.activity = null;
+            pendingIntent = null;
+        }
+    }
+
+    /**
+     * Reads the tag's NDEF message with {@code reader}, unless a listener has
+     * already read it since the tag was discovered; a caller arriving during
+     * the read waits for it and shares the result, or the failure. A failed
+     * read is not kept, so the next caller reads the tag again.
+     */
+    public NdefMessage readNdefMessage(Tag tag, NdefReader reader) throws Exception {
+        NdefRead read;
+        synchronized (reads) {
+            if (lastRead == null || lastRead.tag != tag) {
+                lastRead = new NdefRead(tag);
+            }
+            read = lastRead;
+        }
+        try {
+            return read.get(reader);
+        } catch (Exception e) {
+            synchronized (reads) {
+                if (lastRead == read) {
+                    lastRead = null;
+                }
+            }
+            throw e;
+        }
+    }
+
+    /** Forgets a read of this tag, after a write has changed it. */
+    public void forget(Tag tag) {
+        synchronized (reads) {
+            if (lastRead != null && lastRead.tag == tag) {
+                lastRead = null;
+            }
+        }
+    }
+
+    /**
+     * The first record of a message as a string: the text of a Text record,
+     * the full URI of a URI record, otherwise the payload as UTF-8. Null for
+     * an empty message.
+     */
+    public static String firstRecordText(NdefMessage message) {
+        if (message == null) {
+            return null;
+        }
+        NdefParser parser = new NdefParser(message.toByteArray());
+        if (!parser.next()) {
+            return null;
+        }
+        if (parser.isText()) {
+            return parser.text();
+        }
+        return parser.isUri() ? parser.uri() : parser.payloadText();
+    }
+
+    // Runs on the NFC binder thread
+    private void onTagDiscovered(Tag tag) {
+        int transition = tagEventFilter.onTag(tag.getId(), System.nanoTime());
+        for (TagListener listener : fanOut) {
+            listener.onTag(tag, transition);
+        }
+    }
+
+    // Guarded by this
+    private void attach(Activity activity) {
+        if (activity != null && activity != this.activity) {
+            this.activity = activity;
+            pendingIntent = null;
+        }
+    }
+
+    // Guarded by this; a plugin holding several requests with one listener hears each tag once
+    private void setListener(Object owner, TagListener listener) {
+        if (listener != null) {
+            listeners.put(owner, listener);
+        } else if (listeners.remove(owner) == null) {
+            return;
+        }
+        fanOut = new LinkedHashSet<>(listeners.values()).toArray(new TagListener[0]);
+    }
+
+    // Guarded by this
+    private PendingIntent pendingIntent() {
+        if (pendingIntent == null) {
+            Intent intent = new Intent(activity, activity.getClass());
+            intent.addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
+            int flags = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                ? PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_MUTABLE
+                : PendingIntent.FLAG_UPDATE_CURRENT;
+            pendingIntent = PendingIntent.getActivity(activity, 0, intent, flags);
+        }
+        return pendingIntent;
+    }
+
+    // Called by the arbiter with the core's lock held
+    private final class AdapterController implements ModeArbiter.Controller<IntentFilter> {
+        @Override
+        public void enableReader(int flags, int presenceCheckDelay) {
+            if (adapter == null || activity == null) {
+                return;
+            }
+            Bundle options = new Bundle();
+            if (presenceCheckDelay > 0) {
+                options.putInt(NfcAdapter.EXTRA_READER_PRESENCE_CHECK_DELAY, presenceCheckDelay);
+            }
+            adapter.enableReaderMode(activity, readerCallback, flags, options);
+        }
+
+        @Override
+        public void disableReader() {
+            if (adapter != null && activity != null) {
+                adapter.disableReaderMode(activity);
+            }
+        }
+
+        @Override
+        public void enableDispatch(List<IntentFilter> filters) {
+            if (adapter != null && activity != null) {
+                adapter.enableForegroundDispatch(activity, pendingIntent(), filters.toArray(new IntentFilter[0]), null);
+            }
+        }
+
+        @Override
+        public void disableDispatch() {
+            if (adapter != null && activity != null) {
+                adapter.disableForegroundDispatch(activity);
+            }
+        }
+    }
+
+    private static final class NdefRead {
+        final Tag tag;
+        private boolean done;
+        private NdefMessage message;
+        private Exception failure;
+
+        NdefRead(Tag tag) {
+            this.tag = tag;
+        }
+
+        synchronized NdefMessage get(NdefReader reader) throws Exception {
+            if (!done) {
+                try {
+                    message = reader.read();
+                } catch (Exception e) {
+                    failure = e;
+                }
+                done = true;
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return message;
+        }
+    }
+}
@@ -1,160 +1,176 @@
 package tools.bink.nfc;
 
+import android.content.Context;
 import android.nfc.cardemulation.HostApduService;
 import android.os.Bundle;
 import android.util.Log;
-import java.nio.charset.StandardCharsets;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class NfcHostCardEmulatorService extends HostApduService {
     private static final String TAG = "NfcHCEService";
-    
-    // ISO-7816 SELECT command header
-    private static final String SELECT_APDU_HEADER = "00A40400";
-    private static final String READ_COMMAND = "00D0";
-    private static final String AID = "F0010203040506";
-    private static final byte[] SELECT_OK = {(byte)0x90, (byte)0x00};
-    private static final byte[] UNKNOWN_CMD = {(byte)0x6F, (byte)0x00};
-    
-    private static String emulationMode = "NDEF";
-    private static String cardId = null;
-    private static String cardData = "";
-    private static String currentAID = "F0010203040506";
-    private static String ndefMessage = null;
-    
-    public static void setEmulationMode(String mode) {
-        emulationMode = mode;
+
+    private static final CardEmulator emulator = new CardEmulator();
+    private static volatile TagMetrics metrics;
+    private static volatile ApduTrace trace;
+
+    // The saved emulation; loaded once per process, unless the plugin configured one first
+    private static final ExecutorService saver = Executors.newSingleThreadExecutor();
+    private static ProfileStore store;
+    private static boolean configured;
+
+    // Whether the current reader session was sampled for tracing; decided on its first APDU
+    private boolean sessionStarted;
+    private boolean traced;
+
+    /**
+     * Atomically replaces what the service emulates. Takes effect from the next APDU.
+     */
+    static void setProfile(Context context, EmulationProfile profile) {
+        synchronized (NfcHostCardEmulatorService.class) {
+            configured = true;
+            emulator.setProfile(profile);
+        }
+        save(context);
     }
-    
-    public static void setCardData(String id, String data) {
-        cardId = id;
-        cardData = data;
+
+    /** Atomically replaces the applications routed by AID. Takes effect from the next APDU. */
+    static void setApplications(Context context, AidRouter<EmulationProfile> applications) {
+        synchronized (NfcHostCardEmulatorService.class) {
+            configured = true;
+            emulator.setApplications(applications);
+        }
+        save(context);
     }
-    
-    public static void setAID(String aid) {
-        currentAID = aid;
+
+    static AidRouter<EmulationProfile> getApplications() {
+        return emulator.getApplications();
     }
 
-    public static void setMessageToShare(String message) {
-        cardData = message;
-        emulationMode = "NDEF";
+    /** Where command processing times go; null to stop timing. */
+    static void setMetrics(TagMetrics tagMetrics) {
+        metrics = tagMetrics;
     }
 
-    public static void setNdefMessage(String message) {
-        ndefMessage = message;
+    /** Where sampled APDU traffic goes; null to stop tracing. */
+    static void setTrace(ApduTrace apduTrace) {
+        trace = apduTrace;
     }
 
     public static String getNdefMessage() {
-        return ndefMessage;
+        return emulator.getProfile().getNdefMessage();
     }
 
+    /**
+     * Android binds the service in a fresh process when a reader taps after the
+     * app was killed. Load the saved emulation here, before the first APDU, so
+     * the reader is answered without waiting for the app to start.
+     */
     @Override
-    public byte[] processCommandApdu(byte[] commandApdu, Bundle extras) {
-        String hexCommandApdu = bytesToHex(commandApdu);
-        Log.d(TAG, "Received APDU: " + hexCommandApdu);
-
-        switch (emulationMode) {
-            case "MIFARE_CLASSIC":
-                return processMifareClassic(commandApdu);
-            case "ISO_DEP":
-                return processIsoDep(commandApdu);
-            case "NDEF":
-                return processNdef(commandApdu);
-            default:
-                return UNKNOWN_CMD;
-        }
+    public void onCreate() {
+        super.onCreate();
+        restore(this);
     }
 
-    private byte[] processNdef(byte[] commandApdu) {
-        String hexCommandApdu = bytesToHex(commandApdu);
-        if (isSelectAIDCommand(commandApdu)) {
-            return SELECT_OK;
-        } else if (isReadCommand(commandApdu)) {
-            byte[] dataBytes = cardData.getBytes(StandardCharsets.UTF_8);
-            byte[] response = new byte[dataBytes.length + 2];
-            System.arraycopy(dataBytes, 0, response, 0, dataBytes.length);
-            response[dataBytes.length] = (byte)0x90;
-            response[dataBytes.length + 1] = (byte)0x00;
-            return response;
+    private static synchronized ProfileStore getStore(Context context) {
+        if (store == null) {
+            store = new ProfileStore(new File(context.getApplicationContext().getNoBackupFilesDir(), ProfileStore.FILE_NAME));
         }
-        return UNKNOWN_CMD;
+        return store;
     }
 
-    private byte[] processMifareClassic(byte[] commandApdu) {
-        if (cardId != null && commandApdu[0] == (byte)0x30) {
-            return hexStringToByteArray(cardId);
+    private static synchronized void restore(Context context) {
+        if (configured) {
+            return;
         }
-        return UNKNOWN_CMD;
-    }
-
-    private byte[] processIsoDep(byte[] commandApdu) {
-        if (isSelectAIDCommand(commandApdu)) {
-            return SELECT_OK;
-        } else if (isReadCommand(commandApdu)) {
-            byte[] dataBytes = cardData.getBytes(StandardCharsets.UTF_8);
-            byte[] response = new byte[dataBytes.length + 2];
-            System.arraycopy(dataBytes, 0, response, 0, dataBytes.length);
-            response[dataBytes.length] = (byte)0x90;
-            response[dataBytes.length + 1] = (byte)0x00;
-            return response;
+        configured = true;
+        try {
+            ProfileStore.Snapshot snapshot = getStore(context).load();
+            if (snapshot != null) {
+                emulator.setProfile(snapshot.profile);
+                emulator.setApplications(snapshot.applications);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not load saved emulation", e);
         }
-        return UNKNOWN_CMD;
     }
 
-    private byte[] processMifareUltralight(byte[] commandApdu) {
-        if (commandApdu[0] == (byte)0x30) {
-            // Handle anticollision
-            return hexStringToByteArray("0400" + cardId);
-        } else if (commandApdu[0] == (byte)0x60) {
-            // Handle read command
-            int page = commandApdu[1] & 0xFF;
-            byte[] data = hexStringToByteArray(cardData);
-            
-            // If this is a request for NDEF data and we have NDEF message
-            if (page == 4 && ndefMessage != null) {
-                byte[] ndefData = ndefMessage.getBytes(StandardCharsets.UTF_8);
-                byte[] response = new byte[16]; // 4 pages of 4 bytes each
-                System.arraycopy(ndefData, 0, response, 0, Math.min(16, ndefData.length));
-                return response;
+    /** Saves what is emulated now, off the calling thread; saves queued behind each other see the latest state. */
+    private static void save(Context context) {
+        ProfileStore target = getStore(context);
+        saver.execute(() -> {
+            try {
+                target.save(emulator.getProfile(), emulator.getApplications());
+            } catch (IOException e) {
+                Log.w(TAG, "Could not save emulation", e);
             }
-            
-            // Normal data read
-            byte[] response = new byte[16]; // 4 pages of 4 bytes each
-            System.arraycopy(data, page * 4, response, 0, Math.min(16, data.length - page * 4));
-            return response;
-        }
-        return UNKNOWN_CMD;
+        });
     }
 
-    private boolean isSelectAIDCommand(byte[] commandApdu) {
-        String hexCommand = bytesToHex(commandApdu);
-        return hexCommand.startsWith(SELECT_APDU_HEADER);
+    // File system applications change as readers update them; keep the saved copy current
+    private static boolean takeModifiedFiles() {
+        boolean modified = takeModified(emulator.getProfile());
+        AidRouter<EmulationProfile> applications = emulator.getApplications();
+        for (int i = 0; i < applications.size(); i++) {
+            modified |= takeModified(applications.get(i));
+        }
+        return modified;
     }
 
-    private boolean isReadCommand(byte[] commandApdu) {
-        String hexCommand = bytesToHex(commandApdu);
-        return hexCommand.startsWith(READ_COMMAND);
+    private static boolean takeModified(EmulationProfile profile) {
+        Iso7816Card card = profile.getCard();
+        if (card == null) {
+            return false;
+        }
+        CardFileSystem files = card.getFiles();
+        synchronized (files) {
+            return files.takeModified();
+        }
     }
 
-    private byte[] hexStringToByteArray(String s) {
-        int len = s.length();
-        byte[] data = new byte[len / 2];
-        for (int i = 0; i < len; i += 2) {
-            data[i / 2] = (byte) ((Character.digit(s.charAt(i), 16) << 4)
-                             + Character.digit(s.charAt(i+1), 16));
+    @Override
+    public byte[] processCommandApdu(byte[] commandApdu, Bundle extras) {
+        // Only pay for hex formatting when debug logging is switched on for this tag
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Received APDU: " + HexCodec.encodeUpper(commandApdu));
+        }
+        ApduTrace currentTrace = trace;
+        if (!sessionStarted) {
+            sessionStarted = true;
+            traced = currentTrace != null && currentTrace.sample();
+        }
+        if (traced) {
+            currentTrace.record(ApduTrace.HCE_COMMAND, commandApdu, 0, commandApdu.length);
+        }
+
+        TagMetrics current = metrics;
+        byte[] response;
+        if (current == null) {
+            response = emulator.process(commandApdu);
+        } else {
+            long start = System.nanoTime();
+            response = emulator.process(commandApdu);
+            current.record(TagMetrics.HCE_COMMAND, start);
+        }
+        if (traced) {
+            currentTrace.record(ApduTrace.HCE_RESPONSE, response, 0, response.length);
         }
-        return data;
+        return response;
     }
 
     @Override
     public void onDeactivated(int reason) {
-        Log.d(TAG, "Deactivated: " + reason);
-    }
-
-    private String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02x", b));
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Deactivated: " + reason);
+        }
+        sessionStarted = false;
+        traced = false;
+        emulator.onDeactivated();
+        if (takeModifiedFiles()) {
+            save(this);
         }
-        return sb.toString().toUpperCase();
     }
-} 
\ No newline at end of file
+}
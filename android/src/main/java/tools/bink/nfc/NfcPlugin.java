@@ -1,24 +1,27 @@
 package tools.bink.nfc;
 
 import android.app.Activity;
-import android.app.PendingIntent;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.nfc.NfcAdapter;
-import android.nfc.NfcManager;
-import android.content.Context;
+import android.content.ComponentName;
 import android.nfc.Tag;
+import android.nfc.TagLostException;
+import android.nfc.cardemulation.CardEmulation;
 import android.nfc.tech.Ndef;
 import android.nfc.NdefMessage;
-import android.nfc.NdefRecord;
-import android.os.Build;
-import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
+import java.io.File;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Locale;
 import java.text.SimpleDateFormat;
 import java.util.TimeZone;
+import java.util.concurrent.CancellationException;
 
 import com.getcapacitor.JSObject;
 import com.getcapacitor.JSArray;
@@ -27,10 +30,15 @@ import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 import com.getcapacitor.annotation.Permission;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import android.nfc.tech.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
 
 @CapacitorPlugin(
     name = "Nfc",
@@ -42,13 +50,46 @@ import java.util.List;
     }
 )
 public class NfcPlugin extends Plugin {
+    private NfcCore core;
     private NfcAdapter nfcAdapter;
-    private PendingIntent pendingIntent;
-    private boolean isScanning = false;
+    private volatile boolean isScanning = false;
     private static final String TAG = "NfcPlugin";
+    private static final String EVENT_BATCH = "nfcEvents";
     private String savedText;
-    private String savedCallId;
-    private WriteParameters writeParams;
+    private volatile String savedCallId;
+    private volatile WriteParameters writeParams;
+    private final Object pendingOperationLock = new Object();
+    private TagIoExecutor<JSObject> tagIo;
+    private volatile ReaderSession<JSObject> readerSession;
+    private int readerSessionPresenceCheckDelay;
+    private volatile ProvisioningBatch<NdefMessage> provisioningBatch;
+    private volatile boolean verifyBatchWrites;
+    private volatile boolean base64Results;
+    private final MifareClassicDumper mifareClassicDumper = new MifareClassicDumper(MifareClassicDumper.DEFAULT_CACHE_SIZE);
+    private final TagReadCache<JSObject> tagReadCache =
+        new TagReadCache<>(TagReadCache.DEFAULT_MAX_ENTRIES, TagReadCache.DEFAULT_TTL_MILLIS);
+    private TagEventFilter tagEventFilter;
+    private final TagMetrics metrics = new TagMetrics();
+    private final ApduTrace trace = new ApduTrace(ApduTrace.DEFAULT_CAPACITY, ApduTrace.DEFAULT_MAX_BYTES);
+    private volatile TagJournal journal;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable tagLeftSweep = this::sweepDepartedTags;
+    // Requests held in the shared core; both hear tags through one listener, so each tag once
+    private final Object readerModeOwner = new Object();
+    private final Object dispatchOwner = new Object();
+    private final NfcCore.TagListener readerListener = this::onReaderTag;
+    // A batch listener takes every event type, so its presence counts as a subscription to all of them
+    private final EventDispatcher<JSObject> events = new EventDispatcher<>(
+        name -> hasListeners(name) || hasListeners(EVENT_BATCH),
+        (task, delayMillis) -> mainHandler.postDelayed(task, delayMillis),
+        this::deliverEvents,
+        "nfcStatus");
+
+    private static final int READER_SESSION_FLAGS =
+        NfcAdapter.FLAG_READER_NFC_A |
+        NfcAdapter.FLAG_READER_NFC_B |
+        NfcAdapter.FLAG_READER_NFC_F |
+        NfcAdapter.FLAG_READER_NFC_V;
 
     private static class WriteParameters {
         String text;
@@ -57,6 +98,8 @@ public class NfcPlugin extends Plugin {
         boolean secure;
         int timeout;
         JSObject originalData;
+        // Built from the records option; null writes text as a single Text record
+        NdefMessage message;
 
         WriteParameters(String text, String cardType, String aid, boolean secure, int timeout, JSObject originalData) {
             this.text = text;
@@ -71,22 +114,13 @@ public class NfcPlugin extends Plugin {
     @Override
     public void load() {
         super.load();
-        try {
-            NfcManager nfcManager = (NfcManager) getContext().getSystemService(Context.NFC_SERVICE);
-            nfcAdapter = nfcManager.getDefaultAdapter();
-            
-            // Create a generic PendingIntent that will be delivered to this activity
-            Intent intent = new Intent(getContext(), getActivity().getClass());
-            intent.addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
-            
-            int flags = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S ? 
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_MUTABLE :
-                PendingIntent.FLAG_UPDATE_CURRENT;
-                
-            pendingIntent = PendingIntent.getActivity(getContext(), 0, intent, flags);
-        } catch (Exception e) {
-            notifyListeners("nfcError", new JSObject().put("error", "Failed to initialize NFC: " + e.getMessage()));
-        }
+        tagIo = new TagIoExecutor<>(this::deliverTagEvents, this::onTagIoError);
+        NfcHostCardEmulatorService.setMetrics(metrics);
+        NfcHostCardEmulatorService.setTrace(trace);
+        // The adapter, its modes and the tag filter are shared with every other NFC plugin in the app
+        core = NfcCore.get(getContext());
+        nfcAdapter = core.getAdapter();
+        tagEventFilter = core.getTagEventFilter();
     }
 
     @PluginMethod
@@ -121,26 +155,8 @@ public class NfcPlugin extends Plugin {
             }
 
             // Enable reader mode with all available technologies
-            Bundle options = new Bundle();
-            nfcAdapter.enableReaderMode(getActivity(),
-                tag -> {
-                    Log.d(TAG, "Tag discovered: " + tag.toString());
-                    JSObject result = new JSObject();
-                    try {
-                        result.put("tagId", bytesToHex(tag.getId()));
-                        result.put("techList", Arrays.toString(tag.getTechList()));
-                        notifyListeners("nfcTagDetected", result);
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error processing tag: " + e.getMessage());
-                    }
-                },
-                NfcAdapter.FLAG_READER_NFC_A | 
-                NfcAdapter.FLAG_READER_NFC_B |
-                NfcAdapter.FLAG_READER_NFC_F |
-                NfcAdapter.FLAG_READER_NFC_V,
-                options
-            );
-            
+            isScanning = true;
+            updateReaderMode();
             call.resolve();
         } catch (Exception e) {
             Log.e(TAG, "Error starting NFC scan: " + e.getMessage());
@@ -162,19 +178,419 @@ public class NfcPlugin extends Plugin {
         }
 
         try {
-            if (!isScanning) {
+            // Also ends the foreground dispatch started by read or write
+            boolean dispatching = core.stop(dispatchOwner);
+            if (!isScanning && !dispatching) {
                 call.reject("NFC scanning is not active");
                 return;
             }
 
-            nfcAdapter.disableForegroundDispatch(activity);
             isScanning = false;
+            updateReaderMode();
             call.resolve();
         } catch (Exception e) {
             call.reject("Failed to stop NFC scanning: " + e.getMessage());
         }
     }
 
+    /**
+     * Starts a continuous reader-mode session. Tags are read on the NFC binder
+     * thread and streamed as readSuccess events until stopReaderSession is called,
+     * without the Activity intent round trip of foreground dispatch.
+     */
+    @PluginMethod
+    public void startReaderSession(PluginCall call) {
+        if (nfcAdapter == null) {
+            call.reject("NFC is not available on this device");
+            return;
+        }
+
+        if (!nfcAdapter.isEnabled()) {
+            call.reject("NFC is not enabled");
+            return;
+        }
+
+        if (provisioningBatch != null) {
+            call.reject("A batch write is active");
+            return;
+        }
+
+        int queueSize = call.getInt("queueSize", ReaderSession.DEFAULT_QUEUE_SIZE);
+        readerSessionPresenceCheckDelay = call.getInt("presenceCheckDelay", 0);
+        // Results are drained on the main thread, so they queue up there when JS falls behind
+        readerSession = new ReaderSession<>(queueSize, System.nanoTime(), mainHandler::post,
+            result -> events.post("readSuccess", result));
+
+        getActivity().runOnUiThread(() -> {
+            try {
+                updateReaderMode();
+                call.resolve();
+            } catch (Exception e) {
+                readerSession = null;
+                Log.e(TAG, "Error starting reader session: " + e.getMessage());
+                call.reject("Failed to start reader session: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void stopReaderSession(PluginCall call) {
+        ReaderSession<JSObject> session = readerSession;
+        if (session == null) {
+            call.reject("Reader session is not active");
+            return;
+        }
+
+        readerSession = null;
+        getActivity().runOnUiThread(() -> {
+            try {
+                updateReaderMode();
+                JSObject stats = readerSessionStats(session);
+                stats.put("active", false);
+                call.resolve(stats);
+            } catch (Exception e) {
+                call.reject("Failed to stop reader session: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void getReaderSessionStats(PluginCall call) {
+        ReaderSession<JSObject> session = readerSession;
+        if (session == null) {
+            call.resolve(new JSObject().put("active", false));
+            return;
+        }
+        JSObject stats = readerSessionStats(session);
+        stats.put("active", true);
+        call.resolve(stats);
+    }
+
+    /**
+     * Holds reader mode in the shared core while a scan, reader session or
+     * batch write is active, and lets it go when none is. Reader mode stays on
+     * for as long as another plugin holds it too.
+     */
+    private void updateReaderMode() {
+        if (provisioningBatch != null || readerSession != null) {
+            core.startReaderMode(readerModeOwner, getActivity(), READER_SESSION_FLAGS,
+                readerSessionPresenceCheckDelay, readerListener);
+        } else if (isScanning) {
+            core.startReaderMode(readerModeOwner, getActivity(), READER_SESSION_FLAGS, 0, readerListener);
+        } else {
+            core.stop(readerModeOwner);
+        }
+    }
+
+    /**
+     * Runs on the NFC binder thread for each tag discovered. The core calls
+     * this while reader mode is on, whichever plugin holds it, so a pending
+     * read or write is served here when dispatch is suppressed; like a
+     * dispatched intent, a repeat of a tag held in the field is not reported
+     * but may still serve one.
+     */
+    private void onReaderTag(Tag tag, int transition) {
+        String name = transition == TagEventFilter.SUPPRESSED ? null : reportTransition(transition);
+        switch (ReaderTagRouter.route(transition, provisioningBatch != null, readerSession != null,
+                core.holds(dispatchOwner), isScanning)) {
+            case ReaderTagRouter.BATCH:
+                onBatchTag(tag);
+                break;
+            case ReaderTagRouter.SESSION:
+                onReaderSessionTag(tag, name);
+                break;
+            case ReaderTagRouter.DISPATCH:
+                tagIo.submit(tag.getId(), session -> processDispatchedTag(session, tag, name));
+                break;
+            case ReaderTagRouter.SCAN:
+                onScannedTag(tag, name);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void onScannedTag(Tag tag, String transition) {
+        tagIo.submit(tag.getId(), session -> {
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Tag discovered: " + tag);
+            }
+            JSObject result = new JSObject();
+            try {
+                result.put("tagId", HexCodec.encode(tag.getId()));
+                result.put("techList", Arrays.toString(tag.getTechList()));
+                result.put("transition", transition);
+                session.emit("nfcTagDetected", result);
+            } catch (Exception e) {
+                Log.e(TAG, "Error processing tag: " + e.getMessage());
+            }
+        });
+    }
+
+    // Runs on the NFC binder thread; the read itself is handed to the tag I/O thread
+    private void onReaderSessionTag(Tag tag, String transition) {
+        long discoveredAt = System.nanoTime();
+        ReaderSession<JSObject> session = readerSession;
+        if (session == null) {
+            return;
+        }
+
+        tagIo.submit(tag.getId(), tagSession -> {
+            try {
+                JSObject result = readTag(tag);
+                result.put("transition", transition);
+                result.put("timestamp", getISOTimestamp());
+                session.offer(result, discoveredAt);
+            } catch (Exception e) {
+                session.recordError();
+                Log.e(TAG, "Error reading tag in reader session", e);
+                JSObject error = new JSObject();
+                error.put("error", e.getMessage());
+                error.put("timestamp", getISOTimestamp());
+                tagSession.emit("nfcError", error);
+            }
+        });
+    }
+
+    private JSObject readerSessionStats(ReaderSession<JSObject> session) {
+        JSObject stats = new JSObject();
+        stats.put("tagsRead", session.getTagsRead());
+        stats.put("tagsDelivered", session.getTagsDelivered());
+        stats.put("tagsDropped", session.getTagsDropped());
+        stats.put("errors", session.getErrors());
+        stats.put("queued", session.queued());
+        stats.put("tagsPerSecond", session.getTagsPerSecond(System.nanoTime()));
+        stats.put("lastLatencyMs", session.getLastLatencyMillis());
+        stats.put("averageLatencyMs", session.getAverageLatencyMillis());
+        stats.put("maxLatencyMs", session.getMaxLatencyMillis());
+        return stats;
+    }
+
+    /**
+     * Starts writing one message per tag until the batch is complete or
+     * stopBatchWrite is called. Messages are encoded up front and reader mode
+     * stays on, so every tag brought into range is written without a JS round
+     * trip; each result is streamed as a batchWriteResult event.
+     */
+    @PluginMethod
+    public void startBatchWrite(PluginCall call) {
+        if (nfcAdapter == null) {
+            call.reject("NFC is not available on this device");
+            return;
+        }
+
+        if (!nfcAdapter.isEnabled()) {
+            call.reject("NFC is not enabled");
+            return;
+        }
+
+        if (readerSession != null || provisioningBatch != null) {
+            call.reject("A reader session or batch write is already active");
+            return;
+        }
+
+        ProvisioningBatch<NdefMessage> batch;
+        try {
+            JSArray messages = call.getArray("messages");
+            String template = call.getString("template");
+            if (messages != null) {
+                batch = ProvisioningBatch.forMessages(messages.<String>toList(), this::createTextMessage, System.nanoTime());
+            } else if (template != null && !template.isEmpty()) {
+                batch = ProvisioningBatch.forTemplate(template, call.getInt("startSerial", 1),
+                    call.getInt("serialWidth", 0), call.getInt("count", 0), this::createTextMessage, System.nanoTime());
+            } else {
+                call.reject("Either template or messages is required");
+                return;
+            }
+        } catch (Exception e) {
+            call.reject("Invalid batch: " + e.getMessage());
+            return;
+        }
+
+        verifyBatchWrites = call.getBoolean("verify", false);
+        readerSessionPresenceCheckDelay = call.getInt("presenceCheckDelay", 0);
+        provisioningBatch = batch;
+
+        getActivity().runOnUiThread(() -> {
+            try {
+                updateReaderMode();
+                call.resolve();
+            } catch (Exception e) {
+                provisioningBatch = null;
+                Log.e(TAG, "Error starting batch write: " + e.getMessage());
+                call.reject("Failed to start batch write: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void stopBatchWrite(PluginCall call) {
+        ProvisioningBatch<NdefMessage> batch = provisioningBatch;
+        if (batch == null) {
+            call.reject("Batch write is not active");
+            return;
+        }
+
+        provisioningBatch = null;
+        getActivity().runOnUiThread(() -> {
+            try {
+                updateReaderMode();
+                JSObject stats = batchStats(batch);
+                stats.put("active", false);
+                call.resolve(stats);
+            } catch (Exception e) {
+                call.reject("Failed to stop batch write: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void getBatchWriteStats(PluginCall call) {
+        ProvisioningBatch<NdefMessage> batch = provisioningBatch;
+        if (batch == null) {
+            call.resolve(new JSObject().put("active", false));
+            return;
+        }
+        JSObject stats = batchStats(batch);
+        stats.put("active", true);
+        call.resolve(stats);
+    }
+
+    // Runs on the NFC binder thread; the write itself is handed to the tag I/O thread
+    private void onBatchTag(Tag tag) {
+        ProvisioningBatch<NdefMessage> batch = provisioningBatch;
+        if (batch == null) {
+            return;
+        }
+        tagIo.submit(tag.getId(), session -> writeBatchTag(session, batch, tag));
+    }
+
+    // Runs on the tag I/O thread
+    private void writeBatchTag(TagIoExecutor.TagSession<JSObject> session, ProvisioningBatch<NdefMessage> batch, Tag tag) {
+        if (batch.isComplete()) {
+            return;
+        }
+        String tagId = HexCodec.encode(tag.getId());
+        JSObject result = new JSObject();
+        result.put("id", tagId);
+        String batchError = null;
+
+        if (!batch.claim(tagId)) {
+            result.put("success", false);
+            result.put("skipped", true);
+            result.put("error", "Tag was already written in this batch");
+        } else {
+            result.put("index", batch.nextIndex());
+            result.put("text", batch.nextText());
+            tagReadCache.invalidate(tag.getId());
+            core.forget(tag);
+            boolean success = false;
+            long start = System.nanoTime();
+            try {
+                NdefMessage message = batch.next();
+                result.put("verified", writeBatchMessage(tag, message, verifyBatchWrites));
+                success = true;
+                journalTag(TagJournal.WRITE, tag, message.toByteArray(), start);
+            } catch (Exception e) {
+                batch.recordFailure();
+                Log.e(TAG, "Error writing tag in batch", e);
+                result.put("error", e instanceof TagLostException ? "Tag was lost" : e.getMessage());
+            }
+            result.put("success", success);
+            if (success) {
+                try {
+                    batch.recordSuccess(tagId);
+                } catch (Exception e) {
+                    // The next templated message could not be encoded, so the batch cannot go on
+                    batchError = "Failed to prepare the next message: " + e.getMessage();
+                }
+            }
+        }
+
+        result.put("timestamp", getISOTimestamp());
+        putBatchStats(result, batch);
+        session.emit("batchWriteResult", result);
+        if (batchError != null || batch.isComplete()) {
+            finishBatch(session, batch, batchError);
+        }
+    }
+
+    /** Writes a prepared message and, if asked, reads it back. Returns whether it was verified. */
+    private boolean writeBatchMessage(Tag tag, NdefMessage message, boolean verify) throws Exception {
+        Ndef ndef = Ndef.get(tag);
+        if (ndef != null) {
+            connect(ndef);
+            try {
+                writeNdef(ndef, message);
+                if (!verify) {
+                    return false;
+                }
+                NdefMessage readBack = readNdefMessage(ndef);
+                if (readBack == null || !Arrays.equals(readBack.toByteArray(), message.toByteArray())) {
+                    throw new Exception("Verify failed: tag content differs from what was written");
+                }
+                return true;
+            } finally {
+                try {
+                    ndef.close();
+                } catch (Exception e) {
+                    Log.w(TAG, "Error closing NDEF connection", e);
+                }
+            }
+        }
+
+        NdefFormatable formatable = NdefFormatable.get(tag);
+        if (formatable == null) {
+            throw new Exception("Tag doesn't support any known write methods");
+        }
+        // A freshly formatted tag has no Ndef handle from this discovery, so it is not read back
+        connect(formatable);
+        try {
+            formatNdef(formatable, message);
+        } finally {
+            try {
+                formatable.close();
+            } catch (Exception e) {
+                Log.w(TAG, "Error closing NdefFormatable connection", e);
+            }
+        }
+        return false;
+    }
+
+    private void finishBatch(TagIoExecutor.TagSession<JSObject> session, ProvisioningBatch<NdefMessage> batch, String error) {
+        if (provisioningBatch != batch) {
+            return;
+        }
+        provisioningBatch = null;
+        JSObject stats = batchStats(batch);
+        stats.put("active", false);
+        if (error != null) {
+            stats.put("error", error);
+        }
+        session.emit("batchWriteComplete", stats);
+        getActivity().runOnUiThread(() -> {
+            try {
+                updateReaderMode();
+            } catch (Exception e) {
+                Log.e(TAG, "Error ending batch write: " + e.getMessage());
+            }
+        });
+    }
+
+    private JSObject batchStats(ProvisioningBatch<NdefMessage> batch) {
+        JSObject stats = new JSObject();
+        putBatchStats(stats, batch);
+        return stats;
+    }
+
+    private void putBatchStats(JSObject stats, ProvisioningBatch<NdefMessage> batch) {
+        stats.put("written", batch.getWritten());
+        stats.put("failed", batch.getFailed());
+        stats.put("skipped", batch.getSkipped());
+        stats.put("count", batch.getCount());
+        stats.put("tagsPerMinute", batch.getTagsPerMinute(System.nanoTime()));
+    }
+
     @PluginMethod
     public void write(PluginCall call) {
         if (!hasRequiredPermissions()) {
@@ -215,7 +631,12 @@ public class NfcPlugin extends Plugin {
                 }
             } else {
                 // Normal emulation mode
-                NfcHostCardEmulatorService.setMessageToShare(text);
+                try {
+                    NfcHostCardEmulatorService.setProfile(getContext(), EmulationProfile.forMessage(text));
+                } catch (Exception e) {
+                    call.reject("Failed to set up card emulation: " + e.getMessage());
+                    return;
+                }
                 JSObject result = new JSObject();
                 result.put("success", true);
                 result.put("message", "Device ready to share data via NFC");
@@ -228,16 +649,30 @@ public class NfcPlugin extends Plugin {
             boolean secure = call.getBoolean("secure", false);
             int timeout = call.getInt("timeout", 5000);
 
-            this.writeParams = new WriteParameters(text, cardType, aid, secure, timeout, null);
-            savedCallId = call.getCallbackId();
+            // Encode records now so a bad record fails the call, not the tag
+            WriteParameters params = new WriteParameters(text, cardType, aid, secure, timeout, null);
+            JSArray records = call.getArray("records");
+            if (records != null) {
+                try {
+                    params.message = createMessage(records);
+                } catch (Exception e) {
+                    call.reject("Invalid NDEF records: " + e.getMessage());
+                    return;
+                }
+            }
+
+            synchronized (pendingOperationLock) {
+                this.writeParams = params;
+                savedCallId = call.getCallbackId();
+            }
             
             try {
                 Activity activity = getActivity();
                 IntentFilter[] writeTagFilters = new IntentFilter[] {
                     new IntentFilter(NfcAdapter.ACTION_TAG_DISCOVERED)
                 };
-                nfcAdapter.enableForegroundDispatch(activity, pendingIntent, writeTagFilters, null);
-                notifyListeners("nfcStatus", new JSObject().put("status", "Ready to write. Please touch another NFC device."));
+                core.startForegroundDispatch(dispatchOwner, activity, readerListener, writeTagFilters);
+                events.post("nfcStatus", new JSObject().put("status", "Ready to write. Please touch another NFC device."));
             } catch (Exception e) {
                 call.reject("Failed to start NFC write mode: " + e.getMessage());
             }
@@ -249,12 +684,16 @@ public class NfcPlugin extends Plugin {
         super.handleOnNewIntent(intent);
         
         String action = intent.getAction();
-        Log.d(TAG, "New intent received with action: " + action);
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "New intent received with action: " + action);
+        }
         
-        // Send action info to UI
-        JSObject actionInfo = new JSObject();
-        actionInfo.put("action", action);
-        notifyListeners("nfcStatus", actionInfo);
+        // Send action info to UI, dropping repeats while a tag stays in the field
+        if (tagEventFilter.onStatus(action, System.nanoTime())) {
+            JSObject actionInfo = new JSObject();
+            actionInfo.put("action", action);
+            events.post("nfcStatus", actionInfo);
+        }
         
         if (NfcAdapter.ACTION_TAG_DISCOVERED.equals(action) ||
             NfcAdapter.ACTION_TECH_DISCOVERED.equals(action) ||
@@ -262,68 +701,166 @@ public class NfcPlugin extends Plugin {
             
             Tag tag = intent.getParcelableExtra(NfcAdapter.EXTRA_TAG);
             if (tag != null) {
+                // Repeated detections of a held tag are not reported, but may still serve a pending operation
+                String transition = tagTransition(tag);
+                // Blocking tag I/O happens on the tag I/O thread, never on the UI thread
+                tagIo.submit(tag.getId(), session -> processDispatchedTag(session, tag, transition));
+            }
+        }
+    }
+
+    // Runs on the tag I/O thread
+    private void processDispatchedTag(TagIoExecutor.TagSession<JSObject> session, Tag tag, String transition) {
+        try {
+            if (transition != null) {
+                // Create detailed tag info
+                JSObject tagInfo = new JSObject();
+                tagInfo.put("id", HexCodec.encode(tag.getId()));
+                
+                // Get tech list
+                String[] techList = tag.getTechList();
+                JSArray techArray = new JSArray();
+                for (String tech : techList) {
+                    techArray.put(tech.replace("android.nfc.tech.", ""));
+                }
+                tagInfo.put("techTypes", techArray);
+                
+                // Add more tag details
+                tagInfo.put("type", determineTagType(techList));
+                tagInfo.put("transition", transition);
+                tagInfo.put("timestamp", getISOTimestamp());
+                
+                // Send tag info to UI
+                session.emit("nfcTagDetected", tagInfo);
+            }
+            session.throwIfCancelled();
+
+            // Claim the pending operation only once this session is sure to run it
+            WriteParameters params;
+            String callId;
+            synchronized (pendingOperationLock) {
+                params = writeParams;
+                callId = savedCallId;
+                writeParams = null;
+                savedCallId = null;
+            }
+            
+            // Process the tag based on write/read mode
+            if (params != null) {
+                writeNdefMessage(session, tag, params);
+            } else if (callId != null) {
+                // This is a read operation
                 try {
-                    // Create detailed tag info
-                    JSObject tagInfo = new JSObject();
-                    tagInfo.put("id", bytesToHexString(tag.getId()));
-                    
-                    // Get tech list
-                    String[] techList = tag.getTechList();
-                    JSArray techArray = new JSArray();
-                    for (String tech : techList) {
-                        techArray.put(tech.replace("android.nfc.tech.", ""));
-                    }
-                    tagInfo.put("techTypes", techArray);
-                    
-                    // Add more tag details
-                    tagInfo.put("type", determineTagType(techList));
-                    tagInfo.put("timestamp", getISOTimestamp());
-                    
-                    // Send tag info to UI
-                    notifyListeners("nfcTagDetected", tagInfo);
+                    JSObject result = readTag(tag);
+                    result.put("timestamp", getISOTimestamp());
+                    session.emit("readSuccess", result);
                     
-                    // Process the tag based on write/read mode
-                    if (writeParams != null) {
-                        writeNdefMessage(tag, writeParams);
-                        writeParams = null;
-                    } else if (savedCallId != null) {
-                        // This is a read operation
-                        try {
-                            JSObject result = readTag(tag);
-                            result.put("timestamp", getISOTimestamp());
-                            notifyListeners("readSuccess", result);
-                            
-                            PluginCall savedCall = bridge.getSavedCall(savedCallId);
-                            if (savedCall != null) {
-                                savedCall.resolve(result);
-                                bridge.releaseCall(savedCallId);
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error reading tag", e);
-                            JSObject error = new JSObject();
-                            error.put("error", e.getMessage());
-                            error.put("timestamp", getISOTimestamp());
-                            notifyListeners("nfcError", error);
-                            
-                            PluginCall savedCall = bridge.getSavedCall(savedCallId);
-                            if (savedCall != null) {
-                                savedCall.reject("Error reading tag: " + e.getMessage());
-                                bridge.releaseCall(savedCallId);
-                            }
-                        }
+                    PluginCall savedCall = bridge.getSavedCall(callId);
+                    if (savedCall != null) {
+                        savedCall.resolve(result);
+                        bridge.releaseCall(callId);
                     }
-                    savedCallId = null;
                 } catch (Exception e) {
-                    Log.e(TAG, "Error processing tag", e);
+                    Log.e(TAG, "Error reading tag", e);
                     JSObject error = new JSObject();
                     error.put("error", e.getMessage());
                     error.put("timestamp", getISOTimestamp());
-                    notifyListeners("nfcError", error);
+                    session.emit("nfcError", error);
+                    
+                    PluginCall savedCall = bridge.getSavedCall(callId);
+                    if (savedCall != null) {
+                        savedCall.reject("Error reading tag: " + e.getMessage());
+                        bridge.releaseCall(callId);
+                    }
                 }
             }
+        } catch (CancellationException e) {
+            throw e;
+        } catch (Exception e) {
+            Log.e(TAG, "Error processing tag", e);
+            JSObject error = new JSObject();
+            error.put("error", e.getMessage());
+            error.put("timestamp", getISOTimestamp());
+            session.emit("nfcError", error);
+        }
+    }
+
+    /**
+     * Runs a detection through the event filter. Returns "arrived" or "changed",
+     * or null when the tag is a repeat that should not be reported.
+     */
+    private String tagTransition(Tag tag) {
+        int transition = tagEventFilter.onTag(tag.getId(), System.nanoTime());
+        return transition == TagEventFilter.SUPPRESSED ? null : reportTransition(transition);
+    }
+
+    /** Names a reported transition and schedules the sweep that will see the tag leave. */
+    private String reportTransition(int transition) {
+        scheduleTagLeftSweep();
+        return transition == TagEventFilter.CHANGED ? "changed" : "arrived";
+    }
+
+    private void scheduleTagLeftSweep() {
+        long window = tagEventFilter.getWindowMillis();
+        if (window > 0) {
+            mainHandler.removeCallbacks(tagLeftSweep);
+            mainHandler.postDelayed(tagLeftSweep, window + 1);
+        }
+    }
+
+    // Runs on the main thread; reports tags not seen for a whole window as left
+    private void sweepDepartedTags() {
+        tagEventFilter.sweep(System.nanoTime(), (uid, offset, length) -> {
+            JSObject left = new JSObject();
+            left.put("id", HexCodec.encode(uid, offset, length, false));
+            left.put("transition", "left");
+            left.put("timestamp", getISOTimestamp());
+            events.post("nfcTagLeft", left);
+        });
+        if (tagEventFilter.tracked() > 0) {
+            scheduleTagLeftSweep();
+        }
+    }
+
+    private void deliverTagEvents(List<TagIoExecutor.TagEvent<JSObject>> batch) {
+        for (TagIoExecutor.TagEvent<JSObject> event : batch) {
+            events.post(event.name, event.data);
+        }
+    }
+
+    /**
+     * Runs on the main thread once per event window. With an nfcEvents listener
+     * the whole window goes over the bridge as one event; otherwise each event
+     * goes to the listeners of its own type.
+     */
+    private void deliverEvents(List<TagIoExecutor.TagEvent<JSObject>> batch, int dropped) {
+        if (hasListeners(EVENT_BATCH)) {
+            JSArray list = new JSArray();
+            for (TagIoExecutor.TagEvent<JSObject> event : batch) {
+                JSObject item = new JSObject();
+                item.put("type", event.name);
+                item.put("data", event.data);
+                list.put(item);
+            }
+            JSObject result = new JSObject();
+            result.put("events", list);
+            result.put("dropped", dropped);
+            notifyListeners(EVENT_BATCH, result);
+            return;
+        }
+        for (TagIoExecutor.TagEvent<JSObject> event : batch) {
+            notifyListeners(event.name, event.data);
         }
     }
 
+    private void onTagIoError(TagIoExecutor.TagSession<JSObject> session, Exception e) {
+        Log.e(TAG, "Unhandled error in tag I/O", e);
+        JSObject error = new JSObject();
+        error.put("error", e instanceof TagLostException ? "Tag was lost" : e.getMessage());
+        error.put("timestamp", getISOTimestamp());
+        session.emit("nfcError", error);
+    }
+
     private String determineTagType(String[] techList) {
         List<String> techs = Arrays.asList(techList);
         if (techs.contains("android.nfc.tech.IsoDep")) return "ISO_DEP";
@@ -338,9 +875,41 @@ public class NfcPlugin extends Plugin {
         return "UNKNOWN";
     }
 
+    @Override
+    protected void handleOnResume() {
+        super.handleOnResume();
+        // Reader mode and dispatch only last while the activity is resumed; the core restores them once for all plugins
+        try {
+            core.onResume(getActivity());
+        } catch (Exception e) {
+            Log.e(TAG, "Error resuming NFC: " + e.getMessage());
+        }
+    }
+
+    @Override
+    protected void handleOnPause() {
+        super.handleOnPause();
+        try {
+            core.onPause();
+        } catch (Exception e) {
+            Log.e(TAG, "Error pausing NFC: " + e.getMessage());
+        }
+    }
+
     @Override
     protected void handleOnDestroy() {
         super.handleOnDestroy();
+        readerSession = null;
+        provisioningBatch = null;
+        isScanning = false;
+        core.stop(readerModeOwner);
+        core.stop(dispatchOwner);
+        core.onDestroy(getActivity());
+        mainHandler.removeCallbacks(tagLeftSweep);
+        if (tagIo != null) {
+            tagIo.shutdown();
+        }
+        closeJournal();
         // Clean up any saved calls
         if (savedCallId != null) {
             bridge.releaseCall(savedCallId);
@@ -348,73 +917,53 @@ public class NfcPlugin extends Plugin {
         }
     }
 
-    private String bytesToHexString(byte[] bytes) {
-        if (bytes == null || bytes.length == 0) {
-            return "";
-        }
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02x", b));
-        }
-        return sb.toString();
-    }
-
-    private void writeNdefMessage(Tag tag, WriteParameters params) {
+    private void writeNdefMessage(TagIoExecutor.TagSession<JSObject> session, Tag tag, WriteParameters params) {
+        // Even a failed write may have changed the tag, so never serve it from the cache again
+        tagReadCache.invalidate(tag.getId());
+        core.forget(tag);
+        long start = System.nanoTime();
         try {
             String[] techList = tag.getTechList();
-            if (Arrays.asList(techList).contains("android.nfc.tech.IsoDep")) {
+            if (params.message == null && Arrays.asList(techList).contains("android.nfc.tech.IsoDep")) {
                 // For ISO-DEP tags, use the stored AID if available
                 String aid = params.aid != null ? params.aid : "F0010203040506"; // Default AID
-                writeToIsoDep(tag, params.text, aid, params.timeout);
+                writeToIsoDep(session, tag, params.text, aid, params.timeout);
+                // Without text this was a read through the legacy command set
+                String text = params.text != null ? params.text : "";
+                journalTag(text.isEmpty() ? TagJournal.READ : TagJournal.WRITE, tag, text.getBytes(StandardCharsets.UTF_8), start);
             } else {
+                NdefMessage message = params.message != null ? params.message : createTextMessage(params.text);
                 // Try NDEF first
                 Ndef ndef = Ndef.get(tag);
                 if (ndef != null) {
-                    writeToNdefTag(ndef, params.text);
+                    writeToNdefTag(session, ndef, message);
                 } else {
                     // Try to format if not NDEF
                     NdefFormatable formatable = NdefFormatable.get(tag);
                     if (formatable != null) {
-                        writeToFormattableTag(formatable, params.text);
+                        writeToFormattableTag(session, formatable, message);
                     } else {
                         throw new Exception("Tag doesn't support any known write methods");
                     }
                 }
+                journalTag(TagJournal.WRITE, tag, message.toByteArray(), start);
             }
         } catch (Exception e) {
             JSObject error = new JSObject();
             error.put("error", e.getMessage());
             error.put("stackTrace", Log.getStackTraceString(e));
-            notifyListeners("writeError", error);
+            session.emit("writeError", error);
             Log.e(TAG, "Error writing to NFC tag", e);
         }
     }
 
-    private void writeToNdefTag(Ndef ndef, String text) throws Exception {
+    private void writeToNdefTag(TagIoExecutor.TagSession<JSObject> session, Ndef ndef, NdefMessage message) throws Exception {
         try {
-            ndef.connect();
-            
-            // Create the message
-            NdefRecord textRecord = createTextRecord(text);
-            if (textRecord == null) {
-                throw new Exception("Failed to create NDEF record");
-            }
+            connect(ndef);
             
-            NdefMessage message = new NdefMessage(new NdefRecord[] { textRecord });
-
-            // Check if tag is writable and has enough space
-            if (!ndef.isWritable()) {
-                throw new Exception("Tag is read-only");
-            }
-
-            int size = message.getByteArrayLength();
-            int maxSize = ndef.getMaxSize();
-            if (maxSize < size) {
-                throw new Exception("Tag has insufficient space. Required: " + size + " bytes, Available: " + maxSize + " bytes");
-            }
-
             // Write the message
-            ndef.writeNdefMessage(message);
+            int size = writeNdef(ndef, message);
+            int maxSize = ndef.getMaxSize();
             
             // Notify success
             JSObject result = new JSObject();
@@ -423,7 +972,7 @@ public class NfcPlugin extends Plugin {
             result.put("message", "Data written successfully to NDEF tag");
             result.put("size", size);
             result.put("maxSize", maxSize);
-            notifyListeners("writeSuccess", result);
+            session.emit("writeSuccess", result);
         } finally {
             try {
                 ndef.close();
@@ -433,27 +982,19 @@ public class NfcPlugin extends Plugin {
         }
     }
 
-    private void writeToFormattableTag(NdefFormatable formatable, String text) throws Exception {
+    private void writeToFormattableTag(TagIoExecutor.TagSession<JSObject> session, NdefFormatable formatable, NdefMessage message) throws Exception {
         try {
-            formatable.connect();
-            
-            // Create the message
-            NdefRecord textRecord = createTextRecord(text);
-            if (textRecord == null) {
-                throw new Exception("Failed to create NDEF record");
-            }
-            
-            NdefMessage message = new NdefMessage(new NdefRecord[] { textRecord });
+            connect(formatable);
 
             // Format and write
-            formatable.format(message);
+            formatNdef(formatable, message);
             
             // Notify success
             JSObject result = new JSObject();
             result.put("written", true);
             result.put("type", "FORMATTED");
             result.put("message", "Tag formatted and data written successfully");
-            notifyListeners("writeSuccess", result);
+            session.emit("writeSuccess", result);
         } finally {
             try {
                 formatable.close();
@@ -463,93 +1004,150 @@ public class NfcPlugin extends Plugin {
         }
     }
 
-    private NdefRecord createTextRecord(String text) {
+    /** Checks that a connected tag can take the message, writes it and returns its size. */
+    private int writeNdef(Ndef ndef, NdefMessage message) throws Exception {
+        // Check if tag is writable and has enough space
+        if (!ndef.isWritable()) {
+            throw new Exception("Tag is read-only");
+        }
+
+        int size = message.getByteArrayLength();
+        int maxSize = ndef.getMaxSize();
+        if (maxSize < size) {
+            throw new Exception("Tag has insufficient space. Required: " + size + " bytes, Available: " + maxSize + " bytes");
+        }
+
+        // Write the message
+        long start = System.nanoTime();
         try {
-            if (text == null || text.isEmpty()) {
-                throw new Exception("Text cannot be empty");
-            }
-            
-            byte[] langBytes = "en".getBytes(StandardCharsets.US_ASCII);
-            byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
-            
-            int langLength = langBytes.length;
-            int textLength = textBytes.length;
-            
-            if (1 + langLength + textLength > 0xFF) {
-                throw new Exception("Text is too long");
-            }
+            ndef.writeNdefMessage(message);
+        } catch (TagLostException e) {
+            metrics.countTagLost();
+            throw e;
+        } finally {
+            metrics.record(TagMetrics.NDEF_IO, start);
+        }
+        return size;
+    }
 
-            byte[] payload = new byte[1 + langLength + textLength];
-            payload[0] = (byte) langLength;
+    private void formatNdef(NdefFormatable formatable, NdefMessage message) throws Exception {
+        long start = System.nanoTime();
+        try {
+            formatable.format(message);
+        } catch (TagLostException e) {
+            metrics.countTagLost();
+            throw e;
+        } finally {
+            metrics.record(TagMetrics.NDEF_IO, start);
+        }
+    }
 
-            System.arraycopy(langBytes, 0, payload, 1, langLength);
-            System.arraycopy(textBytes, 0, payload, 1 + langLength, textLength);
+    private NdefMessage readNdefMessage(Ndef ndef) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return ndef.getNdefMessage();
+        } catch (TagLostException e) {
+            metrics.countTagLost();
+            throw e;
+        } finally {
+            metrics.record(TagMetrics.NDEF_IO, start);
+        }
+    }
 
-            return new NdefRecord(NdefRecord.TNF_WELL_KNOWN, 
-                                NdefRecord.RTD_TEXT, 
-                                new byte[0], 
-                                payload);
-        } catch (Exception e) {
-            Log.e(TAG, "Error creating NDEF record", e);
-            return null;
+    private void connect(TagTechnology technology) throws IOException {
+        AndroidTagTransport.connect(technology, metrics);
+    }
+
+    private NdefMessage createTextMessage(String text) throws Exception {
+        if (text == null || text.isEmpty()) {
+            throw new Exception("Text cannot be empty");
+        }
+        // Long texts get a long record instead of being rejected at 255 bytes
+        return new NdefMessage(new NdefMessageBuilder().addText(text, "en").build());
+    }
+
+    /** Encodes the records option of write() into one message. */
+    private NdefMessage createMessage(JSArray records) throws Exception {
+        NdefMessageBuilder builder = new NdefMessageBuilder();
+        for (int i = 0; i < records.length(); i++) {
+            JSONObject record = records.getJSONObject(i);
+            String kind = record.optString("kind", "text");
+            switch (kind) {
+                case "text":
+                    builder.addText(record.optString("text", ""), record.optString("language", "en"));
+                    break;
+                case "uri":
+                    builder.addUri(record.optString("uri", ""));
+                    break;
+                case "mime":
+                    builder.addMime(record.optString("mimeType", ""), recordPayload(record));
+                    break;
+                case "external":
+                    builder.addExternal(record.optString("domain", ""), record.optString("type", ""), recordPayload(record));
+                    break;
+                case "aar":
+                    builder.addApplicationRecord(record.optString("packageName", ""));
+                    break;
+                case "raw":
+                    builder.addRecord(record.optInt("tnf", NdefMessageBuilder.TNF_UNKNOWN),
+                        record.optString("type", "").getBytes(StandardCharsets.UTF_8), null, recordPayload(record));
+                    break;
+                default:
+                    throw new Exception("Unsupported record kind: " + kind);
+            }
+            String id = record.optString("id", "");
+            if (!id.isEmpty()) {
+                builder.withId(id.getBytes(StandardCharsets.UTF_8));
+            }
         }
+        return new NdefMessage(builder.build());
+    }
+
+    private static byte[] recordPayload(JSONObject record) {
+        return decodePayload(record.optString("payload", ""), record.optString("payloadEncoding", "utf8"));
+    }
+
+    /** Decodes binary input from JS given as 'utf8', 'hex' or 'base64'. */
+    private static byte[] decodePayload(String payload, String encoding) {
+        byte[] bytes;
+        switch (encoding) {
+            case "utf8":
+                return payload.getBytes(StandardCharsets.UTF_8);
+            case "hex":
+                bytes = HexCodec.decode(payload);
+                break;
+            case "base64":
+                bytes = Base64Codec.decode(payload);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported payload encoding: " + encoding);
+        }
+        if (bytes == null) {
+            throw new IllegalArgumentException("Payload is not valid " + encoding);
+        }
+        return bytes;
     }
 
     private void handleNdefMessage(NdefMessage ndefMessage, JSObject parentObject) {
         try {
-            JSArray records = new JSArray();
-
-            if (ndefMessage != null && ndefMessage.getRecords() != null) {
-                for (NdefRecord ndefRecord : ndefMessage.getRecords()) {
-                    if (ndefRecord != null) {
-                        JSObject record = new JSObject();
-                        
-                        // Get record type with null check
-                        byte[] type = ndefRecord.getType();
-                        String typeString = type != null ? new String(type, StandardCharsets.UTF_8) : "";
-                        record.put("type", typeString);
-                        
-                        // Get record payload with null check
-                        byte[] payload = ndefRecord.getPayload();
-                        if (payload != null && payload.length > 0) {
-                            String payloadString;
-                            if (type != null && Arrays.equals(type, NdefRecord.RTD_TEXT)) {
-                                int languageCodeLength = payload[0] & 0x3F;
-                                if (languageCodeLength < payload.length) {
-                                    payloadString = new String(payload, languageCodeLength + 1, 
-                                        payload.length - languageCodeLength - 1, StandardCharsets.UTF_8);
-                                } else {
-                                    payloadString = "";
-                                }
-                            } else {
-                                payloadString = new String(payload, StandardCharsets.UTF_8);
-                            }
-                            record.put("payload", payloadString);
-                        } else {
-                            record.put("payload", "");
-                        }
-                        
-                        // Get record ID with null check
-                        byte[] id = ndefRecord.getId();
-                        record.put("identifier", (id != null && id.length > 0) ? bytesToHexString(id) : "");
-                        
-                        records.put(record);
-                    }
-                }
-            }
+            long start = System.nanoTime();
+            JSONArray records = ndefMessage != null
+                ? NdefJson.readRecords(new NdefParser(ndefMessage.toByteArray()), base64Results)
+                : new JSONArray();
+            metrics.record(TagMetrics.PARSE, start);
             
             if (parentObject != null) {
                 parentObject.put("records", records);
             } else {
                 JSObject tagData = new JSObject();
                 tagData.put("records", records);
-                notifyListeners("nfcTagDetected", tagData);
+                events.post("nfcTagDetected", tagData);
             }
         } catch (Exception e) {
             JSObject error = new JSObject();
             error.put("error", "Failed to parse NDEF message: " + e.getMessage());
             error.put("stackTrace", Log.getStackTraceString(e));
-            notifyListeners("nfcError", error);
+            events.post("nfcError", error);
             Log.e(TAG, "Error handling NDEF message", e);
         }
     }
@@ -561,7 +1159,7 @@ public class NfcPlugin extends Plugin {
             // Safely handle tag ID
             byte[] tagId = tag != null ? tag.getId() : null;
             if (tagId != null && tagId.length > 0) {
-                tagInfo.put("id", bytesToHexString(tagId));
+                tagInfo.put("id", HexCodec.encode(tagId));
             } else {
                 tagInfo.put("id", "");
             }
@@ -590,12 +1188,12 @@ public class NfcPlugin extends Plugin {
                 handleIsoDep(tag, tagInfo);
             }
 
-            notifyListeners("nfcTagDetected", tagInfo);
+            events.post("nfcTagDetected", tagInfo);
         } catch (Exception e) {
             JSObject error = new JSObject();
             error.put("error", "Failed to handle tag: " + e.getMessage());
             error.put("stackTrace", Log.getStackTraceString(e));
-            notifyListeners("nfcError", error);
+            events.post("nfcError", error);
             Log.e(TAG, "Error handling NFC tag", e);
         }
     }
@@ -603,14 +1201,14 @@ public class NfcPlugin extends Plugin {
     private void handleNdefTag(Tag tag, JSObject tagInfo) throws Exception {
         Ndef ndef = Ndef.get(tag);
         if (ndef != null) {
-            ndef.connect();
+            connect(ndef);
             try {
                 tagInfo.put("type", ndef.getType());
                 tagInfo.put("maxSize", ndef.getMaxSize());
                 tagInfo.put("isWritable", ndef.isWritable());
                 tagInfo.put("canMakeReadOnly", ndef.canMakeReadOnly());
                 
-                NdefMessage ndefMessage = ndef.getNdefMessage();
+                NdefMessage ndefMessage = readNdefMessage(ndef);
                 if (ndefMessage != null) {
                     handleNdefMessage(ndefMessage, tagInfo);
                 }
@@ -629,150 +1227,151 @@ public class NfcPlugin extends Plugin {
     private void handleMifareClassic(Tag tag, JSObject tagInfo) throws Exception {
         MifareClassic mifare = MifareClassic.get(tag);
         if (mifare != null) {
-            mifare.connect();
-            try {
-                // Read specific sectors
-                byte[] data = new byte[16];
-                boolean auth = mifare.authenticateSectorWithKeyA(0, MifareClassic.KEY_DEFAULT);
-                if (auth) {
-                    // Read block 0 of sector 0
-                    data = mifare.readBlock(0);
-                    tagInfo.put("block0", bytesToHexString(data));
-                }
-                
-                tagInfo.put("type", "MIFARE_CLASSIC");
-                tagInfo.put("size", mifare.getSize());
-                tagInfo.put("sectorCount", mifare.getSectorCount());
-                tagInfo.put("blockCount", mifare.getBlockCount());
-                tagInfo.put("maxTransceiveLength", mifare.getMaxTransceiveLength());
-            } finally {
-                mifare.close();
-            }
+            readMifareClassic(tag, AndroidTagTransport.classic(mifare, metrics, trace), tagInfo);
+        }
+    }
+
+    private void readMifareClassic(Tag tag, TagTransport.Classic mifare, JSObject result) throws Exception {
+        mifare.connect();
+        try {
+            MifareClassicDumper.Dump dump = mifareClassicDumper.dump(tag.getId(), mifare);
+
+            result.put("type", "MIFARE_CLASSIC");
+            result.put("size", mifare.getSize());
+            result.put("sectorCount", mifare.getSectorCount());
+            result.put("blockCount", mifare.getBlockCount());
+            result.put("maxTransceiveLength", mifare.getMaxTransceiveLength());
+            // One packed dump plus a sector bitmap instead of a string per block
+            result.put("data", encodeBinary(dump.data));
+            result.put("sectorStatus", encodeBinary(dump.sectorStatus));
+            result.put("sectorsRead", dump.sectorsRead);
+            result.put("authentications", dump.authentications);
+        } finally {
+            mifare.close();
         }
     }
 
     private void handleMifareUltralight(Tag tag, JSObject tagInfo) throws Exception {
         MifareUltralight ultralight = MifareUltralight.get(tag);
         if (ultralight != null) {
-            ultralight.connect();
-            try {
-                // Read all pages (typically 16 pages of 4 bytes each for Ultralight)
-                StringBuilder data = new StringBuilder();
-                for (int i = 0; i < 16; i++) {
-                    byte[] page = ultralight.readPages(i);
-                    data.append(bytesToHexString(page));
+            byte[] memory = readMifareUltralight(ultralight, tagInfo);
+            
+            // If it has NDEF, parse it out of the dump instead of reading the tag again
+            JSONObject ndefJson = null;
+            long start = System.nanoTime();
+            NdefParser parser = NdefParser.forType2Memory(memory);
+            if (parser != null) {
+                try {
+                    ndefJson = NdefJson.message(parser, base64Results);
+                    metrics.record(TagMetrics.PARSE, start);
+                } catch (IllegalArgumentException e) {
+                    Log.w(TAG, "Falling back to Ndef for the Ultralight message", e);
                 }
-                
-                tagInfo.put("type", "MIFARE_ULTRALIGHT");
-                tagInfo.put("data", data.toString());
-                tagInfo.put("size", ultralight.getMaxTransceiveLength());
-                
-                // If it has NDEF, read that too
-                Ndef ndef = Ndef.get(tag);
-                if (ndef != null) {
-                    ndef.connect();
-                    try {
-                        NdefMessage ndefMessage = ndef.getNdefMessage();
-                        if (ndefMessage != null) {
-                            tagInfo.put("ndefMessage", ndefMessageToJson(ndefMessage));
-                        }
-                    } finally {
-                        ndef.close();
+            }
+            Ndef ndef = ndefJson == null ? Ndef.get(tag) : null;
+            if (ndef != null) {
+                connect(ndef);
+                try {
+                    NdefMessage ndefMessage = readNdefMessage(ndef);
+                    if (ndefMessage != null) {
+                        long parseStart = System.nanoTime();
+                        ndefJson = NdefJson.message(new NdefParser(ndefMessage.toByteArray()), base64Results);
+                        metrics.record(TagMetrics.PARSE, parseStart);
                     }
+                } finally {
+                    ndef.close();
                 }
-                
-                notifyListeners("readSuccess", tagInfo);
-            } finally {
-                ultralight.close();
             }
+            if (ndefJson != null) {
+                tagInfo.put("ndefMessage", ndefJson);
+            }
+            
+            events.post("readSuccess", tagInfo);
+        }
+    }
+
+    private byte[] readMifareUltralight(MifareUltralight ultralight, JSObject result) throws Exception {
+        TagTransport transport = AndroidTagTransport.ultralight(ultralight, metrics, trace);
+        transport.connect();
+        try {
+            UltralightReader reader = new UltralightReader(transport, transport.getMaxTransceiveLength());
+            UltralightReader.Chip chip = reader.identify();
+            if (chip == null) {
+                // No GET_VERSION: the NAK halted the tag, so reconnect and trust the Android type
+                transport.close();
+                transport.connect();
+                chip = ultralight.getType() == MifareUltralight.TYPE_ULTRALIGHT_C
+                    ? UltralightReader.ULTRALIGHT_C
+                    : UltralightReader.ULTRALIGHT;
+            }
+            byte[] memory = reader.read(chip);
+            
+            result.put("type", "MIFARE_ULTRALIGHT");
+            result.put("chip", chip.name);
+            result.put("data", encodeBinary(memory));
+            result.put("pageCount", chip.pageCount);
+            result.put("size", chip.userMemory);
+            if (reader.getVersion() != null) {
+                result.put("version", encodeBinary(reader.getVersion()));
+            }
+            return memory;
+        } finally {
+            transport.close();
         }
     }
 
     private void handleIsoDep(Tag tag, JSObject tagInfo) throws Exception {
         IsoDep isoDep = IsoDep.get(tag);
         if (isoDep != null) {
-            isoDep.connect();
+            TagTransport transport = AndroidTagTransport.isoDep(isoDep, metrics, trace);
+            transport.connect();
             try {
                 // Example: Read card number (for some banking cards)
-                byte[] command = new byte[] {
-                    (byte)0x00, // CLA
-                    (byte)0xB2, // INS
-                    (byte)0x01, // P1
-                    (byte)0x0C, // P2
-                    (byte)0x00  // Le
-                };
-                
-                byte[] response = isoDep.transceive(command);
-                if (response != null && response.length > 2) {
-                    tagInfo.put("cardData", bytesToHexString(response));
+                byte[] cardData = new IsoDepExchange(transport).readRecord();
+                if (cardData != null) {
+                    tagInfo.put("cardData", encodeBinary(cardData));
                 }
                 
                 tagInfo.put("type", "ISO_DEP");
-                tagInfo.put("hiLayerResponse", bytesToHexString(isoDep.getHiLayerResponse()));
-                tagInfo.put("historicalBytes", bytesToHexString(isoDep.getHistoricalBytes()));
+                tagInfo.put("hiLayerResponse", encodeBinary(isoDep.getHiLayerResponse()));
+                tagInfo.put("historicalBytes", encodeBinary(isoDep.getHistoricalBytes()));
             } finally {
-                isoDep.close();
+                transport.close();
             }
         }
     }
 
-    private void writeToIsoDep(Tag tag, String text, String aid, int timeout) throws Exception {
+    private void writeToIsoDep(TagIoExecutor.TagSession<JSObject> session, Tag tag, String text, String aid, int timeout) throws Exception {
         IsoDep isoDep = IsoDep.get(tag);
         if (isoDep == null) {
             throw new Exception("Failed to create IsoDep instance");
         }
 
+        byte[] aidBytes = HexCodec.decode(aid);
+        if (aidBytes == null) {
+            throw new Exception("Invalid AID: " + aid);
+        }
+
+        TagTransport transport = AndroidTagTransport.isoDep(isoDep, metrics, trace);
         try {
-            isoDep.connect();
-            isoDep.setTimeout(timeout);
+            transport.connect();
+            transport.setTimeout(timeout);
+            IsoDepExchange exchange = new IsoDepExchange(transport);
 
-            // Convert AID string to bytes
-            byte[] aidBytes = hexStringToByteArray(aid);
-            
-            // Select Application with provided AID
-            byte[] selectAID = new byte[5 + aidBytes.length];
-            selectAID[0] = (byte)0x00; // CLA
-            selectAID[1] = (byte)0xA4; // INS (SELECT)
-            selectAID[2] = (byte)0x04; // P1
-            selectAID[3] = (byte)0x00; // P2
-            selectAID[4] = (byte)aidBytes.length; // Lc
-            System.arraycopy(aidBytes, 0, selectAID, 5, aidBytes.length);
-            
-            Log.d(TAG, "Sending SELECT AID command: " + bytesToHexString(selectAID));
-            byte[] selectResponse = isoDep.transceive(selectAID);
-            Log.d(TAG, "SELECT AID response: " + bytesToHexString(selectResponse));
-            if (!isSuccessful(selectResponse)) {
-                throw new Exception("Failed to select application with AID: " + aid);
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Sending SELECT AID command for: " + aid);
             }
+            exchange.select(aidBytes);
 
             if (text != null && !text.isEmpty()) {
-                // Write data command
                 byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
-                byte[] writeCommand = new byte[5 + textBytes.length];
-                writeCommand[0] = (byte)0x00; // CLA
-                writeCommand[1] = (byte)0xD0; // INS (WRITE)
-                writeCommand[2] = (byte)0x00; // P1
-                writeCommand[3] = (byte)0x00; // P2
-                writeCommand[4] = (byte)textBytes.length; // Lc
-                System.arraycopy(textBytes, 0, writeCommand, 5, textBytes.length);
-
-                Log.d(TAG, "Sending WRITE command: " + bytesToHexString(writeCommand));
-                byte[] writeResponse = isoDep.transceive(writeCommand);
-                Log.d(TAG, "WRITE response: " + bytesToHexString(writeResponse));
-                if (!isSuccessful(writeResponse)) {
-                    throw new Exception("Write command failed. Response: " + bytesToHexString(writeResponse));
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Sending WRITE command with " + textBytes.length + " bytes");
                 }
+                exchange.write(textBytes);
 
                 // Try to read back the data to verify
-                byte[] readCommand = new byte[] {
-                    (byte)0x00, // CLA
-                    (byte)0xD0, // INS (READ)
-                    (byte)0x01, // P1 (read mode)
-                    (byte)0x00  // P2
-                };
-                
-                byte[] readResponse = isoDep.transceive(readCommand);
-                String readData = new String(readResponse, 0, readResponse.length - 2, StandardCharsets.UTF_8);
+                String readData = exchange.read();
                 
                 JSObject result = new JSObject();
                 result.put("written", true);
@@ -781,55 +1380,28 @@ public class NfcPlugin extends Plugin {
                 result.put("bytesWritten", textBytes.length);
                 result.put("aid", aid);
                 result.put("verifiedData", readData);
-                notifyListeners("writeSuccess", result);
+                session.emit("writeSuccess", result);
             } else {
                 // Just read mode
-                byte[] readCommand = new byte[] {
-                    (byte)0x00, // CLA
-                    (byte)0xD0, // INS (READ)
-                    (byte)0x01, // P1 (read mode)
-                    (byte)0x00  // P2
-                };
-                
-                byte[] readResponse = isoDep.transceive(readCommand);
-                String readData = new String(readResponse, 0, readResponse.length - 2, StandardCharsets.UTF_8);
+                String readData = exchange.read();
                 
                 JSObject result = new JSObject();
                 result.put("type", "ISO_DEP");
                 result.put("message", "Data read successfully from ISO-DEP tag");
                 result.put("data", readData);
                 result.put("aid", aid);
-                notifyListeners("readSuccess", result);
+                session.emit("readSuccess", result);
             }
 
         } finally {
             try {
-                isoDep.close();
+                transport.close();
             } catch (Exception e) {
                 Log.w(TAG, "Error closing IsoDep connection", e);
             }
         }
     }
 
-    private boolean isSuccessful(byte[] response) {
-        if (response == null || response.length < 2) {
-            return false;
-        }
-        // Check for success response (0x90 0x00 is typical success response)
-        return response[response.length - 2] == (byte)0x90 && 
-               response[response.length - 1] == (byte)0x00;
-    }
-
-    private byte[] hexStringToByteArray(String s) {
-        int len = s.length();
-        byte[] data = new byte[len / 2];
-        for (int i = 0; i < len; i += 2) {
-            data[i / 2] = (byte) ((Character.digit(s.charAt(i), 16) << 4)
-                             + Character.digit(s.charAt(i+1), 16));
-        }
-        return data;
-    }
-
     @PluginMethod
     public void read(PluginCall call) {
         if (!hasRequiredPermissions()) {
@@ -856,24 +1428,592 @@ public class NfcPlugin extends Plugin {
             };
 
             // Store the call for later use
-            savedCallId = call.getCallbackId();
             bridge.saveCall(call);
+            synchronized (pendingOperationLock) {
+                savedCallId = call.getCallbackId();
+            }
 
             // Enable foreground dispatch
-            nfcAdapter.enableForegroundDispatch(activity, pendingIntent, readTagFilters, null);
-            notifyListeners("nfcStatus", new JSObject().put("status", "Ready to read. Please touch an NFC tag."));
+            core.startForegroundDispatch(dispatchOwner, activity, readerListener, readTagFilters);
+            events.post("nfcStatus", new JSObject().put("status", "Ready to read. Please touch an NFC tag."));
         } catch (Exception e) {
             call.reject("Failed to start NFC reading: " + e.getMessage());
         }
     }
 
+    @PluginMethod
+    public void setMifareClassicKeys(PluginCall call) {
+        JSArray keys = call.getArray("keys", new JSArray());
+        try {
+            List<byte[]> userKeys = new ArrayList<>();
+            for (int i = 0; i < keys.length(); i++) {
+                String key = keys.getString(i);
+                byte[] keyBytes = HexCodec.decode(key);
+                if (keyBytes == null || keyBytes.length != 6) {
+                    call.reject("Invalid MIFARE Classic key: " + key);
+                    return;
+                }
+                userKeys.add(keyBytes);
+            }
+            mifareClassicDumper.setUserKeys(userKeys);
+            if (call.getBoolean("clearCache", false)) {
+                mifareClassicDumper.clearKeyCache();
+            }
+            call.resolve();
+        } catch (Exception e) {
+            call.reject("Failed to set MIFARE Classic keys: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void setResultEncoding(PluginCall call) {
+        String encoding = call.getString("encoding", "hex");
+        if (!"hex".equals(encoding) && !"base64".equals(encoding)) {
+            call.reject("Unsupported encoding: " + encoding);
+            return;
+        }
+        base64Results = "base64".equals(encoding);
+        // Cached results were encoded with the previous setting
+        tagReadCache.clear();
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void configureEventFilter(PluginCall call) {
+        tagEventFilter.setWindow(call.getInt("window", (int) TagEventFilter.DEFAULT_WINDOW_MILLIS));
+        JSObject stats = new JSObject();
+        stats.put("window", tagEventFilter.getWindowMillis());
+        stats.put("tracked", tagEventFilter.tracked());
+        stats.put("suppressed", tagEventFilter.getSuppressed());
+        stats.put("statusesSuppressed", tagEventFilter.getStatusesSuppressed());
+        call.resolve(stats);
+    }
+
+    @PluginMethod
+    public void configureEvents(PluginCall call) {
+        int window = call.getInt("window", events.getWindowMillis());
+        int maxQueued = call.getInt("maxQueued", events.getCapacity());
+        if (window < 0 || window > 1000 || maxQueued < 1 || maxQueued > 10_000) {
+            call.reject("Invalid event options");
+            return;
+        }
+        events.configure(window, maxQueued);
+        JSObject stats = new JSObject();
+        stats.put("window", events.getWindowMillis());
+        stats.put("maxQueued", events.getCapacity());
+        stats.put("queued", events.queued());
+        stats.put("posted", events.getPosted());
+        stats.put("delivered", events.getDelivered());
+        stats.put("batches", events.getBatches());
+        stats.put("merged", events.getMerged());
+        stats.put("dropped", events.getDropped());
+        stats.put("unsubscribed", events.getUnsubscribed());
+        call.resolve(stats);
+    }
+
+    @PluginMethod
+    public void configureReadCache(PluginCall call) {
+        int maxEntries = call.getInt("maxEntries", TagReadCache.DEFAULT_MAX_ENTRIES);
+        long ttl = call.getInt("ttl", (int) TagReadCache.DEFAULT_TTL_MILLIS);
+        if (!call.getBoolean("enabled", true)) {
+            maxEntries = 0;
+        }
+        tagReadCache.configure(maxEntries, ttl);
+        if (call.getBoolean("clear", false)) {
+            tagReadCache.clear();
+        }
+        call.resolve(readCacheStats());
+    }
+
+    @PluginMethod
+    public void getReadCacheStats(PluginCall call) {
+        call.resolve(readCacheStats());
+    }
+
+    @PluginMethod
+    public void getMetrics(PluginCall call) {
+        JSObject stages = new JSObject();
+        for (int stage = 0; stage < TagMetrics.STAGE_NAMES.length; stage++) {
+            LatencyHistogram histogram = metrics.stage(stage);
+            JSObject latency = new JSObject();
+            latency.put("count", histogram.getCount());
+            latency.put("p50", histogram.getValueAtPercentile(50) / 1000.0);
+            latency.put("p95", histogram.getValueAtPercentile(95) / 1000.0);
+            latency.put("p99", histogram.getValueAtPercentile(99) / 1000.0);
+            latency.put("max", histogram.getMax() / 1000.0);
+            latency.put("mean", histogram.getMean() / 1000.0);
+            stages.put(TagMetrics.STAGE_NAMES[stage], latency);
+        }
+
+        JSObject result = new JSObject();
+        result.put("stages", stages);
+        result.put("timeouts", metrics.getTimeouts());
+        result.put("tagsLost", metrics.getTagsLost());
+        result.put("authFailures", metrics.getAuthFailures());
+        result.put("since", metrics.getSinceMillis());
+        if (call.getBoolean("reset", false)) {
+            metrics.reset();
+        }
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void setEmulatedApplications(PluginCall call) {
+        if (nfcAdapter == null) {
+            call.reject("NFC is not available on this device");
+            return;
+        }
+
+        JSArray list = call.getArray("applications", new JSArray());
+        AidRouter.Builder<EmulationProfile> builder = new AidRouter.Builder<>();
+        List<String> aids = new ArrayList<>();
+        boolean prefixes = false;
+        try {
+            for (int i = 0; i < list.length(); i++) {
+                JSONObject application = list.getJSONObject(i);
+                String aid = application.getString("aid").toUpperCase(Locale.ROOT);
+                String type = application.optString("type", EmulationProfile.MODE_ISO_DEP);
+                String data = application.optString("data", "");
+                boolean prefix = aid.endsWith("*");
+                String exactAid = prefix ? aid.substring(0, aid.length() - 1) : aid;
+                EmulationProfile profile;
+                switch (type) {
+                    case EmulationProfile.MODE_ISO_DEP:
+                        profile = EmulationProfile.forIsoDep(exactAid, data);
+                        break;
+                    case EmulationProfile.MODE_NDEF:
+                        if (prefix) {
+                            throw new IllegalArgumentException("Prefix AIDs are only supported for ISO_DEP applications: " + aid);
+                        }
+                        profile = EmulationProfile.forNdef(exactAid, data);
+                        break;
+                    case EmulationProfile.MODE_FILES:
+                        JSONArray fileList = application.optJSONArray("files");
+                        CardFileSystem files = fileList != null ? createFileSystem(fileList) : Iso7816Card.defaultFiles(data);
+                        profile = EmulationProfile.forFiles(exactAid, new Iso7816Card(files));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unsupported application type: " + type);
+                }
+                builder.add(aid, profile);
+                aids.add(aid);
+                prefixes |= prefix;
+            }
+        } catch (JSONException | IllegalArgumentException e) {
+            call.reject("Invalid emulated applications: " + e.getMessage());
+            return;
+        }
+        AidRouter<EmulationProfile> applications = builder.build();
+
+        // Only start routing once Android has agreed to send us these AIDs
+        CardEmulation cardEmulation = CardEmulation.getInstance(nfcAdapter);
+        ComponentName service = new ComponentName(getContext(), NfcHostCardEmulatorService.class);
+        if (prefixes && !cardEmulation.supportsAidPrefixRegistration()) {
+            call.reject("This device does not support prefix AIDs");
+            return;
+        }
+        if (aids.isEmpty()) {
+            cardEmulation.removeAidsForService(service, CardEmulation.CATEGORY_OTHER);
+        } else if (!cardEmulation.registerAidsForService(service, CardEmulation.CATEGORY_OTHER, aids)) {
+            call.reject("Failed to register AIDs with the NFC service");
+            return;
+        }
+        NfcHostCardEmulatorService.setApplications(getContext(), applications);
+
+        JSArray registeredAids = new JSArray();
+        for (int i = 0; i < applications.size(); i++) {
+            registeredAids.put(applications.getAid(i));
+        }
+        call.resolve(new JSObject().put("aids", registeredAids));
+    }
+
+    @PluginMethod
+    public void readEmulatedFile(PluginCall call) {
+        String aid = call.getString("aid", "");
+        String fileId = call.getString("file", "");
+        byte[] aidBytes = HexCodec.decode(aid);
+        if (aidBytes == null || fileId.length() != 4 || !HexCodec.isValid(fileId)) {
+            call.reject("Invalid AID or file identifier");
+            return;
+        }
+        AidRouter<EmulationProfile> applications = NfcHostCardEmulatorService.getApplications();
+        int index = applications.find(aidBytes, 0, aidBytes.length);
+        Iso7816Card card = index >= 0 ? applications.get(index).getCard() : null;
+        if (card == null) {
+            call.reject("No file system application with AID: " + aid);
+            return;
+        }
+
+        CardFileSystem files = card.getFiles();
+        JSObject result = new JSObject();
+        synchronized (files) {
+            int file = findFile(files, Integer.parseInt(fileId, 16));
+            if (file == CardFileSystem.NONE || files.getType(file) == CardFileSystem.TYPE_DF) {
+                call.reject("No such elementary file: " + fileId);
+                return;
+            }
+            if (files.getType(file) == CardFileSystem.TYPE_BINARY) {
+                byte[] data = new byte[files.getSize(file)];
+                files.read(file, 0, data, 0, data.length);
+                result.put("data", encodeBinary(data));
+            } else {
+                JSArray records = new JSArray();
+                for (int record = 1; record <= files.getRecordCount(file); record++) {
+                    byte[] data = new byte[files.getRecordLength(file, record)];
+                    files.readRecord(file, record, data, 0);
+                    records.put(encodeBinary(data));
+                }
+                result.put("records", records);
+            }
+        }
+        call.resolve(result);
+    }
+
+    /** Builds an emulated file system from its JS description; DFs must come before their files. */
+    private static CardFileSystem createFileSystem(JSONArray fileList) throws JSONException {
+        CardFileSystem.Builder builder = new CardFileSystem.Builder();
+        Map<Integer, Integer> directories = new HashMap<>();
+        directories.put(CardFileSystem.MF_ID, CardFileSystem.MF);
+        List<Integer> numbers = new ArrayList<>();
+        long storage = 0;
+        for (int i = 0; i < fileList.length(); i++) {
+            JSONObject file = fileList.getJSONObject(i);
+            int fileId = parseFileId(file.getString("id"));
+            Integer parent = directories.get(parseFileId(file.optString("parent", "3F00")));
+            if (parent == null) {
+                throw new IllegalArgumentException("Unknown parent DF for file " + file.getString("id"));
+            }
+            int capacity = file.optInt("capacity", Iso7816Card.DEFAULT_CAPACITY);
+            int sfi = file.optInt("sfi", 0);
+            String kind = file.optString("kind", "binary");
+            switch (kind) {
+                case "df":
+                    directories.put(fileId, builder.addDirectory(parent, fileId));
+                    numbers.add(CardFileSystem.NONE);
+                    continue;
+                case "binary":
+                    numbers.add(builder.addBinary(parent, fileId, sfi, capacity));
+                    break;
+                case "records":
+                    int maxRecords = file.optInt("maxRecords", Iso7816Card.DEFAULT_MAX_RECORDS);
+                    numbers.add(builder.addRecords(parent, fileId, sfi, maxRecords, capacity));
+                    // The record offset index is sized up front too
+                    storage += 4L * maxRecords;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported file kind: " + kind);
+            }
+            storage += capacity;
+            if (storage > CardFileSystem.MAX_STORAGE_BYTES) {
+                throw new IllegalArgumentException("Files need more than " + CardFileSystem.MAX_STORAGE_BYTES + " bytes");
+            }
+        }
+
+        CardFileSystem files = builder.build();
+        for (int i = 0; i < fileList.length(); i++) {
+            JSONObject file = fileList.getJSONObject(i);
+            int number = numbers.get(i);
+            String encoding = file.optString("encoding", "utf8");
+            if (number == CardFileSystem.NONE) {
+                continue;
+            }
+            if (files.getType(number) == CardFileSystem.TYPE_BINARY) {
+                byte[] data = decodePayload(file.optString("data", ""), encoding);
+                if (!files.write(number, 0, data, 0, data.length)) {
+                    throw new IllegalArgumentException("Data does not fit file " + file.getString("id"));
+                }
+            } else {
+                JSONArray records = file.optJSONArray("records");
+                for (int record = 0; records != null && record < records.length(); record++) {
+                    byte[] data = decodePayload(records.getString(record), encoding);
+                    if (!files.appendRecord(number, data, 0, data.length)) {
+                        throw new IllegalArgumentException("Records do not fit file " + file.getString("id"));
+                    }
+                }
+            }
+        }
+        return files;
+    }
+
+    private static int parseFileId(String fileId) {
+        if (fileId.length() != 4 || !HexCodec.isValid(fileId)) {
+            throw new IllegalArgumentException("Invalid file identifier: " + fileId);
+        }
+        return Integer.parseInt(fileId, 16);
+    }
+
+    /** First file with this identifier, searching the tree in the order files were added. */
+    private static int findFile(CardFileSystem files, int fileId) {
+        for (int file = 0; file < files.getCount(); file++) {
+            if (files.getFileId(file) == fileId) {
+                return file;
+            }
+        }
+        return CardFileSystem.NONE;
+    }
+
+    @PluginMethod
+    public void configureTrace(PluginCall call) {
+        int sampleEvery = call.getInt("sampleEvery", trace.getSampleEvery());
+        int capacity = call.getInt("capacity", trace.getCapacity());
+        int maxBytes = call.getInt("maxBytes", trace.getMaxBytes());
+        // The ring is allocated up front, so keep it to a few MB
+        if (sampleEvery < 0 || capacity < 1 || maxBytes < 0 || (long) capacity * maxBytes > ApduTrace.MAX_BUFFER_BYTES) {
+            call.reject("Invalid trace options");
+            return;
+        }
+        trace.configure(sampleEvery, capacity, maxBytes);
+        if (call.getBoolean("clear", false)) {
+            trace.clear();
+        }
+        call.resolve(traceStats());
+    }
+
+    @PluginMethod
+    public void dumpTrace(PluginCall call) {
+        // Trace times are from nanoTime; shift them onto the wall clock once for the whole dump
+        double epochOffsetMillis = System.currentTimeMillis() - System.nanoTime() / 1_000_000.0;
+        JSArray entries = new JSArray();
+        JSObject result = traceStats();
+        trace.dump((timeNanos, direction, length, buffer, offset, captured) -> {
+            JSObject entry = new JSObject();
+            entry.put("time", epochOffsetMillis + timeNanos / 1_000_000.0);
+            entry.put("source", direction >= ApduTrace.HCE_COMMAND ? "hce" : "reader");
+            entry.put("direction", (direction & 1) == 0 ? "command" : "response");
+            entry.put("length", length);
+            entry.put("data", encodeBinary(buffer, offset, captured));
+            entry.put("truncated", captured < length);
+            entries.put(entry);
+        });
+        result.put("entries", entries);
+        if (call.getBoolean("clear", false)) {
+            trace.clear();
+        }
+        call.resolve(result);
+    }
+
+    private JSObject traceStats() {
+        JSObject stats = new JSObject();
+        stats.put("sampleEvery", trace.getSampleEvery());
+        stats.put("capacity", trace.getCapacity());
+        stats.put("maxBytes", trace.getMaxBytes());
+        stats.put("size", trace.size());
+        stats.put("overwritten", trace.getOverwritten());
+        return stats;
+    }
+
+    @PluginMethod
+    public void configureJournal(PluginCall call) {
+        boolean enabled = call.getBoolean("enabled", journal != null);
+        int segmentSize = call.getInt("segmentSize", TagJournal.DEFAULT_SEGMENT_BYTES);
+        int maxSegments = call.getInt("maxSegments", TagJournal.DEFAULT_MAX_SEGMENTS);
+        if (segmentSize < 4096 || segmentSize > 64 << 20 || maxSegments < 1 || maxSegments > 1024) {
+            call.reject("Invalid journal options");
+            return;
+        }
+        try {
+            // Reopening picks up the new segment options; records already on disk are kept
+            closeJournal();
+            if (enabled) {
+                journal = new TagJournal(new File(getContext().getNoBackupFilesDir(), "tag-journal"), segmentSize, maxSegments);
+                if (call.getBoolean("clear", false)) {
+                    journal.clear();
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            call.reject("Failed to open the tag journal: " + e.getMessage());
+            return;
+        }
+        call.resolve(journalStats());
+    }
+
+    @PluginMethod
+    public void queryJournal(PluginCall call) {
+        TagJournal current = journal;
+        if (current == null) {
+            call.reject("The tag journal is not enabled");
+            return;
+        }
+        long after = call.getDouble("after", -1.0).longValue();
+        long from = call.getDouble("from", (double) Long.MIN_VALUE).longValue();
+        long to = call.getDouble("to", (double) Long.MAX_VALUE).longValue();
+        String uid = call.getString("uid");
+        int limit = Math.max(1, Math.min(call.getInt("limit", 100), 1000));
+        byte[] uidBytes = uid != null ? HexCodec.decode(uid) : null;
+        if (uid != null && uidBytes == null) {
+            call.reject("Invalid UID: " + uid);
+            return;
+        }
+
+        TagJournal.Page page;
+        try {
+            page = current.query(after, from, to, uidBytes, limit);
+        } catch (IOException | InterruptedException e) {
+            call.reject("Failed to query the tag journal: " + e.getMessage());
+            return;
+        }
+        JSArray entries = new JSArray();
+        for (TagJournal.Entry entry : page.entries) {
+            JSObject item = new JSObject();
+            item.put("sequence", entry.sequence);
+            item.put("time", entry.timeMillis);
+            item.put("kind", entry.kind == TagJournal.WRITE ? "write" : "read");
+            item.put("id", HexCodec.encode(entry.uid));
+            item.put("type", entry.tech);
+            item.put("digest", encodeBinary(entry.digest));
+            item.put("latencyMs", entry.latencyMicros / 1000.0);
+            entries.put(item);
+        }
+        JSObject result = new JSObject();
+        result.put("encoding", base64Results ? "base64" : "hex");
+        result.put("entries", entries);
+        if (page.next >= 0) {
+            result.put("next", page.next);
+        }
+        call.resolve(result);
+    }
+
+    private JSObject journalStats() {
+        TagJournal current = journal;
+        JSObject stats = new JSObject();
+        stats.put("enabled", current != null);
+        if (current != null) {
+            stats.put("records", current.getRecordCount());
+            stats.put("firstSequence", current.getFirstSequence());
+            stats.put("segments", current.getSegmentCount());
+            stats.put("batches", current.getBatches());
+            stats.put("writeErrors", current.getWriteErrors());
+        }
+        return stats;
+    }
+
+    private void closeJournal() {
+        TagJournal current = journal;
+        journal = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Times event delivery, which includes serializing the payload for the bridge. */
+    @Override
+    protected void notifyListeners(String eventName, JSObject data, boolean retainUntilConsumed) {
+        long start = System.nanoTime();
+        try {
+            super.notifyListeners(eventName, data, retainUntilConsumed);
+        } finally {
+            metrics.record(TagMetrics.NOTIFY, start);
+        }
+    }
+
+    private JSObject readCacheStats() {
+        JSObject stats = new JSObject();
+        stats.put("enabled", tagReadCache.isEnabled());
+        stats.put("size", tagReadCache.size());
+        stats.put("hits", tagReadCache.getHits());
+        stats.put("misses", tagReadCache.getMisses());
+        stats.put("stale", tagReadCache.getStale());
+        stats.put("expired", tagReadCache.getExpired());
+        stats.put("evictions", tagReadCache.getEvictions());
+        stats.put("invalidations", tagReadCache.getInvalidations());
+        return stats;
+    }
+
+    /** Encodes raw tag bytes for JS in the selected result encoding. */
+    private String encodeBinary(byte[] bytes) {
+        if (base64Results) {
+            return bytes != null ? Base64Codec.encode(bytes) : "";
+        }
+        return HexCodec.encode(bytes);
+    }
+
+    private String encodeBinary(byte[] bytes, int offset, int length) {
+        return base64Results ? Base64Codec.encode(bytes, offset, length) : HexCodec.encode(bytes, offset, length, false);
+    }
+
     private JSObject readTag(Tag tag) throws Exception {
+        long start = System.nanoTime();
+        byte[] fingerprint = tagReadCache.isEnabled() ? readFingerprint(tag) : null;
+        if (fingerprint != null) {
+            JSObject cached = tagReadCache.get(tag.getId(), fingerprint, System.nanoTime());
+            if (cached != null) {
+                // Callers add fields such as the timestamp, so hand out a copy
+                String content = cached.toString();
+                journalTag(TagJournal.READ, tag, content.getBytes(StandardCharsets.UTF_8), start);
+                JSObject result = new JSObject(content);
+                result.put("fromCache", true);
+                return result;
+            }
+        }
+
+        JSObject result = readTagUncached(tag);
+        String content = result.toString();
+        journalTag(TagJournal.READ, tag, content.getBytes(StandardCharsets.UTF_8), start);
+        if (fingerprint != null) {
+            tagReadCache.put(tag.getId(), fingerprint, new JSObject(content), System.nanoTime());
+        }
+        return result;
+    }
+
+    /**
+     * Journals a completed read or write when the journal is on. Reads are
+     * digested as their result, so a cached read digests like the full one.
+     */
+    private void journalTag(int kind, Tag tag, byte[] payload, long startNanos) {
+        TagJournal current = journal;
+        if (current != null) {
+            byte[] uid = tag.getId();
+            current.append(kind, System.currentTimeMillis(), uid != null ? uid : new byte[0],
+                determineTagType(tag.getTechList()), payload, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Reads the first four data pages of a Type 2 tag (the NDEF TLV header and
+     * the start of the message) with a single READ. Returns null for tags that
+     * have no cheap fingerprint, which are then always read in full. MIFARE
+     * Classic is excluded because an unauthenticated READ would halt it.
+     */
+    private byte[] readFingerprint(Tag tag) {
+        byte[] uid = tag.getId();
+        if (uid == null || uid.length == 0 || MifareClassic.get(tag) != null) {
+            return null;
+        }
+        Ndef ndef = Ndef.get(tag);
+        boolean type2 = MifareUltralight.get(tag) != null
+            || (ndef != null && Ndef.NFC_FORUM_TYPE_2.equals(ndef.getType()));
+        NfcA nfcA = type2 ? NfcA.get(tag) : null;
+        if (nfcA == null) {
+            return null;
+        }
+        TagTransport transport = AndroidTagTransport.nfcA(nfcA, metrics, trace);
+        try {
+            transport.connect();
+            return new UltralightReader(transport, transport.getMaxTransceiveLength()).readFingerprint();
+        } catch (IOException e) {
+            Log.d(TAG, "No read cache fingerprint: " + e.getMessage());
+            return null;
+        } finally {
+            try {
+                transport.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing NfcA connection", e);
+            }
+        }
+    }
+
+    private JSObject readTagUncached(Tag tag) throws Exception {
         JSObject result = new JSObject();
+        result.put("encoding", base64Results ? "base64" : "hex");
         
         // Get basic tag info
         byte[] tagId = tag != null ? tag.getId() : null;
         if (tagId != null && tagId.length > 0) {
-            result.put("id", bytesToHexString(tagId));
+            result.put("id", HexCodec.encode(tagId));
         }
         
         // Get tech types
@@ -888,46 +2028,56 @@ public class NfcPlugin extends Plugin {
         // Try to read NDEF data first
         Ndef ndef = Ndef.get(tag);
         if (ndef != null) {
-            ndef.connect();
-            try {
-                result.put("type", "NDEF");
-                result.put("maxSize", ndef.getMaxSize());
-                result.put("isWritable", ndef.isWritable());
-                
-                NdefMessage ndefMessage = ndef.getNdefMessage();
-                if (ndefMessage != null) {
-                    handleNdefMessage(ndefMessage, result);
+            result.put("type", "NDEF");
+            result.put("maxSize", ndef.getMaxSize());
+            result.put("isWritable", ndef.isWritable());
+
+            // Another plugin may already have read this discovery; either way the tag is read once
+            NdefMessage ndefMessage = core.readNdefMessage(tag, () -> {
+                connect(ndef);
+                try {
+                    return readNdefMessage(ndef);
+                } finally {
+                    ndef.close();
                 }
-            } finally {
-                ndef.close();
+            });
+            if (ndefMessage != null) {
+                handleNdefMessage(ndefMessage, result);
             }
             return result;
         }
 
+        // MIFARE Classic without NDEF: dump every sector the key dictionary opens
+        MifareClassic mifare = MifareClassic.get(tag);
+        if (mifare != null) {
+            readMifareClassic(tag, AndroidTagTransport.classic(mifare, metrics, trace), result);
+            return result;
+        }
+
+        // Ultralight / NTAG without NDEF: read the whole memory
+        MifareUltralight ultralight = MifareUltralight.get(tag);
+        if (ultralight != null) {
+            readMifareUltralight(ultralight, result);
+            return result;
+        }
+
         // If not NDEF, try ISO-DEP
         IsoDep isoDep = IsoDep.get(tag);
         if (isoDep != null) {
-            isoDep.connect();
+            TagTransport transport = AndroidTagTransport.isoDep(isoDep, metrics, trace);
+            transport.connect();
             try {
                 result.put("type", "ISO_DEP");
-                result.put("hiLayerResponse", bytesToHexString(isoDep.getHiLayerResponse()));
-                result.put("historicalBytes", bytesToHexString(isoDep.getHistoricalBytes()));
-                
-                // Try to read using standard READ command
-                byte[] readCommand = new byte[] {
-                    (byte)0x00, // CLA
-                    (byte)0xD0, // INS (READ)
-                    (byte)0x01, // P1 (read mode)
-                    (byte)0x00  // P2
-                };
+                result.put("hiLayerResponse", encodeBinary(isoDep.getHiLayerResponse()));
+                result.put("historicalBytes", encodeBinary(isoDep.getHistoricalBytes()));
                 
-                byte[] response = isoDep.transceive(readCommand);
-                if (response != null && response.length > 2) {
-                    String data = new String(response, 0, response.length - 2, StandardCharsets.UTF_8);
+                // Try to read using standard READ command, draining 61xx continuations
+                String data = new IsoDepExchange(transport).read();
+                if (!data.isEmpty()) {
                     result.put("data", data);
                 }
             } finally {
-                isoDep.close();
+                transport.close();
             }
             return result;
         }
@@ -947,8 +2097,7 @@ public class NfcPlugin extends Plugin {
         String id = originalData.getString("id", "");
         String data = originalData.getString("data", "");
         
-        NfcHostCardEmulatorService.setEmulationMode("MIFARE_CLASSIC");
-        NfcHostCardEmulatorService.setCardData(id, data);
+        NfcHostCardEmulatorService.setProfile(getContext(), EmulationProfile.forMifareClassic(id, data));
     }
 
     private void emulateIsoDep(JSObject originalData) {
@@ -956,17 +2105,14 @@ public class NfcPlugin extends Plugin {
         String aid = originalData.getString("aid", "F0010203040506");
         String data = originalData.getString("data", "");
         
-        NfcHostCardEmulatorService.setEmulationMode("ISO_DEP");
-        NfcHostCardEmulatorService.setAID(aid);
-        NfcHostCardEmulatorService.setCardData(null, data);
+        NfcHostCardEmulatorService.setProfile(getContext(), EmulationProfile.forIsoDep(aid, data));
     }
 
     private void emulateNdef(JSObject originalData) {
         // Set up NDEF emulation
         String data = originalData.getString("data", "");
         
-        NfcHostCardEmulatorService.setEmulationMode("NDEF");
-        NfcHostCardEmulatorService.setCardData(null, data);
+        NfcHostCardEmulatorService.setProfile(getContext(), EmulationProfile.forNdef(data));
     }
 
     // Add emulation support for Ultralight
@@ -974,59 +2120,6 @@ public class NfcPlugin extends Plugin {
         String data = originalData.getString("data", "");
         String ndefMessage = originalData.getString("ndefMessage", "");
         
-        NfcHostCardEmulatorService.setEmulationMode("MIFARE_ULTRALIGHT");
-        NfcHostCardEmulatorService.setCardData(null, data);
-        if (!ndefMessage.isEmpty()) {
-            NfcHostCardEmulatorService.setNdefMessage(ndefMessage);
-        }
-    }
-
-    private JSObject ndefMessageToJson(NdefMessage ndefMessage) {
-        JSObject messageJson = new JSObject();
-        JSArray recordsArray = new JSArray();
-        
-        for (NdefRecord record : ndefMessage.getRecords()) {
-            JSObject recordJson = new JSObject();
-            
-            // Get TNF
-            recordJson.put("tnf", record.getTnf());
-            
-            // Get type
-            String type = new String(record.getType(), StandardCharsets.UTF_8);
-            recordJson.put("type", type);
-            
-            // Get identifier
-            byte[] id = record.getId();
-            if (id.length > 0) {
-                recordJson.put("id", bytesToHexString(id));
-            }
-            
-            // Get payload
-            byte[] payload = record.getPayload();
-            if (payload.length > 0) {
-                // For Text records, skip language code length byte
-                if (type.equals("T")) {
-                    int languageCodeLength = payload[0] & 0x3F;
-                    String textContent = new String(payload, languageCodeLength + 1, 
-                        payload.length - languageCodeLength - 1, StandardCharsets.UTF_8);
-                    recordJson.put("payload", textContent);
-                } else {
-                    recordJson.put("payload", bytesToHexString(payload));
-                }
-            }
-            
-            recordsArray.put(recordJson);
-        }
-        
-        messageJson.put("records", recordsArray);
-        return messageJson;
-    }
-
-    private String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02x", b));
-        }
-        return sb.toString();
+        NfcHostCardEmulatorService.setProfile(getContext(), EmulationProfile.forMifareUltralight(data, ndefMessage));
     }
 }
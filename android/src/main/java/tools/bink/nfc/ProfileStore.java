@@ -0,0 +1,271 @@
+package tools.bink.nfc;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * What the HCE service emulates, kept in a file so that it outlives the process.
+ *
+ * Android may kill the app between taps and bind the HCE service again in a
+ * fresh process when a reader shows up; the service then loads the last
+ * emulation from here in {@code onCreate}, before the WebView or the plugin
+ * exist. The file is a compact big-endian binary image: a header, the
+ * default profile, then each routed application under its AID. Strings are
+ * length-prefixed UTF-8 and file system contents are stored as raw bytes in
+ * file order, so loading maps the file and copies fields straight out of
+ * it in a single pass, with no text parsing.
+ *
+ * Saves go to a temporary file that is synced and renamed over the old one,
+ * so a process killed mid-save leaves the previous image intact. Every count
+ * and length is checked against what is left of the file (and the file
+ * system's limits) before anything is allocated for it, so a damaged file
+ * fails to load instead of exhausting memory.
+ */
+final class ProfileStore {
+
+    static final String FILE_NAME = "bink-nfc-profiles.bin";
+
+    private static final int MAGIC = 0x424E4B50; // "BNKP"
+    private static final int VERSION = 1;
+    // File ID, parent, type, SFI, capacity and record limit
+    private static final int FILE_HEADER_BYTES = 16;
+
+    private final File file;
+
+    ProfileStore(File file) {
+        this.file = file;
+    }
+
+    /** A loaded image: the default profile and the routed applications. */
+    static final class Snapshot {
+        final EmulationProfile profile;
+        final AidRouter<EmulationProfile> applications;
+
+        Snapshot(EmulationProfile profile, AidRouter<EmulationProfile> applications) {
+            this.profile = profile;
+            this.applications = applications;
+        }
+    }
+
+    /**
+     * Replaces the saved image. File system contents are copied under the
+     * card's lock, so a save can run while readers are updating them.
+     */
+    synchronized void save(EmulationProfile profile, AidRouter<EmulationProfile> applications) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(applications.size());
+            writeProfile(out, profile);
+            for (int i = 0; i < applications.size(); i++) {
+                writeString(out, applications.getAid(i));
+                writeProfile(out, applications.get(i));
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /**
+     * Loads the saved image, or returns null when nothing was ever saved.
+     *
+     * @throws IOException when the file cannot be read or is not a valid image
+     */
+    Snapshot load() throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = input.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+                throw new IOException("Not a profile store: " + file);
+            }
+            int count = buffer.getShort() & 0xFFFF;
+            EmulationProfile profile = readProfile(buffer);
+            AidRouter.Builder<EmulationProfile> applications = new AidRouter.Builder<>();
+            for (int i = 0; i < count; i++) {
+                String aid = require(readString(buffer), "application AID");
+                applications.add(aid, readProfile(buffer));
+            }
+            return new Snapshot(profile, applications.build());
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupt profile store: " + file, e);
+        }
+    }
+
+    private static void writeProfile(DataOutputStream out, EmulationProfile profile) throws IOException {
+        writeString(out, profile.getMode());
+        writeString(out, profile.getCardId());
+        writeString(out, profile.getData());
+        writeString(out, profile.getAid());
+        writeString(out, profile.getNdefMessage());
+        Iso7816Card card = profile.getCard();
+        if (card != null) {
+            CardFileSystem files = card.getFiles();
+            synchronized (files) {
+                writeFiles(out, files);
+            }
+        }
+    }
+
+    private static EmulationProfile readProfile(ByteBuffer in) {
+        String mode = require(readString(in), "emulation mode");
+        String cardId = readString(in);
+        String data = readString(in);
+        String aid = require(readString(in), "profile AID");
+        String ndefMessage = readString(in);
+        Iso7816Card card = EmulationProfile.MODE_FILES.equals(mode) ? new Iso7816Card(readFiles(in)) : null;
+        return EmulationProfile.restore(mode, cardId, data, aid, ndefMessage, card);
+    }
+
+    // The tree in file order (the master file is implied), then each EF's contents
+    private static void writeFiles(DataOutputStream out, CardFileSystem files) throws IOException {
+        int count = files.getCount();
+        out.writeInt(count - 1);
+        for (int file = 1; file < count; file++) {
+            out.writeShort(files.getFileId(file));
+            out.writeInt(files.getParent(file));
+            out.writeByte(files.getType(file));
+            out.writeByte(files.getShortFileId(file));
+            out.writeInt(files.getCapacity(file));
+            out.writeInt(files.getMaxRecords(file));
+        }
+        byte[] scratch = new byte[0];
+        for (int file = 1; file < count; file++) {
+            int type = files.getType(file);
+            if (type == CardFileSystem.TYPE_DF) {
+                continue;
+            }
+            if (scratch.length < files.getCapacity(file)) {
+                scratch = new byte[files.getCapacity(file)];
+            }
+            if (type == CardFileSystem.TYPE_BINARY) {
+                int size = files.read(file, 0, scratch, 0, scratch.length);
+                out.writeInt(size);
+                out.write(scratch, 0, size);
+            } else {
+                int records = files.getRecordCount(file);
+                out.writeInt(records);
+                for (int record = 1; record <= records; record++) {
+                    int length = files.getRecordLength(file, record);
+                    files.readRecord(file, record, scratch, 0);
+                    out.writeInt(length);
+                    out.write(scratch, 0, length);
+                }
+            }
+        }
+    }
+
+    // Reserved storage is bounded as for file systems created from JS
+    private static CardFileSystem readFiles(ByteBuffer in) {
+        int count = checkLength(in.getInt(), in.remaining() / FILE_HEADER_BYTES) + 1;
+        CardFileSystem.Builder builder = new CardFileSystem.Builder();
+        long storage = 0;
+        for (int file = 1; file < count; file++) {
+            int fileId = in.getShort() & 0xFFFF;
+            int parent = in.getInt();
+            int type = in.get();
+            int sfi = in.get();
+            int capacity = in.getInt();
+            int maxRecords = in.getInt();
+            if (type == CardFileSystem.TYPE_DF) {
+                builder.addDirectory(parent, fileId);
+                continue;
+            }
+            if (type == CardFileSystem.TYPE_BINARY) {
+                builder.addBinary(parent, fileId, sfi, capacity);
+            } else {
+                builder.addRecords(parent, fileId, sfi, maxRecords, capacity);
+                storage += 4L * maxRecords;
+            }
+            storage += capacity;
+            if (storage > CardFileSystem.MAX_STORAGE_BYTES) {
+                throw new IllegalArgumentException("Files need more than " + CardFileSystem.MAX_STORAGE_BYTES + " bytes");
+            }
+        }
+        CardFileSystem files = builder.build();
+
+        byte[] scratch = new byte[0];
+        for (int file = 1; file < count; file++) {
+            int type = files.getType(file);
+            if (type == CardFileSystem.TYPE_DF) {
+                continue;
+            }
+            if (type == CardFileSystem.TYPE_BINARY) {
+                int size = checkLength(in.getInt(), Math.min(files.getCapacity(file), in.remaining()));
+                scratch = reserve(scratch, size);
+                in.get(scratch, 0, size);
+                if (!files.write(file, 0, scratch, 0, size)) {
+                    throw new IllegalArgumentException("Data does not fit its file");
+                }
+                continue;
+            }
+            int entries = checkLength(in.getInt(), files.getMaxRecords(file));
+            for (int record = 0; record < entries; record++) {
+                int length = checkLength(in.getInt(), Math.min(files.getCapacity(file), in.remaining()));
+                scratch = reserve(scratch, length);
+                in.get(scratch, 0, length);
+                if (!files.appendRecord(file, scratch, 0, length)) {
+                    throw new IllegalArgumentException("Record does not fit its file");
+                }
+            }
+        }
+        files.takeModified();
+        return files;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[checkLength(length, in.remaining())];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String require(String value, String field) {
+        if (value == null) {
+            throw new IllegalArgumentException("Missing " + field);
+        }
+        return value;
+    }
+
+    // A count or length read from the file, which must be within 0..max
+    private static int checkLength(int length, int max) {
+        if (length < 0 || length > max) {
+            throw new IllegalArgumentException("Invalid length " + length + ", at most " + max);
+        }
+        return length;
+    }
+
+    private static byte[] reserve(byte[] scratch, int length) {
+        return scratch.length < length ? new byte[length] : scratch;
+    }
+}
@@ -0,0 +1,173 @@
+package tools.bink.nfc;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * State of a batch write: which message the next tag gets, and the counters.
+ *
+ * Messages are encoded before the tag arrives. A fixed message is encoded once
+ * and reused for every tag, a message list is encoded in full when the batch
+ * starts (so a bad entry fails the start rather than a tag), and a template
+ * with a {@code {serial}} placeholder has the next serial's message encoded as
+ * soon as the previous one is written. A failed write keeps the message for
+ * the next tag, and a tag that was already written in this batch is not given
+ * a second message.
+ *
+ * @param <M> encoded message type
+ */
+final class ProvisioningBatch<M> {
+
+    interface Encoder<M> {
+        M encode(String text) throws Exception;
+    }
+
+    static final String SERIAL_PLACEHOLDER = "{serial}";
+
+    private final Encoder<M> encoder;
+    private final String template;
+    private final List<M> messages;
+    private final List<String> texts;
+    private final long startSerial;
+    private final int serialWidth;
+    private final int count;
+    private final long startedAtNanos;
+    private final Set<String> writtenTags = new HashSet<>();
+
+    private int index;
+    private M next;
+    private String nextText;
+
+    private int written;
+    private int failed;
+    private int skipped;
+
+    /** A batch that writes the same message, or {@code template} with serials filled in, to {@code count} tags (0 for no limit). */
+    static <M> ProvisioningBatch<M> forTemplate(String template, long startSerial, int serialWidth, int count,
+                                                Encoder<M> encoder, long startedAtNanos) throws Exception {
+        return new ProvisioningBatch<>(encoder, template, null, startSerial, serialWidth, count, startedAtNanos);
+    }
+
+    /** A batch that writes each message once, in order. */
+    static <M> ProvisioningBatch<M> forMessages(List<String> texts, Encoder<M> encoder, long startedAtNanos) throws Exception {
+        if (texts.isEmpty()) {
+            throw new IllegalArgumentException("Message list is empty");
+        }
+        return new ProvisioningBatch<>(encoder, null, texts, 0, 0, texts.size(), startedAtNanos);
+    }
+
+    private ProvisioningBatch(Encoder<M> encoder, String template, List<String> texts, long startSerial,
+                              int serialWidth, int count, long startedAtNanos) throws Exception {
+        this.encoder = encoder;
+        this.template = template;
+        this.startSerial = startSerial;
+        this.serialWidth = Math.max(0, serialWidth);
+        this.count = Math.max(0, count);
+        this.startedAtNanos = startedAtNanos;
+        if (texts != null) {
+            this.texts = new ArrayList<>(texts);
+            this.messages = new ArrayList<>(texts.size());
+            for (String text : this.texts) {
+                messages.add(encoder.encode(text));
+            }
+        } else {
+            this.texts = null;
+            this.messages = null;
+        }
+        prepare();
+    }
+
+    synchronized boolean isComplete() {
+        return count > 0 && index >= count;
+    }
+
+    /** The message for the next tag, or null once the batch is complete. */
+    synchronized M next() {
+        return next;
+    }
+
+    synchronized String nextText() {
+        return nextText;
+    }
+
+    /** Zero-based position of the next message in the batch. */
+    synchronized int nextIndex() {
+        return index;
+    }
+
+    /** Returns false, and counts a skip, for a tag that already got a message from this batch. */
+    synchronized boolean claim(String tagId) {
+        if (tagId != null && writtenTags.contains(tagId)) {
+            skipped++;
+            return false;
+        }
+        return true;
+    }
+
+    /** Moves on to the next message after a successful write and encodes it. */
+    synchronized void recordSuccess(String tagId) throws Exception {
+        written++;
+        if (tagId != null) {
+            writtenTags.add(tagId);
+        }
+        index++;
+        prepare();
+    }
+
+    synchronized void recordFailure() {
+        failed++;
+    }
+
+    synchronized int getWritten() {
+        return written;
+    }
+
+    synchronized int getFailed() {
+        return failed;
+    }
+
+    synchronized int getSkipped() {
+        return skipped;
+    }
+
+    /** 0 when the batch has no limit. */
+    int getCount() {
+        return count;
+    }
+
+    synchronized double getTagsPerMinute(long nowNanos) {
+        long elapsed = nowNanos - startedAtNanos;
+        return elapsed > 0 ? written * 60e9 / elapsed : 0;
+    }
+
+    private void prepare() throws Exception {
+        if (isComplete()) {
+            next = null;
+            nextText = null;
+        } else if (messages != null) {
+            next = messages.get(index);
+            nextText = texts.get(index);
+        } else if (template.contains(SERIAL_PLACEHOLDER)) {
+            nextText = template.replace(SERIAL_PLACEHOLDER, serial(startSerial + index));
+            next = encoder.encode(nextText);
+        } else if (next == null) {
+            // Fixed message: encoded once for the whole batch
+            nextText = template;
+            next = encoder.encode(template);
+        }
+    }
+
+    private String serial(long value) {
+        String digits = Long.toString(value);
+        if (digits.length() >= serialWidth) {
+            return digits;
+        }
+        StringBuilder padded = new StringBuilder(serialWidth);
+        for (int i = digits.length(); i < serialWidth; i++) {
+            padded.append('0');
+        }
+        return padded.append(digits).toString();
+    }
+}
@@ -0,0 +1,168 @@
+package tools.bink.nfc;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bookkeeping for a continuous reader-mode session.
+ *
+ * Tag results are queued in a bounded buffer between the thread that reads the
+ * tag and the one that hands results to JS. The first result offered to an
+ * idle queue schedules one drain on the consumer's scheduler, and that drain
+ * delivers everything queued by the time it runs; while the consumer is busy,
+ * results pile up and the oldest is dropped rather than blocking the NFC
+ * stack. The session also keeps the throughput and discovery-to-event latency
+ * counters exposed to JS.
+ *
+ * @param <T> result type delivered to listeners
+ */
+final class ReaderSession<T> {
+
+    interface Sink<T> {
+        void deliver(T result);
+    }
+
+    interface Scheduler {
+        void schedule(Runnable task);
+    }
+
+    static final int DEFAULT_QUEUE_SIZE = 64;
+
+    private static final long RATE_WINDOW_NANOS = 1_000_000_000L;
+
+    private static final class Entry<T> {
+        final T result;
+        final long discoveredAtNanos;
+
+        Entry(T result, long discoveredAtNanos) {
+            this.result = result;
+            this.discoveredAtNanos = discoveredAtNanos;
+        }
+    }
+
+    private final ArrayBlockingQueue<Entry<T>> results;
+    private final long startedAtNanos;
+    private final Scheduler scheduler;
+    private final Sink<T> sink;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Runnable drainTask = () -> {
+        // Cleared first, so a result offered during the drain schedules the next one
+        drainScheduled.set(false);
+        drain(System.nanoTime());
+    };
+
+    private final AtomicLong tagsRead = new AtomicLong();
+    private final AtomicLong tagsDelivered = new AtomicLong();
+    private final AtomicLong tagsDropped = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private volatile long lastLatencyNanos;
+
+    // Tags per second over the last complete window, updated by the delivering thread
+    private long windowStartNanos;
+    private long windowCount;
+    private volatile double tagsPerSecond;
+
+    ReaderSession(int queueSize, long startedAtNanos, Scheduler scheduler, Sink<T> sink) {
+        this.results = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        this.startedAtNanos = startedAtNanos;
+        this.windowStartNanos = startedAtNanos;
+        this.scheduler = scheduler;
+        this.sink = sink;
+    }
+
+    /**
+     * Queues a result, dropping the oldest queued result if the buffer is full,
+     * and schedules a drain unless one is already pending.
+     */
+    void offer(T result, long discoveredAtNanos) {
+        tagsRead.incrementAndGet();
+        Entry<T> entry = new Entry<>(result, discoveredAtNanos);
+        while (!results.offer(entry)) {
+            if (results.poll() != null) {
+                tagsDropped.incrementAndGet();
+            }
+        }
+        if (drainScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(drainTask);
+        }
+    }
+
+    void recordError() {
+        errors.incrementAndGet();
+    }
+
+    /** Delivers everything queued so far and returns the number of results delivered; runs on the consumer's thread. */
+    int drain(long nowNanos) {
+        int delivered = 0;
+        Entry<T> entry;
+        while ((entry = results.poll()) != null) {
+            sink.deliver(entry.result);
+            recordDelivery(nowNanos - entry.discoveredAtNanos, nowNanos);
+            delivered++;
+        }
+        return delivered;
+    }
+
+    private synchronized void recordDelivery(long latencyNanos, long nowNanos) {
+        tagsDelivered.incrementAndGet();
+        lastLatencyNanos = latencyNanos;
+        totalLatencyNanos.addAndGet(latencyNanos);
+        if (latencyNanos > maxLatencyNanos.get()) {
+            maxLatencyNanos.set(latencyNanos);
+        }
+
+        long elapsed = nowNanos - windowStartNanos;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            tagsPerSecond = windowCount * 1e9 / elapsed;
+            windowStartNanos = nowNanos;
+            windowCount = 0;
+        }
+        windowCount++;
+    }
+
+    int queued() {
+        return results.size();
+    }
+
+    long getTagsRead() {
+        return tagsRead.get();
+    }
+
+    long getTagsDelivered() {
+        return tagsDelivered.get();
+    }
+
+    long getTagsDropped() {
+        return tagsDropped.get();
+    }
+
+    long getErrors() {
+        return errors.get();
+    }
+
+    /** Delivery rate over the last full second, or the session average before the first second ends. */
+    double getTagsPerSecond(long nowNanos) {
+        double rate = tagsPerSecond;
+        if (rate > 0) {
+            return rate;
+        }
+        long elapsed = nowNanos - startedAtNanos;
+        return elapsed > 0 ? tagsDelivered.get() * 1e9 / elapsed : 0;
+    }
+
+    double getLastLatencyMillis() {
+        return lastLatencyNanos / 1e6;
+    }
+
+    double getAverageLatencyMillis() {
+        long delivered = tagsDelivered.get();
+        return delivered > 0 ? totalLatencyNanos.get() / 1e6 / delivered : 0;
+    }
+
+    double getMaxLatencyMillis() {
+        return maxLatencyNanos.get() / 1e6;
+    }
+}
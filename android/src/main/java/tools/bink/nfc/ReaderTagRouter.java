@@ -0,0 +1,44 @@
+package tools.bink.nfc;
+
+/**
+ * Decides which of Nfc's operations a tag from the reader callback serves.
+ *
+ * A batch write takes every tag, then a reader session, then a pending read
+ * or write, then a scan. The core hands over repeats of a tag still held in
+ * the field too, as {@link TagEventFilter#SUPPRESSED}: those are not
+ * reported, so they only go to a pending read or write, which the tag may
+ * have been held there to complete. Foreground dispatch serves its pending
+ * operations the same way, so both paths agree.
+ */
+final class ReaderTagRouter {
+
+    static final int IGNORE = 0;
+    static final int BATCH = 1;
+    static final int SESSION = 2;
+    static final int DISPATCH = 3;
+    static final int SCAN = 4;
+
+    private ReaderTagRouter() {
+    }
+
+    /**
+     * Returns {@link #IGNORE}, {@link #BATCH}, {@link #SESSION},
+     * {@link #DISPATCH} or {@link #SCAN} for a tag with the filter's
+     * {@code transition}.
+     */
+    static int route(int transition, boolean batch, boolean session, boolean dispatch, boolean scanning) {
+        if (batch) {
+            return transition == TagEventFilter.SUPPRESSED ? IGNORE : BATCH;
+        }
+        if (session) {
+            return transition == TagEventFilter.SUPPRESSED ? IGNORE : SESSION;
+        }
+        if (dispatch) {
+            return DISPATCH;
+        }
+        if (scanning && transition != TagEventFilter.SUPPRESSED) {
+            return SCAN;
+        }
+        return IGNORE;
+    }
+}
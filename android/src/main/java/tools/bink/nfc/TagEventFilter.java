@@ -0,0 +1,178 @@
+package tools.bink.nfc;
+
+/**
+ * Collapses repeated detections of the same tag into state transitions.
+ *
+ * A tag held on the reader is reported again and again; only the first report
+ * is an {@link #ARRIVED} (or {@link #CHANGED}, when it replaces another tag that
+ * was still in the field). Reports of a tracked UID within the window are
+ * {@link #SUPPRESSED}, and {@link #sweep} reports a tag as left once it has not
+ * been seen for a whole window. The per-UID state lives in flat arrays sized at
+ * construction, so filtering a detection does not allocate. Status messages are
+ * coalesced the same way: a repeat of the last status within the window is
+ * dropped.
+ *
+ * A window of zero or less turns the filter off: every detection is an arrival
+ * and every status passes. Public so the legacy {@code NFCPlugin} can share it.
+ */
+public final class TagEventFilter {
+
+    public interface LeftSink {
+        /** Called under the filter's lock; {@code uid} is only valid for the call. */
+        void onLeft(byte[] uid, int offset, int length);
+    }
+
+    public static final int SUPPRESSED = 0;
+    public static final int ARRIVED = 1;
+    public static final int CHANGED = 2;
+
+    public static final long DEFAULT_WINDOW_MILLIS = 1000;
+    public static final int DEFAULT_CAPACITY = 16;
+
+    // ISO 14443 triple-size UID; NFC-F IDm and NFC-V UIDs are 8 bytes
+    private static final int MAX_UID_LENGTH = 10;
+
+    private final int capacity;
+    private final byte[] uids;
+    private final int[] uidLengths;
+    private final long[] lastSeenNanos;
+
+    private long windowNanos;
+    private int current = -1;
+    private String lastStatus;
+    private long lastStatusNanos;
+
+    private long suppressed;
+    private long statusesSuppressed;
+
+    public TagEventFilter(long windowMillis, int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.uids = new byte[this.capacity * MAX_UID_LENGTH];
+        this.uidLengths = new int[this.capacity];
+        this.lastSeenNanos = new long[this.capacity];
+        setWindow(windowMillis);
+    }
+
+    synchronized void setWindow(long windowMillis) {
+        windowNanos = Math.max(0, windowMillis) * 1_000_000L;
+    }
+
+    synchronized long getWindowMillis() {
+        return windowNanos / 1_000_000L;
+    }
+
+    /** Records a detection and returns {@link #ARRIVED}, {@link #CHANGED} or {@link #SUPPRESSED}. */
+    public synchronized int onTag(byte[] uid, long nowNanos) {
+        if (windowNanos <= 0 || uid == null || uid.length == 0) {
+            return ARRIVED;
+        }
+        int length = Math.min(uid.length, MAX_UID_LENGTH);
+        int slot = find(uid, length);
+        if (slot >= 0 && nowNanos - lastSeenNanos[slot] <= windowNanos) {
+            lastSeenNanos[slot] = nowNanos;
+            if (slot == current) {
+                suppressed++;
+                return SUPPRESSED;
+            }
+            // A tracked tag came back while another one was current
+            current = slot;
+            return CHANGED;
+        }
+
+        if (slot < 0) {
+            slot = claim();
+            System.arraycopy(uid, 0, uids, slot * MAX_UID_LENGTH, length);
+            uidLengths[slot] = length;
+        }
+        lastSeenNanos[slot] = nowNanos;
+        boolean replaced = current >= 0 && current != slot && uidLengths[current] > 0
+            && nowNanos - lastSeenNanos[current] <= windowNanos;
+        current = slot;
+        return replaced ? CHANGED : ARRIVED;
+    }
+
+    /**
+     * Forgets every tag not seen for a whole window, reporting each to the sink.
+     * Returns the number of tags that left.
+     */
+    synchronized int sweep(long nowNanos, LeftSink sink) {
+        int left = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (uidLengths[slot] > 0 && nowNanos - lastSeenNanos[slot] > windowNanos) {
+                sink.onLeft(uids, slot * MAX_UID_LENGTH, uidLengths[slot]);
+                uidLengths[slot] = 0;
+                if (slot == current) {
+                    current = -1;
+                }
+                left++;
+            }
+        }
+        return left;
+    }
+
+    /** Returns false for a repeat of the previous status within the window. */
+    synchronized boolean onStatus(String status, long nowNanos) {
+        if (windowNanos > 0 && status != null && status.equals(lastStatus)
+                && nowNanos - lastStatusNanos <= windowNanos) {
+            statusesSuppressed++;
+            return false;
+        }
+        lastStatus = status;
+        lastStatusNanos = nowNanos;
+        return true;
+    }
+
+    synchronized int tracked() {
+        int tracked = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (uidLengths[slot] > 0) {
+                tracked++;
+            }
+        }
+        return tracked;
+    }
+
+    synchronized long getSuppressed() {
+        return suppressed;
+    }
+
+    synchronized long getStatusesSuppressed() {
+        return statusesSuppressed;
+    }
+
+    private int find(byte[] uid, int length) {
+        for (int slot = 0; slot < capacity; slot++) {
+            if (uidLengths[slot] == length && matches(slot, uid, length)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(int slot, byte[] uid, int length) {
+        int base = slot * MAX_UID_LENGTH;
+        for (int i = 0; i < length; i++) {
+            if (uids[base + i] != uid[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // A free slot, or the least recently seen one when the table is full
+    private int claim() {
+        int oldest = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (uidLengths[slot] == 0) {
+                return slot;
+            }
+            if (lastSeenNanos[slot] - lastSeenNanos[oldest] < 0) {
+                oldest = slot;
+            }
+        }
+        if (oldest == current) {
+            current = -1;
+        }
+        return oldest;
+    }
+}
@@ -0,0 +1,152 @@
+package tools.bink.nfc;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Single-threaded executor that owns all blocking tag I/O.
+ *
+ * Ownership model: at most one {@link TagSession} is pending per tag UID.
+ * Submitting a tag again cancels its earlier session, since the new discovery
+ * supersedes it; a cancelled session that has not started is skipped, and one
+ * that is mid-I/O stops at its next cancellation check and its events are
+ * discarded. A different tag never cancels anything: its session queues behind
+ * the ones already submitted, so on a fast line every tag's task still runs and
+ * reports, if only that the tag was gone. Events emitted by a session that runs
+ * to the end are delivered to the sink as one batch, so the UI thread never
+ * waits on RF timing.
+ *
+ * @param <T> event payload type
+ */
+final class TagIoExecutor<T> {
+
+    interface Task<T> {
+        void run(TagSession<T> session) throws Exception;
+    }
+
+    interface BatchSink<T> {
+        void deliver(List<TagEvent<T>> batch);
+    }
+
+    interface ErrorHandler<T> {
+        /** Called on the I/O thread for exceptions a task did not handle; may emit into the session. */
+        void onError(TagSession<T> session, Exception error);
+    }
+
+    static final class TagEvent<T> {
+        final String name;
+        final T data;
+
+        TagEvent(String name, T data) {
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    static final class TagSession<T> {
+        private final ByteBuffer uid;
+        private final List<TagEvent<T>> events = new ArrayList<>(4);
+        private volatile boolean cancelled;
+
+        TagSession(ByteBuffer uid) {
+            this.uid = uid;
+        }
+
+        void emit(String name, T data) {
+            events.add(new TagEvent<>(name, data));
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        /** Aborts the task if the tag has been superseded. Call between I/O steps. */
+        void throwIfCancelled() {
+            if (cancelled) {
+                throw new CancellationException("Tag session superseded");
+            }
+        }
+    }
+
+    private final ExecutorService executor;
+    private final BatchSink<T> sink;
+    private final ErrorHandler<T> errorHandler;
+    // Keyed by UID contents
+    private final ConcurrentHashMap<ByteBuffer, TagSession<T>> pending = new ConcurrentHashMap<>();
+
+    TagIoExecutor(BatchSink<T> sink, ErrorHandler<T> errorHandler) {
+        this.sink = sink;
+        this.errorHandler = errorHandler;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "nfc-tag-io");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a task for a discovered tag, superseding any pending session for
+     * the same UID. Returns the session so callers can cancel it, or null after
+     * shutdown.
+     */
+    TagSession<T> submit(byte[] uid, Task<T> task) {
+        TagSession<T> session = new TagSession<>(ByteBuffer.wrap(uid != null ? uid.clone() : new byte[0]));
+        TagSession<T> previous = pending.put(session.uid, session);
+        if (previous != null) {
+            previous.cancel();
+        }
+        try {
+            executor.execute(() -> run(session, task));
+            return session;
+        } catch (RejectedExecutionException e) {
+            pending.remove(session.uid, session);
+            return null;
+        }
+    }
+
+    /** Cancels every pending session. */
+    void cancelAll() {
+        for (TagSession<T> session : pending.values()) {
+            session.cancel();
+        }
+        pending.clear();
+    }
+
+    void shutdown() {
+        cancelAll();
+        executor.shutdownNow();
+    }
+
+    private void run(TagSession<T> session, Task<T> task) {
+        boolean completed = false;
+        try {
+            if (session.isCancelled()) {
+                return;
+            }
+            task.run(session);
+            completed = true;
+        } catch (CancellationException e) {
+            session.cancel();
+        } catch (Exception e) {
+            if (!session.isCancelled()) {
+                errorHandler.onError(session, e);
+                completed = true;
+            }
+        } finally {
+            pending.remove(session.uid, session);
+            if (completed && !session.events.isEmpty()) {
+                sink.deliver(session.events);
+            }
+        }
+    }
+}
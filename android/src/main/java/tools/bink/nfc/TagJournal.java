@@ -0,0 +1,616 @@
+package tools.bink.nfc;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of tag reads and writes, kept on disk so that nothing
+ * is lost while the WebView is not listening.
+ *
+ * {@link #append} only encodes the record into a memory buffer and returns;
+ * a single writer thread takes everything appended since its last run, writes
+ * it with one call and syncs it once (group commit), so the cost of the sync
+ * is shared by every tap that arrived meanwhile. Records go to segment files
+ * named by the sequence number of their first record; when a segment is full
+ * a new one is started, and the oldest is deleted once there are more than
+ * {@code maxSegments}. Each record carries a CRC, and a record torn by a
+ * crash is cut off when the journal is opened again.
+ *
+ * Queries run against an in-memory index of time, UID hash, kind and file
+ * position per record, held in flat arrays by sequence number, and read only
+ * the records they return. Pages are resumed from the sequence number of the
+ * last record returned.
+ */
+final class TagJournal {
+
+    static final int READ = 0;
+    static final int WRITE = 1;
+
+    static final int DEFAULT_SEGMENT_BYTES = 1 << 20;
+    static final int DEFAULT_MAX_SEGMENTS = 16;
+
+    private static final String SUFFIX = ".journal";
+    private static final int DIGEST_BYTES = 32;
+    // Frame: body length, body, CRC-32 of the body
+    private static final int FRAME_BYTES = 8;
+    // Body: sequence, time, kind, latency, UID, tech, digest
+    private static final int FIXED_BODY_BYTES = 8 + 8 + 1 + 4 + 1 + 1 + DIGEST_BYTES;
+
+    /** One journal record. */
+    static final class Entry {
+        final long sequence;
+        final long timeMillis;
+        final int kind;
+        final byte[] uid;
+        final String tech;
+        final byte[] digest;
+        final int latencyMicros;
+
+        Entry(long sequence, long timeMillis, int kind, byte[] uid, String tech, byte[] digest, int latencyMicros) {
+            this.sequence = sequence;
+            this.timeMillis = timeMillis;
+            this.kind = kind;
+            this.uid = uid;
+            this.tech = tech;
+            this.digest = digest;
+            this.latencyMicros = latencyMicros;
+        }
+    }
+
+    /** A page of query results; {@code next} resumes the query, or is -1 when there is nothing more. */
+    static final class Page {
+        final List<Entry> entries;
+        final long next;
+
+        Page(List<Entry> entries, long next) {
+            this.entries = entries;
+            this.next = next;
+        }
+    }
+
+    private final File directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final MessageDigest sha256;
+    private final CRC32 crc = new CRC32();
+
+    // Guarded by this: records appended but not yet handed to the writer
+    private byte[] pending = new byte[4096];
+    private int pendingLength;
+    private byte[] spare = new byte[4096];
+    private boolean commitScheduled;
+    private boolean closed;
+
+    // Guarded by this: the index, one slot per sequence number from base
+    private long base;
+    private long firstSequence;
+    private long nextSequence;
+    private long committedSequence;
+    private long[] times = new long[1024];
+    private long[] uidKeys = new long[1024];
+    private byte[] kinds = new byte[1024];
+    private int[] positions = new int[1024];
+    private long[] segmentStarts = new long[0];
+    private long batches;
+    private long writeErrors;
+
+    // Guarded by files: segment files, which the writer rolls and deletes while queries read them
+    private final Object files = new Object();
+    private FileOutputStream segment;
+    private long segmentSize;
+
+    /**
+     * Opens the journal in {@code directory}, creating it if needed, and
+     * rebuilds the index from the segments already there.
+     */
+    TagJournal(File directory, int segmentBytes, int maxSegments) throws IOException {
+        if (segmentBytes < 256 || maxSegments < 1) {
+            throw new IllegalArgumentException("Invalid journal configuration");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        try {
+            this.sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        recover();
+    }
+
+    /**
+     * Journals a read or write of {@code uid}, digesting {@code payload}.
+     * Returns the record's sequence number, or -1 once the journal is closed.
+     * Never touches the disk.
+     */
+    synchronized long append(int kind, long timeMillis, byte[] uid, String tech, byte[] payload, long latencyNanos) {
+        if (closed) {
+            return -1;
+        }
+        byte[] techBytes = tech.getBytes(StandardCharsets.UTF_8);
+        int uidLength = Math.min(uid.length, 255);
+        int techLength = Math.min(techBytes.length, 255);
+        int bodyLength = FIXED_BODY_BYTES + uidLength + techLength;
+        if (pendingLength + bodyLength + FRAME_BYTES > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + bodyLength + FRAME_BYTES));
+        }
+
+        long sequence = nextSequence;
+        ByteBuffer out = ByteBuffer.wrap(pending, pendingLength, bodyLength + FRAME_BYTES);
+        out.putInt(bodyLength);
+        int bodyStart = out.position();
+        out.putLong(sequence);
+        out.putLong(timeMillis);
+        out.put((byte) kind);
+        out.putInt((int) Math.min(Integer.MAX_VALUE, latencyNanos / 1000));
+        out.put((byte) uidLength);
+        out.put(uid, 0, uidLength);
+        out.put((byte) techLength);
+        out.put(techBytes, 0, techLength);
+        sha256.update(payload);
+        out.put(sha256.digest());
+        crc.reset();
+        crc.update(pending, bodyStart, bodyLength);
+        out.putInt((int) crc.getValue());
+        pendingLength = out.position();
+
+        index(sequence, timeMillis, uidKey(uid, 0, uidLength), kind, -1);
+        nextSequence = sequence + 1;
+        if (!commitScheduled) {
+            commitScheduled = true;
+            writer.execute(this::commit);
+        }
+        return sequence;
+    }
+
+    /** Waits until every record appended so far is on disk. */
+    synchronized void flush() throws InterruptedException {
+        long target = nextSequence;
+        while (committedSequence < target) {
+            wait();
+        }
+    }
+
+    /**
+     * Records with a sequence number above {@code after}, a time in
+     * [{@code fromMillis}, {@code toMillis}] and, unless {@code uid} is null,
+     * that UID, oldest first and at most {@code limit} of them. Waits for
+     * pending records to be written first.
+     */
+    Page query(long after, long fromMillis, long toMillis, byte[] uid, int limit) throws IOException, InterruptedException {
+        flush();
+        long key = uid != null ? uidKey(uid, 0, uid.length) : 0;
+        long[] sequences = new long[limit];
+        int[] offsets = new int[limit];
+        long[] starts = new long[limit];
+        int found = 0;
+        long next = -1;
+        synchronized (this) {
+            long end = committedSequence;
+            for (long sequence = Math.max(after + 1, firstSequence); sequence < end; sequence++) {
+                int slot = (int) (sequence - base);
+                if (positions[slot] < 0 || times[slot] < fromMillis || times[slot] > toMillis
+                        || (uid != null && uidKeys[slot] != key)) {
+                    continue;
+                }
+                if (found == limit) {
+                    next = sequences[found - 1];
+                    break;
+                }
+                sequences[found] = sequence;
+                offsets[found] = positions[slot];
+                starts[found] = segmentOf(sequence);
+                found++;
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>(found);
+        synchronized (files) {
+            RandomAccessFile file = null;
+            long open = -1;
+            try {
+                for (int i = 0; i < found; i++) {
+                    if (starts[i] != open) {
+                        if (file != null) {
+                            file.close();
+                        }
+                        file = null;
+                        open = starts[i];
+                        File path = segmentFile(open);
+                        if (path.exists()) {
+                            file = new RandomAccessFile(path, "r");
+                        }
+                    }
+                    // The segment was dropped since the index was read
+                    if (file == null) {
+                        continue;
+                    }
+                    Entry entry = readEntry(file, offsets[i]);
+                    if (entry != null && entry.sequence == sequences[i] && (uid == null || Arrays.equals(entry.uid, uid))) {
+                        entries.add(entry);
+                    }
+                }
+            } finally {
+                if (file != null) {
+                    file.close();
+                }
+            }
+        }
+        return new Page(entries, next);
+    }
+
+    /** Deletes every record. Sequence numbers carry on from where they were. */
+    void clear() throws IOException, InterruptedException {
+        flush();
+        synchronized (files) {
+            closeSegment();
+            synchronized (this) {
+                for (long start : segmentStarts) {
+                    segmentFile(start).delete();
+                }
+                segmentStarts = new long[0];
+                firstSequence = nextSequence;
+            }
+        }
+    }
+
+    /** Writes what is pending and stops the writer; later appends are dropped. */
+    void close() throws InterruptedException {
+        synchronized (this) {
+            closed = true;
+        }
+        writer.shutdown();
+        writer.awaitTermination(5, TimeUnit.SECONDS);
+        synchronized (files) {
+            closeSegment();
+        }
+    }
+
+    synchronized long getRecordCount() {
+        return nextSequence - firstSequence;
+    }
+
+    synchronized long getFirstSequence() {
+        return firstSequence;
+    }
+
+    synchronized int getSegmentCount() {
+        return segmentStarts.length;
+    }
+
+    /** How many group commits have run; records per batch is the sync saving. */
+    synchronized long getBatches() {
+        return batches;
+    }
+
+    /** Records that could not be written and are not in the journal. */
+    synchronized long getWriteErrors() {
+        return writeErrors;
+    }
+
+    // Runs on the writer thread
+    private void commit() {
+        byte[] batch;
+        int length;
+        long first;
+        synchronized (this) {
+            batch = pending;
+            length = pendingLength;
+            pending = spare;
+            spare = batch;
+            pendingLength = 0;
+            first = committedSequence;
+            commitScheduled = false;
+        }
+
+        int records = countRecords(batch, length);
+        long last = first;
+        IOException failure = null;
+        synchronized (files) {
+            try {
+                int offset = 0;
+                while (offset < length) {
+                    // Write runs of whole records, rolling to a new segment where one is full
+                    int run = 0;
+                    if (segment == null) {
+                        openSegment(last, frameLength(batch, offset));
+                    } else if (segmentSize > 0 && segmentSize + frameLength(batch, offset) > segmentBytes) {
+                        roll(last);
+                    }
+                    long position = segmentSize;
+                    while (offset + run < length && (run == 0 || position + run + frameLength(batch, offset + run) <= segmentBytes)) {
+                        setPosition(last++, (int) (position + run));
+                        run += frameLength(batch, offset + run);
+                    }
+                    segment.write(batch, offset, run);
+                    segmentSize += run;
+                    offset += run;
+                }
+                if (segment != null) {
+                    segment.getFD().sync();
+                }
+            } catch (IOException e) {
+                failure = e;
+                closeSegment();
+            }
+        }
+
+        synchronized (this) {
+            if (failure != null) {
+                // Whatever was not synced may be lost, so none of this batch is served
+                for (long sequence = Math.max(first, firstSequence); sequence < first + records; sequence++) {
+                    positions[(int) (sequence - base)] = -1;
+                }
+                writeErrors += records;
+            }
+            committedSequence = first + records;
+            batches++;
+            notifyAll();
+        }
+    }
+
+    // Writer thread, holding files: appends to the newest segment while it has room
+    private void openSegment(long next, int frameLength) throws IOException {
+        long newest;
+        synchronized (this) {
+            newest = segmentStarts.length > 0 ? segmentStarts[segmentStarts.length - 1] : -1;
+        }
+        File file = newest >= 0 ? segmentFile(newest) : null;
+        if (file != null && file.length() + frameLength <= segmentBytes) {
+            segment = new FileOutputStream(file, true);
+            segmentSize = segment.getChannel().size();
+        } else {
+            roll(next);
+        }
+    }
+
+    // Writer thread, holding files
+    private void roll(long start) throws IOException {
+        closeSegment();
+        segment = new FileOutputStream(segmentFile(start), true);
+        segmentSize = segment.getChannel().size();
+        synchronized (this) {
+            if (segmentStarts.length == 0 || segmentStarts[segmentStarts.length - 1] != start) {
+                segmentStarts = Arrays.copyOf(segmentStarts, segmentStarts.length + 1);
+                segmentStarts[segmentStarts.length - 1] = start;
+            }
+            while (segmentStarts.length > maxSegments) {
+                segmentFile(segmentStarts[0]).delete();
+                segmentStarts = Arrays.copyOfRange(segmentStarts, 1, segmentStarts.length);
+                firstSequence = Math.max(firstSequence, segmentStarts[0]);
+            }
+        }
+    }
+
+    private void closeSegment() {
+        if (segment != null) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                // Everything written was synced
+            }
+            segment = null;
+            segmentSize = 0;
+        }
+    }
+
+    private synchronized void setPosition(long sequence, int position) {
+        if (sequence >= base) {
+            positions[(int) (sequence - base)] = position;
+        }
+    }
+
+    // Guarded by this
+    private void index(long sequence, long timeMillis, long uidKey, int kind, int position) {
+        int slot = (int) (sequence - base);
+        if (slot == times.length) {
+            int live = (int) (sequence - firstSequence);
+            int shift = (int) (firstSequence - base);
+            int capacity = live * 2 > times.length ? times.length * 2 : times.length;
+            times = move(times, shift, live, capacity);
+            uidKeys = move(uidKeys, shift, live, capacity);
+            kinds = move(kinds, shift, live, capacity);
+            positions = move(positions, shift, live, capacity);
+            base = firstSequence;
+            slot = live;
+        }
+        times[slot] = timeMillis;
+        uidKeys[slot] = uidKey;
+        kinds[slot] = (byte) kind;
+        positions[slot] = position;
+    }
+
+    private static long[] move(long[] array, int from, int length, int capacity) {
+        long[] moved = new long[capacity];
+        System.arraycopy(array, from, moved, 0, length);
+        return moved;
+    }
+
+    private static int[] move(int[] array, int from, int length, int capacity) {
+        int[] moved = new int[capacity];
+        System.arraycopy(array, from, moved, 0, length);
+        return moved;
+    }
+
+    private static byte[] move(byte[] array, int from, int length, int capacity) {
+        byte[] moved = new byte[capacity];
+        System.arraycopy(array, from, moved, 0, length);
+        return moved;
+    }
+
+    // Guarded by this
+    private long segmentOf(long sequence) {
+        long start = -1;
+        for (long candidate : segmentStarts) {
+            if (candidate > sequence) {
+                break;
+            }
+            start = candidate;
+        }
+        return start;
+    }
+
+    private File segmentFile(long start) {
+        return new File(directory, String.format("%019d", start) + SUFFIX);
+    }
+
+    /** Rebuilds the index from disk, cutting off a torn record at the end of a segment. */
+    private void recover() throws IOException {
+        File[] found = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        long[] starts = new long[found != null ? found.length : 0];
+        int count = 0;
+        for (int i = 0; i < starts.length; i++) {
+            try {
+                starts[count] = Long.parseLong(found[i].getName().substring(0, found[i].getName().length() - SUFFIX.length()));
+                count++;
+            } catch (NumberFormatException e) {
+                // Not one of ours
+            }
+        }
+        starts = Arrays.copyOf(starts, count);
+        Arrays.sort(starts);
+
+        base = firstSequence = nextSequence = count > 0 ? starts[0] : 0;
+        List<Long> kept = new ArrayList<>();
+        for (long start : starts) {
+            if (start < nextSequence) {
+                // Overlaps the previous segment, which must have been cut short
+                segmentFile(start).delete();
+                continue;
+            }
+            // Records lost to a torn segment before this one stay unserved
+            while (nextSequence < start) {
+                index(nextSequence++, 0, 0, READ, -1);
+            }
+            long good = scanSegment(start);
+            kept.add(start);
+            try (RandomAccessFile file = new RandomAccessFile(segmentFile(start), "rw")) {
+                if (file.length() > good) {
+                    file.setLength(good);
+                }
+            }
+        }
+        segmentStarts = new long[kept.size()];
+        for (int i = 0; i < segmentStarts.length; i++) {
+            segmentStarts[i] = kept.get(i);
+        }
+        committedSequence = nextSequence;
+    }
+
+    // Indexes the valid records of one segment and returns where they end
+    private long scanSegment(long start) throws IOException {
+        long position = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile(start))))) {
+            byte[] body = new byte[256];
+            while (true) {
+                int bodyLength;
+                try {
+                    bodyLength = in.readInt();
+                    if (bodyLength < FIXED_BODY_BYTES || bodyLength > FIXED_BODY_BYTES + 510) {
+                        break;
+                    }
+                    if (body.length < bodyLength) {
+                        body = new byte[bodyLength];
+                    }
+                    in.readFully(body, 0, bodyLength);
+                    int checksum = in.readInt();
+                    crc.reset();
+                    crc.update(body, 0, bodyLength);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                Entry entry = decode(body, bodyLength);
+                if (entry == null || entry.sequence != nextSequence) {
+                    break;
+                }
+                index(entry.sequence, entry.timeMillis, uidKey(entry.uid, 0, entry.uid.length), entry.kind, (int) position);
+                nextSequence++;
+                position += bodyLength + FRAME_BYTES;
+            }
+        }
+        return position;
+    }
+
+    private Entry readEntry(RandomAccessFile file, int position) throws IOException {
+        file.seek(position);
+        int bodyLength = file.readInt();
+        if (bodyLength < FIXED_BODY_BYTES || bodyLength > FIXED_BODY_BYTES + 510) {
+            return null;
+        }
+        byte[] body = new byte[bodyLength];
+        file.readFully(body);
+        int checksum = file.readInt();
+        CRC32 check = new CRC32();
+        check.update(body, 0, bodyLength);
+        return (int) check.getValue() == checksum ? decode(body, bodyLength) : null;
+    }
+
+    private static Entry decode(byte[] body, int bodyLength) {
+        ByteBuffer in = ByteBuffer.wrap(body, 0, bodyLength);
+        long sequence = in.getLong();
+        long time = in.getLong();
+        int kind = in.get();
+        int latency = in.getInt();
+        byte[] uid = new byte[in.get() & 0xFF];
+        if (uid.length > in.remaining()) {
+            return null;
+        }
+        in.get(uid);
+        int techLength = in.get() & 0xFF;
+        if (techLength + DIGEST_BYTES != in.remaining()) {
+            return null;
+        }
+        String tech = new String(body, in.position(), techLength, StandardCharsets.UTF_8);
+        in.position(in.position() + techLength);
+        byte[] digest = new byte[DIGEST_BYTES];
+        in.get(digest);
+        return new Entry(sequence, time, kind, uid, tech, digest, latency);
+    }
+
+    private static int frameLength(byte[] batch, int offset) {
+        int bodyLength = (batch[offset] & 0xFF) << 24 | (batch[offset + 1] & 0xFF) << 16
+            | (batch[offset + 2] & 0xFF) << 8 | (batch[offset + 3] & 0xFF);
+        return bodyLength + FRAME_BYTES;
+    }
+
+    private static int countRecords(byte[] batch, int length) {
+        int count = 0;
+        for (int offset = 0; offset < length; offset += frameLength(batch, offset)) {
+            count++;
+        }
+        return count;
+    }
+
+    // 64-bit FNV-1a; matches are confirmed against the record itself
+    private static long uidKey(byte[] uid, int offset, int length) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ (uid[offset + i] & 0xFF)) * 0x100000001B3L;
+        }
+        return hash;
+    }
+}
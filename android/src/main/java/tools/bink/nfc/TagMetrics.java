@@ -0,0 +1,84 @@
+package tools.bink.nfc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency per stage of tag handling, plus counts of the failures that explain
+ * slow or missed check-ins.
+ *
+ * Stages are timed with {@link System#nanoTime()} by the code that runs them:
+ * connecting a tech, each transceive, the NDEF I/O that Android runs for us,
+ * parsing, delivering an event over the bridge, and answering an HCE command.
+ * Recording is lock-free, so it is cheap enough to leave on.
+ */
+final class TagMetrics {
+
+    static final int CONNECT = 0;
+    static final int TRANSCEIVE = 1;
+    static final int NDEF_IO = 2;
+    static final int PARSE = 3;
+    static final int NOTIFY = 4;
+    static final int HCE_COMMAND = 5;
+
+    static final String[] STAGE_NAMES = {"connect", "transceive", "ndefIo", "parse", "notify", "hceCommand"};
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[STAGE_NAMES.length];
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong tagsLost = new AtomicLong();
+    private final AtomicLong authFailures = new AtomicLong();
+    private volatile long sinceMillis = System.currentTimeMillis();
+
+    TagMetrics() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+    }
+
+    /** Records the time since {@code startNanos}, taken from {@link System#nanoTime()}. */
+    void record(int stage, long startNanos) {
+        stages[stage].recordNanos(System.nanoTime() - startNanos);
+    }
+
+    LatencyHistogram stage(int stage) {
+        return stages[stage];
+    }
+
+    void countTimeout() {
+        timeouts.incrementAndGet();
+    }
+
+    void countTagLost() {
+        tagsLost.incrementAndGet();
+    }
+
+    void countAuthFailure() {
+        authFailures.incrementAndGet();
+    }
+
+    long getTimeouts() {
+        return timeouts.get();
+    }
+
+    long getTagsLost() {
+        return tagsLost.get();
+    }
+
+    long getAuthFailures() {
+        return authFailures.get();
+    }
+
+    /** Wall-clock time of the last reset. */
+    long getSinceMillis() {
+        return sinceMillis;
+    }
+
+    void reset() {
+        for (LatencyHistogram stage : stages) {
+            stage.reset();
+        }
+        timeouts.set(0);
+        tagsLost.set(0);
+        authFailures.set(0);
+        sinceMillis = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,149 @@
+package tools.bink.nfc;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of parsed read results, keyed by tag UID.
+ *
+ * Each entry carries a fingerprint read from the tag with one cheap command
+ * (for Type 2 tags, the page holding the NDEF TLV length). A lookup only hits
+ * when the UID is cached, the entry is younger than the TTL and the tag still
+ * returns the same fingerprint; a mismatch or an expired entry drops it. Writes
+ * must {@link #invalidate} the UID they touched.
+ *
+ * @param <T> parsed result type
+ */
+final class TagReadCache<T> {
+
+    static final int DEFAULT_MAX_ENTRIES = 32;
+    static final long DEFAULT_TTL_MILLIS = 10_000;
+
+    private static final class Entry<T> {
+        final byte[] fingerprint;
+        final T value;
+        final long storedAtNanos;
+
+        Entry(byte[] fingerprint, T value, long storedAtNanos) {
+            this.fingerprint = fingerprint;
+            this.value = value;
+            this.storedAtNanos = storedAtNanos;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry<T>> entries = new LinkedHashMap<String, Entry<T>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry<T>> eldest) {
+            if (size() > maxEntries) {
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private int maxEntries;
+    private long ttlNanos;
+
+    private long hits;
+    private long misses;
+    private long stale;
+    private long expired;
+    private long evictions;
+    private long invalidations;
+
+    TagReadCache(int maxEntries, long ttlMillis) {
+        configure(maxEntries, ttlMillis);
+    }
+
+    /** Resizes the cache; a size of zero or less disables it and drops every entry. */
+    synchronized void configure(int maxEntries, long ttlMillis) {
+        this.maxEntries = Math.max(0, maxEntries);
+        this.ttlNanos = Math.max(0, ttlMillis) * 1_000_000L;
+        while (entries.size() > this.maxEntries) {
+            entries.remove(entries.keySet().iterator().next());
+            evictions++;
+        }
+    }
+
+    synchronized boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /** Returns the cached result when the tag still has the same fingerprint, otherwise null. */
+    synchronized T get(byte[] uid, byte[] fingerprint, long nowNanos) {
+        String key = uidKey(uid);
+        Entry<T> entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (nowNanos - entry.storedAtNanos > ttlNanos) {
+            entries.remove(key);
+            expired++;
+            misses++;
+            return null;
+        }
+        if (!Arrays.equals(entry.fingerprint, fingerprint)) {
+            entries.remove(key);
+            stale++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    synchronized void put(byte[] uid, byte[] fingerprint, T value, long nowNanos) {
+        if (maxEntries > 0 && fingerprint != null) {
+            entries.put(uidKey(uid), new Entry<>(fingerprint.clone(), value, nowNanos));
+        }
+    }
+
+    /** Drops the entry for a tag whose contents may have changed. */
+    synchronized void invalidate(byte[] uid) {
+        if (entries.remove(uidKey(uid)) != null) {
+            invalidations++;
+        }
+    }
+
+    synchronized void clear() {
+        invalidations += entries.size();
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    /** Lookups that fell through to a full read, including stale and expired entries. */
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    /** Entries dropped because the tag returned a different fingerprint. */
+    synchronized long getStale() {
+        return stale;
+    }
+
+    synchronized long getExpired() {
+        return expired;
+    }
+
+    synchronized long getEvictions() {
+        return evictions;
+    }
+
+    synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    private static String uidKey(byte[] uid) {
+        return HexCodec.encode(uid);
+    }
+}
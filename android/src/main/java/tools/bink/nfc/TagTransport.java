@@ -0,0 +1,43 @@
+package tools.bink.nfc;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * One connection to a tag technology: the part of {@code android.nfc.tech}
+ * that protocol code needs.
+ *
+ * Readers and writers take a transport instead of an Android tech object, so
+ * the same code runs against a tag in the field ({@link AndroidTagTransport})
+ * or against a simulated one in a JVM test. A transport is used from one thread
+ * at a time.
+ */
+interface TagTransport extends ApduCodec.Transceiver, Closeable {
+
+    /** A MIFARE Classic connection, which authenticates and reads through the controller. */
+    interface Classic extends TagTransport, MifareClassicDumper.Card {
+        int getSize();
+
+        int getBlockCount();
+    }
+
+    void connect() throws IOException;
+
+    boolean isConnected();
+
+    @Override
+    byte[] transceive(byte[] command) throws IOException;
+
+    /** Timeout for each {@link #transceive} in milliseconds. */
+    void setTimeout(int timeoutMillis);
+
+    int getTimeout();
+
+    int getMaxTransceiveLength();
+
+    /** Whether extended-length APDUs reach the tag; false for anything but ISO-DEP. */
+    boolean isExtendedLengthApduSupported();
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,153 @@
+package tools.bink.nfc;
+
+/**
+ * NFC Forum Type 4 Tag (mapping version 2.0) file model for HCE.
+ *
+ * The Capability Container and the NDEF file are laid out back to back in a
+ * single backing buffer built once per profile. SELECT only moves the session's
+ * file pointer, and READ BINARY copies just the requested slice into the
+ * response frame, so a message larger than one frame is streamed over several
+ * short APDUs without the message itself being copied again.
+ */
+final class Type4Tag {
+    static final byte[] NDEF_APPLICATION_AID = {
+        (byte)0xD2, (byte)0x76, (byte)0x00, (byte)0x00, (byte)0x85, (byte)0x01, (byte)0x01
+    };
+    static final int CC_FILE_ID = 0xE103;
+    static final int NDEF_FILE_ID = 0xE104;
+
+    /** Largest R-APDU data field we advertise in the CC (MLe) and serve per READ BINARY. */
+    static final int MAX_READ_LENGTH = 0xFF;
+    /** Largest C-APDU data field we advertise in the CC (MLc). */
+    static final int MAX_COMMAND_LENGTH = 0xFF;
+    /** READ BINARY offsets are 15 bits, which bounds the readable NDEF file. */
+    static final int MAX_NDEF_LENGTH = 0x7FFF - 2;
+
+    static final byte[] SW_OK = {(byte)0x90, (byte)0x00};
+    static final byte[] SW_WRONG_LENGTH = {(byte)0x67, (byte)0x00};
+    static final byte[] SW_NO_CURRENT_EF = {(byte)0x69, (byte)0x86};
+    static final byte[] SW_FILE_NOT_FOUND = {(byte)0x6A, (byte)0x82};
+    static final byte[] SW_WRONG_P1P2 = {(byte)0x6A, (byte)0x86};
+    static final byte[] SW_WRONG_OFFSET = {(byte)0x6B, (byte)0x00};
+
+    private static final int CC_LENGTH = 15;
+
+    private final byte[] buffer;
+    private final int ndefFileLength;
+
+    /**
+     * @param ndefMessage serialized NDEF message served from the NDEF file
+     * @throws IllegalArgumentException if the message cannot be addressed by READ BINARY
+     */
+    Type4Tag(byte[] ndefMessage) {
+        if (ndefMessage.length > MAX_NDEF_LENGTH) {
+            throw new IllegalArgumentException("NDEF message is too large for a Type 4 Tag: "
+                + ndefMessage.length + " bytes, maximum " + MAX_NDEF_LENGTH);
+        }
+        ndefFileLength = ndefMessage.length + 2;
+        buffer = new byte[CC_LENGTH + ndefFileLength];
+
+        // Capability Container
+        buffer[0] = 0x00;
+        buffer[1] = CC_LENGTH;
+        buffer[2] = 0x20; // mapping version 2.0
+        buffer[3] = (byte) (MAX_READ_LENGTH >> 8);
+        buffer[4] = (byte) MAX_READ_LENGTH;
+        buffer[5] = (byte) (MAX_COMMAND_LENGTH >> 8);
+        buffer[6] = (byte) MAX_COMMAND_LENGTH;
+        // NDEF File Control TLV
+        buffer[7] = 0x04;
+        buffer[8] = 0x06;
+        buffer[9] = (byte) (NDEF_FILE_ID >> 8);
+        buffer[10] = (byte) NDEF_FILE_ID;
+        buffer[11] = (byte) (ndefFileLength >> 8);
+        buffer[12] = (byte) ndefFileLength;
+        buffer[13] = 0x00; // read access granted
+        buffer[14] = (byte) 0xFF; // write access denied
+
+        // NDEF file: NLEN followed by the message
+        buffer[CC_LENGTH] = (byte) (ndefMessage.length >> 8);
+        buffer[CC_LENGTH + 1] = (byte) ndefMessage.length;
+        System.arraycopy(ndefMessage, 0, buffer, CC_LENGTH + 2, ndefMessage.length);
+    }
+
+    /** Returns true when a SELECT by name targets the NDEF Tag Application. */
+    static boolean isNdefApplicationSelect(byte[] apdu) {
+        return matchesAid(apdu, NDEF_APPLICATION_AID);
+    }
+
+    /** Returns true when a SELECT by name carries exactly the given AID. */
+    static boolean matchesAid(byte[] apdu, byte[] aid) {
+        if (apdu.length < 5 + aid.length || (apdu[4] & 0xFF) != aid.length) {
+            return false;
+        }
+        for (int i = 0; i < aid.length; i++) {
+            if (apdu[5 + i] != aid[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** SELECT by file identifier (00 A4 00 0C 02 xxxx). */
+    byte[] selectFile(byte[] apdu, CardSession session) {
+        if (session.application != CardSession.APPLICATION_NDEF) {
+            return SW_FILE_NOT_FOUND;
+        }
+        if (apdu.length < 7 || (apdu[4] & 0xFF) != 2) {
+            return SW_WRONG_LENGTH;
+        }
+        int fileId = ((apdu[5] & 0xFF) << 8) | (apdu[6] & 0xFF);
+        if (fileId != CC_FILE_ID && fileId != NDEF_FILE_ID) {
+            session.selectedFile = CardSession.FILE_NONE;
+            return SW_FILE_NOT_FOUND;
+        }
+        session.selectedFile = fileId;
+        return SW_OK;
+    }
+
+    /** READ BINARY (00 B0 offset Le) from the currently selected file. */
+    byte[] readBinary(byte[] apdu, CardSession session) {
+        if (session.application != CardSession.APPLICATION_NDEF) {
+            return SW_NO_CURRENT_EF;
+        }
+        int fileStart;
+        int fileLength;
+        if (session.selectedFile == CC_FILE_ID) {
+            fileStart = 0;
+            fileLength = CC_LENGTH;
+        } else if (session.selectedFile == NDEF_FILE_ID) {
+            fileStart = CC_LENGTH;
+            fileLength = ndefFileLength;
+        } else {
+            return SW_NO_CURRENT_EF;
+        }
+        if ((apdu[2] & 0x80) != 0) {
+            // Short file identifier addressing is not supported
+            return SW_WRONG_P1P2;
+        }
+        int offset = ((apdu[2] & 0x7F) << 8) | (apdu[3] & 0xFF);
+        if (offset > fileLength) {
+            return SW_WRONG_OFFSET;
+        }
+        int count = Math.min(Math.min(expectedLength(apdu), MAX_READ_LENGTH), fileLength - offset);
+        byte[] response = new byte[count + 2];
+        System.arraycopy(buffer, fileStart + offset, response, 0, count);
+        response[count] = (byte)0x90;
+        response[count + 1] = (byte)0x00;
+        return response;
+    }
+
+    /** Decodes Le from a short or extended case 2 APDU; a missing Le asks for as much as possible. */
+    static int expectedLength(byte[] apdu) {
+        if (apdu.length == 5) {
+            int le = apdu[4] & 0xFF;
+            return le == 0 ? 256 : le;
+        }
+        if (apdu.length == 7 && apdu[4] == 0) {
+            int le = ((apdu[5] & 0xFF) << 8) | (apdu[6] & 0xFF);
+            return le == 0 ? 65536 : le;
+        }
+        return 65536;
+    }
+}
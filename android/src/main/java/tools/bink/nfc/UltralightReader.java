@@ -0,0 +1,166 @@
+package tools.bink.nfc;
+
+import java.io.IOException;
+
+/**
+ * Reads the full memory of MIFARE Ultralight and NTAG21x tags.
+ *
+ * The chip is identified with GET_VERSION, which gives the real page count
+ * instead of guessing from the transceive limit. Chips that support FAST_READ
+ * are then read in as few commands as the controller's transceive length
+ * allows; older chips fall back to READ, stepping four pages at a time. Pages
+ * are copied into one buffer sized for the chip.
+ */
+final class UltralightReader {
+
+    static final int PAGE_SIZE = 4;
+
+    private static final int CMD_GET_VERSION = 0x60;
+    private static final int CMD_READ = 0x30;
+    private static final int CMD_FAST_READ = 0x3A;
+    private static final int READ_PAGES = 4;
+    // Leaves room for the CRC some controllers count against the transceive limit
+    private static final int DEFAULT_MAX_TRANSCEIVE_LENGTH = 253;
+
+    static final class Chip {
+        final String name;
+        /** Readable pages, from page 0 up to and including the configuration pages. */
+        final int pageCount;
+        /** User memory in bytes, i.e. what an NDEF message can use. */
+        final int userMemory;
+        final boolean fastRead;
+
+        Chip(String name, int pageCount, int userMemory, boolean fastRead) {
+            this.name = name;
+            this.pageCount = pageCount;
+            this.userMemory = userMemory;
+            this.fastRead = fastRead;
+        }
+    }
+
+    static final Chip ULTRALIGHT = new Chip("MIFARE Ultralight", 16, 48, false);
+    static final Chip ULTRALIGHT_C = new Chip("MIFARE Ultralight C", 44, 144, false);
+    static final Chip ULTRALIGHT_EV1_MF0UL11 = new Chip("MIFARE Ultralight EV1 (MF0UL11)", 20, 48, true);
+    static final Chip ULTRALIGHT_EV1_MF0UL21 = new Chip("MIFARE Ultralight EV1 (MF0UL21)", 41, 128, true);
+    static final Chip NTAG210 = new Chip("NTAG210", 20, 48, true);
+    static final Chip NTAG212 = new Chip("NTAG212", 41, 128, true);
+    static final Chip NTAG213 = new Chip("NTAG213", 45, 144, true);
+    static final Chip NTAG215 = new Chip("NTAG215", 135, 504, true);
+    static final Chip NTAG216 = new Chip("NTAG216", 231, 888, true);
+
+    private final ApduCodec.Transceiver transceiver;
+    private final int maxTransceiveLength;
+
+    private byte[] version;
+    private int roundTrips;
+
+    UltralightReader(ApduCodec.Transceiver transceiver, int maxTransceiveLength) {
+        this.transceiver = transceiver;
+        this.maxTransceiveLength = maxTransceiveLength > 0 ? maxTransceiveLength : DEFAULT_MAX_TRANSCEIVE_LENGTH;
+    }
+
+    /**
+     * Sends GET_VERSION and returns the chip, or null when the tag does not answer
+     * it (original Ultralight and Ultralight C). After a null result the tag has
+     * been halted and must be reconnected before it is read.
+     */
+    Chip identify() {
+        version = null;
+        try {
+            roundTrips++;
+            byte[] response = transceiver.transceive(new byte[] {(byte) CMD_GET_VERSION});
+            if (response == null || response.length < 8) {
+                return null;
+            }
+            version = response;
+            return chipForVersion(response);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** Reads pages 0 to {@code chip.pageCount - 1} into a new buffer. */
+    byte[] read(Chip chip) throws IOException {
+        byte[] memory = new byte[chip.pageCount * PAGE_SIZE];
+        if (chip.fastRead) {
+            int pagesPerRead = Math.max(1, maxTransceiveLength / PAGE_SIZE);
+            for (int page = 0; page < chip.pageCount; page += pagesPerRead) {
+                int last = Math.min(page + pagesPerRead, chip.pageCount) - 1;
+                byte[] response = transceive(new byte[] {(byte) CMD_FAST_READ, (byte) page, (byte) last});
+                copyPages(response, memory, page, last - page + 1);
+            }
+        } else {
+            for (int page = 0; page < chip.pageCount; page += READ_PAGES) {
+                byte[] response = transceive(new byte[] {(byte) CMD_READ, (byte) page});
+                // READ wraps around at the end of memory, so copy only pages that exist
+                copyPages(response, memory, page, Math.min(READ_PAGES, chip.pageCount - page));
+            }
+        }
+        return memory;
+    }
+
+    /**
+     * One READ of pages 4 to 7, where a Type 2 tag keeps its NDEF TLV header.
+     * Returns the 16 bytes, or null when the tag answers with less.
+     */
+    byte[] readFingerprint() throws IOException {
+        byte[] response = transceive(new byte[] {(byte) CMD_READ, 0x04});
+        return response != null && response.length >= READ_PAGES * PAGE_SIZE ? response : null;
+    }
+
+    /** The raw GET_VERSION response from the last {@link #identify()}, or null. */
+    byte[] getVersion() {
+        return version;
+    }
+
+    /** Commands sent since this reader was created. */
+    int getRoundTrips() {
+        return roundTrips;
+    }
+
+    static Chip chipForVersion(byte[] version) {
+        int productType = version[2] & 0xFF;
+        int storageSize = version[6] & 0xFF;
+        if (productType == 0x03) {
+            if (storageSize == 0x0B) {
+                return ULTRALIGHT_EV1_MF0UL11;
+            }
+            if (storageSize == 0x0E) {
+                return ULTRALIGHT_EV1_MF0UL21;
+            }
+        } else if (productType == 0x04) {
+            switch (storageSize) {
+                case 0x0B:
+                    return NTAG210;
+                case 0x0E:
+                    return NTAG212;
+                case 0x0F:
+                    return NTAG213;
+                case 0x11:
+                    return NTAG215;
+                case 0x13:
+                    return NTAG216;
+                default:
+                    break;
+            }
+        }
+        // Unknown chip: the storage size byte gives the user memory as 2^n bytes (rounded down)
+        int userMemory = 1 << Math.min(storageSize >> 1, 12);
+        return new Chip(String.format("Unknown (%02X%02X)", productType, storageSize),
+            4 + userMemory / PAGE_SIZE, userMemory, true);
+    }
+
+    private byte[] transceive(byte[] command) throws IOException {
+        roundTrips++;
+        return transceiver.transceive(command);
+    }
+
+    private static void copyPages(byte[] response, byte[] memory, int page, int pages) throws IOException {
+        int length = pages * PAGE_SIZE;
+        if (response == null || response.length < length) {
+            throw new IOException("Short read at page " + page + ": expected " + length + " bytes, got "
+                + (response == null ? 0 : response.length));
+        }
+        System.arraycopy(response, 0, memory, page * PAGE_SIZE, length);
+    }
+}
@@ -0,0 +1,123 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import org.junit.Test;
+
+public class AidRouterTest {
+
+    @Test
+    public void findsExactAids() {
+        AidRouter<String> router = new AidRouter.Builder<String>()
+            .add("A0000001510001", "access")
+            .add("f0aa000000000002", "loyalty")
+            .add("D2760000850101", "ndef")
+            .build();
+
+        assertEquals(3, router.size());
+        assertEquals("loyalty", router.get(find(router, "F0AA000000000002")));
+        assertEquals("ndef", router.get(find(router, "D2760000850101")));
+        assertEquals(-1, find(router, "D27600008501"));
+        assertEquals(-1, find(router, "D276000085010100"));
+        assertEquals("F0AA000000000002", router.getAid(1));
+    }
+
+    @Test
+    public void exactAidsWinOverPrefixesAndLongPrefixesOverShort() {
+        AidRouter<String> router = new AidRouter.Builder<String>()
+            .add("A000000003*", "visa")
+            .add("A0000000031010*", "visa credit")
+            .add("A0000000031010AA", "ours")
+            .build();
+
+        assertEquals("ours", router.get(find(router, "A0000000031010AA")));
+        assertEquals("visa credit", router.get(find(router, "A0000000031010")));
+        assertEquals("visa credit", router.get(find(router, "A0000000031010BB")));
+        assertEquals("visa", router.get(find(router, "A0000000032010")));
+        assertEquals("visa", router.get(find(router, "A000000003")));
+        assertEquals(-1, find(router, "A0000000"));
+        assertEquals("A000000003*", router.getAid(0));
+    }
+
+    @Test
+    public void findsTheAidOfASelect() {
+        AidRouter<String> router = new AidRouter.Builder<String>().add("F001020304*", "app").build();
+
+        assertEquals(0, router.findSelected(HexCodec.decode("00A4040007F001020304050600")));
+        assertEquals(0, router.findSelected(HexCodec.decode("00A4040C07F00102030405FF")));
+        // Not SELECT by name, or truncated
+        assertEquals(-1, router.findSelected(HexCodec.decode("00A4000C07F00102030405FF")));
+        assertEquals(-1, router.findSelected(HexCodec.decode("80A4040007F001020304050600")));
+        assertEquals(-1, router.findSelected(HexCodec.decode("00A4040007F0010203")));
+        assertEquals(-1, router.findSelected(HexCodec.decode("00A404")));
+        assertEquals(-1, router.findSelected(null));
+    }
+
+    @Test
+    public void emptyRouterFindsNothing() {
+        AidRouter<String> router = AidRouter.empty();
+        assertEquals(0, router.size());
+        assertEquals(-1, router.findSelected(HexCodec.decode("00A4040007F001020304050600")));
+    }
+
+    @Test
+    public void rejectsMalformedAndDuplicateAids() {
+        String[] invalid = {"", "A0000001", "A000000151000100112233445566778899", "A00000015G", "A0000001*", "A0000001510"};
+        for (String aid : invalid) {
+            try {
+                new AidRouter.Builder<String>().add(aid, "app");
+                fail("accepted " + aid);
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+        try {
+            new AidRouter.Builder<String>().add("A0000001510001", "one").add("a0000001510001", "two");
+            fail("accepted a duplicate");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("Duplicate AID"));
+        }
+        // The same bytes as an exact AID and as a prefix are two routes
+        assertEquals(2, new AidRouter.Builder<String>().add("A0000001510001", "one").add("A0000001510001*", "two").build().size());
+    }
+
+    @Test
+    public void lookupDoesNotAllocateAtAnySize() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long threadId = Thread.currentThread().getId();
+        byte[] select = HexCodec.decode("00A4040007A0000001510001");
+
+        for (int size : new int[] {4, 4096}) {
+            AidRouter.Builder<Integer> builder = new AidRouter.Builder<Integer>().add("A0000001510001", -1);
+            for (int i = 1; i < size; i++) {
+                builder.add(String.format("A000009999%08X", i), i);
+            }
+            AidRouter<Integer> router = builder.build();
+
+            int sink = 0;
+            for (int i = 0; i < 100_000; i++) {
+                sink += router.findSelected(select);
+            }
+            int lookups = 1_000_000;
+            long before = allocations.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < lookups; i++) {
+                sink += router.findSelected(select);
+            }
+            long bytes = allocations.getThreadAllocatedBytes(threadId) - before;
+            // The measuring itself (and the JIT) allocates a few KB, so bound the cost per lookup
+            double bytesPerLookup = (double) bytes / lookups;
+            assertEquals(0, sink);
+            assertTrue("lookup allocated " + bytesPerLookup + " bytes per lookup", bytesPerLookup < 1.0);
+        }
+    }
+
+    private static int find(AidRouter<?> router, String aid) {
+        byte[] bytes = HexCodec.decode(aid);
+        return router.find(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,153 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class ApduCodecTest {
+
+    @Test
+    public void encodesShortAndExtendedCases() {
+        assertArrayEquals(hex("00D00100"), ApduCodec.encode(0x00, 0xD0, 0x01, 0x00, null, 0, 0, ApduCodec.NO_LE, false));
+        assertArrayEquals(hex("00B2010C00"), ApduCodec.encode(0x00, 0xB2, 0x01, 0x0C, null, 0, 0, 256, false));
+        assertArrayEquals(hex("00A4040002A0B1"), ApduCodec.encode(0x00, 0xA4, 0x04, 0x00, hex("A0B1"), 0, 2, ApduCodec.NO_LE, false));
+        assertArrayEquals(hex("00B00000000000"), ApduCodec.encode(0x00, 0xB0, 0x00, 0x00, null, 0, 0, 65536, true));
+
+        byte[] extendedWrite = ApduCodec.encode(0x00, 0xD0, 0x00, 0x00, new byte[256], 0, 256, ApduCodec.NO_LE, true);
+        assertEquals(4 + 3 + 256, extendedWrite.length);
+        assertArrayEquals(hex("00D00000000100"), Arrays.copyOf(extendedWrite, 7));
+        assertArrayEquals(hex("00D00000000002AABB0100"), ApduCodec.encode(0x00, 0xD0, 0x00, 0x00, hex("AABB"), 0, 2, 256, true));
+    }
+
+    @Test
+    public void largeWriteUsesExtendedLengthWhenSupported() throws Exception {
+        ScriptedCard card = new ScriptedCard();
+        card.respond("9000");
+        ApduCodec codec = new ApduCodec(card, true, 65546);
+
+        byte[] payload = new byte[2000];
+        Arrays.fill(payload, (byte) 0x41);
+        assertEquals(ApduCodec.SW_OK, codec.transmit(0x00, 0xD0, 0x00, 0x00, payload, ApduCodec.NO_LE));
+
+        assertEquals(1, card.commands.size());
+        byte[] command = card.commands.get(0);
+        assertEquals(4 + 3 + 2000, command.length);
+        assertEquals(0x00, command[4]);
+        assertEquals(2000, ((command[5] & 0xFF) << 8) | (command[6] & 0xFF));
+    }
+
+    @Test
+    public void largeWriteIsChainedWithoutExtendedLength() throws Exception {
+        ScriptedCard card = new ScriptedCard();
+        card.respond("9000").respond("9000").respond("9000").respond("9000");
+        ApduCodec codec = new ApduCodec(card, false, 261);
+
+        byte[] payload = new byte[600];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+        assertEquals(ApduCodec.SW_OK, codec.transmit(0x00, 0xD0, 0x00, 0x00, payload, ApduCodec.NO_LE));
+
+        assertEquals(3, card.commands.size());
+        ByteArrayOutputStream reassembled = new ByteArrayOutputStream();
+        for (int i = 0; i < card.commands.size(); i++) {
+            byte[] command = card.commands.get(i);
+            boolean last = i == card.commands.size() - 1;
+            assertEquals(last ? 0x00 : 0x10, command[0]);
+            assertTrue(command.length <= 261);
+            int lc = command[4] & 0xFF;
+            reassembled.write(command, 5, lc);
+        }
+        assertArrayEquals(payload, reassembled.toByteArray());
+    }
+
+    @Test
+    public void dataOverShortLimitIsChainedEvenWhenTheFrameWouldFit() throws Exception {
+        ScriptedCard card = new ScriptedCard();
+        card.respond("9000").respond("9000");
+        ApduCodec codec = new ApduCodec(card, false, 1024);
+
+        assertEquals(ApduCodec.SW_OK, codec.transmit(0x00, 0xD0, 0x00, 0x00, new byte[300], ApduCodec.NO_LE));
+
+        assertEquals(2, card.commands.size());
+        assertEquals(0x10, card.commands.get(0)[0]);
+        assertEquals(255, card.commands.get(0)[4] & 0xFF);
+        assertEquals(0x00, card.commands.get(1)[0]);
+        assertEquals(45, card.commands.get(1)[4] & 0xFF);
+    }
+
+    @Test
+    public void chainingStopsOnError() throws Exception {
+        ScriptedCard card = new ScriptedCard();
+        card.respond("6A80");
+        ApduCodec codec = new ApduCodec(card, false, 261);
+
+        assertEquals(0x6A80, codec.transmit(0x00, 0xD0, 0x00, 0x00, new byte[600], ApduCodec.NO_LE));
+        assertEquals(1, card.commands.size());
+    }
+
+    @Test
+    public void drainsGetResponseIntoOneBuffer() throws Exception {
+        ScriptedCard card = new ScriptedCard();
+        card.respond("0102036103").respond("0405066102").respond("07089000");
+        ApduCodec codec = new ApduCodec(card, false, 261);
+
+        assertEquals(ApduCodec.SW_OK, codec.transmit(0x00, 0xD0, 0x01, 0x00, null, ApduCodec.NO_LE));
+        assertArrayEquals(hex("0102030405060708"), codec.getResponseData());
+        assertArrayEquals(hex("00C0000003"), card.commands.get(1));
+        assertArrayEquals(hex("00C0000002"), card.commands.get(2));
+    }
+
+    @Test
+    public void repeatsCommandWithExactLeOnWrongLength() throws Exception {
+        ScriptedCard card = new ScriptedCard();
+        card.respond("6C04").respond("0A0B0C0D9000");
+        ApduCodec codec = new ApduCodec(card, false, 261);
+
+        assertEquals(ApduCodec.SW_OK, codec.transmit(0x00, 0xB2, 0x01, 0x0C, null, 256));
+        assertArrayEquals(hex("00B2010C04"), card.commands.get(1));
+        assertArrayEquals(hex("0A0B0C0D"), codec.getResponseData());
+    }
+
+    @Test
+    public void wrongLengthRepeatsAnExtendedCommandExtended() throws Exception {
+        ScriptedCard card = new ScriptedCard();
+        card.respond("6C02").respond("0A0B9000");
+        ApduCodec codec = new ApduCodec(card, true, 65546);
+
+        assertEquals(ApduCodec.SW_OK, codec.transmit(0x80, 0xE2, 0x00, 0x00, new byte[300], 512));
+        byte[] retry = card.commands.get(1);
+        assertEquals(4 + 3 + 300 + 2, retry.length);
+        assertEquals(300, ((retry[5] & 0xFF) << 8) | (retry[6] & 0xFF));
+        assertArrayEquals(hex("0002"), Arrays.copyOfRange(retry, retry.length - 2, retry.length));
+        assertArrayEquals(hex("0A0B"), codec.getResponseData());
+    }
+
+    private static final class ScriptedCard implements ApduCodec.Transceiver {
+        final List<byte[]> commands = new ArrayList<>();
+        private final List<byte[]> responses = new ArrayList<>();
+
+        ScriptedCard respond(String response) {
+            responses.add(hex(response));
+            return this;
+        }
+
+        @Override
+        public byte[] transceive(byte[] command) {
+            commands.add(command);
+            return responses.remove(0);
+        }
+    }
+
+    private static byte[] hex(String s) {
+        byte[] data = new byte[s.length() / 2];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) Integer.parseInt(s.substring(i * 2, i * 2 + 2), 16);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,131 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class ApduTraceTest {
+
+    @Test
+    public void samplingIsOffByDefault() {
+        ApduTrace trace = new ApduTrace(8, 16);
+        for (int i = 0; i < 100; i++) {
+            assertFalse(trace.sample());
+        }
+    }
+
+    @Test
+    public void samplesOneConversationInN() {
+        ApduTrace trace = new ApduTrace(8, 16);
+        trace.configure(4, 8, 16);
+        int sampled = 0;
+        for (int i = 0; i < 100; i++) {
+            if (trace.sample()) {
+                sampled++;
+            }
+        }
+        assertEquals(25, sampled);
+
+        trace.configure(1, 8, 16);
+        assertTrue(trace.sample());
+        assertTrue(trace.sample());
+    }
+
+    @Test
+    public void dumpsOldestFirstAfterWrapping() {
+        ApduTrace trace = new ApduTrace(4, 16);
+        for (int i = 0; i < 6; i++) {
+            trace.record(i % 2 == 0 ? ApduTrace.READER_COMMAND : ApduTrace.READER_RESPONSE, new byte[] {(byte) i}, 0, 1);
+        }
+        List<String> entries = dump(trace);
+        assertEquals(4, entries.size());
+        assertEquals("0 1 02", entries.get(0));
+        assertEquals("1 1 05", entries.get(3));
+        assertEquals(2, trace.getOverwritten());
+    }
+
+    @Test
+    public void keepsOnlyMaxBytesButTheFullLength() {
+        ApduTrace trace = new ApduTrace(4, 4);
+        byte[] apdu = HexCodec.decode("FF00A4040007F001020304050600");
+        trace.record(ApduTrace.HCE_COMMAND, apdu, 2, 5);
+        assertEquals("2 5 a4040007", dump(trace).get(0));
+
+        ApduTrace lengthsOnly = new ApduTrace(4, 0);
+        lengthsOnly.record(ApduTrace.HCE_RESPONSE, apdu, 0, apdu.length);
+        assertEquals("3 14 ", dump(lengthsOnly).get(0));
+    }
+
+    @Test
+    public void timestampsAreInOrder() {
+        ApduTrace trace = new ApduTrace(16, 8);
+        long before = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            trace.record(ApduTrace.READER_COMMAND, new byte[2], 0, 2);
+        }
+        long[] last = {before};
+        trace.dump((timeNanos, direction, length, buffer, offset, captured) -> {
+            assertTrue(timeNanos >= last[0]);
+            last[0] = timeNanos;
+        });
+        assertTrue(last[0] <= System.nanoTime());
+    }
+
+    @Test
+    public void resizingOrClearingDropsEntries() {
+        ApduTrace trace = new ApduTrace(4, 8);
+        trace.record(ApduTrace.READER_COMMAND, new byte[3], 0, 3);
+        trace.configure(2, 4, 8);
+        assertEquals(1, trace.size());
+
+        trace.configure(2, 8, 8);
+        assertEquals(0, trace.size());
+        trace.record(ApduTrace.READER_COMMAND, new byte[3], 0, 3);
+        trace.clear();
+        assertEquals(0, trace.size());
+        assertEquals(0, trace.getOverwritten());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnEmptyRing() {
+        new ApduTrace(0, 8);
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long threadId = Thread.currentThread().getId();
+
+        ApduTrace trace = new ApduTrace(ApduTrace.DEFAULT_CAPACITY, ApduTrace.DEFAULT_MAX_BYTES);
+        trace.configure(1, ApduTrace.DEFAULT_CAPACITY, ApduTrace.DEFAULT_MAX_BYTES);
+        byte[] select = HexCodec.decode("00A4040007F001020304050600");
+        for (int i = 0; i < 20_000; i++) {
+            trace.sample();
+            trace.record(ApduTrace.HCE_COMMAND, select, 0, select.length);
+        }
+        int records = 200_000;
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < records; i++) {
+            trace.sample();
+            trace.record(ApduTrace.HCE_COMMAND, select, 0, select.length);
+        }
+        long bytes = allocations.getThreadAllocatedBytes(threadId) - before;
+        double bytesPerRecord = (double) bytes / records;
+        assertTrue("trace allocated " + bytesPerRecord + " bytes per record", bytesPerRecord < 1.0);
+    }
+
+    private static List<String> dump(ApduTrace trace) {
+        List<String> entries = new ArrayList<>();
+        int size = trace.dump((timeNanos, direction, length, buffer, offset, captured) ->
+            entries.add(direction + " " + length + " " + HexCodec.encode(buffer, offset, captured, false)));
+        assertEquals(size, entries.size());
+        return entries;
+    }
+}
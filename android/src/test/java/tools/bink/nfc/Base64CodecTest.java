@@ -0,0 +1,59 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import java.util.Base64;
+import java.util.Random;
+import org.junit.Test;
+
+public class Base64CodecTest {
+
+    @Test
+    public void matchesRfc4648Vectors() {
+        assertEquals("", Base64Codec.encode(new byte[0]));
+        assertEquals("Zg==", Base64Codec.encode("f".getBytes()));
+        assertEquals("Zm8=", Base64Codec.encode("fo".getBytes()));
+        assertEquals("Zm9v", Base64Codec.encode("foo".getBytes()));
+        assertEquals("Zm9vYg==", Base64Codec.encode("foob".getBytes()));
+        assertEquals("Zm9vYmE=", Base64Codec.encode("fooba".getBytes()));
+        assertEquals("Zm9vYmFy", Base64Codec.encode("foobar".getBytes()));
+    }
+
+    @Test
+    public void matchesJdkEncoderOnDumps() {
+        Random random = new Random(7);
+        for (int length = 0; length < 1100; length += 37) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            assertEquals(Base64.getEncoder().encodeToString(data), Base64Codec.encode(data));
+        }
+    }
+
+    @Test
+    public void encodesSliceIntoCallerBuffer() {
+        byte[] data = {0x00, (byte) 0xFB, (byte) 0xFF, 0x10, 0x00};
+        char[] out = new char[10];
+        int written = Base64Codec.encode(data, 1, 3, out, 2);
+        assertEquals(4, written);
+        assertEquals("+/8Q", new String(out, 2, 4));
+    }
+
+    @Test
+    public void decodesWhatItEncodes() {
+        Random random = new Random(9);
+        for (int length = 0; length < 300; length += 7) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            assertArrayEquals(data, Base64Codec.decode(Base64Codec.encode(data)));
+        }
+        assertArrayEquals("fo".getBytes(), Base64Codec.decode("Zm8="));
+    }
+
+    @Test
+    public void rejectsInvalidBase64() {
+        assertNull(Base64Codec.decode(null));
+        assertNull(Base64Codec.decode("Zm8"));
+        assertNull(Base64Codec.decode("Zm=v"));
+        assertNull(Base64Codec.decode("Zm9v!A=="));
+    }
+}
@@ -0,0 +1,184 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import org.junit.Test;
+
+/**
+ * The HCE command path. Replays APDU sequences captured from a turnstile
+ * reader and checks that the hot path does not allocate; its speed is
+ * measured by {@code ApduBenchmark}.
+ */
+public class CardEmulatorTest {
+    private static final int WARMUP_ROUNDS = 20_000;
+    private static final int MEASURED_ROUNDS = 200_000;
+
+    // Reader polling loop: SELECT our AID, READ, then an unsupported GET DATA
+    private static final byte[][] TURNSTILE_SEQUENCE = {
+        hex("00A4040007F001020304050600"),
+        hex("00D0010000"),
+        hex("00D0010000"),
+        hex("00CA9F7F00"),
+    };
+
+    // Access control, then loyalty, then back to the legacy profile AID
+    private static final byte[][] ROUTED_SEQUENCE = {
+        hex("00A4040007A0000001510001"),
+        hex("00D0010000"),
+        hex("00A4040006F0AA0000000200"),
+        hex("00D0010000"),
+        hex("00A4040007F001020304050600"),
+        hex("00D0010000"),
+    };
+
+    private static final byte[][] MIFARE_SEQUENCE = {
+        hex("3000"),
+        hex("3004"),
+        hex("6000"),
+    };
+
+    @Test
+    public void ndefSequenceProducesExpectedResponses() {
+        CardEmulator emulator = new CardEmulator();
+        emulator.setProfile(EmulationProfile.forMessage("pass-1234"));
+
+        assertArrayEquals(EmulationProfile.SELECT_OK, emulator.process(TURNSTILE_SEQUENCE[0]));
+        assertArrayEquals(hex("706173732D313233349000"), emulator.process(TURNSTILE_SEQUENCE[1]));
+        assertArrayEquals(EmulationProfile.UNKNOWN_CMD, emulator.process(TURNSTILE_SEQUENCE[3]));
+        assertArrayEquals(EmulationProfile.UNKNOWN_CMD, emulator.process(new byte[0]));
+        assertArrayEquals(EmulationProfile.UNKNOWN_CMD, emulator.process(hex("00A4")));
+    }
+
+    @Test
+    public void mifareClassicReturnsCardId() {
+        CardEmulator emulator = new CardEmulator();
+        emulator.setProfile(EmulationProfile.forMifareClassic(null, ""));
+        assertArrayEquals(EmulationProfile.UNKNOWN_CMD, emulator.process(MIFARE_SEQUENCE[0]));
+
+        emulator.setProfile(EmulationProfile.forMifareClassic("04A1B2C3", ""));
+        assertArrayEquals(hex("04A1B2C3"), emulator.process(MIFARE_SEQUENCE[1]));
+        assertArrayEquals(EmulationProfile.UNKNOWN_CMD, emulator.process(MIFARE_SEQUENCE[2]));
+    }
+
+    @Test
+    public void publishingProfileSwapsModeAndData() {
+        CardEmulator emulator = new CardEmulator();
+        emulator.setProfile(EmulationProfile.forIsoDep("A000000001", "abc"));
+        assertArrayEquals(hex("6162639000"), emulator.process(TURNSTILE_SEQUENCE[1]));
+
+        emulator.setProfile(EmulationProfile.forMifareClassic("0102", "abc"));
+        assertArrayEquals(EmulationProfile.UNKNOWN_CMD, emulator.process(TURNSTILE_SEQUENCE[1]));
+        assertArrayEquals(hex("0102"), emulator.process(MIFARE_SEQUENCE[1]));
+
+        emulator.setProfile(null);
+        assertArrayEquals(EmulationProfile.SELECT_OK, emulator.process(TURNSTILE_SEQUENCE[1]));
+    }
+
+    @Test
+    public void selectRoutesToEachApplication() {
+        CardEmulator emulator = routedEmulator(3);
+
+        assertArrayEquals(EmulationProfile.SELECT_OK, emulator.process(ROUTED_SEQUENCE[0]));
+        assertArrayEquals(hex("6163636573739000"), emulator.process(ROUTED_SEQUENCE[1]));
+        // A prefix AID takes any longer AID that starts with it
+        assertArrayEquals(EmulationProfile.SELECT_OK, emulator.process(ROUTED_SEQUENCE[2]));
+        assertArrayEquals(hex("6C6F79616C74799000"), emulator.process(ROUTED_SEQUENCE[3]));
+        // An AID nobody routes goes back to the profile
+        assertArrayEquals(EmulationProfile.SELECT_OK, emulator.process(ROUTED_SEQUENCE[4]));
+        assertArrayEquals(hex("706173739000"), emulator.process(ROUTED_SEQUENCE[5]));
+    }
+
+    @Test
+    public void applicationsKeepTheirOwnSession() {
+        CardEmulator emulator = new CardEmulator();
+        emulator.setProfile(EmulationProfile.forMessage("pass"));
+        emulator.setApplications(new AidRouter.Builder<EmulationProfile>()
+            .add("D2760000850101", EmulationProfile.forNdef("ticket"))
+            .add("A000000151000100", EmulationProfile.forIsoDep("A000000151000100", "access"))
+            .build());
+
+        assertArrayEquals(EmulationProfile.SELECT_OK, emulator.process(hex("00A4040007D276000085010100")));
+        assertArrayEquals(Type4Tag.SW_OK, emulator.process(hex("00A4000C02E103")));
+        assertEquals(17, emulator.process(hex("00B000000F")).length);
+
+        emulator.onDeactivated();
+        // Nothing is selected once the reader has gone, so the profile answers
+        assertArrayEquals(Type4Tag.SW_NO_CURRENT_EF, emulator.process(hex("00B000000F")));
+
+        emulator.setApplications(null);
+        assertArrayEquals(hex("706173739000"), emulator.process(hex("00D0010000")));
+    }
+
+    @Test
+    public void routedReplayDoesNotAllocate() {
+        replay(routedEmulator(3), ROUTED_SEQUENCE);
+        replay(routedEmulator(300), ROUTED_SEQUENCE);
+    }
+
+    @Test
+    public void ndefReplayDoesNotAllocate() {
+        CardEmulator emulator = new CardEmulator();
+        emulator.setProfile(EmulationProfile.forMessage("turnstile-pass-0001"));
+        replay(emulator, TURNSTILE_SEQUENCE);
+    }
+
+    @Test
+    public void mifareReplayDoesNotAllocate() {
+        CardEmulator emulator = new CardEmulator();
+        emulator.setProfile(EmulationProfile.forMifareClassic("04A1B2C3D4E5F6", ""));
+        replay(emulator, MIFARE_SEQUENCE);
+    }
+
+    private static CardEmulator routedEmulator(int applications) {
+        AidRouter.Builder<EmulationProfile> routes = new AidRouter.Builder<EmulationProfile>()
+            .add("A0000001510001", EmulationProfile.forIsoDep("A0000001510001", "access"))
+            .add("F0AA000000*", EmulationProfile.forIsoDep("F0AA000000", "loyalty"));
+        for (int i = 2; i < applications; i++) {
+            String aid = String.format("A00000999900%04X", i);
+            routes.add(aid, EmulationProfile.forIsoDep(aid, "app " + i));
+        }
+        CardEmulator emulator = new CardEmulator();
+        emulator.setProfile(EmulationProfile.forMessage("pass"));
+        emulator.setApplications(routes.build());
+        return emulator;
+    }
+
+    private static void replay(CardEmulator emulator, byte[][] sequence) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long threadId = Thread.currentThread().getId();
+
+        int sink = run(emulator, sequence, WARMUP_ROUNDS);
+
+        long bytesBefore = allocations.getThreadAllocatedBytes(threadId);
+        sink += run(emulator, sequence, MEASURED_ROUNDS);
+        long bytes = allocations.getThreadAllocatedBytes(threadId) - bytesBefore;
+
+        long apdus = (long) MEASURED_ROUNDS * sequence.length;
+        double bytesPerApdu = (double) bytes / apdus;
+        assertTrue(sink > 0);
+        assertTrue("hot path allocated " + bytesPerApdu + " bytes per APDU", bytesPerApdu < 1.0);
+    }
+
+    private static int run(CardEmulator emulator, byte[][] sequence, int rounds) {
+        int sink = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (byte[] apdu : sequence) {
+                sink += emulator.process(apdu).length;
+            }
+        }
+        return sink;
+    }
+
+    private static byte[] hex(String s) {
+        byte[] data = new byte[s.length() / 2];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) Integer.parseInt(s.substring(i * 2, i * 2 + 2), 16);
+        }
+        return data;
+    }
+}
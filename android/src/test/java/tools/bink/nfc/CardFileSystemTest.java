@@ -0,0 +1,105 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class CardFileSystemTest {
+
+    @Test
+    public void resolvesFilesByIdAndShortId() {
+        CardFileSystem.Builder builder = new CardFileSystem.Builder();
+        int data = builder.addBinary(CardFileSystem.MF, 0x0101, 1, 64);
+        int app = builder.addDirectory(CardFileSystem.MF, 0x7F10);
+        int log = builder.addRecords(app, 0x0101, 1, 4, 64);
+        CardFileSystem files = builder.build();
+
+        assertEquals(4, files.getCount());
+        assertEquals(data, files.child(CardFileSystem.MF, 0x0101));
+        assertEquals(log, files.child(app, 0x0101));
+        assertEquals(app, files.child(CardFileSystem.MF, 0x7F10));
+        assertEquals(log, files.shortFile(app, 1));
+        assertEquals(data, files.shortFile(CardFileSystem.MF, 1));
+        assertEquals(CardFileSystem.NONE, files.shortFile(app, 2));
+        assertEquals(CardFileSystem.NONE, files.child(app, 0x7F10));
+        assertEquals(app, files.getParent(log));
+        assertEquals(CardFileSystem.MF, files.getParent(CardFileSystem.MF));
+    }
+
+    @Test
+    public void binaryFilesGrowUpToTheirCapacity() {
+        CardFileSystem.Builder builder = new CardFileSystem.Builder();
+        int first = builder.addBinary(CardFileSystem.MF, 0x0101, 0, 8);
+        int second = builder.addBinary(CardFileSystem.MF, 0x0102, 0, 8);
+        CardFileSystem files = builder.build();
+
+        assertTrue(files.write(first, 0, bytes("abcd"), 0, 4));
+        assertTrue(files.write(first, 2, bytes("XYZW"), 0, 4));
+        assertEquals(6, files.getSize(first));
+        assertFalse(files.write(first, 6, bytes("123"), 0, 3));
+        assertTrue(files.write(second, 0, bytes("12345678"), 0, 8));
+
+        byte[] out = new byte[16];
+        assertEquals(6, files.read(first, 0, out, 0, 16));
+        assertEquals("abXYZW", new String(out, 0, 6, StandardCharsets.UTF_8));
+        assertEquals(2, files.read(first, 4, out, 0, 16));
+        assertEquals(0, files.read(first, 6, out, 0, 16));
+
+        assertTrue(files.truncate(first, 3));
+        assertEquals(3, files.getSize(first));
+        assertFalse(files.truncate(first, 9));
+        assertEquals(8, files.read(second, 0, out, 0, 16));
+    }
+
+    @Test
+    public void recordsAreIndexedByNumber() {
+        CardFileSystem.Builder builder = new CardFileSystem.Builder();
+        int log = builder.addRecords(CardFileSystem.MF, 0x0102, 2, 3, 16);
+        CardFileSystem files = builder.build();
+
+        assertTrue(files.appendRecord(log, bytes("one"), 0, 3));
+        assertTrue(files.appendRecord(log, bytes("second"), 0, 6));
+        assertFalse(files.appendRecord(log, bytes("too long!"), 0, 9));
+        assertTrue(files.appendRecord(log, bytes("3"), 0, 1));
+        assertFalse(files.appendRecord(log, bytes("4"), 0, 1));
+
+        assertEquals(3, files.getRecordCount(log));
+        assertEquals(6, files.getRecordLength(log, 2));
+        assertEquals(-1, files.getRecordLength(log, 0));
+        assertEquals(-1, files.getRecordLength(log, 4));
+        byte[] out = new byte[6];
+        files.readRecord(log, 2, out, 0);
+        assertEquals("second", new String(out, StandardCharsets.UTF_8));
+
+        files.clear(log);
+        assertEquals(0, files.getRecordCount(log));
+        assertTrue(files.appendRecord(log, bytes("again"), 0, 5));
+    }
+
+    @Test
+    public void rejectsInvalidTrees() {
+        CardFileSystem.Builder builder = new CardFileSystem.Builder();
+        int data = builder.addBinary(CardFileSystem.MF, 0x0101, 0, 8);
+        assertInvalid(() -> builder.addBinary(data, 0x0102, 0, 8));
+        assertInvalid(() -> builder.addBinary(CardFileSystem.MF, CardFileSystem.MF_ID, 0, 8));
+        assertInvalid(() -> builder.addBinary(CardFileSystem.MF, 0x0103, 31, 8));
+        assertInvalid(() -> builder.addRecords(CardFileSystem.MF, 0x0104, 0, 0, 8));
+
+        builder.addBinary(CardFileSystem.MF, 0x0101, 0, 8);
+        assertInvalid(builder::build);
+    }
+
+    private static void assertInvalid(Runnable action) {
+        try {
+            action.run();
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,132 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+public class EventDispatcherTest {
+
+    private final Set<String> subscribed = new HashSet<>(Arrays.asList("nfcStatus", "nfcTagDetected", "readSuccess"));
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final List<Long> delays = new ArrayList<>();
+    private final List<List<TagIoExecutor.TagEvent<String>>> batches = new ArrayList<>();
+    private final List<Integer> dropped = new ArrayList<>();
+
+    private final EventDispatcher<String> dispatcher = new EventDispatcher<>(
+        subscribed::contains,
+        (task, delayMillis) -> {
+            scheduled.add(task);
+            delays.add(delayMillis);
+        },
+        (batch, lost) -> {
+            batches.add(batch);
+            dropped.add(lost);
+        },
+        "nfcStatus");
+
+    @Test
+    public void eventsInOneWindowAreDeliveredTogether() {
+        dispatcher.post("nfcStatus", "ready");
+        dispatcher.post("nfcTagDetected", "04A1");
+        dispatcher.post("readSuccess", "hello");
+
+        assertEquals(1, scheduled.size());
+        assertEquals(EventDispatcher.DEFAULT_WINDOW_MILLIS, (long) delays.get(0));
+        assertTrue(batches.isEmpty());
+        runScheduled();
+
+        assertEquals(1, batches.size());
+        assertEquals(Arrays.asList("nfcStatus", "nfcTagDetected", "readSuccess"), names(batches.get(0)));
+        assertEquals(0, (int) dropped.get(0));
+
+        // The next event opens a new window
+        dispatcher.post("readSuccess", "again");
+        assertEquals(1, scheduled.size());
+        runScheduled();
+        assertEquals(2, batches.size());
+        assertEquals(2, dispatcher.getBatches());
+        assertEquals(4, dispatcher.getDelivered());
+    }
+
+    @Test
+    public void unsubscribedEventsAreNeverQueued() {
+        dispatcher.post("writeSuccess", "ignored");
+        dispatcher.post("nfcTagLeft", "ignored");
+
+        assertTrue(scheduled.isEmpty());
+        assertEquals(0, dispatcher.queued());
+        assertEquals(2, dispatcher.getUnsubscribed());
+        assertEquals(0, dispatcher.getPosted());
+        assertFalse(dispatcher.wants("writeSuccess"));
+        assertTrue(dispatcher.wants("readSuccess"));
+    }
+
+    @Test
+    public void latestOnlyEventsReplaceQueuedOnesInOrder() {
+        dispatcher.post("nfcStatus", "scanning");
+        dispatcher.post("readSuccess", "first");
+        dispatcher.post("nfcStatus", "ready");
+        runScheduled();
+
+        List<TagIoExecutor.TagEvent<String>> batch = batches.get(0);
+        assertEquals(Arrays.asList("readSuccess", "nfcStatus"), names(batch));
+        assertEquals("ready", batch.get(1).data);
+        assertEquals(1, dispatcher.getMerged());
+    }
+
+    @Test
+    public void aFullQueueDropsTheOldestAndReportsIt() {
+        dispatcher.configure(50, 3);
+        for (int i = 0; i < 5; i++) {
+            dispatcher.post("readSuccess", "read " + i);
+        }
+        assertEquals(50, (long) delays.get(0));
+        runScheduled();
+
+        List<TagIoExecutor.TagEvent<String>> batch = batches.get(0);
+        assertEquals(3, batch.size());
+        assertEquals("read 2", batch.get(0).data);
+        assertEquals("read 4", batch.get(2).data);
+        assertEquals(2, (int) dropped.get(0));
+        assertEquals(2, dispatcher.getDropped());
+
+        // The count is reported once
+        dispatcher.post("readSuccess", "read 5");
+        runScheduled();
+        assertEquals(0, (int) dropped.get(1));
+    }
+
+    @Test
+    public void shrinkingTheQueueDropsWhatNoLongerFits() {
+        dispatcher.post("readSuccess", "a");
+        dispatcher.post("readSuccess", "b");
+        dispatcher.post("readSuccess", "c");
+        dispatcher.configure(0, 1);
+        runScheduled();
+
+        assertEquals(1, batches.get(0).size());
+        assertEquals("c", batches.get(0).get(0).data);
+        assertEquals(2, (int) dropped.get(0));
+    }
+
+    private void runScheduled() {
+        List<Runnable> tasks = new ArrayList<>(scheduled);
+        scheduled.clear();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+
+    private static List<String> names(List<TagIoExecutor.TagEvent<String>> batch) {
+        List<String> names = new ArrayList<>();
+        for (TagIoExecutor.TagEvent<String> event : batch) {
+            names.add(event.name);
+        }
+        return names;
+    }
+}
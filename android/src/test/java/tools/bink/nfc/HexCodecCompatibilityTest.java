@@ -0,0 +1,65 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * {@link HexCodec} against the per-byte {@code String.format} helpers it
+ * replaced, on 16-byte UIDs and 8 KB dumps. Their speed is compared by
+ * {@code HexBenchmark}.
+ */
+public class HexCodecCompatibilityTest {
+    private static final int UID_LENGTH = 16;
+    private static final int DUMP_LENGTH = 8 * 1024;
+
+    @Test
+    public void uidMatchesLegacyHelpers() {
+        compare(random(UID_LENGTH));
+    }
+
+    @Test
+    public void dumpMatchesLegacyHelpers() {
+        compare(random(DUMP_LENGTH));
+    }
+
+    private static void compare(byte[] data) {
+        String expected = legacyEncode(data);
+        assertEquals(expected, HexCodec.encode(data));
+        assertArrayEquals(legacyDecode(expected), HexCodec.decode(expected));
+
+        char[] chars = new char[data.length * 2];
+        assertEquals(chars.length, HexCodec.encode(data, 0, data.length, chars, 0, false));
+        assertEquals(expected, new String(chars));
+        byte[] bytes = new byte[data.length];
+        assertEquals(data.length, HexCodec.decode(expected, bytes, 0));
+        assertArrayEquals(legacyDecode(expected), bytes);
+    }
+
+    private static byte[] random(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    // The NfcPlugin.bytesToHexString implementation before HexCodec
+    private static String legacyEncode(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    // The NfcPlugin.hexStringToByteArray implementation before HexCodec
+    private static byte[] legacyDecode(String s) {
+        int len = s.length();
+        byte[] data = new byte[len / 2];
+        for (int i = 0; i < len; i += 2) {
+            data[i / 2] = (byte) ((Character.digit(s.charAt(i), 16) << 4)
+                             + Character.digit(s.charAt(i+1), 16));
+        }
+        return data;
+    }
+}
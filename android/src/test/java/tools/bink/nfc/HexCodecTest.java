@@ -0,0 +1,57 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class HexCodecTest {
+
+    @Test
+    public void encodesInBothCases() {
+        byte[] data = {0x00, 0x0F, (byte) 0xA5, (byte) 0xFF};
+        assertEquals("000fa5ff", HexCodec.encode(data));
+        assertEquals("000FA5FF", HexCodec.encodeUpper(data));
+        assertEquals("", HexCodec.encode(null));
+        assertEquals("", HexCodec.encode(new byte[0]));
+    }
+
+    @Test
+    public void roundTripsRandomDumps() {
+        Random random = new Random(11);
+        for (int length = 0; length < 600; length += 23) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            assertArrayEquals(data, HexCodec.decode(HexCodec.encode(data)));
+            assertArrayEquals(data, HexCodec.decode(HexCodec.encodeUpper(data)));
+        }
+    }
+
+    @Test
+    public void rejectsInvalidInputWithoutThrowing() {
+        assertNull(HexCodec.decode(null));
+        assertNull(HexCodec.decode("abc"));
+        assertNull(HexCodec.decode("0g"));
+        assertNull(HexCodec.decode("0\u00e9"));
+        assertFalse(HexCodec.isValid("A0 00"));
+        assertFalse(HexCodec.isValid(null));
+        assertTrue(HexCodec.isValid(""));
+        assertTrue(HexCodec.isValid("A0000000041010"));
+
+        byte[] out = new byte[4];
+        assertEquals(-1, HexCodec.decode("12zz", out, 0));
+    }
+
+    @Test
+    public void usesCallerBuffers() {
+        byte[] data = {0x11, 0x22, 0x33, 0x44};
+        char[] chars = new char[8];
+        assertEquals(4, HexCodec.encode(data, 1, 2, chars, 2, true));
+        assertEquals("2233", new String(chars, 2, 4));
+
+        byte[] out = new byte[5];
+        assertEquals(2, HexCodec.decode("beef", out, 3));
+        assertEquals((byte) 0xBE, out[3]);
+        assertEquals((byte) 0xEF, out[4]);
+    }
+}
@@ -0,0 +1,170 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class Iso7816CardTest {
+
+    private static final String AID = "F0A1000000000001";
+
+    @Test
+    public void selectsFilesByIdAndPath() {
+        CardFileSystem.Builder builder = new CardFileSystem.Builder();
+        builder.addBinary(CardFileSystem.MF, 0x0101, 1, 64);
+        int app = builder.addDirectory(CardFileSystem.MF, 0x7F10);
+        builder.addBinary(app, 0x6F01, 0, 64);
+        Iso7816Card card = new Iso7816Card(builder.build());
+        CardSession session = new CardSession();
+
+        assertSw("9000", card.process(hex("00A4040008F0A100000000000100"), session));
+        assertSw("9000", card.process(hex("00A4010C027F10"), session));
+        assertEquals(app, session.directory);
+        assertSw("9000", card.process(hex("00A4020C026F01"), session));
+        assertSw("6A82", card.process(hex("00A4020C027F10"), session));
+        // A sibling of the current DF by plain file ID, then back up with P1=03
+        assertSw("9000", card.process(hex("00A4000C020101"), session));
+        assertEquals(CardFileSystem.MF, session.directory);
+        assertSw("9000", card.process(hex("00A4000C027F10"), session));
+        assertSw("9000", card.process(hex("00A4030C"), session));
+        assertEquals(CardFileSystem.MF, session.directory);
+        assertSw("9000", card.process(hex("00A4000C023F00"), session));
+        assertSw("6A82", card.process(hex("00A4000C020999"), session));
+        assertSw("6700", card.process(hex("00A4000C0101"), session));
+        assertSw("6A86", card.process(hex("00A4080C020101"), session));
+    }
+
+    @Test
+    public void readsAndUpdatesBinaryFiles() {
+        Iso7816Card card = new Iso7816Card(Iso7816Card.defaultFiles("hello"));
+        CardSession session = new CardSession();
+
+        assertSw("6986", card.process(hex("00B0000000"), session));
+        // READ BINARY by SFI 1 selects the data file
+        assertArrayEquals(hex("68656C6C6F9000"), card.process(hex("00B0810000"), session));
+        assertArrayEquals(hex("6C6F9000"), card.process(hex("00B0000300"), session));
+        assertSw("6B00", card.process(hex("00B0000600"), session));
+
+        assertSw("9000", card.process(hex("00D6000502212121"), session));
+        assertArrayEquals(hex("68656C6C6F21219000"), card.process(hex("00B0000000"), session));
+        assertSw("6700", card.process(hex("00D60000"), session));
+        assertSw("6B00", card.process(hex("00D600200121"), session));
+        // The record file by SFI is not a binary file
+        assertSw("6981", card.process(hex("00B0820000"), session));
+    }
+
+    @Test
+    public void appendsAndReadsRecords() {
+        Iso7816Card card = new Iso7816Card(Iso7816Card.defaultFiles(""));
+        CardSession session = new CardSession();
+
+        assertSw("6A83", card.process(hex("00B2011400"), session));
+        assertSw("9000", card.process(hex("00E20010036F6E65"), session));
+        assertSw("9000", card.process(hex("00E200000374776F"), session));
+        assertArrayEquals(hex("6F6E659000"), card.process(hex("00B2011400"), session));
+        assertArrayEquals(hex("74776F9000"), card.process(hex("00B2020400"), session));
+        assertSw("6A83", card.process(hex("00B2030400"), session));
+        assertSw("6A86", card.process(hex("00B2010500"), session));
+        assertSw("6A86", card.process(hex("00E2010003616263"), session));
+        // SFI 1 is the binary data file
+        assertSw("6981", card.process(hex("00B2010C00"), session));
+    }
+
+    @Test
+    public void recordFilesRefuseRecordsThatDoNotFit() {
+        CardFileSystem.Builder builder = new CardFileSystem.Builder();
+        builder.addRecords(CardFileSystem.MF, 0x0102, 2, 2, 8);
+        Iso7816Card card = new Iso7816Card(builder.build());
+        CardSession session = new CardSession();
+
+        assertSw("9000", card.process(hex("00E2001005616263646500"), session));
+        assertSw("6A84", card.process(hex("00E20010046162636400"), session));
+        assertSw("9000", card.process(hex("00E20010026162"), session));
+        assertSw("6A84", card.process(hex("00E200100161"), session));
+    }
+
+    @Test
+    public void isoDepWriteIsStoredAndReadBack() throws IOException {
+        EmulationProfile profile = EmulationProfile.forFiles(AID, new Iso7816Card(Iso7816Card.defaultFiles("initial")));
+        SimulatedTag.Type4 tag = SimulatedTag.type4(profile);
+        byte[] aid = HexCodec.decode(AID);
+
+        tag.connect();
+        IsoDepExchange exchange = new IsoDepExchange(tag);
+        exchange.select(aid);
+        assertEquals("initial", exchange.read());
+
+        char[] text = new char[3000];
+        Arrays.fill(text, 'z');
+        exchange.write(new String(text).getBytes(StandardCharsets.UTF_8));
+        assertEquals(new String(text), exchange.read());
+        tag.close();
+
+        // A later tap finds what the last one wrote; a short write replaces it
+        tag.connect();
+        exchange = new IsoDepExchange(tag);
+        exchange.select(aid);
+        assertEquals(3000, exchange.read().length());
+        exchange.write("short".getBytes(StandardCharsets.UTF_8));
+        assertEquals("short", exchange.read());
+    }
+
+    @Test
+    public void exchangesSeveralKilobytesInOneTap() throws IOException {
+        CardFileSystem.Builder builder = new CardFileSystem.Builder();
+        int app = builder.addDirectory(CardFileSystem.MF, 0x7F10);
+        builder.addBinary(app, 0x6F01, 1, 16384);
+        builder.addRecords(app, 0x6F02, 2, 128, 8192);
+        Iso7816Card card = new Iso7816Card(builder.build());
+        SimulatedTag.Type4 tag = SimulatedTag.type4(EmulationProfile.forFiles(AID, card));
+
+        byte[] payload = new byte[12_000];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) (i * 31);
+        }
+
+        tag.connect();
+        ApduCodec reader = new ApduCodec(tag, false, tag.getMaxTransceiveLength());
+        assertEquals(ApduCodec.SW_OK, reader.transmit(0x00, 0xA4, 0x04, 0x00, HexCodec.decode(AID), ApduCodec.NO_LE));
+        assertEquals(ApduCodec.SW_OK, reader.transmit(0x00, 0xA4, 0x01, 0x0C, hex("7F10"), ApduCodec.NO_LE));
+        assertEquals(ApduCodec.SW_OK, reader.transmit(0x00, 0xA4, 0x02, 0x0C, hex("6F01"), ApduCodec.NO_LE));
+        for (int offset = 0; offset < payload.length; offset += 240) {
+            byte[] chunk = Arrays.copyOfRange(payload, offset, Math.min(payload.length, offset + 240));
+            assertEquals(ApduCodec.SW_OK, reader.transmit(0x00, 0xD6, offset >> 8, offset & 0xFF, chunk, ApduCodec.NO_LE));
+        }
+        for (int i = 0; i < 100; i++) {
+            byte[] entry = ("check-in " + i).getBytes(StandardCharsets.UTF_8);
+            assertEquals(ApduCodec.SW_OK, reader.transmit(0x00, 0xE2, 0x00, 2 << 3, entry, ApduCodec.NO_LE));
+        }
+
+        // Addressing the record file by SFI made it the current EF
+        assertEquals(ApduCodec.SW_OK, reader.transmit(0x00, 0xA4, 0x02, 0x0C, hex("6F01"), ApduCodec.NO_LE));
+        byte[] readBack = new byte[payload.length];
+        for (int offset = 0; offset < payload.length; offset += 256) {
+            assertEquals(ApduCodec.SW_OK, reader.transmit(0x00, 0xB0, offset >> 8, offset & 0xFF, null, 256));
+            System.arraycopy(reader.getResponseBuffer(), 0, readBack, offset, reader.getResponseLength());
+        }
+        assertArrayEquals(payload, readBack);
+        assertEquals(ApduCodec.SW_OK, reader.transmit(0x00, 0xB2, 100, (2 << 3) | 4, null, 256));
+        assertEquals("check-in 99", new String(reader.getResponseBuffer(), 0, reader.getResponseLength(), StandardCharsets.UTF_8));
+        tag.close();
+
+        // One APDU each: no GET RESPONSE or chaining was needed for 24000 bytes
+        assertEquals(3 + 50 + 100 + 1 + 47 + 1, tag.commands);
+        synchronized (card.getFiles()) {
+            assertEquals(100, card.getFiles().getRecordCount(card.getFiles().child(app, 0x6F02)));
+        }
+    }
+
+    private static void assertSw(String expected, byte[] response) {
+        assertTrue(response.length >= 2);
+        assertEquals(expected, HexCodec.encodeUpper(Arrays.copyOfRange(response, response.length - 2, response.length)));
+    }
+
+    private static byte[] hex(String s) {
+        return HexCodec.decode(s);
+    }
+}
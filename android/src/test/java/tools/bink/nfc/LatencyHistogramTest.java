@@ -0,0 +1,123 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValuesAreExact() {
+        for (long value = 0; value < 32; value++) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertEquals(value, LatencyHistogram.bucketUpperBound(index));
+        }
+    }
+
+    @Test
+    public void bucketsAreAtMostASixteenthWide() {
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong() & LatencyHistogram.MAX_VALUE;
+            int index = LatencyHistogram.bucketIndex(value);
+            long upper = LatencyHistogram.bucketUpperBound(index);
+            assertTrue(value + " above bucket " + upper, value <= upper);
+            assertTrue(value + " in too wide a bucket " + upper, upper - value <= Math.max(0, value / 16));
+            assertTrue(index < LatencyHistogram.BUCKET_COUNT);
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(LatencyHistogram.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesOfAUniformSpread() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(micros);
+        }
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000, histogram.getMax());
+        assertEquals(5000.5, histogram.getMean(), 0.001);
+        assertWithin(5_000, histogram.getValueAtPercentile(50));
+        assertWithin(9_500, histogram.getValueAtPercentile(95));
+        assertWithin(9_900, histogram.getValueAtPercentile(99));
+        assertEquals(10_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void tailIsNotHiddenByTheMedian() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 980; i++) {
+            histogram.recordNanos(2_000_000);
+        }
+        for (int i = 0; i < 20; i++) {
+            histogram.recordNanos(400_000_000);
+        }
+        assertWithin(2_000, histogram.getValueAtPercentile(50));
+        assertWithin(2_000, histogram.getValueAtPercentile(95));
+        assertWithin(400_000, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void emptyAndResetReportZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void concurrentRecordingLosesNothing() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            long value = 100L * (t + 1);
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    histogram.record(value);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(200_000, histogram.getCount());
+        assertEquals(400, histogram.getMax());
+        assertEquals(250.0, histogram.getMean(), 0.001);
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long threadId = Thread.currentThread().getId();
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 20_000; i++) {
+            histogram.recordNanos(i * 997L);
+        }
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 200_000; i++) {
+            histogram.recordNanos(i * 997L);
+        }
+        long bytes = allocations.getThreadAllocatedBytes(threadId) - before;
+        assertTrue("histogram allocated " + bytes + " bytes", bytes < 1024);
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected about " + expected + ", got " + actual,
+            actual >= expected && actual <= expected + expected / 16);
+    }
+}
@@ -0,0 +1,118 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class MifareClassicDumperTest {
+
+    private static final byte[] UID = {0x04, 0x11, 0x22, 0x33};
+    private static final byte[] USER_KEY = {0x01, 0x02, 0x03, 0x04, 0x05, 0x06};
+
+    @Test
+    public void dumpsEverySectorIntoOnePackedBuffer() throws IOException {
+        SimulatedCard card = new SimulatedCard(16);
+        MifareClassicDumper dumper = new MifareClassicDumper(4);
+
+        MifareClassicDumper.Dump dump = dumper.dump(UID, card);
+
+        assertEquals(16, dump.sectorsRead);
+        assertEquals(64 * MifareClassicDumper.BLOCK_SIZE, dump.data.length);
+        assertEquals(2, dump.sectorStatus.length);
+        assertEquals((byte) 0xFF, dump.sectorStatus[0]);
+        assertEquals((byte) 0xFF, dump.sectorStatus[1]);
+        // Every block is filled with its own block number
+        assertEquals(37, dump.data[37 * MifareClassicDumper.BLOCK_SIZE + 5]);
+    }
+
+    @Test
+    public void userKeysAndKeyBOpenTheRemainingSectors() throws IOException {
+        SimulatedCard card = new SimulatedCard(16);
+        card.keys[3] = USER_KEY;
+        card.keys[9] = MifareClassicDumper.KEY_NFC_FORUM;
+        card.keyB[12] = true;
+        card.keys[14] = new byte[] {9, 9, 9, 9, 9, 9};
+        MifareClassicDumper dumper = new MifareClassicDumper(4);
+        dumper.setUserKeys(List.of(USER_KEY));
+
+        MifareClassicDumper.Dump dump = dumper.dump(UID, card);
+
+        assertEquals(15, dump.sectorsRead);
+        assertTrue(dump.isSectorRead(3));
+        assertTrue(dump.isSectorRead(9));
+        assertTrue(dump.isSectorRead(12));
+        assertFalse(dump.isSectorRead(14));
+        assertEquals(0, dump.data[14 * 4 * MifareClassicDumper.BLOCK_SIZE]);
+    }
+
+    @Test
+    public void repeatReadUsesCachedKeys() throws IOException {
+        SimulatedCard card = new SimulatedCard(16);
+        for (int sector = 0; sector < 16; sector += 2) {
+            card.keys[sector] = USER_KEY;
+        }
+        MifareClassicDumper dumper = new MifareClassicDumper(4);
+        dumper.setUserKeys(List.of(USER_KEY));
+
+        MifareClassicDumper.Dump first = dumper.dump(UID, card);
+        MifareClassicDumper.Dump second = dumper.dump(UID, card);
+
+        assertEquals(16, first.sectorsRead);
+        assertTrue("first read should search the dictionary", first.authentications > 16);
+        assertEquals(16, second.sectorsRead);
+        assertEquals(16, second.authentications);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMalformedUserKeys() {
+        new MifareClassicDumper(4).setUserKeys(List.of(new byte[] {1, 2, 3}));
+    }
+
+    /** MIFARE Classic 1K: 16 sectors of 4 blocks, each sector opened by one key. */
+    private static final class SimulatedCard implements MifareClassicDumper.Card {
+        final byte[][] keys;
+        final boolean[] keyB;
+        private int authenticated = -1;
+
+        SimulatedCard(int sectors) {
+            keys = new byte[sectors][];
+            keyB = new boolean[sectors];
+            Arrays.fill(keys, MifareClassicDumper.KEY_DEFAULT);
+        }
+
+        @Override
+        public int getSectorCount() {
+            return keys.length;
+        }
+
+        @Override
+        public int getBlockCountInSector(int sector) {
+            return 4;
+        }
+
+        @Override
+        public int sectorToBlock(int sector) {
+            return sector * 4;
+        }
+
+        @Override
+        public boolean authenticate(int sector, byte[] key, boolean useKeyB) {
+            boolean ok = useKeyB == keyB[sector] && Arrays.equals(key, keys[sector]);
+            authenticated = ok ? sector : -1;
+            return ok;
+        }
+
+        @Override
+        public byte[] readBlock(int block) throws IOException {
+            if (block / 4 != authenticated) {
+                throw new IOException("Not authenticated");
+            }
+            byte[] data = new byte[16];
+            Arrays.fill(data, (byte) block);
+            return data;
+        }
+    }
+}
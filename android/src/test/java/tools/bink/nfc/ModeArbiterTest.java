@@ -0,0 +1,157 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class ModeArbiterTest {
+
+    private static final int NFC_A = 1;
+    private static final int NFC_B = 2;
+    private static final int NFC_V = 8;
+    private static final int BARCODE = 16;
+
+    private final List<String> calls = new ArrayList<>();
+
+    private final ModeArbiter<String> arbiter = new ModeArbiter<>(new ModeArbiter.Controller<String>() {
+        @Override
+        public void enableReader(int flags, int presenceCheckDelay) {
+            calls.add("reader " + flags + "/" + presenceCheckDelay);
+        }
+
+        @Override
+        public void disableReader() {
+            calls.add("reader off");
+        }
+
+        @Override
+        public void enableDispatch(List<String> filters) {
+            calls.add("dispatch " + filters);
+        }
+
+        @Override
+        public void disableDispatch() {
+            calls.add("dispatch off");
+        }
+    });
+
+    private final Object nfc = new Object();
+    private final Object legacy = new Object();
+
+    @Test
+    public void ownersSharingReaderModeDoNotSwitchIt() {
+        arbiter.resume();
+        arbiter.requestReader(legacy, NFC_A | NFC_B, 0);
+        arbiter.requestReader(nfc, NFC_A | NFC_B, 0);
+        assertTrue(arbiter.release(nfc));
+        arbiter.requestReader(nfc, NFC_A | NFC_B, 0);
+        assertTrue(arbiter.release(legacy));
+
+        // Only the first owner in and the last owner out reach the controller
+        assertEquals(Collections.singletonList("reader 3/0"), calls);
+        assertTrue(arbiter.release(nfc));
+        assertEquals(Arrays.asList("reader 3/0", "reader off"), calls);
+        assertEquals(ModeArbiter.OFF, arbiter.getMode());
+        assertEquals(2, arbiter.getSwitches());
+        assertFalse(arbiter.release(nfc));
+    }
+
+    @Test
+    public void readerRequestsCombineFlagsAndTheShortestDelay() {
+        arbiter.resume();
+        arbiter.requestReader(legacy, NFC_A | BARCODE, 0);
+        arbiter.requestReader(nfc, NFC_V, 250);
+        assertEquals(NFC_A | NFC_V | BARCODE, arbiter.getFlags());
+        assertEquals(250, arbiter.getPresenceCheckDelay());
+        arbiter.requestReader(legacy, NFC_A | BARCODE, 100);
+        assertEquals(100, arbiter.getPresenceCheckDelay());
+
+        // Reconfigured in place, never through off
+        arbiter.release(nfc);
+        assertEquals(Arrays.asList("reader 17/0", "reader 25/250", "reader 25/100", "reader 17/100"), calls);
+    }
+
+    @Test
+    public void readerModeWinsOverDispatchUntilReleased() {
+        arbiter.resume();
+        arbiter.requestDispatch(nfc, Arrays.asList("tag", "tech"));
+        arbiter.requestDispatch(legacy, Collections.singletonList("ndef"));
+        assertEquals(ModeArbiter.DISPATCH, arbiter.getMode());
+
+        arbiter.requestReader(legacy, NFC_A, 0);
+        assertEquals(ModeArbiter.READER, arbiter.getMode());
+        assertTrue(arbiter.holds(nfc));
+
+        arbiter.release(legacy);
+        assertEquals(Arrays.asList(
+            "dispatch [tag, tech]", "dispatch [tag, tech, ndef]",
+            "dispatch off", "reader 1/0",
+            "reader off", "dispatch [tag, tech]"), calls);
+    }
+
+    @Test
+    public void nothingIsAppliedWhilePaused() {
+        arbiter.requestReader(legacy, NFC_A, 0);
+        arbiter.requestReader(nfc, NFC_B, 0);
+        assertTrue(calls.isEmpty());
+
+        // Every plugin forwards the lifecycle, so repeats must be free
+        arbiter.resume();
+        arbiter.resume();
+        assertEquals(Collections.singletonList("reader 3/0"), calls);
+        arbiter.pause();
+        arbiter.pause();
+        arbiter.release(nfc);
+        assertEquals(Arrays.asList("reader 3/0", "reader off"), calls);
+
+        arbiter.resume();
+        assertEquals(Arrays.asList("reader 3/0", "reader off", "reader 1/0"), calls);
+        assertEquals(1, arbiter.getOwners());
+    }
+
+    @Test
+    public void aFailedSwitchIsRetriedOnResume() {
+        List<String> enabled = new ArrayList<>();
+        boolean[] broken = {true};
+        ModeArbiter<String> failing = new ModeArbiter<>(new ModeArbiter.Controller<String>() {
+            @Override
+            public void enableReader(int flags, int presenceCheckDelay) {
+                if (broken[0]) {
+                    throw new IllegalStateException("Activity is not resumed");
+                }
+                enabled.add("reader " + flags);
+            }
+
+            @Override
+            public void disableReader() {
+            }
+
+            @Override
+            public void enableDispatch(List<String> filters) {
+            }
+
+            @Override
+            public void disableDispatch() {
+            }
+        });
+        failing.resume();
+        try {
+            failing.requestReader(nfc, NFC_A, 0);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        assertEquals(ModeArbiter.OFF, failing.getMode());
+        assertTrue(failing.holds(nfc));
+
+        broken[0] = false;
+        failing.pause();
+        failing.resume();
+        assertEquals(Collections.singletonList("reader 1"), enabled);
+        assertEquals(ModeArbiter.READER, failing.getMode());
+    }
+}
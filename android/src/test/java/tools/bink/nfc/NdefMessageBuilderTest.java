@@ -0,0 +1,107 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class NdefMessageBuilderTest {
+
+    @Test
+    public void encodesShortTextRecord() {
+        byte[] message = new NdefMessageBuilder().addText("hi", "en").build();
+        assertArrayEquals(HexCodec.decode("D101055402656E6869"), message);
+    }
+
+    @Test
+    public void textOver255BytesUsesLongRecord() {
+        char[] text = new char[300];
+        Arrays.fill(text, 'a');
+        NdefMessageBuilder builder = new NdefMessageBuilder().addText(new String(text), "en");
+        byte[] message = builder.build();
+
+        // MB | ME | TNF_WELL_KNOWN without SR, then a 4-byte length of 3 + 300
+        assertEquals((byte) 0xC1, message[0]);
+        assertArrayEquals(HexCodec.decode("0000012F"), Arrays.copyOfRange(message, 2, 6));
+        assertEquals('T', message[6]);
+        assertEquals(7 + 303, message.length);
+        assertEquals(builder.size(), message.length);
+    }
+
+    @Test
+    public void abbreviatesUriPrefix() {
+        byte[] message = new NdefMessageBuilder().addUri("https://www.example.com").build();
+        byte[] expected = concat(HexCodec.decode("D1010C5502"), "example.com".getBytes(StandardCharsets.US_ASCII));
+        assertArrayEquals(expected, message);
+
+        message = new NdefMessageBuilder().addUri("geo:52.0,4.3").build();
+        assertEquals(0, message[4]);
+    }
+
+    @Test
+    public void multiRecordMessageSetsBeginAndEndFlags() {
+        byte[] message = new NdefMessageBuilder()
+            .addUri("https://example.com")
+            .addMime("Application/JSON", "{}".getBytes(StandardCharsets.US_ASCII))
+            .addApplicationRecord("tools.bink.app")
+            .build();
+
+        assertEquals((byte) 0x91, message[0]);
+        int second = 3 + 1 + 1 + 11;
+        assertEquals((byte) 0x12, message[second]);
+        assertEquals("application/json", new String(message, second + 3, 16, StandardCharsets.US_ASCII));
+        int third = second + 3 + 16 + 2;
+        assertEquals((byte) 0x54, message[third]);
+        assertEquals("android.com:pkg", new String(message, third + 3, 15, StandardCharsets.US_ASCII));
+        assertEquals(third + 3 + 15 + 14, message.length);
+    }
+
+    @Test
+    public void writesRecordIdAndRawRecords() {
+        byte[] message = new NdefMessageBuilder()
+            .addExternal("Example.com", "Pass", new byte[] {1, 2})
+            .withId(new byte[] {'a'})
+            .addRecord(NdefMessageBuilder.TNF_UNKNOWN, null, null, new byte[] {9})
+            .build();
+
+        // MB | SR | IL | TNF_EXTERNAL_TYPE, type, payload and id lengths, then type, id, payload
+        assertArrayEquals(concat(HexCodec.decode("9C100201"), "example.com:pass".getBytes(StandardCharsets.US_ASCII),
+            HexCodec.decode("610102"), HexCodec.decode("55000109")), message);
+    }
+
+    @Test
+    public void writesIntoCallerBuffer() {
+        NdefMessageBuilder builder = new NdefMessageBuilder().addText("hi", "en");
+        byte[] out = new byte[builder.size() + 4];
+        assertEquals(builder.size(), builder.write(out, 4));
+        assertEquals((byte) 0xD1, out[4]);
+    }
+
+    @Test
+    public void rejectsRecordsThatBreakTheTnfRules() {
+        NdefMessageBuilder builder = new NdefMessageBuilder();
+        assertThrows(IllegalArgumentException.class,
+            () -> builder.addRecord(NdefMessageBuilder.TNF_EMPTY, new byte[] {1}, null, null));
+        assertThrows(IllegalArgumentException.class,
+            () -> builder.addRecord(NdefMessageBuilder.TNF_UNKNOWN, new byte[] {1}, null, null));
+        assertThrows(IllegalArgumentException.class,
+            () -> builder.addRecord(NdefMessageBuilder.TNF_MIME_MEDIA, null, null, null));
+        assertThrows(IllegalArgumentException.class, () -> builder.addRecord(7, new byte[] {1}, null, null));
+        assertThrows(IllegalStateException.class, builder::build);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] out = new byte[length];
+        int position = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, out, position, part.length);
+            position += part.length;
+        }
+        return out;
+    }
+}
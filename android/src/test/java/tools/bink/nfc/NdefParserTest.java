@@ -0,0 +1,235 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class NdefParserTest {
+
+    @Test
+    public void readsEveryRecordOfABuiltMessage() {
+        byte[] message = new NdefMessageBuilder()
+            .addText("hello", "de")
+            .addUri("https://www.example.com/a")
+            .addMime("application/json", "{}".getBytes(StandardCharsets.UTF_8))
+            .withId(new byte[] {1, 2})
+            .build();
+
+        NdefParser parser = new NdefParser(message);
+        assertTrue(parser.next());
+        assertEquals(0, parser.index());
+        assertTrue(parser.isText());
+        assertEquals("hello", parser.text());
+        assertEquals("de", parser.textLanguage());
+
+        assertTrue(parser.next());
+        assertTrue(parser.isUri());
+        assertEquals("https://www.example.com/a", parser.uri());
+
+        assertTrue(parser.next());
+        assertEquals(NdefMessageBuilder.TNF_MIME_MEDIA, parser.tnf());
+        assertEquals("application/json", parser.type());
+        assertEquals("{}", parser.payloadText());
+        assertEquals(2, parser.idLength());
+        assertEquals(1, message[parser.idOffset()]);
+
+        assertFalse(parser.next());
+        assertFalse(parser.next());
+    }
+
+    @Test
+    public void payloadIsAViewIntoTheBuffer() {
+        byte[] payload = new byte[70_000];
+        Arrays.fill(payload, (byte) 0x5A);
+        byte[] message = new NdefMessageBuilder()
+            .addMime("application/octet-stream", payload)
+            .addText("after", "en")
+            .build();
+
+        NdefParser parser = new NdefParser(message);
+        assertTrue(parser.next());
+        assertSame(message, parser.buffer());
+        assertEquals(70_000, parser.payloadLength());
+        assertEquals(0x5A, message[parser.payloadOffset()]);
+        assertEquals(0x5A, message[parser.payloadOffset() + 69_999]);
+
+        assertTrue(parser.next());
+        assertEquals("after", parser.text());
+    }
+
+    @Test
+    public void walksSmartPosterInPlace() {
+        byte[] inner = new NdefMessageBuilder()
+            .addUri("https://example.com")
+            .addText("Example", "en")
+            .build();
+        byte[] message = new NdefMessageBuilder()
+            .addRecord(NdefMessageBuilder.TNF_WELL_KNOWN, NdefParser.RTD_SMART_POSTER, null, inner)
+            .build();
+
+        NdefParser poster = new NdefParser(message);
+        assertTrue(poster.next());
+        assertTrue(poster.isSmartPoster());
+
+        NdefParser nested = poster.nested();
+        assertSame(message, nested.buffer());
+        assertTrue(nested.next());
+        assertEquals("https://example.com", nested.uri());
+        assertTrue(nested.next());
+        assertEquals("Example", nested.text());
+        assertFalse(nested.next());
+        assertFalse(poster.next());
+    }
+
+    @Test
+    public void decodesUtf16Text() {
+        byte[] body = "h\u00e9".getBytes(StandardCharsets.UTF_16BE);
+        byte[] payload = new byte[3 + body.length];
+        payload[0] = (byte) 0x82;
+        payload[1] = 'e';
+        payload[2] = 'n';
+        System.arraycopy(body, 0, payload, 3, body.length);
+        byte[] message = new NdefMessageBuilder()
+            .addRecord(NdefMessageBuilder.TNF_WELL_KNOWN, NdefMessageBuilder.RTD_TEXT, null, payload)
+            .build();
+
+        NdefParser parser = new NdefParser(message);
+        assertTrue(parser.next());
+        assertEquals("h\u00e9", parser.text());
+        assertEquals("en", parser.textLanguage());
+    }
+
+    @Test
+    public void resetStartsOver() {
+        NdefParser parser = new NdefParser(new NdefMessageBuilder().addText("a", "en").addText("b", "en").build());
+        while (parser.next()) {
+            // drain
+        }
+        parser.reset();
+        assertTrue(parser.next());
+        assertEquals("a", parser.text());
+    }
+
+    @Test
+    public void findsNdefTlvInType2Memory() {
+        byte[] message = new NdefMessageBuilder().addUri("https://example.com").build();
+        byte[] memory = new byte[64];
+        int position = 16;
+        // NULL TLV, then a lock control TLV, then the NDEF TLV and a terminator
+        memory[position++] = 0x00;
+        memory[position++] = 0x01;
+        memory[position++] = 0x03;
+        position += 3;
+        memory[position++] = 0x03;
+        memory[position++] = (byte) message.length;
+        System.arraycopy(message, 0, memory, position, message.length);
+        memory[position + message.length] = (byte) 0xFE;
+
+        NdefParser parser = NdefParser.forType2Memory(memory);
+        assertNotNull(parser);
+        assertTrue(parser.next());
+        assertEquals("https://example.com", parser.uri());
+        assertFalse(parser.next());
+    }
+
+    @Test
+    public void readsThreeByteTlvLength() {
+        byte[] text = new byte[300];
+        Arrays.fill(text, (byte) 'x');
+        byte[] message = new NdefMessageBuilder().addText(new String(text, StandardCharsets.US_ASCII), "en").build();
+        byte[] memory = new byte[16 + 4 + message.length];
+        memory[16] = 0x03;
+        memory[17] = (byte) 0xFF;
+        memory[18] = (byte) (message.length >>> 8);
+        memory[19] = (byte) message.length;
+        System.arraycopy(message, 0, memory, 20, message.length);
+
+        NdefParser parser = NdefParser.forType2Memory(memory);
+        assertNotNull(parser);
+        assertTrue(parser.next());
+        assertEquals(300, parser.text().length());
+    }
+
+    @Test
+    public void type2MemoryWithoutNdefGivesNull() {
+        byte[] memory = new byte[64];
+        memory[16] = (byte) 0xFE;
+        assertNull(NdefParser.forType2Memory(memory));
+
+        // Empty NDEF TLV of a freshly formatted tag
+        memory[16] = 0x03;
+        memory[17] = 0x00;
+        memory[18] = (byte) 0xFE;
+        assertNull(NdefParser.forType2Memory(memory));
+    }
+
+    @Test
+    public void rejectsTruncatedRecord() {
+        byte[] message = new NdefMessageBuilder().addText("hello", "en").build();
+        NdefParser parser = new NdefParser(message, 0, message.length - 1);
+        try {
+            parser.next();
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("past the end"));
+        }
+    }
+
+    @Test
+    public void rejectsChunkedRecord() {
+        byte[] message = HexCodec.decode("B1010154");
+        try {
+            new NdefParser(message).next();
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("chunked"));
+        }
+    }
+
+    @Test
+    public void rejectsMissingMessageBegin() {
+        try {
+            new NdefParser(HexCodec.decode("5100")).next();
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("message-begin"));
+        }
+    }
+
+    @Test
+    public void skippingRecordsDoesNotAllocate() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long threadId = Thread.currentThread().getId();
+
+        NdefMessageBuilder builder = new NdefMessageBuilder();
+        for (int i = 0; i < 8; i++) {
+            builder.addMime("application/octet-stream", new byte[4096]);
+        }
+        NdefParser parser = new NdefParser(builder.build());
+        long sink = 0;
+        for (int i = 0; i < 1000; i++) {
+            parser.reset();
+            while (parser.next()) {
+                sink += parser.payloadLength();
+            }
+        }
+
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            parser.reset();
+            while (parser.next()) {
+                sink += parser.payloadLength();
+            }
+        }
+        long bytes = allocations.getThreadAllocatedBytes(threadId) - before;
+        assertEquals(101_000L * 8 * 4096, sink);
+        assertTrue("parser allocated " + bytes + " bytes", bytes < 1024);
+    }
+}
@@ -0,0 +1,215 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProfileStoreTest {
+
+    private File directory;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("profiles").toFile();
+        file = new File(directory, ProfileStore.FILE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        for (File child : directory.listFiles()) {
+            child.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void nothingSavedLoadsAsNull() throws IOException {
+        assertNull(new ProfileStore(file).load());
+    }
+
+    @Test
+    public void restoredEmulationAnswersLikeTheOriginal() throws IOException {
+        CardFileSystem.Builder builder = new CardFileSystem.Builder();
+        builder.addBinary(CardFileSystem.MF, 0x0101, 1, 256);
+        int app = builder.addDirectory(CardFileSystem.MF, 0x7F10);
+        int log = builder.addRecords(app, 0x6F01, 3, 8, 256);
+        CardFileSystem files = builder.build();
+        assertTrue(files.write(1, 0, bytes("stored"), 0, 6));
+        assertTrue(files.appendRecord(log, bytes("one"), 0, 3));
+        assertTrue(files.appendRecord(log, bytes("two!"), 0, 4));
+
+        EmulationProfile profile = EmulationProfile.forMifareUltralight("0102030405060708", "hello");
+        AidRouter<EmulationProfile> applications = new AidRouter.Builder<EmulationProfile>()
+            .add("F0A1000000000001", EmulationProfile.forIsoDep("F0A1000000000001", "iso data"))
+            .add("F0A2000000*", EmulationProfile.forIsoDep("F0A2000000", "prefixed"))
+            .add("F0A3000000000003", EmulationProfile.forNdef("F0A3000000000003", "ndef data"))
+            .add("F0A4000000000004", EmulationProfile.forFiles("F0A4000000000004", new Iso7816Card(files)))
+            .build();
+
+        ProfileStore store = new ProfileStore(file);
+        store.save(profile, applications);
+        ProfileStore.Snapshot snapshot = store.load();
+
+        assertEquals(EmulationProfile.MODE_MIFARE_ULTRALIGHT, snapshot.profile.getMode());
+        assertEquals("hello", snapshot.profile.getNdefMessage());
+        assertEquals(4, snapshot.applications.size());
+        assertEquals("F0A2000000*", snapshot.applications.getAid(1));
+
+        CardEmulator original = new CardEmulator();
+        original.setProfile(profile);
+        original.setApplications(applications);
+        CardEmulator restored = new CardEmulator();
+        restored.setProfile(snapshot.profile);
+        restored.setApplications(snapshot.applications);
+
+        String[] commands = {
+            "30000000", "60040000",
+            "00A4040008F0A100000000000100", "00D00000",
+            "00A4040008F0A200000099999900", "00D00000",
+            "00A4040008F0A300000000000300", "00A4040007D276000085010100", "00A4000C02E104", "00B0000002",
+            "00A4040008F0A400000000000400", "00B0810000", "00A4000C027F10", "00B2011C00", "00B2021C00",
+        };
+        for (String command : commands) {
+            assertArrayEquals(command, original.process(hex(command)), restored.process(hex(command)));
+        }
+    }
+
+    @Test
+    public void restoredFileContentsTrackAndSaveChanges() throws IOException {
+        EmulationProfile profile = EmulationProfile.forFiles("F0A4000000000004", new Iso7816Card(Iso7816Card.defaultFiles("before")));
+        ProfileStore store = new ProfileStore(file);
+        store.save(profile, AidRouter.empty());
+
+        EmulationProfile restored = store.load().profile;
+        CardFileSystem files = restored.getCard().getFiles();
+        assertFalse(files.takeModified());
+        int data = files.child(CardFileSystem.MF, Iso7816Card.DATA_FILE_ID);
+        assertTrue(files.write(data, 0, bytes("after!"), 0, 6));
+        assertTrue(files.takeModified());
+        assertFalse(files.takeModified());
+
+        store.save(restored, AidRouter.empty());
+        byte[] out = new byte[16];
+        CardFileSystem saved = store.load().profile.getCard().getFiles();
+        assertEquals(6, saved.read(data, 0, out, 0, out.length));
+        assertEquals("after!", new String(out, 0, 6, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void rejectsFilesThatAreNotAStore() throws IOException {
+        ProfileStore store = new ProfileStore(file);
+        store.save(EmulationProfile.forIsoDep("F0010203040506", "data"), AidRouter.empty());
+        long length = file.length();
+
+        // Cut the image short, then overwrite the magic
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.getChannel().truncate(length - 3);
+        }
+        assertLoadFails(store);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(bytes("not a profile store"));
+        }
+        assertLoadFails(store);
+    }
+
+    @Test
+    public void rejectsLengthsTheFileCannotHold() throws IOException {
+        ProfileStore store = new ProfileStore(file);
+
+        // A string claiming 2 GB in a file of a few bytes
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            writeHeader(out);
+            out.writeInt(Integer.MAX_VALUE);
+        }
+        assertLoadFails(store);
+
+        // A missing mode
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            writeHeader(out);
+            out.writeInt(-1);
+        }
+        assertLoadFails(store);
+
+        // A file reserving far more than any card can hold, then contents longer than what is left
+        for (int[] lengths : new int[][] {{Integer.MAX_VALUE, 0}, {256, 200}}) {
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+                writeHeader(out);
+                writeString(out, EmulationProfile.MODE_FILES);
+                out.writeInt(-1);
+                writeString(out, "");
+                writeString(out, "F0A4000000000004");
+                out.writeInt(-1);
+                out.writeInt(1);
+                out.writeShort(0x0101);
+                out.writeInt(CardFileSystem.MF);
+                out.writeByte(CardFileSystem.TYPE_BINARY);
+                out.writeByte(1);
+                out.writeInt(lengths[0]);
+                out.writeInt(0);
+                out.writeInt(lengths[1]);
+                out.write(new byte[8]);
+            }
+            assertLoadFails(store);
+        }
+    }
+
+    @Test
+    public void coldLoadAnswersTheFirstSelect() throws IOException {
+        AidRouter.Builder<EmulationProfile> builder = new AidRouter.Builder<>();
+        for (int i = 0; i < 32; i++) {
+            String aid = String.format("F0B0%012X", i);
+            builder.add(aid, i % 2 == 0
+                ? EmulationProfile.forIsoDep(aid, "application " + i)
+                : EmulationProfile.forFiles(aid, new Iso7816Card(Iso7816Card.defaultFiles("application " + i))));
+        }
+        ProfileStore saving = new ProfileStore(file);
+        saving.save(EmulationProfile.forNdef("default"), builder.build());
+
+        ProfileStore.Snapshot snapshot = new ProfileStore(file).load();
+        CardEmulator emulator = new CardEmulator();
+        emulator.setProfile(snapshot.profile);
+        emulator.setApplications(snapshot.applications);
+
+        assertEquals(32, snapshot.applications.size());
+        assertArrayEquals(Iso7816Card.SW_OK, emulator.process(hex("00A4040008F0B000000000001F00")));
+    }
+
+    // Magic, version and no routed applications
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(0x424E4B50);
+        out.writeShort(1);
+        out.writeShort(0);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = bytes(value);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void assertLoadFails(ProfileStore store) {
+        try {
+            store.load();
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] hex(String text) {
+        return HexCodec.decode(text);
+    }
+}
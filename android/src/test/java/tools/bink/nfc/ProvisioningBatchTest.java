@@ -0,0 +1,99 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class ProvisioningBatchTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    private final List<String> encoded = new ArrayList<>();
+
+    private String encode(String text) throws Exception {
+        if (text.length() > 16) {
+            throw new Exception("Text is too long");
+        }
+        encoded.add(text);
+        return "<" + text + ">";
+    }
+
+    @Test
+    public void fixedMessageIsEncodedOnce() throws Exception {
+        ProvisioningBatch<String> batch = ProvisioningBatch.forTemplate("event-pass", 1, 0, 3, this::encode, 0);
+        for (int i = 0; i < 3; i++) {
+            assertEquals("<event-pass>", batch.next());
+            batch.recordSuccess("tag" + i);
+        }
+        assertTrue(batch.isComplete());
+        assertNull(batch.next());
+        assertEquals(List.of("event-pass"), encoded);
+        assertEquals(3, batch.getWritten());
+    }
+
+    @Test
+    public void templateFillsPaddedSerials() throws Exception {
+        ProvisioningBatch<String> batch = ProvisioningBatch.forTemplate("band-{serial}", 98, 4, 0, this::encode, 0);
+        assertEquals("band-0098", batch.nextText());
+        batch.recordSuccess("a");
+        assertEquals("<band-0099>", batch.next());
+        batch.recordSuccess("b");
+        assertEquals("band-0100", batch.nextText());
+        assertFalse(batch.isComplete());
+        // Encoded one ahead, never more
+        assertEquals(3, encoded.size());
+    }
+
+    @Test
+    public void failedWriteKeepsMessageForNextTag() throws Exception {
+        ProvisioningBatch<String> batch = ProvisioningBatch.forTemplate("band-{serial}", 1, 0, 2, this::encode, 0);
+        batch.recordFailure();
+        assertEquals("band-1", batch.nextText());
+        assertEquals(0, batch.nextIndex());
+        assertEquals(1, batch.getFailed());
+    }
+
+    @Test
+    public void messageListIsEncodedUpFrontAndWrittenInOrder() throws Exception {
+        ProvisioningBatch<String> batch = ProvisioningBatch.forMessages(List.of("a", "b"), this::encode, 0);
+        assertEquals(List.of("a", "b"), encoded);
+        assertEquals("<a>", batch.next());
+        batch.recordSuccess("t1");
+        assertEquals("<b>", batch.next());
+        batch.recordSuccess("t2");
+        assertTrue(batch.isComplete());
+        assertEquals(2, batch.getCount());
+    }
+
+    @Test
+    public void badMessageFailsTheStart() {
+        try {
+            ProvisioningBatch.forMessages(List.of("ok", "this message is far too long"), this::encode, 0);
+            fail("expected the encoder error");
+        } catch (Exception e) {
+            assertEquals("Text is too long", e.getMessage());
+        }
+    }
+
+    @Test
+    public void tagIsOnlyWrittenOnce() throws Exception {
+        ProvisioningBatch<String> batch = ProvisioningBatch.forTemplate("band-{serial}", 1, 0, 0, this::encode, 0);
+        assertTrue(batch.claim("04A1"));
+        batch.recordSuccess("04A1");
+        assertFalse(batch.claim("04A1"));
+        assertTrue(batch.claim("04B2"));
+        assertEquals(1, batch.getSkipped());
+        assertEquals("band-2", batch.nextText());
+    }
+
+    @Test
+    public void reportsTagsPerMinute() throws Exception {
+        ProvisioningBatch<String> batch = ProvisioningBatch.forTemplate("x", 1, 0, 0, this::encode, 0);
+        for (int i = 0; i < 30; i++) {
+            batch.recordSuccess("tag" + i);
+        }
+        assertEquals(60.0, batch.getTagsPerMinute(30 * SECOND), 0.001);
+        assertEquals(0.0, batch.getTagsPerMinute(0), 0.001);
+    }
+}
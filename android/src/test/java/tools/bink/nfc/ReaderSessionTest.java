@@ -0,0 +1,86 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class ReaderSessionTest {
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void dropsOldestResultWhenQueueIsFull() {
+        List<Runnable> scheduled = new ArrayList<>();
+        List<String> delivered = new ArrayList<>();
+        ReaderSession<String> session = new ReaderSession<>(2, 0, scheduled::add, delivered::add);
+        session.offer("a", 0);
+        session.offer("b", 0);
+        session.offer("c", 0);
+
+        // One drain for the whole backlog
+        assertEquals(1, scheduled.size());
+        assertEquals(2, session.drain(10 * MS));
+        assertEquals(List.of("b", "c"), delivered);
+        assertEquals(3, session.getTagsRead());
+        assertEquals(1, session.getTagsDropped());
+        assertEquals(0, session.queued());
+    }
+
+    @Test
+    public void tracksLatencyAndThroughput() {
+        ReaderSession<String> session = new ReaderSession<>(8, 0, task -> { }, result -> { });
+        for (int i = 0; i < 10; i++) {
+            long discovered = i * 200 * MS;
+            session.offer("tag" + i, discovered);
+            session.drain(discovered + (i + 1) * MS);
+        }
+
+        assertEquals(10, session.getTagsDelivered());
+        assertEquals(10.0, session.getLastLatencyMillis(), 0.001);
+        assertEquals(5.5, session.getAverageLatencyMillis(), 0.001);
+        assertEquals(10.0, session.getMaxLatencyMillis(), 0.001);
+        assertEquals(5.0, session.getTagsPerSecond(2000 * MS), 0.5);
+    }
+
+    @Test
+    public void aBusyConsumerLosesTheOldestResultsOnly() throws Exception {
+        ExecutorService consumer = Executors.newSingleThreadExecutor();
+        CountDownLatch busy = new CountDownLatch(1);
+        // The consumer is stuck on other work while the reader keeps producing
+        consumer.execute(() -> {
+            try {
+                busy.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        List<Integer> delivered = new ArrayList<>();
+        ReaderSession<Integer> session = new ReaderSession<>(16, System.nanoTime(), consumer::execute, delivered::add);
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 100; i++) {
+                session.offer(i, System.nanoTime());
+            }
+        });
+        producer.start();
+        producer.join();
+        assertEquals(16, session.queued());
+
+        busy.countDown();
+        consumer.shutdown();
+        assertTrue(consumer.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(16, delivered.size());
+        assertEquals(84, (int) delivered.get(0));
+        assertEquals(99, (int) delivered.get(15));
+        assertEquals(100, session.getTagsRead());
+        assertEquals(84, session.getTagsDropped());
+        assertEquals(16, session.getTagsDelivered());
+        assertEquals(0, session.queued());
+    }
+}
@@ -0,0 +1,77 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class ReaderTagRouterTest {
+    private static final long MS = 1_000_000L;
+    private static final byte[] UID = {0x04, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66};
+
+    @Test
+    public void aRepeatServesAReadPendingWhileAnotherPluginHoldsReaderMode() {
+        ModeArbiter<String> arbiter = new ModeArbiter<>(new NoController());
+        Object legacy = new Object();
+        Object dispatch = new Object();
+        arbiter.resume();
+        arbiter.requestReader(legacy, 1, 0);
+        TagEventFilter filter = new TagEventFilter(TagEventFilter.DEFAULT_WINDOW_MILLIS, TagEventFilter.DEFAULT_CAPACITY);
+
+        // Nothing is pending when the tag is first held on the reader
+        int first = filter.onTag(UID, 0);
+        assertEquals(TagEventFilter.ARRIVED, first);
+        assertEquals(ReaderTagRouter.IGNORE, route(first, arbiter.holds(dispatch)));
+
+        // read() asks for dispatch, but reader mode wins, so only the reader callback sees the tag
+        arbiter.requestDispatch(dispatch, Collections.singletonList("ndef"));
+        assertEquals(ModeArbiter.READER, arbiter.getMode());
+
+        int repeat = filter.onTag(UID, 200 * MS);
+        assertEquals(TagEventFilter.SUPPRESSED, repeat);
+        assertEquals(ReaderTagRouter.DISPATCH, route(repeat, arbiter.holds(dispatch)));
+    }
+
+    @Test
+    public void repeatsAreOnlyForPendingOperations() {
+        int repeat = TagEventFilter.SUPPRESSED;
+        assertEquals(ReaderTagRouter.IGNORE, ReaderTagRouter.route(repeat, true, false, true, true));
+        assertEquals(ReaderTagRouter.IGNORE, ReaderTagRouter.route(repeat, false, true, true, true));
+        assertEquals(ReaderTagRouter.IGNORE, ReaderTagRouter.route(repeat, false, false, false, true));
+        assertEquals(ReaderTagRouter.DISPATCH, ReaderTagRouter.route(repeat, false, false, true, true));
+    }
+
+    @Test
+    public void arrivalsGoToTheFirstActiveOperation() {
+        for (int transition : new int[] {TagEventFilter.ARRIVED, TagEventFilter.CHANGED}) {
+            assertEquals(ReaderTagRouter.BATCH, ReaderTagRouter.route(transition, true, true, true, true));
+            assertEquals(ReaderTagRouter.SESSION, ReaderTagRouter.route(transition, false, true, true, true));
+            assertEquals(ReaderTagRouter.DISPATCH, ReaderTagRouter.route(transition, false, false, true, true));
+            assertEquals(ReaderTagRouter.SCAN, ReaderTagRouter.route(transition, false, false, false, true));
+            assertEquals(ReaderTagRouter.IGNORE, ReaderTagRouter.route(transition, false, false, false, false));
+        }
+    }
+
+    private static int route(int transition, boolean dispatch) {
+        return ReaderTagRouter.route(transition, false, false, dispatch, false);
+    }
+
+    private static final class NoController implements ModeArbiter.Controller<String> {
+        @Override
+        public void enableReader(int flags, int presenceCheckDelay) {
+        }
+
+        @Override
+        public void disableReader() {
+        }
+
+        @Override
+        public void enableDispatch(List<String> filters) {
+        }
+
+        @Override
+        public void disableDispatch() {
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package tools.bink.nfc;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-memory tag behind a {@link TagTransport}, so the read and write engines
+ * run on the JVM.
+ *
+ * Three memory models: a Type 2 tag answering the Ultralight/NTAG command set
+ * from page memory, a Type 4 tag whose APDUs go to an {@link ApduDispatcher}
+ * handler (an {@link EmulationProfile} works, so the HCE card can be read back
+ * by the reader code), and a MIFARE Classic card with a key per sector. Every
+ * command can be given a latency; a latency over the transport timeout loses
+ * the tag, like one pulled out of the field.
+ */
+abstract class SimulatedTag implements TagTransport {
+
+    // Android's default transceive timeout for NfcA
+    static final int DEFAULT_TIMEOUT_MILLIS = 618;
+
+    private final int maxTransceiveLength;
+    private long latencyNanos;
+    private int timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+    private boolean connected;
+    private boolean lost;
+    int connects;
+    int commands;
+    // Latency charged so far
+    long waitedNanos;
+
+    SimulatedTag(int maxTransceiveLength) {
+        this.maxTransceiveLength = maxTransceiveLength;
+    }
+
+    /** NTAG or Ultralight with {@code chip.pageCount} pages; {@code version} null for chips without GET_VERSION. */
+    static Type2 type2(UltralightReader.Chip chip, byte[] version) {
+        return new Type2(chip.pageCount, version);
+    }
+
+    static Type4 type4(ApduDispatcher.Handler card) {
+        return new Type4(card);
+    }
+
+    /** The HCE card answering with {@code profile}, as another phone would see it. */
+    static Type4 type4(EmulationProfile profile) {
+        return new Type4(profile::process);
+    }
+
+    /** MIFARE Classic 1K: 16 sectors of 4 blocks, each opened by key A. */
+    static Classic classic1k(byte[] key) {
+        return new Classic(16, key);
+    }
+
+    /** Delay added to each command. */
+    SimulatedTag withLatency(long latencyMicros) {
+        this.latencyNanos = latencyMicros * 1_000L;
+        return this;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        if (lost) {
+            throw new IOException("Tag was lost");
+        }
+        connects++;
+        connected = true;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public final byte[] transceive(byte[] command) throws IOException {
+        roundTrip();
+        return respond(command);
+    }
+
+    abstract byte[] respond(byte[] command) throws IOException;
+
+    /** Counts a command and applies the latency, losing the tag when it exceeds the timeout. */
+    void roundTrip() throws IOException {
+        if (!connected) {
+            throw new IOException("Not connected");
+        }
+        commands++;
+        if (latencyNanos > 0) {
+            if (latencyNanos > timeoutMillis * 1_000_000L) {
+                connected = false;
+                lost = true;
+                throw new IOException("Tag was lost");
+            }
+            waitedNanos += latencyNanos;
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+
+    @Override
+    public void setTimeout(int timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public int getTimeout() {
+        return timeoutMillis;
+    }
+
+    @Override
+    public int getMaxTransceiveLength() {
+        return maxTransceiveLength;
+    }
+
+    @Override
+    public boolean isExtendedLengthApduSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        connected = false;
+    }
+
+    /** Ultralight/NTAG page memory: GET_VERSION, READ with wrap-around, FAST_READ and WRITE. */
+    static final class Type2 extends SimulatedTag {
+        private static final byte[] ACK = {0x0A};
+
+        final byte[] memory;
+        private final byte[] version;
+
+        Type2(int pages, byte[] version) {
+            super(253);
+            this.memory = new byte[pages * UltralightReader.PAGE_SIZE];
+            this.version = version;
+            // Capability container of an NDEF-formatted tag, then an empty NDEF TLV
+            memory[12] = (byte) 0xE1;
+            memory[13] = 0x10;
+            memory[14] = (byte) ((memory.length - 16) / 8);
+            memory[16] = 0x03;
+            memory[18] = (byte) 0xFE;
+        }
+
+        /** Stores {@code message} in an NDEF TLV at page 4, as a reader writing NDEF would. */
+        Type2 withNdef(byte[] message) {
+            int header = message.length < 0xFF ? 2 : 4;
+            if (16 + header + message.length + 1 > memory.length) {
+                throw new IllegalArgumentException("Message does not fit the tag");
+            }
+            int position = 16;
+            memory[position++] = 0x03;
+            if (header == 2) {
+                memory[position++] = (byte) message.length;
+            } else {
+                memory[position++] = (byte) 0xFF;
+                memory[position++] = (byte) (message.length >>> 8);
+                memory[position++] = (byte) message.length;
+            }
+            System.arraycopy(message, 0, memory, position, message.length);
+            memory[position + message.length] = (byte) 0xFE;
+            return this;
+        }
+
+        @Override
+        byte[] respond(byte[] command) throws IOException {
+            int pages = memory.length / UltralightReader.PAGE_SIZE;
+            switch (command[0]) {
+                case 0x60:
+                    if (version == null) {
+                        throw new IOException("NAK");
+                    }
+                    return version.clone();
+                case 0x30: {
+                    byte[] response = new byte[16];
+                    for (int i = 0; i < 4; i++) {
+                        int page = ((command[1] & 0xFF) + i) % pages;
+                        System.arraycopy(memory, page * 4, response, i * 4, 4);
+                    }
+                    return response;
+                }
+                case 0x3A: {
+                    int start = command[1] & 0xFF;
+                    int end = command[2] & 0xFF;
+                    if (version == null || end < start || end >= pages) {
+                        throw new IOException("NAK");
+                    }
+                    return Arrays.copyOfRange(memory, start * 4, (end + 1) * 4);
+                }
+                case (byte) 0xA2: {
+                    int page = command[1] & 0xFF;
+                    if (command.length != 6 || page < 4 || page >= pages) {
+                        throw new IOException("NAK");
+                    }
+                    System.arraycopy(command, 2, memory, page * 4, 4);
+                    return ACK;
+                }
+                default:
+                    throw new IOException("NAK");
+            }
+        }
+    }
+
+    /** ISO-DEP card; the reader session state is reset when the connection closes. */
+    static final class Type4 extends SimulatedTag {
+        private final ApduDispatcher.Handler card;
+        private final CardSession session = new CardSession();
+
+        Type4(ApduDispatcher.Handler card) {
+            super(261);
+            this.card = card;
+        }
+
+        @Override
+        byte[] respond(byte[] command) {
+            return card.handle(command, session);
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            session.reset();
+        }
+    }
+
+    /** MIFARE Classic behind the controller's authenticate and read calls; raw commands are not modelled. */
+    static final class Classic extends SimulatedTag implements TagTransport.Classic {
+        static final int BLOCKS_PER_SECTOR = 4;
+
+        final byte[][] keys;
+        final byte[] blocks;
+        private int authenticated = -1;
+
+        Classic(int sectors, byte[] key) {
+            super(253);
+            keys = new byte[sectors][];
+            Arrays.fill(keys, key);
+            blocks = new byte[sectors * BLOCKS_PER_SECTOR * MifareClassicDumper.BLOCK_SIZE];
+            for (int i = 0; i < blocks.length; i++) {
+                blocks[i] = (byte) (i / MifareClassicDumper.BLOCK_SIZE);
+            }
+        }
+
+        @Override
+        byte[] respond(byte[] command) throws IOException {
+            throw new IOException("Raw MIFARE Classic commands are not simulated");
+        }
+
+        @Override
+        public int getSize() {
+            return blocks.length;
+        }
+
+        @Override
+        public int getBlockCount() {
+            return keys.length * BLOCKS_PER_SECTOR;
+        }
+
+        @Override
+        public int getSectorCount() {
+            return keys.length;
+        }
+
+        @Override
+        public int getBlockCountInSector(int sector) {
+            return BLOCKS_PER_SECTOR;
+        }
+
+        @Override
+        public int sectorToBlock(int sector) {
+            return sector * BLOCKS_PER_SECTOR;
+        }
+
+        @Override
+        public boolean authenticate(int sector, byte[] key, boolean keyB) throws IOException {
+            roundTrip();
+            boolean ok = !keyB && Arrays.equals(key, keys[sector]);
+            authenticated = ok ? sector : -1;
+            return ok;
+        }
+
+        @Override
+        public byte[] readBlock(int block) throws IOException {
+            roundTrip();
+            if (block / BLOCKS_PER_SECTOR != authenticated) {
+                throw new IOException("Not authenticated");
+            }
+            int offset = block * MifareClassicDumper.BLOCK_SIZE;
+            return Arrays.copyOfRange(blocks, offset, offset + MifareClassicDumper.BLOCK_SIZE);
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            authenticated = -1;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class TagEventFilterTest {
+    private static final long MS = 1_000_000L;
+    private static final byte[] TAG_A = {0x04, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66};
+    private static final byte[] TAG_B = {0x04, 0x77, 0x22, 0x33, 0x44, 0x55, 0x66};
+
+    @Test
+    public void heldTagIsReportedOnce() {
+        TagEventFilter filter = new TagEventFilter(500, 4);
+        assertEquals(TagEventFilter.ARRIVED, filter.onTag(TAG_A, 0));
+        for (int i = 1; i <= 10; i++) {
+            assertEquals(TagEventFilter.SUPPRESSED, filter.onTag(TAG_A.clone(), i * 200 * MS));
+        }
+        assertEquals(10, filter.getSuppressed());
+        assertEquals(1, filter.tracked());
+    }
+
+    @Test
+    public void anotherTagInTheWindowIsAChange() {
+        TagEventFilter filter = new TagEventFilter(500, 4);
+        assertEquals(TagEventFilter.ARRIVED, filter.onTag(TAG_A, 0));
+        assertEquals(TagEventFilter.CHANGED, filter.onTag(TAG_B, 100 * MS));
+        assertEquals(TagEventFilter.SUPPRESSED, filter.onTag(TAG_B, 200 * MS));
+        assertEquals(TagEventFilter.CHANGED, filter.onTag(TAG_A, 300 * MS));
+        // Once B is out of the window, a new B is a plain arrival
+        assertEquals(TagEventFilter.ARRIVED, filter.onTag(TAG_B, 2000 * MS));
+    }
+
+    @Test
+    public void sweepReportsTagsThatLeft() {
+        TagEventFilter filter = new TagEventFilter(500, 4);
+        filter.onTag(TAG_A, 0);
+        filter.onTag(TAG_B, 400 * MS);
+
+        List<byte[]> left = new ArrayList<>();
+        TagEventFilter.LeftSink sink = (uid, offset, length) -> left.add(Arrays.copyOfRange(uid, offset, offset + length));
+        assertEquals(1, filter.sweep(600 * MS, sink));
+        assertArrayEquals(TAG_A, left.get(0));
+        assertEquals(1, filter.sweep(1000 * MS, sink));
+        assertArrayEquals(TAG_B, left.get(1));
+        assertEquals(0, filter.tracked());
+        assertEquals(TagEventFilter.ARRIVED, filter.onTag(TAG_A, 1100 * MS));
+    }
+
+    @Test
+    public void fullTableReusesLeastRecentlySeenSlot() {
+        TagEventFilter filter = new TagEventFilter(500, 2);
+        filter.onTag(new byte[] {1}, 0);
+        filter.onTag(new byte[] {2}, 10 * MS);
+        filter.onTag(new byte[] {3}, 20 * MS);
+        assertEquals(2, filter.tracked());
+        assertEquals(TagEventFilter.SUPPRESSED, filter.onTag(new byte[] {3}, 30 * MS));
+        assertNotEquals(TagEventFilter.SUPPRESSED, filter.onTag(new byte[] {1}, 40 * MS));
+    }
+
+    @Test
+    public void coalescesRepeatedStatus() {
+        TagEventFilter filter = new TagEventFilter(500, 4);
+        assertTrue(filter.onStatus("android.nfc.action.TAG_DISCOVERED", 0));
+        assertFalse(filter.onStatus("android.nfc.action.TAG_DISCOVERED", 100 * MS));
+        assertTrue(filter.onStatus("android.nfc.action.NDEF_DISCOVERED", 200 * MS));
+        assertTrue(filter.onStatus("android.nfc.action.TAG_DISCOVERED", 300 * MS));
+        assertTrue(filter.onStatus("android.nfc.action.TAG_DISCOVERED", 900 * MS));
+        assertEquals(1, filter.getStatusesSuppressed());
+    }
+
+    @Test
+    public void zeroWindowPassesEverything() {
+        TagEventFilter filter = new TagEventFilter(0, 4);
+        assertEquals(TagEventFilter.ARRIVED, filter.onTag(TAG_A, 0));
+        assertEquals(TagEventFilter.ARRIVED, filter.onTag(TAG_A, 0));
+        assertTrue(filter.onStatus("s", 0));
+        assertTrue(filter.onStatus("s", 0));
+        assertEquals(0, filter.tracked());
+    }
+
+    @Test
+    public void filteringRepeatsDoesNotAllocate() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long threadId = Thread.currentThread().getId();
+
+        TagEventFilter filter = new TagEventFilter(500, 16);
+        filter.onTag(TAG_A, 0);
+        int sink = 0;
+        for (int i = 0; i < 20_000; i++) {
+            sink += filter.onTag(TAG_A, i);
+        }
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            sink += filter.onTag(TAG_A, i);
+        }
+        long bytes = allocations.getThreadAllocatedBytes(threadId) - before;
+        assertEquals(0, sink);
+        assertTrue("filter allocated " + bytes + " bytes", bytes < 1024);
+    }
+}
@@ -0,0 +1,95 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class TagIoExecutorTest {
+
+    private static final byte[] TAG_A = {0x04, 0x11, 0x22, 0x33};
+    private static final byte[] TAG_B = {0x04, 0x44, 0x55, 0x66};
+
+    private final LinkedBlockingQueue<List<String>> batches = new LinkedBlockingQueue<>();
+    private final TagIoExecutor<String> executor = new TagIoExecutor<>(
+        batch -> {
+            List<String> names = new ArrayList<>();
+            for (TagIoExecutor.TagEvent<String> event : batch) {
+                names.add(event.name + ":" + event.data);
+            }
+            batches.add(names);
+        },
+        (session, error) -> session.emit("nfcError", error.getMessage()));
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void eventsOfOneTagAreDeliveredAsOneBatch() throws Exception {
+        executor.submit(TAG_A, session -> {
+            session.emit("nfcTagDetected", "04A1");
+            session.emit("readSuccess", "hello");
+        });
+
+        List<String> batch = batches.poll(5, TimeUnit.SECONDS);
+        assertEquals(List.of("nfcTagDetected:04A1", "readSuccess:hello"), batch);
+    }
+
+    @Test
+    public void rediscoveredTagSupersedesItsSession() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TagIoExecutor.TagSession<String> first = executor.submit(TAG_A, session -> {
+            session.emit("nfcTagDetected", "first");
+            started.countDown();
+            release.await();
+            session.throwIfCancelled();
+            session.emit("readSuccess", "first");
+        });
+        started.await(5, TimeUnit.SECONDS);
+
+        executor.submit(TAG_A.clone(), session -> session.emit("readSuccess", "second"));
+        assertTrue(first.isCancelled());
+        release.countDown();
+
+        assertEquals(List.of("readSuccess:second"), batches.poll(5, TimeUnit.SECONDS));
+        assertNull(batches.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void anotherTagQueuesInsteadOfCancelling() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        TagIoExecutor.TagSession<String> first = executor.submit(TAG_A, session -> {
+            release.await();
+            session.throwIfCancelled();
+            session.emit("batchWriteResult", "A");
+        });
+        TagIoExecutor.TagSession<String> queued = executor.submit(TAG_B, session -> session.emit("batchWriteResult", "B"));
+        TagIoExecutor.TagSession<String> third = executor.submit(new byte[] {0x08, 0x01},
+            session -> session.emit("batchWriteResult", "C"));
+        assertFalse(first.isCancelled());
+        assertFalse(queued.isCancelled());
+        assertFalse(third.isCancelled());
+        release.countDown();
+
+        assertEquals(List.of("batchWriteResult:A"), batches.poll(5, TimeUnit.SECONDS));
+        assertEquals(List.of("batchWriteResult:B"), batches.poll(5, TimeUnit.SECONDS));
+        assertEquals(List.of("batchWriteResult:C"), batches.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void unhandledErrorsGoThroughTheErrorHandler() throws Exception {
+        executor.submit(TAG_B, session -> {
+            throw new java.io.IOException("Tag was lost");
+        });
+
+        assertEquals(List.of("nfcError:Tag was lost"), batches.poll(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,167 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TagJournalTest {
+
+    private static final byte[] UID_A = {0x04, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66};
+    private static final byte[] UID_B = {0x08, 0x01, 0x02, 0x03};
+
+    private File directory;
+    private final List<TagJournal> opened = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal").toFile();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        for (TagJournal journal : opened) {
+            journal.close();
+        }
+        for (File child : directory.listFiles()) {
+            child.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void queriesByUidAndTimeRange() throws Exception {
+        TagJournal journal = open(TagJournal.DEFAULT_SEGMENT_BYTES, TagJournal.DEFAULT_MAX_SEGMENTS);
+        for (int i = 0; i < 10; i++) {
+            journal.append(i % 3 == 0 ? TagJournal.WRITE : TagJournal.READ, 1000 + i, i % 2 == 0 ? UID_A : UID_B,
+                "NDEF", bytes("payload " + i), 2_500_000);
+        }
+
+        TagJournal.Page byUid = journal.query(-1, Long.MIN_VALUE, Long.MAX_VALUE, UID_B, 100);
+        assertEquals(5, byUid.entries.size());
+        assertEquals(-1, byUid.next);
+        for (TagJournal.Entry entry : byUid.entries) {
+            assertArrayEquals(UID_B, entry.uid);
+            assertEquals(1, entry.sequence % 2);
+        }
+
+        TagJournal.Page byTime = journal.query(-1, 1003, 1006, null, 100);
+        assertEquals(4, byTime.entries.size());
+        TagJournal.Entry first = byTime.entries.get(0);
+        assertEquals(3, first.sequence);
+        assertEquals(1003, first.timeMillis);
+        assertEquals(TagJournal.WRITE, first.kind);
+        assertEquals("NDEF", first.tech);
+        assertEquals(2500, first.latencyMicros);
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(bytes("payload 3")), first.digest);
+    }
+
+    @Test
+    public void pagesResumeAfterTheLastRecord() throws Exception {
+        TagJournal journal = open(TagJournal.DEFAULT_SEGMENT_BYTES, TagJournal.DEFAULT_MAX_SEGMENTS);
+        for (int i = 0; i < 25; i++) {
+            journal.append(TagJournal.READ, i, UID_A, "NFC_A", bytes("x"), 0);
+        }
+
+        List<Long> seen = new ArrayList<>();
+        long cursor = -1;
+        int pages = 0;
+        do {
+            TagJournal.Page page = journal.query(cursor, Long.MIN_VALUE, Long.MAX_VALUE, null, 10);
+            for (TagJournal.Entry entry : page.entries) {
+                seen.add(entry.sequence);
+            }
+            cursor = page.next;
+            pages++;
+        } while (cursor >= 0);
+
+        assertEquals(3, pages);
+        assertEquals(25, seen.size());
+        for (int i = 0; i < seen.size(); i++) {
+            assertEquals(i, (long) seen.get(i));
+        }
+    }
+
+    @Test
+    public void reopeningRebuildsTheIndexAndCutsATornRecord() throws Exception {
+        TagJournal journal = open(TagJournal.DEFAULT_SEGMENT_BYTES, TagJournal.DEFAULT_MAX_SEGMENTS);
+        for (int i = 0; i < 5; i++) {
+            journal.append(TagJournal.READ, i, UID_A, "ISO_DEP", bytes("record " + i), 0);
+        }
+        journal.close();
+
+        // A crash in the middle of writing the last record
+        File segment = directory.listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 7);
+        }
+
+        TagJournal reopened = open(TagJournal.DEFAULT_SEGMENT_BYTES, TagJournal.DEFAULT_MAX_SEGMENTS);
+        assertEquals(4, reopened.getRecordCount());
+        assertEquals(4, reopened.append(TagJournal.READ, 99, UID_B, "ISO_DEP", bytes("after"), 0));
+        TagJournal.Page page = reopened.query(-1, Long.MIN_VALUE, Long.MAX_VALUE, null, 100);
+        assertEquals(5, page.entries.size());
+        assertArrayEquals(UID_B, page.entries.get(4).uid);
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    @Test
+    public void oldSegmentsAreDroppedPastTheLimit() throws Exception {
+        TagJournal journal = open(1024, 3);
+        for (int i = 0; i < 200; i++) {
+            journal.append(TagJournal.READ, i, UID_A, "NFC_A", bytes("x"), 0);
+            if (i % 10 == 9) {
+                journal.flush();
+            }
+        }
+        journal.flush();
+
+        assertEquals(3, journal.getSegmentCount());
+        assertEquals(3, directory.listFiles().length);
+        TagJournal.Page page = journal.query(-1, Long.MIN_VALUE, Long.MAX_VALUE, null, 1000);
+        assertEquals(journal.getRecordCount(), page.entries.size());
+        assertEquals(journal.getFirstSequence(), page.entries.get(0).sequence);
+        assertEquals(199, page.entries.get(page.entries.size() - 1).sequence);
+        assertTrue(journal.getFirstSequence() > 0);
+
+        journal.clear();
+        assertEquals(0, journal.getRecordCount());
+        assertEquals(0, directory.listFiles().length);
+        assertEquals(200, journal.append(TagJournal.READ, 0, UID_A, "NFC_A", bytes("x"), 0));
+    }
+
+    @Test
+    public void appendsAreGroupCommittedOffTheCallingThread() throws Exception {
+        TagJournal journal = open(TagJournal.DEFAULT_SEGMENT_BYTES, TagJournal.DEFAULT_MAX_SEGMENTS);
+        byte[] payload = new byte[200];
+        int taps = 20_000;
+
+        for (int i = 0; i < taps; i++) {
+            journal.append(TagJournal.READ, i, UID_A, "NDEF", payload, 1_000_000);
+        }
+        journal.flush();
+
+        assertEquals(taps, journal.query(-1, Long.MIN_VALUE, Long.MAX_VALUE, UID_A, taps).entries.size());
+        assertTrue(journal.getBatches() < taps);
+        assertEquals(0, journal.getWriteErrors());
+    }
+
+    private TagJournal open(int segmentBytes, int maxSegments) throws IOException {
+        TagJournal journal = new TagJournal(directory, segmentBytes, maxSegments);
+        opened.add(journal);
+        return journal;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,51 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TagMetricsTest {
+
+    @Test
+    public void recordsTheTimeSinceStart() {
+        TagMetrics metrics = new TagMetrics();
+        long start = System.nanoTime() - 3_000_000;
+        metrics.record(TagMetrics.TRANSCEIVE, start);
+
+        LatencyHistogram transceive = metrics.stage(TagMetrics.TRANSCEIVE);
+        assertEquals(1, transceive.getCount());
+        assertTrue(transceive.getMax() >= 3_000);
+        assertEquals(0, metrics.stage(TagMetrics.CONNECT).getCount());
+    }
+
+    @Test
+    public void everyStageHasAName() {
+        TagMetrics metrics = new TagMetrics();
+        for (int stage = 0; stage < TagMetrics.STAGE_NAMES.length; stage++) {
+            assertNotNull(metrics.stage(stage));
+        }
+        assertEquals(TagMetrics.HCE_COMMAND + 1, TagMetrics.STAGE_NAMES.length);
+    }
+
+    @Test
+    public void resetClearsStagesAndCounters() throws InterruptedException {
+        TagMetrics metrics = new TagMetrics();
+        metrics.record(TagMetrics.NOTIFY, System.nanoTime());
+        metrics.countTimeout();
+        metrics.countTagLost();
+        metrics.countTagLost();
+        metrics.countAuthFailure();
+        assertEquals(1, metrics.getTimeouts());
+        assertEquals(2, metrics.getTagsLost());
+        assertEquals(1, metrics.getAuthFailures());
+
+        long since = metrics.getSinceMillis();
+        Thread.sleep(2);
+        metrics.reset();
+        assertEquals(0, metrics.stage(TagMetrics.NOTIFY).getCount());
+        assertEquals(0, metrics.getTimeouts());
+        assertEquals(0, metrics.getTagsLost());
+        assertEquals(0, metrics.getAuthFailures());
+        assertTrue(metrics.getSinceMillis() > since);
+    }
+}
@@ -0,0 +1,78 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TagReadCacheTest {
+    private static final long MS = 1_000_000L;
+    private static final byte[] UID = {0x04, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66};
+    private static final byte[] OTHER_UID = {0x04, 0x77, 0x22, 0x33, 0x44, 0x55, 0x66};
+    private static final byte[] FINGERPRINT = {0x03, 0x10, (byte) 0xD1, 0x01};
+
+    @Test
+    public void hitsWhileFingerprintMatches() {
+        TagReadCache<String> cache = new TagReadCache<>(4, 1000);
+        assertNull(cache.get(UID, FINGERPRINT, 0));
+        cache.put(UID, FINGERPRINT, "parsed", 0);
+
+        assertEquals("parsed", cache.get(UID, FINGERPRINT.clone(), 100 * MS));
+        assertNull(cache.get(OTHER_UID, FINGERPRINT, 100 * MS));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void changedFingerprintDropsEntry() {
+        TagReadCache<String> cache = new TagReadCache<>(4, 1000);
+        cache.put(UID, FINGERPRINT, "parsed", 0);
+
+        assertNull(cache.get(UID, new byte[] {0x03, 0x12, (byte) 0xD1, 0x01}, 0));
+        assertEquals(1, cache.getStale());
+        assertEquals(0, cache.size());
+        assertNull(cache.get(UID, FINGERPRINT, 0));
+    }
+
+    @Test
+    public void expiresAfterTtl() {
+        TagReadCache<String> cache = new TagReadCache<>(4, 1000);
+        cache.put(UID, FINGERPRINT, "parsed", 0);
+
+        assertEquals("parsed", cache.get(UID, FINGERPRINT, 1000 * MS));
+        assertNull(cache.get(UID, FINGERPRINT, 1001 * MS));
+        assertEquals(1, cache.getExpired());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        TagReadCache<String> cache = new TagReadCache<>(2, 1000);
+        byte[] third = {0x01};
+        cache.put(UID, FINGERPRINT, "a", 0);
+        cache.put(OTHER_UID, FINGERPRINT, "b", 0);
+        assertEquals("a", cache.get(UID, FINGERPRINT, 0));
+        cache.put(third, FINGERPRINT, "c", 0);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertEquals("a", cache.get(UID, FINGERPRINT, 0));
+        assertNull(cache.get(OTHER_UID, FINGERPRINT, 0));
+    }
+
+    @Test
+    public void invalidateAndDisable() {
+        TagReadCache<String> cache = new TagReadCache<>(4, 1000);
+        cache.put(UID, FINGERPRINT, "a", 0);
+        cache.put(OTHER_UID, FINGERPRINT, "b", 0);
+
+        cache.invalidate(UID);
+        assertNull(cache.get(UID, FINGERPRINT, 0));
+        assertEquals(1, cache.getInvalidations());
+
+        cache.configure(0, 1000);
+        assertFalse(cache.isEnabled());
+        assertEquals(0, cache.size());
+        cache.put(UID, FINGERPRINT, "a", 0);
+        assertEquals(0, cache.size());
+    }
+}
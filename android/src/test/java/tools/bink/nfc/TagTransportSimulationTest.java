@@ -0,0 +1,185 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ * Runs the read and write engines against {@link SimulatedTag}s, the way the
+ * plugin drives them over {@link AndroidTagTransport} on a device.
+ */
+public class TagTransportSimulationTest {
+    private static final byte[] NTAG213_VERSION = {0x00, 0x04, 0x04, 0x02, 0x01, 0x00, 0x0F, 0x03};
+    private static final byte[] AID = HexCodec.decode("F00102030405");
+
+    @Test
+    public void readsNdefFromType2Memory() throws IOException {
+        byte[] message = new NdefMessageBuilder().addUri("https://example.com/t/1").addText("Gate 4", "en").build();
+        SimulatedTag.Type2 tag = SimulatedTag.type2(UltralightReader.NTAG213, NTAG213_VERSION).withNdef(message);
+
+        tag.connect();
+        UltralightReader reader = new UltralightReader(tag, tag.getMaxTransceiveLength());
+        assertSame(UltralightReader.NTAG213, reader.identify());
+        byte[] memory = reader.read(UltralightReader.NTAG213);
+        tag.close();
+
+        // GET_VERSION plus one FAST_READ of all 45 pages
+        assertEquals(2, tag.commands);
+        NdefParser parser = NdefParser.forType2Memory(memory);
+        assertNotNull(parser);
+        assertTrue(parser.next());
+        assertEquals("https://example.com/t/1", parser.uri());
+        assertTrue(parser.next());
+        assertEquals("Gate 4", parser.text());
+    }
+
+    @Test
+    public void fingerprintFollowsTheNdefTlv() throws IOException {
+        SimulatedTag.Type2 tag = SimulatedTag.type2(UltralightReader.NTAG213, NTAG213_VERSION)
+            .withNdef(new NdefMessageBuilder().addText("one", "en").build());
+        tag.connect();
+        byte[] first = new UltralightReader(tag, tag.getMaxTransceiveLength()).readFingerprint();
+        tag.withNdef(new NdefMessageBuilder().addText("two", "en").build());
+        byte[] second = new UltralightReader(tag, tag.getMaxTransceiveLength()).readFingerprint();
+
+        assertArrayEquals(Arrays.copyOfRange(tag.memory, 16, 32), second);
+        assertFalse(Arrays.equals(first, second));
+    }
+
+    @Test
+    public void isoDepExchangeReadsTheEmulatedCard() throws IOException {
+        SimulatedTag.Type4 tag = SimulatedTag.type4(EmulationProfile.forIsoDep("F00102030405", "hello"));
+        tag.connect();
+        IsoDepExchange exchange = new IsoDepExchange(tag);
+        exchange.select(AID);
+        assertEquals("hello", exchange.read());
+    }
+
+    @Test
+    public void isoDepExchangeWritesAndReadsBack() throws IOException {
+        DataApplet applet = new DataApplet();
+        SimulatedTag.Type4 tag = SimulatedTag.type4(applet);
+        char[] text = new char[700];
+        Arrays.fill(text, 'q');
+        byte[] data = new String(text).getBytes(StandardCharsets.UTF_8);
+
+        tag.connect();
+        IsoDepExchange exchange = new IsoDepExchange(tag);
+        exchange.select(AID);
+        exchange.write(data);
+        assertEquals(new String(text), exchange.read());
+        // 700 bytes go out as a chain of short APDUs
+        assertTrue("expected a command chain, got " + applet.writes + " blocks", applet.writes >= 3);
+    }
+
+    @Test
+    public void isoDepSelectOfUnknownAidFails() throws IOException {
+        SimulatedTag.Type4 tag = SimulatedTag.type4(new DataApplet());
+        tag.connect();
+        try {
+            new IsoDepExchange(tag).select(HexCodec.decode("A000000003101000"));
+            fail();
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("A000000003101000"));
+        }
+    }
+
+    @Test
+    public void dumpsMifareClassicThroughTheTransport() throws IOException {
+        SimulatedTag.Classic card = SimulatedTag.classic1k(MifareClassicDumper.KEY_NFC_FORUM);
+        card.connect();
+        MifareClassicDumper.Dump dump = new MifareClassicDumper(4).dump(HexCodec.decode("04A1B2C3"), card);
+        card.close();
+
+        assertEquals(16, dump.sectorsRead);
+        assertArrayEquals(card.blocks, dump.data);
+        assertTrue(card.commands >= 16 + 64);
+    }
+
+    @Test
+    public void latencyOverTheTimeoutLosesTheTag() throws IOException {
+        SimulatedTag tag = SimulatedTag.type2(UltralightReader.NTAG213, NTAG213_VERSION).withLatency(5_000);
+        tag.setTimeout(2);
+        tag.connect();
+        try {
+            new UltralightReader(tag, tag.getMaxTransceiveLength()).read(UltralightReader.NTAG213);
+            fail();
+        } catch (IOException expected) {
+            assertFalse(tag.isConnected());
+        }
+        try {
+            tag.connect();
+            fail();
+        } catch (IOException expected) {
+            assertEquals("Tag was lost", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void latencyIsChargedPerCommand() throws IOException {
+        SimulatedTag.Type2 tag = SimulatedTag.type2(UltralightReader.ULTRALIGHT, null);
+        tag.withLatency(200);
+        tag.connect();
+        new UltralightReader(tag, tag.getMaxTransceiveLength()).read(UltralightReader.ULTRALIGHT);
+
+        // 16 pages in READs of four
+        assertEquals(4, tag.commands);
+        assertEquals(4 * 200_000L, tag.waitedNanos);
+        assertTrue(tag.isConnected());
+    }
+
+    @Test
+    public void repeatedTapsReadTheSameMessage() throws IOException {
+        byte[] message = new NdefMessageBuilder().addUri("https://example.com/p/42").build();
+        SimulatedTag.Type2 tag = SimulatedTag.type2(UltralightReader.NTAG213, NTAG213_VERSION).withNdef(message);
+
+        // Connect, identify, dump and parse, as readTag does for an Ultralight without Ndef
+        for (int i = 0; i < 3; i++) {
+            tag.connect();
+            UltralightReader reader = new UltralightReader(tag, tag.getMaxTransceiveLength());
+            NdefParser parser = NdefParser.forType2Memory(reader.read(reader.identify()));
+            tag.close();
+            assertTrue(parser.next());
+            assertEquals("https://example.com/p/42", parser.uri());
+            assertFalse(parser.next());
+        }
+        assertEquals(3, tag.connects);
+        assertEquals(6, tag.commands);
+    }
+
+    /** Proprietary applet behind {@link IsoDepExchange}: D0 00 stores (chaining allowed), D0 01 reads back. */
+    private static final class DataApplet implements ApduDispatcher.Handler {
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private byte[] stored = new byte[0];
+        private boolean selected;
+        int writes;
+
+        @Override
+        public byte[] handle(byte[] apdu, CardSession session) {
+            int ins = apdu[1] & 0xFF;
+            if (ins == 0xA4) {
+                selected = Type4Tag.matchesAid(apdu, AID);
+                return selected ? Type4Tag.SW_OK : Type4Tag.SW_FILE_NOT_FOUND;
+            }
+            if (!selected || ins != 0xD0) {
+                return EmulationProfile.UNKNOWN_CMD;
+            }
+            if (apdu[2] == 0x00) {
+                writes++;
+                pending.write(apdu, 5, apdu[4] & 0xFF);
+                if ((apdu[0] & 0x10) == 0) {
+                    stored = pending.toByteArray();
+                    pending.reset();
+                }
+                return Type4Tag.SW_OK;
+            }
+            byte[] response = Arrays.copyOf(stored, stored.length + 2);
+            response[stored.length] = (byte) 0x90;
+            return response;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+/**
+ * Plays a stock reader's Type 4 Tag APDU script against the emulated card,
+ * entirely on the JVM.
+ */
+public class Type4TagReaderTest {
+
+    @Test
+    public void stockReaderScriptReadsShortMessage() {
+        Reader card = emulating("hello");
+
+        expect(card, "00A4040007D276000085010100", "9000");
+        expect(card, "00A4000C02E103", "9000");
+        expect(card, "00B000000F", "000F2000FF00FF0406E104000E00FF9000");
+        expect(card, "00A4000C02E104", "9000");
+        expect(card, "00B0000002", "000C9000");
+        // Short Text record: MB|ME|SR|TNF=1, type "T", "en", "hello"
+        expect(card, "00B000020C", "D101085402656E68656C6C6F9000");
+    }
+
+    @Test
+    public void largeMessageStreamsOverSeveralReads() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 120; i++) {
+            text.append("check-in ").append(i).append(';');
+        }
+        Reader card = emulating(text.toString());
+
+        byte[] message = readNdefLikeAStockReader(card);
+        int readCount = card.reads;
+
+        // Long record header: flags, type length, 4-byte payload length, type
+        assertEquals((byte) 0xC1, message[0]);
+        assertEquals('T', message[6]);
+        String decoded = new String(message, 10, message.length - 10, StandardCharsets.UTF_8);
+        assertEquals(text.toString(), decoded);
+        assertTrue("expected chunked reads, got " + readCount, readCount > 4);
+    }
+
+    @Test
+    public void rejectsCommandsOutsideTheStateMachine() {
+        Reader card = emulating("hello");
+
+        // File selection and reads require the NDEF application first
+        expect(card, "00A4000C02E103", "6A82");
+        expect(card, "00B000000F", "6986");
+        // Unknown application
+        expect(card, "00A4040007A000000003101000", "6A82");
+
+        expect(card, "00A4040007D276000085010100", "9000");
+        expect(card, "00B000000F", "6986");
+        expect(card, "00A4000C02E105", "6A82");
+        expect(card, "00A4000C02E104", "9000");
+        expect(card, "00B0010000", "6B00");
+        expect(card, "00B0810000", "6A86");
+    }
+
+    @Test
+    public void deactivationResetsSelection() {
+        Reader card = emulating("hello");
+        expect(card, "00A4040007D276000085010100", "9000");
+        expect(card, "00A4000C02E104", "9000");
+
+        card.emulator.onDeactivated();
+        expect(card, "00B0000002", "6986");
+    }
+
+    @Test
+    public void legacyReaderPathStillWorks() {
+        Reader card = emulating("hello");
+        expect(card, "00A4040007F001020304050600", "9000");
+        expect(card, "00D0010000", "68656C6C6F9000");
+    }
+
+    /** Reader logic as implemented by stock NDEF readers: CC first, then NLEN, then MLe sized chunks. */
+    private static byte[] readNdefLikeAStockReader(Reader card) {
+        assertOk(card.send("00A4040007D276000085010100"));
+        assertOk(card.send("00A4000C02E103"));
+        byte[] cc = card.send("00B000000F");
+        assertOk(cc);
+        int maxRead = ((cc[3] & 0xFF) << 8) | (cc[4] & 0xFF);
+        String fileId = String.format("%02X%02X", cc[9], cc[10]);
+
+        assertOk(card.send("00A4000C02" + fileId));
+        byte[] nlen = card.send("00B0000002");
+        assertOk(nlen);
+        int length = ((nlen[0] & 0xFF) << 8) | (nlen[1] & 0xFF);
+
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        int offset = 2;
+        while (message.size() < length) {
+            int chunk = Math.min(maxRead, length - message.size());
+            byte[] response = card.send(String.format("00B0%04X%02X", offset, chunk & 0xFF));
+            assertOk(response);
+            message.write(response, 0, response.length - 2);
+            offset += response.length - 2;
+        }
+        return message.toByteArray();
+    }
+
+    private static Reader emulating(String text) {
+        Reader card = new Reader();
+        card.emulator.setProfile(EmulationProfile.forNdef(text));
+        return card;
+    }
+
+    private static void expect(Reader card, String command, String expectedResponse) {
+        byte[] response = card.send(command);
+        assertEquals("response to " + command, expectedResponse, toHex(response));
+    }
+
+    private static void assertOk(byte[] response) {
+        assertTrue("status " + toHex(response),
+            response.length >= 2
+                && response[response.length - 2] == (byte) 0x90
+                && response[response.length - 1] == 0x00);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02X", b));
+        }
+        return sb.toString();
+    }
+
+    private static byte[] hex(String s) {
+        byte[] data = new byte[s.length() / 2];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) Integer.parseInt(s.substring(i * 2, i * 2 + 2), 16);
+        }
+        return data;
+    }
+
+    /** The emulated card as a reader sees it, counting READ BINARY round trips. */
+    private static final class Reader {
+        final CardEmulator emulator = new CardEmulator();
+        int reads;
+
+        byte[] send(String command) {
+            byte[] apdu = hex(command);
+            if (apdu.length > 1 && apdu[1] == (byte) 0xB0) {
+                reads++;
+            }
+            return emulator.process(apdu);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package tools.bink.nfc;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import org.junit.Test;
+
+public class UltralightReaderTest {
+
+    private static final byte[] NTAG216_VERSION = {0x00, 0x04, 0x04, 0x02, 0x01, 0x00, 0x13, 0x03};
+    private static final byte[] NTAG213_VERSION = {0x00, 0x04, 0x04, 0x02, 0x01, 0x00, 0x0F, 0x03};
+
+    @Test
+    public void readsNtag216InAFewFastReads() throws IOException {
+        SimulatedTag tag = new SimulatedTag(231, NTAG216_VERSION);
+        UltralightReader reader = new UltralightReader(tag::transceive, 253);
+
+        UltralightReader.Chip chip = reader.identify();
+        byte[] memory = reader.read(chip);
+
+        assertSame(UltralightReader.NTAG216, chip);
+        assertEquals(888, chip.userMemory);
+        assertEquals(231 * 4, memory.length);
+        assertArrayEquals(tag.memory, memory);
+        // 63 pages per FAST_READ: 4 reads instead of 231 single-page reads
+        assertEquals(4, tag.fastReads);
+        assertEquals(0, tag.reads);
+        assertEquals(5, reader.getRoundTrips());
+    }
+
+    @Test
+    public void smallTransceiveLimitSplitsFastReads() throws IOException {
+        SimulatedTag tag = new SimulatedTag(45, NTAG213_VERSION);
+        UltralightReader reader = new UltralightReader(tag::transceive, 64);
+
+        byte[] memory = reader.read(reader.identify());
+
+        assertArrayEquals(tag.memory, memory);
+        assertEquals(3, tag.fastReads);
+    }
+
+    @Test
+    public void originalUltralightFallsBackToRead() throws IOException {
+        SimulatedTag tag = new SimulatedTag(16, null);
+        UltralightReader reader = new UltralightReader(tag::transceive, 253);
+
+        assertNull(reader.identify());
+        byte[] memory = reader.read(UltralightReader.ULTRALIGHT);
+
+        assertArrayEquals(tag.memory, memory);
+        // Four pages per READ, no page read twice
+        assertEquals(4, tag.reads);
+    }
+
+    @Test
+    public void unknownChipSizeComesFromStorageByte() {
+        byte[] version = {0x00, 0x04, 0x04, 0x05, 0x02, 0x00, 0x15, 0x03};
+        UltralightReader.Chip chip = UltralightReader.chipForVersion(version);
+        assertEquals(1024, chip.userMemory);
+        assertEquals(4 + 256, chip.pageCount);
+    }
+
+    /** Ultralight family tag with READ wrap-around and optional GET_VERSION/FAST_READ. */
+    private static final class SimulatedTag {
+        final byte[] memory;
+        final byte[] version;
+        int reads;
+        int fastReads;
+
+        SimulatedTag(int pages, byte[] version) {
+            this.version = version;
+            memory = new byte[pages * 4];
+            for (int i = 0; i < memory.length; i++) {
+                memory[i] = (byte) (i * 7);
+            }
+        }
+
+        byte[] transceive(byte[] command) throws IOException {
+            int pages = memory.length / 4;
+            switch (command[0]) {
+                case 0x60:
+                    if (version == null) {
+                        throw new IOException("NAK");
+                    }
+                    return version.clone();
+                case 0x30: {
+                    reads++;
+                    byte[] response = new byte[16];
+                    for (int i = 0; i < 4; i++) {
+                        int page = ((command[1] & 0xFF) + i) % pages;
+                        System.arraycopy(memory, page * 4, response, i * 4, 4);
+                    }
+                    return response;
+                }
+                case 0x3A: {
+                    if (version == null) {
+                        throw new IOException("NAK");
+                    }
+                    fastReads++;
+                    int start = command[1] & 0xFF;
+                    int end = command[2] & 0xFF;
+                    byte[] response = new byte[(end - start + 1) * 4];
+                    System.arraycopy(memory, start * 4, response, 0, response.length);
+                    return response;
+                }
+                default:
+                    throw new IOException("NAK");
+            }
+        }
+    }
+}
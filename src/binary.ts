@@ -0,0 +1,53 @@
+import type { BinaryEncoding, NFCTagInfo } from './definitions';
+
+/**
+ * Raw byte fields of a tag result, decoded from their string form.
+ */
+export interface NFCTagBytes {
+  data?: Uint8Array;
+  sectorStatus?: Uint8Array;
+  version?: Uint8Array;
+  cardData?: Uint8Array;
+  hiLayerResponse?: Uint8Array;
+  historicalBytes?: Uint8Array;
+}
+
+/**
+ * Decode a binary field sent by the native side.
+ * @param value hex or base64 string
+ * @param encoding encoding the value was sent in; defaults to 'hex'
+ * @returns the raw bytes
+ */
+export function decodeBinary(value: string, encoding: BinaryEncoding = 'hex'): Uint8Array {
+  if (encoding === 'base64') {
+    const raw = atob(value);
+    const bytes = new Uint8Array(raw.length);
+    for (let i = 0; i < raw.length; i++) {
+      bytes[i] = raw.charCodeAt(i);
+    }
+    return bytes;
+  }
+  const bytes = new Uint8Array(value.length >> 1);
+  for (let i = 0; i < bytes.length; i++) {
+    bytes[i] = parseInt(value.substring(i * 2, i * 2 + 2), 16);
+  }
+  return bytes;
+}
+
+/**
+ * Decode every raw byte field of a tag result using the encoding it was sent in.
+ * @param tag result of read() or a readSuccess event
+ * @returns the byte fields present on the tag
+ */
+export function decodeTagBytes(tag: NFCTagInfo): NFCTagBytes {
+  const encoding = tag.encoding ?? 'hex';
+  const bytes: NFCTagBytes = {};
+  const fields: (keyof NFCTagBytes)[] = ['data', 'sectorStatus', 'version', 'cardData', 'hiLayerResponse', 'historicalBytes'];
+  for (const field of fields) {
+    const value = tag[field];
+    if (typeof value === 'string') {
+      bytes[field] = decodeBinary(value, encoding);
+    }
+  }
+  return bytes;
+}
@@ -50,6 +50,232 @@ export interface NFCPlugin {
    */
   getTagInfo(): Promise<NFCTagInfo>;
 
+  /**
+   * Start a continuous reader-mode session. Every tag that comes into range is
+   * read and emitted as a `readSuccess` event until `stopReaderSession()` is called.
+   * Android only.
+   * @param options ReaderSessionOptions for the session
+   * @returns Promise that resolves when the session is running
+   * @example
+   * await Nfc.startReaderSession({ queueSize: 32 });
+   */
+  startReaderSession(options?: ReaderSessionOptions): Promise<void>;
+
+  /**
+   * Stop the running reader session.
+   * @returns Promise with the final session counters
+   */
+  stopReaderSession(): Promise<ReaderSessionStats>;
+
+  /**
+   * Get throughput and latency counters for the running reader session.
+   * @returns Promise with the session counters
+   */
+  getReaderSessionStats(): Promise<ReaderSessionStats>;
+
+  /**
+   * Start writing NDEF text to every tag brought into range, without a JS
+   * round trip per tag. Give either one `template` (the same text for every
+   * tag, or text with a `{serial}` placeholder) or a list of `messages` written
+   * one per tag. Each result is emitted as a `batchWriteResult` event, and
+   * `batchWriteComplete` fires when `count` tags (or every message) are done.
+   * A tag is never written twice in one batch. Android only.
+   * @param options BatchWriteOptions for the batch
+   * @returns Promise that resolves when reader mode is on
+   * @example
+   * await Nfc.startBatchWrite({ template: 'band-{serial}', startSerial: 1, serialWidth: 4, count: 500, verify: true });
+   */
+  startBatchWrite(options: BatchWriteOptions): Promise<void>;
+
+  /**
+   * Stop the running batch write.
+   * @returns Promise with the final batch counters
+   */
+  stopBatchWrite(): Promise<BatchWriteStats>;
+
+  /**
+   * Get counters and throughput for the running batch write.
+   * @returns Promise with the batch counters
+   */
+  getBatchWriteStats(): Promise<BatchWriteStats>;
+
+  /**
+   * Set the extra keys used to dump MIFARE Classic tags. They are tried after
+   * the default, MAD and NFC Forum keys; the key that opened each sector is
+   * remembered per tag UID. Android only.
+   * @param options MifareClassicKeyOptions with the keys as hex strings
+   * @returns Promise that resolves when the keys are set
+   * @example
+   * await Nfc.setMifareClassicKeys({ keys: ['A0B0C0D0E0F0'] });
+   */
+  setMifareClassicKeys(options: MifareClassicKeyOptions): Promise<void>;
+
+  /**
+   * Choose how raw tag bytes (dumps, ATS, NDEF record ids and binary payloads)
+   * are sent to JS. 'base64' is a third the size of 'hex' and is cheaper to
+   * produce; use `decodeTagBytes()` to get `Uint8Array`s. Tag ids stay hex.
+   * Defaults to 'hex'. Android only.
+   * @param options the encoding to use
+   * @returns Promise that resolves when the encoding is set
+   * @example
+   * await Nfc.setResultEncoding({ encoding: 'base64' });
+   * const bytes = decodeTagBytes(await Nfc.read());
+   */
+  setResultEncoding(options: { encoding: BinaryEncoding }): Promise<void>;
+
+  /**
+   * Configure how repeated detections are filtered. A tag held on the reader
+   * is reported once (`transition: 'arrived'`, or `'changed'` when it replaces
+   * another tag), repeats within the window are dropped, and a tag not seen for
+   * a whole window is reported with an `nfcTagLeft` event. Repeated `nfcStatus`
+   * events are coalesced the same way. A window of 0 turns filtering off.
+   * Android only.
+   * @param options EventFilterOptions for the filter
+   * @returns Promise with the filter counters
+   * @example
+   * await Nfc.configureEventFilter({ window: 1500 });
+   */
+  configureEventFilter(options: EventFilterOptions): Promise<EventFilterStats>;
+
+  /**
+   * Configure event delivery. Events are held for a short window and sent
+   * together, so one tap crosses the bridge once; event types without a
+   * listener are never serialized. A newer nfcStatus replaces a queued one,
+   * and when more than maxQueued events wait, the oldest are dropped.
+   * Listen to nfcEvents to get each window as a single event. Android only.
+   * @param options EventOptions for the window and queue size
+   * @returns Promise with the delivery counters
+   * @example
+   * // Deliver once per frame at most, keeping up to 64 events
+   * await Nfc.configureEvents({ window: 16, maxQueued: 64 });
+   */
+  configureEvents(options: EventOptions): Promise<EventStats>;
+
+  /**
+   * Configure the cache of parsed read results. When a Type 2 tag (NTAG,
+   * Ultralight) is presented again within the TTL and its NDEF header is
+   * unchanged, the previous result is returned after a single READ instead of
+   * a full read. Writes invalidate the tag's entry. Android only.
+   * @param options ReadCacheOptions for the cache
+   * @returns Promise with the cache counters
+   * @example
+   * await Nfc.configureReadCache({ maxEntries: 64, ttl: 5000 });
+   */
+  configureReadCache(options: ReadCacheOptions): Promise<ReadCacheStats>;
+
+  /**
+   * Get hit/miss counters for the read cache.
+   * @returns Promise with the cache counters
+   */
+  getReadCacheStats(): Promise<ReadCacheStats>;
+
+  /**
+   * Get latency percentiles for each stage of tag handling, plus counts of
+   * timeouts, lost tags and failed MIFARE authentications. Android only.
+   * @param options Pass reset: true to start a new measurement window after reading
+   * @returns Promise with the metrics since the last reset
+   * @example
+   * const { stages, timeouts } = await Nfc.getMetrics({ reset: true });
+   * console.log(`p99 transceive ${stages.transceive.p99} ms, ${timeouts} timeouts`);
+   */
+  getMetrics(options?: { reset?: boolean }): Promise<NfcMetrics>;
+
+  /**
+   * Emulate several applications at once, each under its own AID. The AIDs are
+   * registered with Android for this app's card emulation service, and a
+   * reader's SELECT picks the application that answers until it selects
+   * another. Replaces the previous set; pass an empty list to remove them all.
+   * The emulation started by write() keeps answering SELECTs for AIDs that are
+   * not listed. Android only.
+   * @param options The applications to emulate
+   * @returns Promise with the registered AIDs
+   * @example
+   * await Nfc.setEmulatedApplications({
+   *   applications: [
+   *     { aid: 'F0A1000000000001', data: 'door-7781' },
+   *     { aid: 'F0B2000000*', data: 'loyalty-0042' },
+   *   ],
+   * });
+   */
+  setEmulatedApplications(options: { applications: EmulatedApplication[] }): Promise<{ aids: string[] }>;
+
+  /**
+   * Get the current contents of a file of an emulated 'FILES' application,
+   * including what readers have written to it. Android only.
+   * @param options AID of the application and file identifier of the file
+   * @returns Promise with data for a binary file, or records for a record file,
+   * in the selected result encoding
+   * @example
+   * const { records } = await Nfc.readEmulatedFile({ aid: 'F0A1000000000001', file: '0102' });
+   */
+  readEmulatedFile(options: { aid: string; file: string }): Promise<{ data?: string; records?: string[] }>;
+
+  /**
+   * Configure sampled APDU tracing. Sampled conversations (one tag connection
+   * or one card emulation session) have every command and response written to
+   * a fixed-size binary ring buffer, which is only formatted by dumpTrace().
+   * Off by default. Android only.
+   * @param options TraceOptions for sampling and the ring size
+   * @returns Promise with the trace settings and fill level
+   * @example
+   * // Keep one tap in 20 for incident forensics
+   * await Nfc.configureTrace({ sampleEvery: 20 });
+   */
+  configureTrace(options: TraceOptions): Promise<TraceStats>;
+
+  /**
+   * Get the traced APDUs still in the ring buffer, oldest first. Android only.
+   * @param options Pass clear: true to empty the ring after reading
+   * @returns Promise with the trace entries
+   * @example
+   * const { entries } = await Nfc.dumpTrace();
+   * entries.forEach(e => console.log(e.source, e.direction, e.data));
+   */
+  dumpTrace(options?: { clear?: boolean }): Promise<TraceDump>;
+
+  /**
+   * Turn the on-device tag journal on or off. While it is on, every tag read
+   * and write is appended to segment files in app storage, written in batches
+   * off the NFC thread, so nothing is lost when the WebView is not listening.
+   * Records survive restarts; the oldest segment is dropped when there are
+   * more than maxSegments. Off by default. Android only.
+   * @param options JournalOptions
+   * @returns Promise with the journal size
+   * @example
+   * // An offline check-in station: keep every tap, sync later
+   * await Nfc.configureJournal({ enabled: true });
+   */
+  configureJournal(options: JournalOptions): Promise<JournalStats>;
+
+  /**
+   * Read journal records, oldest first, filtered by time range and/or tag
+   * UID. Pass the returned next as after to get the following page.
+   * Android only.
+   * @param options JournalQuery filters and paging
+   * @returns Promise with a page of records
+   * @example
+   * let after: number | undefined;
+   * do {
+   *   const page = await Nfc.queryJournal({ after, from: lastSync, limit: 500 });
+   *   await upload(page.entries);
+   *   after = page.next;
+   * } while (after !== undefined);
+   */
+  queryJournal(options?: JournalQuery): Promise<JournalPage>;
+
+  /**
+   * Add listener for batched events. While it is registered, every event is
+   * delivered through it, one call per delivery window, instead of to the
+   * listeners of each event type.
+   * @param eventName - The name of the event to listen for
+   * @param listenerFunc - The listener function to call
+   * @returns Promise that resolves with the listener handle
+   */
+  addListener(
+    eventName: 'nfcEvents',
+    listenerFunc: (batch: NfcEventBatch) => void
+  ): Promise<PluginListenerHandle>;
+
   /**
    * Add listener for NFC tag detection.
    * @param eventName - The name of the event to listen for
@@ -61,6 +287,39 @@ export interface NFCPlugin {
     listenerFunc: (tag: NFCTagInfo) => void
   ): Promise<PluginListenerHandle>;
 
+  /**
+   * Add listener for tags leaving the field (see `configureEventFilter`).
+   * @param eventName - The name of the event to listen for
+   * @param listenerFunc - The listener function to call
+   * @returns Promise that resolves with the listener handle
+   */
+  addListener(
+    eventName: 'nfcTagLeft',
+    listenerFunc: (event: TagLeftEvent) => void
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * Add listener for per-tag batch write results.
+   * @param eventName - The name of the event to listen for
+   * @param listenerFunc - The listener function to call
+   * @returns Promise that resolves with the listener handle
+   */
+  addListener(
+    eventName: 'batchWriteResult',
+    listenerFunc: (result: BatchWriteResult) => void
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * Add listener for the end of a batch write.
+   * @param eventName - The name of the event to listen for
+   * @param listenerFunc - The listener function to call
+   * @returns Promise that resolves with the listener handle
+   */
+  addListener(
+    eventName: 'batchWriteComplete',
+    listenerFunc: (stats: BatchWriteStats) => void
+  ): Promise<PluginListenerHandle>;
+
   /**
    * Add listener for NFC status changes.
    * @param eventName - The name of the event to listen for
@@ -122,6 +381,13 @@ export interface WriteOptions {
    * Text content to write to the tag
    */
   text?: string;
+
+  /**
+   * NDEF records to write instead of `text`, as one message in this order.
+   * Records over 255 bytes are written as long records, so a message can use
+   * the tag's whole capacity.
+   */
+  records?: NdefRecordInput[];
   
   /**
    * Operation mode: 'reader', 'emulator', or 'read'
@@ -160,49 +426,917 @@ export interface WriteOptions {
   };
 }
 
-export interface NFCTagInfo {
+/**
+ * How a record payload string is turned into bytes
+ */
+export type PayloadEncoding = 'utf8' | 'hex' | 'base64';
+
+interface NdefRecordBase {
   /**
-   * Unique identifier of the tag
+   * Record id, UTF-8 encoded
    */
-  id: string;
-  
+  id?: string;
+}
+
+export interface NdefTextRecordInput extends NdefRecordBase {
+  kind: 'text';
+  text: string;
   /**
-   * Type of NFC tag
+   * Language code. Defaults to 'en'.
+   */
+  language?: string;
+}
+
+export interface NdefUriRecordInput extends NdefRecordBase {
+  kind: 'uri';
+  /**
+   * The URI; well-known prefixes such as https://www. are abbreviated
+   */
+  uri: string;
+}
+
+export interface NdefMimeRecordInput extends NdefRecordBase {
+  kind: 'mime';
+  mimeType: string;
+  payload: string;
+  payloadEncoding?: PayloadEncoding;
+}
+
+export interface NdefExternalRecordInput extends NdefRecordBase {
+  kind: 'external';
+  /**
+   * Domain of the external type, e.g. 'example.com'
+   */
+  domain: string;
+  /**
+   * Type name within the domain
    */
   type: string;
-  
+  payload?: string;
+  payloadEncoding?: PayloadEncoding;
+}
+
+export interface NdefApplicationRecordInput extends NdefRecordBase {
   /**
-   * List of supported technologies
+   * Android Application Record
    */
-  techTypes: string[];
-  
+  kind: 'aar';
+  packageName: string;
+}
+
+export interface NdefRawRecordInput extends NdefRecordBase {
+  kind: 'raw';
   /**
-   * Maximum size in bytes
+   * Type name format, 0 to 5
    */
-  maxSize?: number;
-  
+  tnf: number;
+  type?: string;
+  payload?: string;
+  payloadEncoding?: PayloadEncoding;
+}
+
+/**
+ * A record for `write({ records })`
+ */
+export type NdefRecordInput =
+  | NdefTextRecordInput
+  | NdefUriRecordInput
+  | NdefMimeRecordInput
+  | NdefExternalRecordInput
+  | NdefApplicationRecordInput
+  | NdefRawRecordInput;
+
+export interface ReaderSessionOptions {
   /**
-   * Whether the tag is writable
+   * Maximum number of read results buffered while JS catches up.
+   * The oldest result is dropped when the buffer is full. Defaults to 64.
    */
-  isWritable?: boolean;
-  
+  queueSize?: number;
+
   /**
-   * NDEF message data if available
+   * Delay in milliseconds between presence checks of a tag in the field
    */
-  ndefMessage?: any;
-  
+  presenceCheckDelay?: number;
+}
+
+export interface ReaderSessionStats {
   /**
-   * Card-specific data
+   * Whether the session is still running
    */
-  cardData?: string;
+  active: boolean;
+
+  /**
+   * Tags read since the session started
+   */
+  tagsRead?: number;
+
+  /**
+   * Results delivered as readSuccess events
+   */
+  tagsDelivered?: number;
+
+  /**
+   * Results dropped because the buffer was full
+   */
+  tagsDropped?: number;
+
+  /**
+   * Tags that could not be read
+   */
+  errors?: number;
+
+  /**
+   * Results waiting to be delivered
+   */
+  queued?: number;
+
+  /**
+   * Delivery rate over the last second
+   */
+  tagsPerSecond?: number;
+
+  /**
+   * Time from tag discovery to event for the latest tag
+   */
+  lastLatencyMs?: number;
+
+  /**
+   * Average time from tag discovery to event
+   */
+  averageLatencyMs?: number;
+
+  /**
+   * Worst time from tag discovery to event
+   */
+  maxLatencyMs?: number;
 }
 
-export interface NFCPluginEvents {
+export interface BatchWriteOptions {
   /**
-   * Emitted when an NFC tag is detected
+   * Text written to every tag; `{serial}` is replaced by the tag's serial number
    */
-  nfcTagDetected: NFCTagInfo;
-  
+  template?: string;
+
+  /**
+   * Texts written one per tag, in order. Used instead of `template`.
+   */
+  messages?: string[];
+
+  /**
+   * First serial number. Defaults to 1.
+   */
+  startSerial?: number;
+
+  /**
+   * Zero-pad serials to this many digits
+   */
+  serialWidth?: number;
+
+  /**
+   * Stop after this many tags. Defaults to no limit for a template.
+   */
+  count?: number;
+
+  /**
+   * Read every tag back after writing it and fail the tag if it differs
+   */
+  verify?: boolean;
+
+  /**
+   * Delay in milliseconds between presence checks of a tag in the field
+   */
+  presenceCheckDelay?: number;
+}
+
+export interface BatchWriteStats {
+  /**
+   * Whether the batch is still running
+   */
+  active?: boolean;
+
+  /**
+   * Tags written successfully
+   */
+  written?: number;
+
+  /**
+   * Write attempts that failed; the same message goes to the next tag
+   */
+  failed?: number;
+
+  /**
+   * Tags skipped because they were already written in this batch
+   */
+  skipped?: number;
+
+  /**
+   * Tags the batch will write, 0 for no limit
+   */
+  count?: number;
+
+  /**
+   * Successful writes per minute since the batch started
+   */
+  tagsPerMinute?: number;
+
+  /**
+   * Why the batch ended early, if it did
+   */
+  error?: string;
+}
+
+export interface BatchWriteResult extends BatchWriteStats {
+  /**
+   * Unique identifier of the tag
+   */
+  id: string;
+
+  success: boolean;
+
+  /**
+   * Position of the message in the batch
+   */
+  index?: number;
+
+  /**
+   * The text written
+   */
+  text?: string;
+
+  /**
+   * Whether the tag was read back and matched
+   */
+  verified?: boolean;
+
+  /**
+   * True for a tag already written in this batch
+   */
+  skipped?: boolean;
+
+  timestamp: string;
+}
+
+/**
+ * String encoding of raw bytes in tag results
+ */
+export type BinaryEncoding = 'hex' | 'base64';
+
+export interface EventFilterOptions {
+  /**
+   * Milliseconds within which a repeated detection of the same tag, or a
+   * repeated status, is dropped. Defaults to 1000; 0 turns filtering off.
+   */
+  window?: number;
+}
+
+export interface EventFilterStats {
+  /**
+   * The window in milliseconds
+   */
+  window: number;
+
+  /**
+   * Tags currently considered in the field
+   */
+  tracked: number;
+
+  /**
+   * Detections dropped as repeats
+   */
+  suppressed: number;
+
+  /**
+   * Status events dropped as repeats
+   */
+  statusesSuppressed: number;
+}
+
+export interface EventOptions {
+  /**
+   * Milliseconds events are held before delivery; 0 delivers as soon as
+   * possible. Defaults to 16.
+   */
+  window?: number;
+
+  /**
+   * Events held at most; the oldest is dropped beyond this. Defaults to 256.
+   */
+  maxQueued?: number;
+}
+
+export interface EventStats {
+  window: number;
+  maxQueued: number;
+
+  /**
+   * Events waiting for the next delivery
+   */
+  queued: number;
+
+  /**
+   * Events accepted for delivery
+   */
+  posted: number;
+
+  /**
+   * Events sent to JS
+   */
+  delivered: number;
+
+  /**
+   * Deliveries; each sends every event of one window
+   */
+  batches: number;
+
+  /**
+   * nfcStatus events replaced by a newer one before delivery
+   */
+  merged: number;
+
+  /**
+   * Events dropped because the queue was full
+   */
+  dropped: number;
+
+  /**
+   * Events not sent because nothing listened to their type
+   */
+  unsubscribed: number;
+}
+
+/**
+ * Every event of one delivery window, in order
+ */
+export interface NfcEventBatch {
+  events: { type: string; data: any }[];
+
+  /**
+   * Events dropped from a full queue since the previous batch
+   */
+  dropped: number;
+}
+
+/**
+ * State change of a tag in the field
+ */
+export type TagTransition = 'arrived' | 'changed' | 'left';
+
+export interface TagLeftEvent {
+  /**
+   * Unique identifier of the tag
+   */
+  id: string;
+
+  transition: 'left';
+
+  timestamp: string;
+}
+
+export interface ReadCacheOptions {
+  /**
+   * Turn the cache on or off. Defaults to true.
+   */
+  enabled?: boolean;
+
+  /**
+   * Maximum number of tags kept, least recently used dropped first. Defaults to 32.
+   */
+  maxEntries?: number;
+
+  /**
+   * How long in milliseconds a result may be reused. Defaults to 10000.
+   */
+  ttl?: number;
+
+  /**
+   * Drop every cached result
+   */
+  clear?: boolean;
+}
+
+export interface ReadCacheStats {
+  /**
+   * Whether results are being cached
+   */
+  enabled: boolean;
+
+  /**
+   * Tags currently cached
+   */
+  size: number;
+
+  /**
+   * Reads answered from the cache
+   */
+  hits: number;
+
+  /**
+   * Reads that needed a full read, including stale and expired entries
+   */
+  misses: number;
+
+  /**
+   * Entries dropped because the tag's contents changed
+   */
+  stale: number;
+
+  /**
+   * Entries dropped because they outlived the TTL
+   */
+  expired: number;
+
+  /**
+   * Entries dropped to stay within maxEntries
+   */
+  evictions: number;
+
+  /**
+   * Entries dropped by writes, encoding changes or `clear`
+   */
+  invalidations: number;
+}
+
+export interface StageLatency {
+  /**
+   * Operations timed
+   */
+  count: number;
+
+  /**
+   * Median latency in milliseconds
+   */
+  p50: number;
+
+  /**
+   * 95th percentile latency in milliseconds
+   */
+  p95: number;
+
+  /**
+   * 99th percentile latency in milliseconds
+   */
+  p99: number;
+
+  /**
+   * Slowest operation in milliseconds
+   */
+  max: number;
+
+  /**
+   * Mean latency in milliseconds
+   */
+  mean: number;
+}
+
+export interface NfcMetrics {
+  /**
+   * Latency of connecting a tag technology, each transceive, Android's NDEF
+   * read/write/format, parsing a result, delivering an event to JavaScript,
+   * and answering an HCE command
+   */
+  stages: {
+    connect: StageLatency;
+    transceive: StageLatency;
+    ndefIo: StageLatency;
+    parse: StageLatency;
+    notify: StageLatency;
+    hceCommand: StageLatency;
+  };
+
+  /**
+   * Commands that failed after running into the transceive timeout
+   */
+  timeouts: number;
+
+  /**
+   * Operations that failed because the tag left the field
+   */
+  tagsLost: number;
+
+  /**
+   * Rejected MIFARE Classic keys, including dictionary keys tried and missed
+   */
+  authFailures: number;
+
+  /**
+   * When the metrics were last reset, in milliseconds since the epoch
+   */
+  since: number;
+}
+
+export interface EmulatedApplication {
+  /**
+   * AID as 5 to 16 bytes of hex. A trailing '*' registers a prefix that
+   * matches any AID starting with it (ISO_DEP only, and only where the device
+   * supports prefix registration).
+   */
+  aid: string;
+
+  /**
+   * 'ISO_DEP' answers the D0 READ command with data; 'NDEF' serves data as
+   * an NDEF Text record; 'FILES' is an ISO 7816-4 card with a file system
+   * that readers can read and update. Defaults to 'ISO_DEP'.
+   */
+  type?: 'ISO_DEP' | 'NDEF' | 'FILES';
+
+  /**
+   * Data the application returns. For 'FILES' without files, the initial
+   * contents of the data file.
+   */
+  data?: string;
+
+  /**
+   * File system of a 'FILES' application. Without it the card has a binary
+   * data file 0101 (SFI 1) that the D0 commands read and replace, and a
+   * record file 0102 (SFI 2), each of 8192 bytes.
+   */
+  files?: EmulatedFile[];
+}
+
+export interface EmulatedFile {
+  /**
+   * File identifier as 4 hex digits, e.g. '0101'
+   */
+  id: string;
+
+  /**
+   * File identifier of the DF holding this file, listed earlier. Defaults to
+   * the master file, '3F00'.
+   */
+  parent?: string;
+
+  /**
+   * 'df' for a directory, 'binary' for a transparent file, 'records' for a
+   * linear record file. Defaults to 'binary'.
+   */
+  kind?: 'df' | 'binary' | 'records';
+
+  /**
+   * Short file identifier (1 to 30) for READ BINARY and record commands
+   */
+  sfi?: number;
+
+  /**
+   * Bytes reserved for the file's contents. Defaults to 8192; all files of an
+   * application together may reserve up to 1 MB.
+   */
+  capacity?: number;
+
+  /**
+   * Records a record file can hold. Defaults to 64.
+   */
+  maxRecords?: number;
+
+  /**
+   * Initial contents of a binary file
+   */
+  data?: string;
+
+  /**
+   * Initial records of a record file
+   */
+  records?: string[];
+
+  /**
+   * Encoding of data and records. Defaults to 'utf8'.
+   */
+  encoding?: PayloadEncoding;
+}
+
+export interface TraceOptions {
+  /**
+   * Trace one in every N conversations; 1 traces all of them, 0 turns tracing off
+   */
+  sampleEvery?: number;
+
+  /**
+   * APDUs the ring buffer holds before overwriting the oldest. Defaults to 256.
+   * Changing it drops the current trace.
+   */
+  capacity?: number;
+
+  /**
+   * Bytes kept from each APDU; longer ones are truncated. Defaults to 64.
+   * capacity times maxBytes may not exceed 4 MB. Changing it drops the
+   * current trace.
+   */
+  maxBytes?: number;
+
+  /**
+   * Drop every traced APDU
+   */
+  clear?: boolean;
+}
+
+export interface TraceStats {
+  /**
+   * One in how many conversations is traced; 0 when tracing is off
+   */
+  sampleEvery: number;
+
+  /**
+   * APDUs the ring buffer holds
+   */
+  capacity: number;
+
+  /**
+   * Bytes kept from each APDU
+   */
+  maxBytes: number;
+
+  /**
+   * APDUs currently in the ring buffer
+   */
+  size: number;
+
+  /**
+   * APDUs overwritten since the trace was last cleared
+   */
+  overwritten: number;
+}
+
+export interface TraceEntry {
+  /**
+   * When the APDU was sent or received, in milliseconds since the epoch
+   */
+  time: number;
+
+  /**
+   * 'reader' for tags this device read, 'hce' for card emulation
+   */
+  source: 'reader' | 'hce';
+
+  direction: 'command' | 'response';
+
+  /**
+   * Full length of the APDU in bytes
+   */
+  length: number;
+
+  /**
+   * The APDU bytes kept, in the selected result encoding
+   */
+  data: string;
+
+  /**
+   * Whether data holds fewer than length bytes
+   */
+  truncated: boolean;
+}
+
+export interface TraceDump extends TraceStats {
+  entries: TraceEntry[];
+}
+
+export interface JournalOptions {
+  /**
+   * Journal tag reads and writes; keeps the current setting when omitted
+   */
+  enabled?: boolean;
+
+  /**
+   * Bytes per segment file (4096 to 64 MB, default 1 MB)
+   */
+  segmentSize?: number;
+
+  /**
+   * Segments kept before the oldest is deleted (default 16)
+   */
+  maxSegments?: number;
+
+  /**
+   * Delete every record
+   */
+  clear?: boolean;
+}
+
+export interface JournalStats {
+  enabled: boolean;
+
+  /**
+   * Records in the journal
+   */
+  records?: number;
+
+  /**
+   * Sequence number of the oldest record kept
+   */
+  firstSequence?: number;
+
+  /**
+   * Segment files on disk
+   */
+  segments?: number;
+
+  /**
+   * Disk writes since the journal was opened; each syncs every record appended since the last
+   */
+  batches?: number;
+
+  /**
+   * Records lost to failed disk writes
+   */
+  writeErrors?: number;
+}
+
+export interface JournalQuery {
+  /**
+   * Only records after this sequence number; pass the previous page's next
+   */
+  after?: number;
+
+  /**
+   * Earliest record time, epoch milliseconds
+   */
+  from?: number;
+
+  /**
+   * Latest record time, epoch milliseconds
+   */
+  to?: number;
+
+  /**
+   * Only records of this tag UID (hex)
+   */
+  uid?: string;
+
+  /**
+   * Records per page, 1 to 1000 (default 100)
+   */
+  limit?: number;
+}
+
+export interface JournalEntry {
+  /**
+   * Position in the journal; increases with every record
+   */
+  sequence: number;
+
+  /**
+   * When the read or write finished, epoch milliseconds
+   */
+  time: number;
+
+  kind: 'read' | 'write';
+
+  /**
+   * Tag UID (hex)
+   */
+  id: string;
+
+  /**
+   * Tag type, as in NFCTagInfo.type
+   */
+  type: string;
+
+  /**
+   * SHA-256 of what was read (the read result) or written (the NDEF message
+   * or ISO-DEP data), in the selected result encoding
+   */
+  digest: string;
+
+  /**
+   * Time taken by the read or write
+   */
+  latencyMs: number;
+}
+
+export interface JournalPage {
+  encoding: BinaryEncoding;
+  entries: JournalEntry[];
+
+  /**
+   * Set when more records match; pass it as after for the next page
+   */
+  next?: number;
+}
+
+export interface MifareClassicKeyOptions {
+  /**
+   * 6-byte keys as 12 hex characters
+   */
+  keys: string[];
+
+  /**
+   * Forget the keys remembered for previously read tags
+   */
+  clearCache?: boolean;
+}
+
+export interface NFCTagInfo {
+  /**
+   * Unique identifier of the tag
+   */
+  id: string;
+  
+  /**
+   * Type of NFC tag
+   */
+  type: string;
+  
+  /**
+   * List of supported technologies
+   */
+  techTypes: string[];
+  
+  /**
+   * Maximum size in bytes
+   */
+  maxSize?: number;
+  
+  /**
+   * Whether the tag is writable
+   */
+  isWritable?: boolean;
+  
+  /**
+   * NDEF message data if available
+   */
+  ndefMessage?: any;
+  
+  /**
+   * Card-specific data
+   */
+  cardData?: string;
+
+  /**
+   * Raw memory as one hex string: all blocks of a MIFARE Classic tag,
+   * or all pages of a MIFARE Ultralight / NTAG tag
+   */
+  data?: string;
+
+  /**
+   * Encoding of the raw byte fields below (see `setResultEncoding`)
+   */
+  encoding?: BinaryEncoding;
+
+  /**
+   * MIFARE Ultralight / NTAG: GET_VERSION response
+   */
+  version?: string;
+
+  /**
+   * ISO-DEP: ATS historical bytes
+   */
+  historicalBytes?: string;
+
+  /**
+   * ISO-DEP: higher layer response
+   */
+  hiLayerResponse?: string;
+
+  /**
+   * MIFARE Ultralight / NTAG: chip identified from GET_VERSION, e.g. "NTAG216"
+   */
+  chip?: string;
+
+  /**
+   * MIFARE Ultralight / NTAG: number of pages in `data`
+   */
+  pageCount?: number;
+
+  /**
+   * MIFARE Classic: hex bitmap, bit n set when sector n was read
+   */
+  sectorStatus?: string;
+
+  /**
+   * MIFARE Classic: number of sectors read
+   */
+  sectorsRead?: number;
+
+  /**
+   * Why the tag was reported: 'arrived' or 'changed' (see `configureEventFilter`)
+   */
+  transition?: TagTransition;
+
+  /**
+   * True when the result came from the read cache (see `configureReadCache`)
+   */
+  fromCache?: boolean;
+}
+
+export interface NFCPluginEvents {
+  /**
+   * Emitted when an NFC tag is detected
+   */
+  nfcTagDetected: NFCTagInfo;
+  
+  /**
+   * Emitted for every tag a batch write attempts
+   */
+  batchWriteResult: BatchWriteResult;
+
+  /**
+   * Emitted when a batch write has written every tag it was asked to
+   */
+  batchWriteComplete: BatchWriteStats;
+
+  /**
+   * Emitted when a tag has not been seen for a whole filter window
+   */
+  nfcTagLeft: TagLeftEvent;
+
   /**
    * Emitted when NFC status changes
    */
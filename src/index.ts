@@ -3,6 +3,7 @@ import { registerPlugin } from '@capacitor/core';
 import type { NFCPlugin } from './definitions';
 
 export * from './definitions';
+export * from './binary';
 export * from './web';
 
 const Nfc = registerPlugin<NFCPlugin>('Nfc', {
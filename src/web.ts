@@ -1,6 +1,6 @@
 import { WebPlugin } from '@capacitor/core';
 
-import type { NFCPlugin, WriteOptions, NFCTagInfo } from './definitions';
+import type { NFCPlugin, WriteOptions, NFCTagInfo, ReaderSessionOptions, ReaderSessionStats, MifareClassicKeyOptions, BinaryEncoding, ReadCacheOptions, ReadCacheStats, NfcMetrics, EmulatedApplication, TraceOptions, TraceStats, TraceDump, JournalOptions, JournalStats, JournalQuery, JournalPage, EventFilterOptions, EventFilterStats, EventOptions, EventStats, BatchWriteOptions, BatchWriteStats } from './definitions';
 
 /**
  * @capacitor-plugin Nfc
@@ -72,6 +72,164 @@ export class NFCWeb extends WebPlugin implements NFCPlugin {
     throw this.unavailable('NFC not available in browser');
   }
 
+  /**
+   * Start a continuous reader-mode session.
+   * @param _options ReaderSessionOptions for the session
+   * @throws Error NFC is not available in browser
+   */
+  async startReaderSession(_options?: ReaderSessionOptions): Promise<void> {
+    throw this.unavailable('NFC not available in browser');
+  }
+
+  /**
+   * Stop the running reader session.
+   * @throws Error NFC is not available in browser
+   */
+  async stopReaderSession(): Promise<ReaderSessionStats> {
+    throw this.unavailable('NFC not available in browser');
+  }
+
+  /**
+   * Get counters for the running reader session.
+   * @returns Promise that resolves with an inactive session
+   */
+  async getReaderSessionStats(): Promise<ReaderSessionStats> {
+    return { active: false };
+  }
+
+  /**
+   * Start writing NDEF text to every tag brought into range.
+   * @param _options BatchWriteOptions for the batch
+   * @throws Error NFC is not available in browser
+   */
+  async startBatchWrite(_options: BatchWriteOptions): Promise<void> {
+    throw this.unavailable('NFC not available in browser');
+  }
+
+  /**
+   * Stop the running batch write.
+   * @throws Error NFC is not available in browser
+   */
+  async stopBatchWrite(): Promise<BatchWriteStats> {
+    throw this.unavailable('NFC not available in browser');
+  }
+
+  /**
+   * Get counters for the running batch write.
+   * @returns Promise that resolves with an inactive batch
+   */
+  async getBatchWriteStats(): Promise<BatchWriteStats> {
+    return { active: false };
+  }
+
+  /**
+   * Set the extra keys used to dump MIFARE Classic tags.
+   * @param _options MifareClassicKeyOptions with the keys as hex strings
+   * @throws Error NFC is not available in browser
+   */
+  async setMifareClassicKeys(_options: MifareClassicKeyOptions): Promise<void> {
+    throw this.unavailable('NFC not available in browser');
+  }
+
+  /**
+   * Choose how raw tag bytes are sent to JS.
+   * @param _options the encoding to use
+   * @throws Error NFC is not available in browser
+   */
+  async setResultEncoding(_options: { encoding: BinaryEncoding }): Promise<void> {
+    throw this.unavailable('NFC not available in browser');
+  }
+
+  /**
+   * Configure how repeated detections are filtered.
+   * @param _options EventFilterOptions for the filter
+   * @throws Error NFC is not available in browser
+   */
+  async configureEventFilter(_options: EventFilterOptions): Promise<EventFilterStats> {
+    throw this.unavailable('NFC not available in browser');
+  }
+
+  /**
+   * Configure event delivery.
+   * @throws Error NFC is not available in browser
+   */
+  async configureEvents(_options: EventOptions): Promise<EventStats> {
+    throw this.unavailable('NFC not available in browser');
+  }
+
+  /**
+   * Configure the cache of parsed read results.
+   * @param _options ReadCacheOptions for the cache
+   * @throws Error NFC is not available in browser
+   */
+  async configureReadCache(_options: ReadCacheOptions): Promise<ReadCacheStats> {
+    throw this.unavailable('NFC not available in browser');
+  }
+
+  /**
+   * Get counters for the read cache.
+   * @throws Error NFC is not available in browser
+   */
+  async getReadCacheStats(): Promise<ReadCacheStats> {
+    throw this.unavailable('NFC not available in browser');
+  }
+
+  /**
+   * Get latency and failure metrics.
+   * @throws Error NFC is not available in browser
+   */
+  async getMetrics(_options?: { reset?: boolean }): Promise<NfcMetrics> {
+    throw this.unavailable('NFC not available in browser');
+  }
+
+  /**
+   * Emulate applications under several AIDs.
+   * @throws Error NFC is not available in browser
+   */
+  async setEmulatedApplications(_options: { applications: EmulatedApplication[] }): Promise<{ aids: string[] }> {
+    throw this.unavailable('NFC not available in browser');
+  }
+
+  /**
+   * Get the contents of an emulated file.
+   * @throws Error NFC is not available in browser
+   */
+  async readEmulatedFile(_options: { aid: string; file: string }): Promise<{ data?: string; records?: string[] }> {
+    throw this.unavailable('NFC not available in browser');
+  }
+
+  /**
+   * Configure APDU tracing.
+   * @throws Error NFC is not available in browser
+   */
+  async configureTrace(_options: TraceOptions): Promise<TraceStats> {
+    throw this.unavailable('NFC not available in browser');
+  }
+
+  /**
+   * Get the traced APDUs.
+   * @throws Error NFC is not available in browser
+   */
+  async dumpTrace(_options?: { clear?: boolean }): Promise<TraceDump> {
+    throw this.unavailable('NFC not available in browser');
+  }
+
+  /**
+   * Configure the tag journal.
+   * @throws Error NFC is not available in browser
+   */
+  async configureJournal(_options: JournalOptions): Promise<JournalStats> {
+    throw this.unavailable('NFC not available in browser');
+  }
+
+  /**
+   * Read tag journal records.
+   * @throws Error NFC is not available in browser
+   */
+  async queryJournal(_options?: JournalQuery): Promise<JournalPage> {
+    throw this.unavailable('NFC not available in browser');
+  }
+
   /**
    * Helper method to generate consistent error messages.
    * @param feature - The feature that is not available